@@ -2,6 +2,8 @@ package deors.core.commons;
 
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +14,9 @@ import org.slf4j.LoggerFactory;
  * <p>The context acts as a bridge between the library classes, the configuration properties
  * and the messages stored in resource bundles.
  *
+ * <p>Messages with replacement tokens are compiled the first time they are requested and the
+ * compiled form is kept, so formatting a message again does not scan the message text.
+ *
  * @author deors
  * @version 1.0
  */
@@ -28,6 +33,12 @@ public abstract class AbstractContext implements Context {
      */
     private final Context baseContext;
 
+    /**
+     * The compiled messages, indexed by the message key.
+     */
+    private final ConcurrentMap<String, CompiledMessage> compiledMessages =
+        new ConcurrentHashMap<String, CompiledMessage>();
+
     /**
      * The logger.
      */
@@ -279,8 +290,7 @@ public abstract class AbstractContext implements Context {
 
         if (bundle != null) {
             try {
-                String temp = bundle.getString(messageKey);
-                retValue = StringToolkit.replace(temp, replacementString);
+                retValue = getCompiledMessage(messageKey).formatFirst(replacementString);
                 lookInBase = false;
             } catch (MissingResourceException mre) {
                 lookInBase = true;
@@ -316,9 +326,8 @@ public abstract class AbstractContext implements Context {
 
         if (bundle != null) {
             try {
-                String temp = bundle.getString(messageKey);
-                retValue = StringToolkit.replaceMultiple(
-                    temp, new String[] {replacementString1, replacementString2});
+                retValue = getCompiledMessage(messageKey).format(
+                    new String[] {replacementString1, replacementString2});
                 lookInBase = false;
             } catch (MissingResourceException mre) {
                 lookInBase = true;
@@ -353,8 +362,7 @@ public abstract class AbstractContext implements Context {
 
         if (bundle != null) {
             try {
-                String temp = bundle.getString(messageKey);
-                retValue = StringToolkit.replaceMultiple(temp, replacementStrings);
+                retValue = getCompiledMessage(messageKey).format(replacementStrings);
                 lookInBase = false;
             } catch (MissingResourceException mre) {
                 lookInBase = true;
@@ -405,4 +413,26 @@ public abstract class AbstractContext implements Context {
 
         return retValue;
     }
+
+    /**
+     * Returns the compiled form of a message from the properties file, compiling it the first
+     * time it is requested.
+     *
+     * @param messageKey the message key in the properties file
+     *
+     * @return the compiled message
+     *
+     * @throws MissingResourceException the key is missing
+     */
+    private CompiledMessage getCompiledMessage(String messageKey) {
+
+        CompiledMessage compiled = compiledMessages.get(messageKey);
+
+        if (compiled == null) {
+            compiled = CompiledMessage.compile(bundle.getString(messageKey));
+            compiledMessages.putIfAbsent(messageKey, compiled);
+        }
+
+        return compiled;
+    }
 }
@@ -0,0 +1,29 @@
+package deors.core.commons;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Generic interface for processes that receive the tokens found while tokenizing UTF-8 encoded
+ * data.
+ *
+ * <p>Tokens are passed as a range of absolute indexes in the source buffer, so no array or
+ * string is created for each token. Handlers that need to keep a token as a string can decode
+ * it using <code>UTF8Toolkit.decode(source, start, end)</code>.
+ *
+ * @see UTF8Toolkit#tokenize(ByteBuffer, String, char, ByteTokenHandler)
+ *
+ * @author deors
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface ByteTokenHandler {
+
+    /**
+     * Callback invoked each time a token is found.
+     *
+     * @param source the buffer being tokenized
+     * @param start the token start index, inclusive
+     * @param end the token end index, exclusive
+     */
+    void token(ByteBuffer source, int start, int end);
+}
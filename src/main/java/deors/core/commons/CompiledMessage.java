@@ -0,0 +1,221 @@
+package deors.core.commons;
+
+import java.util.Arrays;
+
+/**
+ * Compiled representation of a message with replacement tokens in the form
+ * <code>{<i>n</i>}</code>.
+ *
+ * <p>The message is scanned only once, when compiled, and the position and argument index of
+ * each token are kept, so formatting the message is one single append pass over the literal
+ * text and the arguments. The result is the same as with
+ * <code>StringToolkit.replaceMultiple(String, String[])</code>: tokens with an index not lower
+ * than the number of arguments are not modified.
+ *
+ * <p>Compiled messages are immutable and can be safely shared by any number of threads.
+ *
+ * @see StringToolkit#replaceMultiple(String, String[])
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class CompiledMessage {
+
+    /**
+     * The character used to start a replacement token.
+     */
+    private static final char TOKEN_START = '{';
+
+    /**
+     * The character used to end a replacement token.
+     */
+    private static final char TOKEN_END = '}';
+
+    /**
+     * The maximum number of digits in the argument index of a token.
+     */
+    private static final int MAX_INDEX_DIGITS = 9;
+
+    /**
+     * The decimal base.
+     */
+    private static final int DECIMAL_BASE = 10;
+
+    /**
+     * The message text.
+     */
+    private final String text;
+
+    /**
+     * The start offset of each token in the message text.
+     */
+    private final int[] tokenStarts;
+
+    /**
+     * The end offset of each token in the message text.
+     */
+    private final int[] tokenEnds;
+
+    /**
+     * The argument index of each token.
+     */
+    private final int[] tokenIndexes;
+
+    /**
+     * Constructor used by the compile method.
+     *
+     * @param text the message text
+     * @param tokenStarts the start offset of each token
+     * @param tokenEnds the end offset of each token
+     * @param tokenIndexes the argument index of each token
+     */
+    private CompiledMessage(String text, int[] tokenStarts, int[] tokenEnds, int[] tokenIndexes) {
+
+        super();
+
+        this.text = text;
+        this.tokenStarts = tokenStarts;
+        this.tokenEnds = tokenEnds;
+        this.tokenIndexes = tokenIndexes;
+    }
+
+    /**
+     * Compiles the given message.
+     *
+     * @param text the message text
+     *
+     * @return the compiled message
+     */
+    static CompiledMessage compile(String text) {
+
+        int length = text.length();
+        int[] starts = new int[0];
+        int[] ends = new int[0];
+        int[] indexes = new int[0];
+        int count = 0;
+
+        int i = text.indexOf(TOKEN_START);
+        while (i != -1) {
+            int end = parseToken(text, i, length);
+            if (end == -1) {
+                i = text.indexOf(TOKEN_START, i + 1);
+                continue;
+            }
+
+            if (count == starts.length) {
+                int newCapacity = count * 2 + 1;
+                starts = Arrays.copyOf(starts, newCapacity);
+                ends = Arrays.copyOf(ends, newCapacity);
+                indexes = Arrays.copyOf(indexes, newCapacity);
+            }
+
+            starts[count] = i;
+            ends[count] = end;
+            indexes[count] = Integer.parseInt(text.substring(i + 1, end - 1));
+            count++;
+
+            i = text.indexOf(TOKEN_START, end);
+        }
+
+        return new CompiledMessage(text, Arrays.copyOf(starts, count),
+            Arrays.copyOf(ends, count), Arrays.copyOf(indexes, count));
+    }
+
+    /**
+     * Checks whether there is a token in the given position. A token is a decimal number,
+     * without leading zeros, between the token start and end characters, as generated by
+     * <code>StringToolkit.replaceMultiple(String, String[])</code>.
+     *
+     * @param text the message text
+     * @param start the token start position
+     * @param length the message text length
+     *
+     * @return the token end offset or <code>-1</code> if there is no token in the position
+     */
+    private static int parseToken(String text, int start, int length) {
+
+        int i = start + 1;
+        while (i < length && i - start <= MAX_INDEX_DIGITS && isDigit(text.charAt(i))) {
+            i++;
+        }
+
+        int digits = i - start - 1;
+        if (digits == 0 || i == length || text.charAt(i) != TOKEN_END
+            || digits > 1 && text.charAt(start + 1) == '0') {
+            return -1;
+        }
+
+        return i + 1;
+    }
+
+    /**
+     * Checks whether the given character is an ASCII decimal digit.
+     *
+     * @param c the character
+     *
+     * @return whether the character is an ASCII decimal digit
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Formats the message replacing each token <code>{<i>n</i>}</code> with the argument with
+     * index <code>n</code>. Tokens with an index not lower than the number of arguments are not
+     * modified.
+     *
+     * @param args the arguments
+     *
+     * @return the formatted message or <code>null</code> if the arguments are <code>null</code>
+     *         or empty, as in <code>StringToolkit.replaceMultiple(String, String[])</code>
+     */
+    String format(String[] args) {
+
+        if (args == null || args.length == 0) {
+            return null;
+        }
+
+        StringBuilder sb = null;
+        int end = 0;
+
+        for (int i = 0; i < tokenStarts.length; i++) {
+            int index = tokenIndexes[i];
+            if (index < args.length) {
+                if (sb == null) {
+                    sb = new StringBuilder(text.length() + args.length * DECIMAL_BASE);
+                }
+                sb.append(text, end, tokenStarts[i]).append(args[index]);
+                end = tokenEnds[i];
+            }
+        }
+
+        if (sb == null) {
+            return text;
+        }
+
+        return sb.append(text, end, text.length()).toString();
+    }
+
+    /**
+     * Formats the message replacing the first token <code>{0}</code> with the given argument,
+     * as in <code>StringToolkit.replace(String, String)</code>.
+     *
+     * @param arg the argument
+     *
+     * @return the formatted message
+     */
+    String formatFirst(String arg) {
+
+        for (int i = 0; i < tokenStarts.length; i++) {
+            if (tokenIndexes[i] == 0) {
+                return new StringBuilder(text.length() + DECIMAL_BASE)
+                    .append(text, 0, tokenStarts[i])
+                    .append(arg)
+                    .append(text, tokenEnds[i], text.length())
+                    .toString();
+            }
+        }
+
+        return text;
+    }
+}
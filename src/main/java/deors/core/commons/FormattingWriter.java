@@ -0,0 +1,206 @@
+package deors.core.commons;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * Writer that formats the characters written for HTML viewing or for use in XML documents
+ * before passing them to the underlying writer.
+ *
+ * <p>The characters are formatted with the same rules used by
+ * <code>StringToolkit.formatForHTMLViewing(String)</code> and
+ * <code>StringToolkit.formatForXML(String)</code>, as they are written, so large documents can
+ * be formatted without building the whole text in memory. The result is the same regardless of
+ * how the text is split in write operations.
+ *
+ * <p>Writer objects are not thread-safe.
+ *
+ * @see StringToolkit#formatForHTMLViewing(CharSequence, Appendable)
+ * @see StringToolkit#formatForXML(CharSequence, Appendable)
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class FormattingWriter extends FilterWriter {
+
+    /**
+     * Format for HTML viewing.
+     */
+    public static final int FORMAT_HTML_VIEWING = 1;
+
+    /**
+     * Format for use in XML documents.
+     */
+    public static final int FORMAT_XML = 2;
+
+    /**
+     * The format applied.
+     */
+    private final int format;
+
+    /**
+     * The last character written or <code>-1</code> if no character was written.
+     */
+    private int previous = -1;
+
+    /**
+     * Buffer used to format single characters.
+     */
+    private final char[] singleChar = new char[1];
+
+    /**
+     * The array of characters last written.
+     */
+    private char[] viewArray;
+
+    /**
+     * Character buffer wrapping the whole array of characters last written, reused while the
+     * same array is written, so writing single characters or reusing a buffer creates no
+     * objects.
+     */
+    private CharBuffer view;
+
+    /**
+     * Constructor that sets the underlying writer and the format applied.
+     *
+     * @param out the underlying writer
+     * @param format the format applied, one of the <code>FORMAT_*</code> constants
+     *
+     * @throws IllegalArgumentException the format is not valid
+     */
+    public FormattingWriter(Writer out, int format) {
+
+        super(out);
+
+        if (format != FORMAT_HTML_VIEWING && format != FORMAT_XML) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("STRTK_ERR_INVALID_FORMAT", //$NON-NLS-1$
+                    Integer.toString(format)));
+        }
+
+        this.format = format;
+    }
+
+    /**
+     * Returns the format applied.
+     *
+     * @return the format applied, one of the <code>FORMAT_*</code> constants
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * Formats and writes a single character.
+     *
+     * @param c the character
+     *
+     * @throws IOException an I/O exception writing to the underlying writer
+     */
+    @Override
+    public void write(int c) throws IOException {
+
+        singleChar[0] = (char) c;
+        write(singleChar, 0, 1);
+    }
+
+    /**
+     * Formats and writes a portion of an array of characters.
+     *
+     * @param cbuf the array of characters
+     * @param off the offset of the first character
+     * @param len the number of characters
+     *
+     * @throws IOException an I/O exception writing to the underlying writer
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+
+        if (cbuf != viewArray) {
+            view = CharBuffer.wrap(cbuf);
+            viewArray = cbuf;
+        }
+
+        format(view, off, off + len);
+    }
+
+    /**
+     * Formats and writes a portion of a string.
+     *
+     * @param str the string
+     * @param off the offset of the first character
+     * @param len the number of characters
+     *
+     * @throws IOException an I/O exception writing to the underlying writer
+     */
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+
+        format(str, off, off + len);
+    }
+
+    /**
+     * Formats and writes a portion of a character sequence.
+     *
+     * @param csq the character sequence
+     * @param start the range start index
+     * @param end the range end index
+     *
+     * @return this writer
+     *
+     * @throws IOException an I/O exception writing to the underlying writer
+     */
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+
+        CharSequence source = csq == null ? "null" : csq; //$NON-NLS-1$
+        format(source, start, end);
+        return this;
+    }
+
+    /**
+     * Formats and writes a character sequence.
+     *
+     * @param csq the character sequence
+     *
+     * @return this writer
+     *
+     * @throws IOException an I/O exception writing to the underlying writer
+     */
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+
+        CharSequence source = csq == null ? "null" : csq; //$NON-NLS-1$
+        format(source, 0, source.length());
+        return this;
+    }
+
+    /**
+     * Formats and writes a range of a character sequence, keeping the last character written.
+     *
+     * @param source the character sequence
+     * @param start the range start index
+     * @param end the range end index
+     *
+     * @throws IOException an I/O exception writing to the underlying writer
+     */
+    private void format(CharSequence source, int start, int end) throws IOException {
+
+        if (start == end) {
+            return;
+        }
+
+        if (format == FORMAT_HTML_VIEWING) {
+            StringToolkit.formatForHTMLViewing(source, start, end, previous, out);
+        } else {
+            StringToolkit.formatForXML(source, start, end, out);
+        }
+
+        previous = source.charAt(end - 1);
+    }
+}
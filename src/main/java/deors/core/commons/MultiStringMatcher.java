@@ -0,0 +1,416 @@
+package deors.core.commons;
+
+import java.util.Arrays;
+
+/**
+ * Precompiled matcher that searches for several tokens at once.
+ *
+ * <p>The tokens are compiled into an Aho-Corasick automaton, so a string is searched for all the
+ * tokens in one single pass, regardless of the number of tokens. The matcher finds the leftmost
+ * occurrence of any token and, if several tokens are found in the same position, the token with
+ * the lowest index, which is the same rule followed by
+ * <code>StringToolkit.replaceMultiple()</code>.
+ *
+ * <p>Matchers are immutable and can be built once and shared by any number of threads.
+ *
+ * @see StringToolkit#replaceMultiple(String, String[], String[], int)
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class MultiStringMatcher {
+
+    /**
+     * Value returned by the search method when no token is found.
+     */
+    private static final long NOT_FOUND = -1L;
+
+    /**
+     * Number of bits used to store the token index in the search method result.
+     */
+    private static final int TOKEN_BITS = 32;
+
+    /**
+     * Mask used to extract the token index from the search method result.
+     */
+    private static final long TOKEN_MASK = 0xFFFFFFFFL;
+
+    /**
+     * The root state of the automaton.
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * The tokens searched for.
+     */
+    private final String[] tokens;
+
+    /**
+     * The characters with a transition from each state, sorted.
+     */
+    private final char[][] transitionChars;
+
+    /**
+     * The target state of each transition in <code>transitionChars</code>.
+     */
+    private final int[][] transitionStates;
+
+    /**
+     * The failure transition of each state, to the state of its longest proper suffix that is a
+     * prefix of some token.
+     */
+    private final int[] failures;
+
+    /**
+     * The nearest state reached following the failure transitions that completes a token, or
+     * <code>-1</code> if there is none.
+     */
+    private final int[] outputs;
+
+    /**
+     * The lowest index of the token completed by each state, or <code>-1</code> if the state
+     * does not complete a token.
+     */
+    private final int[] completedTokens;
+
+    /**
+     * The length of the prefix represented by each state.
+     */
+    private final int[] depths;
+
+    /**
+     * Constructor that compiles the given tokens.
+     *
+     * @param tokens the tokens searched for
+     *
+     * @throws IllegalArgumentException the token array is <code>null</code> or empty, or any
+     *                                  token is <code>null</code> or empty
+     */
+    public MultiStringMatcher(String... tokens) {
+
+        super();
+
+        if (tokens == null || tokens.length == 0) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("STRTK_ERR_NO_TOKENS")); //$NON-NLS-1$
+        }
+
+        int maxStates = 1;
+        for (String token : tokens) {
+            if (token == null || token.isEmpty()) {
+                throw new IllegalArgumentException(
+                    CommonsContext.getMessage("STRTK_ERR_EMPTY_TOKEN")); //$NON-NLS-1$
+            }
+            maxStates += token.length();
+        }
+
+        this.tokens = tokens.clone();
+
+        char[][] chars = new char[maxStates][];
+        int[][] states = new int[maxStates][];
+        int[] completed = new int[maxStates];
+        int[] lengths = new int[maxStates];
+        Arrays.fill(completed, -1);
+        chars[ROOT] = new char[0];
+        states[ROOT] = new int[0];
+
+        int stateCount = 1;
+        for (int i = 0; i < this.tokens.length; i++) {
+            String token = this.tokens[i];
+            int state = ROOT;
+            for (int j = 0; j < token.length(); j++) {
+                char c = token.charAt(j);
+                int pos = Arrays.binarySearch(chars[state], c);
+                if (pos >= 0) {
+                    state = states[state][pos];
+                } else {
+                    int newState = stateCount++;
+                    chars[newState] = new char[0];
+                    states[newState] = new int[0];
+                    lengths[newState] = j + 1;
+                    addTransition(chars, states, state, -(pos + 1), c, newState);
+                    state = newState;
+                }
+            }
+            // duplicated tokens are always matched with the lowest index
+            if (completed[state] == -1) {
+                completed[state] = i;
+            }
+        }
+
+        this.transitionChars = Arrays.copyOf(chars, stateCount);
+        this.transitionStates = Arrays.copyOf(states, stateCount);
+        this.completedTokens = Arrays.copyOf(completed, stateCount);
+        this.depths = Arrays.copyOf(lengths, stateCount);
+        this.failures = new int[stateCount];
+        this.outputs = new int[stateCount];
+
+        computeFailures(stateCount);
+    }
+
+    /**
+     * Adds a transition to a state, keeping the transition characters sorted.
+     *
+     * @param chars the transition characters of each state
+     * @param states the transition target states of each state
+     * @param state the state
+     * @param pos the insertion position
+     * @param c the transition character
+     * @param target the transition target state
+     */
+    private static void addTransition(char[][] chars, int[][] states, int state, int pos,
+                                      char c, int target) {
+
+        char[] oldChars = chars[state];
+        int[] oldStates = states[state];
+        char[] newChars = new char[oldChars.length + 1];
+        int[] newStates = new int[oldStates.length + 1];
+
+        System.arraycopy(oldChars, 0, newChars, 0, pos);
+        System.arraycopy(oldStates, 0, newStates, 0, pos);
+        newChars[pos] = c;
+        newStates[pos] = target;
+        System.arraycopy(oldChars, pos, newChars, pos + 1, oldChars.length - pos);
+        System.arraycopy(oldStates, pos, newStates, pos + 1, oldStates.length - pos);
+
+        chars[state] = newChars;
+        states[state] = newStates;
+    }
+
+    /**
+     * Computes the failure transitions and the output links of each state, traversing the
+     * states in breadth-first order.
+     *
+     * @param stateCount the number of states
+     */
+    private void computeFailures(int stateCount) {
+
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+
+        failures[ROOT] = ROOT;
+        outputs[ROOT] = -1;
+        for (int child : transitionStates[ROOT]) {
+            failures[child] = ROOT;
+            outputs[child] = -1;
+            queue[tail++] = child;
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            char[] chars = transitionChars[state];
+            int[] children = transitionStates[state];
+            for (int i = 0; i < chars.length; i++) {
+                int child = children[i];
+                int failure = next(failures[state], chars[i]);
+                failures[child] = failure;
+                outputs[child] = completedTokens[failure] != -1 ? failure : outputs[failure];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Returns the state reached from the given state with the given character, following the
+     * failure transitions when needed.
+     *
+     * @param state the current state
+     * @param c the character
+     *
+     * @return the next state
+     */
+    private int next(int state, char c) {
+
+        int current = state;
+        while (true) {
+            int pos = Arrays.binarySearch(transitionChars[current], c);
+            if (pos >= 0) {
+                return transitionStates[current][pos];
+            }
+            if (current == ROOT) {
+                return ROOT;
+            }
+            current = failures[current];
+        }
+    }
+
+    /**
+     * Returns the number of tokens searched for.
+     *
+     * @return the number of tokens
+     */
+    public int getTokenCount() {
+        return tokens.length;
+    }
+
+    /**
+     * Returns the token with the given index.
+     *
+     * @param index the token index
+     *
+     * @return the token
+     */
+    public String getToken(int index) {
+        return tokens[index];
+    }
+
+    /**
+     * Returns the position of the leftmost occurrence of any token in the given character
+     * sequence, starting in the given position.
+     *
+     * @param source the source character sequence
+     * @param begin the starting position
+     *
+     * @return the position of the first token found or <code>-1</code> if no token is found
+     */
+    public int indexOf(CharSequence source, int begin) {
+
+        long found = search(source, begin);
+        return found == NOT_FOUND ? -1 : (int) (found >>> TOKEN_BITS);
+    }
+
+    /**
+     * Replaces all the occurrences of the tokens in the given string with the replacement with
+     * the same index, in one single pass.
+     *
+     * @param source the source string
+     * @param replacements array with the replacement strings
+     *
+     * @return the string after the replace operation
+     *
+     * @see MultiStringMatcher#replace(String, String[], int)
+     */
+    public String replace(String source, String[] replacements) {
+
+        return replace(source, replacements, 0);
+    }
+
+    /**
+     * Replaces all the occurrences of the tokens in the given string, starting in the given
+     * position, with the replacement with the same index, in one single pass. The characters
+     * before the starting position are kept. Replacements are not searched again for tokens.
+     *
+     * @param source the source string
+     * @param replacements array with the replacement strings
+     * @param begin the starting position
+     *
+     * @return the string after the replace operation, which is the source string itself if no
+     *         token is found
+     *
+     * @throws IllegalArgumentException the number of replacements and tokens are different
+     */
+    public String replace(String source, String[] replacements, int begin) {
+
+        return replace(source, replacements, begin, true);
+    }
+
+    /**
+     * Replaces all the occurrences of the tokens in the given string, starting in the given
+     * position, with the replacement with the same index, in one single pass. The characters
+     * before the starting position are not part of the result, as in
+     * <code>StringToolkit.replaceMultiple()</code>.
+     *
+     * @param source the source string
+     * @param replacements array with the replacement strings
+     * @param begin the starting position
+     *
+     * @return the string after the replace operation
+     *
+     * @throws IllegalArgumentException the number of replacements and tokens are different
+     *
+     * @see StringToolkit#replaceMultiple(String, String[], String[], int)
+     */
+    String replaceFrom(String source, String[] replacements, int begin) {
+
+        return replace(source, replacements, begin, false);
+    }
+
+    /**
+     * Replaces all the occurrences of the tokens in the given string, starting in the given
+     * position, with the replacement with the same index, in one single pass.
+     *
+     * @param source the source string
+     * @param replacements array with the replacement strings
+     * @param begin the starting position
+     * @param keepPrefix whether the characters before the starting position are kept
+     *
+     * @return the string after the replace operation
+     *
+     * @throws IllegalArgumentException the number of replacements and tokens are different
+     */
+    private String replace(String source, String[] replacements, int begin,
+                           boolean keepPrefix) {
+
+        if (replacements.length != tokens.length) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("STRTK_ERR_REPLACEMENTS_LENGTH")); //$NON-NLS-1$
+        }
+
+        int end = keepPrefix ? 0 : begin;
+
+        long found = search(source, begin);
+        if (found == NOT_FOUND) {
+            return source.substring(end);
+        }
+
+        StringBuilder sb = new StringBuilder(source.length() - end);
+        while (found != NOT_FOUND) {
+            int start = (int) (found >>> TOKEN_BITS);
+            int token = (int) (found & TOKEN_MASK);
+            sb.append(source, end, start).append(replacements[token]);
+            end = start + tokens[token].length();
+            found = search(source, end);
+        }
+
+        sb.append(source, end, source.length());
+
+        return sb.toString();
+    }
+
+    /**
+     * Searches for the leftmost occurrence of any token, and the token with the lowest index
+     * if several tokens are found in that position. The search stops as soon as no pending
+     * partial match can start before the occurrence already found.
+     *
+     * @param source the source character sequence
+     * @param begin the starting position
+     *
+     * @return the position of the token found, in the high 32 bits, and the token index, in
+     *         the low 32 bits, or <code>NOT_FOUND</code> if no token is found
+     */
+    private long search(CharSequence source, int begin) {
+
+        int length = source.length();
+        int state = ROOT;
+        int bestStart = -1;
+        int bestToken = -1;
+
+        for (int i = Math.max(begin, 0); i < length; i++) {
+            state = next(state, source.charAt(i));
+
+            int output = completedTokens[state] != -1 ? state : outputs[state];
+            while (output != -1) {
+                int start = i + 1 - depths[output];
+                int token = completedTokens[output];
+                if (bestStart == -1 || start < bestStart
+                    || start == bestStart && token < bestToken) {
+                    bestStart = start;
+                    bestToken = token;
+                }
+                output = outputs[output];
+            }
+
+            // any later occurrence starts after the current partial match start
+            if (bestStart != -1 && i + 1 - depths[state] > bestStart) {
+                break;
+            }
+        }
+
+        if (bestStart == -1) {
+            return NOT_FOUND;
+        }
+
+        return (long) bestStart << TOKEN_BITS | bestToken;
+    }
+}
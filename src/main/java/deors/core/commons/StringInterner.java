@@ -0,0 +1,236 @@
+package deors.core.commons;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache that deduplicates strings, so values repeated many times, like the field values
+ * found while tokenizing large files, share one single instance.
+ *
+ * <p>The cache is a fixed number of slots indexed by the string hash code. A string is
+ * returned from its slot if it is there, or stored in the slot, replacing the previous one,
+ * otherwise. The memory used is therefore bounded by the capacity and the maximum length of
+ * the strings cached, and frequent values stay cached while rare values are replaced. Unlike
+ * <code>String.intern()</code>, the strings are not kept in the JVM string table and may be
+ * garbage collected when they are replaced.
+ *
+ * <p>The character sequence methods compare the range with the cached string before creating
+ * any string, so no string is created for values already cached.
+ *
+ * <p>Interners are thread-safe and lock-free, and can be shared by any number of threads.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class StringInterner {
+
+    /**
+     * The default number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default maximum length of the strings cached.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 32;
+
+    /**
+     * The number of bits the hash code is shifted to mix the high bits into the slot index.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    /**
+     * The hash code multiplier, the same used by <code>String.hashCode()</code>.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * The cached strings.
+     */
+    private final AtomicReferenceArray<String> slots;
+
+    /**
+     * The mask used to get the slot index from the hash code.
+     */
+    private final int mask;
+
+    /**
+     * The maximum length of the strings cached.
+     */
+    private final int maxLength;
+
+    /**
+     * Default constructor. It uses the default capacity and maximum length.
+     *
+     * @see StringInterner#DEFAULT_CAPACITY
+     * @see StringInterner#DEFAULT_MAX_LENGTH
+     */
+    public StringInterner() {
+
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Constructor that sets the capacity and the maximum length of the strings cached.
+     *
+     * @param capacity the number of slots, which is rounded up to a power of two
+     * @param maxLength the maximum length of the strings cached
+     *
+     * @throws IllegalArgumentException the capacity is not positive or the maximum length is
+     *                                  negative
+     */
+    public StringInterner(int capacity, int maxLength) {
+
+        super();
+
+        if (capacity <= 0 || capacity > 1 << (Integer.SIZE - 2) || maxLength < 0) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("STRTK_ERR_INVALID_INTERNER_SIZE")); //$NON-NLS-1$
+        }
+
+        int slotCount = Integer.highestOneBit(capacity);
+        if (slotCount < capacity) {
+            slotCount <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<String>(slotCount);
+        this.mask = slotCount - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Returns the maximum length of the strings cached.
+     *
+     * @return the maximum length of the strings cached
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the cached string equal to the given string, or caches and returns the given
+     * string if there is none.
+     *
+     * @param value the string
+     *
+     * @return the cached string, or the given string if it is not cached or it is
+     *         <code>null</code> or longer than the maximum length
+     */
+    public String intern(String value) {
+
+        if (value == null || value.length() > maxLength) {
+            return value;
+        }
+
+        int slot = slotIndex(value.hashCode());
+        String cached = slots.get(slot);
+
+        if (value.equals(cached)) {
+            return cached;
+        }
+
+        slots.lazySet(slot, value);
+
+        return value;
+    }
+
+    /**
+     * Returns the cached string equal to the given range of a character sequence, or creates,
+     * caches and returns a string with the range if there is none.
+     *
+     * @param source the character sequence
+     * @param start the range start index, inclusive
+     * @param end the range end index, exclusive
+     *
+     * @return the cached string, or a new string if the range is not cached or it is longer
+     *         than the maximum length
+     */
+    public String intern(CharSequence source, int start, int end) {
+
+        int length = end - start;
+
+        if (length > maxLength) {
+            return substring(source, start, end);
+        }
+
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = HASH_MULTIPLIER * hash + source.charAt(i);
+        }
+
+        int slot = slotIndex(hash);
+        String cached = slots.get(slot);
+
+        if (cached != null && cached.length() == length && regionMatches(cached, source, start)) {
+            return cached;
+        }
+
+        String value = substring(source, start, end);
+        slots.lazySet(slot, value);
+
+        return value;
+    }
+
+    /**
+     * Returns the slot index for the given hash code.
+     *
+     * @param hash the hash code
+     *
+     * @return the slot index
+     */
+    private int slotIndex(int hash) {
+
+        return (hash ^ (hash >>> HASH_SHIFT)) & mask;
+    }
+
+    /**
+     * Checks whether a string is equal to the range of a character sequence with the same
+     * length starting in the given index.
+     *
+     * @param cached the string
+     * @param source the character sequence
+     * @param start the range start index
+     *
+     * @return whether the string and the range are equal
+     */
+    private static boolean regionMatches(String cached, CharSequence source, int start) {
+
+        if (source instanceof String) {
+            return cached.regionMatches(0, (String) source, start, cached.length());
+        }
+
+        for (int i = 0, n = cached.length(); i < n; i++) {
+            if (cached.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a string with a range of a character sequence.
+     *
+     * @param source the character sequence
+     * @param start the range start index, inclusive
+     * @param end the range end index, exclusive
+     *
+     * @return the string with the range
+     */
+    private static String substring(CharSequence source, int start, int end) {
+
+        if (source instanceof String) {
+            return ((String) source).substring(start, end);
+        }
+
+        return source.subSequence(start, end).toString();
+    }
+}
@@ -3,16 +3,22 @@ package deors.core.commons;
 import static deors.core.commons.CommonsContext.BLANK;
 import static deors.core.commons.CommonsContext.SPACE;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.StringTokenizer;
 
+import deors.core.commons.hex.HexToolkit;
+
 /**
  * Toolkit methods for working with strings.
  *
@@ -75,6 +81,39 @@ public final class StringToolkit {
      */
     private static final char TOKEN_END = '}';
 
+    /**
+     * The maximum number of characters searched for one by one in <code>indexOfAny</code>.
+     */
+    private static final int MAX_INDEX_OF_SEARCHES = 4;
+
+    /**
+     * The number of characters in the Latin-1 character set.
+     */
+    private static final int LATIN1_CHARACTERS = 256;
+
+    /**
+     * The largest number of tokens that are searched for with one scan per token instead of
+     * building a matcher.
+     */
+    private static final int SMALL_TOKEN_SET = 4;
+
+    /**
+     * The number of default token matchers that are built once and reused.
+     */
+    private static final int DEFAULT_TOKEN_MATCHERS_CACHED = 16;
+
+    /**
+     * The extra capacity reserved for the replacements when building the result of a replace
+     * operation.
+     */
+    private static final int DEFAULT_CAPACITY_INCREMENT = 16;
+
+    /**
+     * The matchers for the default tokens, indexed by the number of tokens minus one.
+     */
+    private static final MultiStringMatcher[] DEFAULT_TOKEN_MATCHERS =
+        new MultiStringMatcher[DEFAULT_TOKEN_MATCHERS_CACHED];
+
     /**
      * The HTML 'non-breaking-space' entity.
      */
@@ -115,10 +154,15 @@ public final class StringToolkit {
      */
     private static final char HTML_ENTITY_SEMICOLON = ';';
 
+    /**
+     * The first character formatted as a numeric entity for HTML and XML.
+     */
+    private static final int FIRST_EXTENDED_CHARACTER = 127;
+
     /**
      * The character used to sign a surrounder is not used in tokenizing methods.
      */
-    private static final char NO_SURROUNDER = '\u0000';
+    public static final char NO_SURROUNDER = '\u0000';
 
     /**
      * The decimal number zero as a char.
@@ -257,7 +301,9 @@ public final class StringToolkit {
     }
 
     /**
-     * Counts the number of times that the given character appears in the given string.
+     * Counts the number of times that the given character appears in the given string. The
+     * string is scanned with <code>String.indexOf(int, int)</code>, which the JVM replaces with a
+     * vectorized implementation for the running processor, and it is not copied.
      *
      * @param source the source string
      * @param count the character to be counted
@@ -271,12 +317,11 @@ public final class StringToolkit {
         }
 
         int counter = 0;
-        char[] temp = source.toCharArray();
+        int i = source.indexOf(count);
 
-        for (int i = 0, n = temp.length; i < n; i++) {
-            if (temp[i] == count) {
-                counter++;
-            }
+        while (i != -1) {
+            counter++;
+            i = source.indexOf(count, i + 1);
         }
 
         return counter;
@@ -375,45 +420,296 @@ public final class StringToolkit {
      * @param source the source string
      * @param width the paragraph width
      *
-     * @return the source string as a list
+     * @return the source string as a list or <code>null</code> if the source string is
+     *         <code>null</code> or the width is not positive
+     *
+     * @see StringToolkit#paragraph(CharSequence, int, TokenHandler)
      */
     public static List<String> paragraph(String source, int width) {
 
-        List<String> retValue = new ArrayList<String>();
-
         if (source == null || width <= 0) {
             return null;
         }
 
-        if (source.length() == 0 || source.length() <= width) {
-            retValue.add(source);
-            return retValue;
-        }
+        List<String> retValue = new ArrayList<String>();
 
-        String token = source;
+        paragraph(source, width, (line, start, end) -> retValue.add(source.substring(start, end)));
 
-        while (token.length() != 0) {
-            if (token.length() <= width) {
-                retValue.add(token);
-                break;
-            }
-            int befSpacePos = token.lastIndexOf(' ', width);
-            if (befSpacePos == -1) {
-                int aftSpacePos = token.indexOf(' ', width);
-                if (aftSpacePos == -1) {
-                    retValue.add(token);
-                    token = BLANK;
-                } else {
-                    retValue.add(token.substring(0, aftSpacePos));
-                    token = token.substring(aftSpacePos + 1);
+        return retValue;
+    }
+
+    /**
+     * Splits the character sequence <code>source</code> in lines of length less or equal than
+     * <code>width</code> and passes each line to the given handler as a range in the source,
+     * in one single pass and without creating any intermediate string. Lines are broken in the
+     * last space character that fits in the width, and the space is removed. A word longer than
+     * the width is kept in one line, which is broken in the first space character after it. The
+     * lines are the same returned by <code>paragraph(String, int)</code>. Unlike that method,
+     * which returns <code>null</code> for a <code>null</code> source or a width that is not
+     * positive, this method and the other <code>paragraph</code> overloads that take a handler
+     * or a writer fail with an exception.
+     *
+     * @param source the source character sequence
+     * @param width the paragraph width
+     * @param handler the handler that receives the lines
+     *
+     * @return the number of lines
+     *
+     * @throws IllegalArgumentException the width is not positive
+     *
+     * @see StringToolkit#paragraph(String, int)
+     */
+    public static int paragraph(CharSequence source, int width, TokenHandler handler) {
+
+        checkParagraphWidth(width);
+
+        int length = source.length();
+        int lines = 0;
+        int start = 0;
+
+        do {
+            int end = paragraphLineEnd(source, start, length, width, true);
+            handler.token(source, start, end);
+            lines++;
+            start = end + 1;
+        } while (start < length);
+
+        return lines;
+    }
+
+    /**
+     * Splits the contents of the given reader in lines of length less or equal than
+     * <code>width</code>, with the same rules used by
+     * <code>paragraph(CharSequence, int, TokenHandler)</code>, and passes each line to the given
+     * handler. The source is read in blocks into one buffer, which only grows if a single line
+     * does not fit in it, so sources of any size can be wrapped with constant memory. The
+     * character sequence passed to the handler is a view of the buffer and it is only valid
+     * until the handler returns. Unlike <code>paragraph(String, int)</code>, a width that is not
+     * positive fails with an exception instead of returning <code>null</code>.
+     *
+     * @param source the source reader
+     * @param width the paragraph width
+     * @param handler the handler that receives the lines
+     *
+     * @return the number of lines
+     *
+     * @throws IOException an I/O exception reading the source
+     * @throws IllegalArgumentException the width is not positive
+     *
+     * @see StringToolkit#paragraph(CharSequence, int, TokenHandler)
+     */
+    public static int paragraph(Reader source, int width, TokenHandler handler)
+        throws IOException {
+
+        checkParagraphWidth(width);
+
+        char[] buffer = new char[Math.max(CommonsContext.DEFAULT_BUFFER_SIZE, width + 1)];
+        CharBuffer view = CharBuffer.wrap(buffer);
+        int start = 0;
+        int limit = 0;
+        boolean endOfInput = false;
+        int lines = 0;
+
+        while (!endOfInput || start < limit || lines == 0) {
+            int end = paragraphLineEnd(view, start, limit, width, endOfInput);
+
+            if (end != -1) {
+                handler.token(view, start, end);
+                lines++;
+                start = end + 1;
+                if (end == limit) {
+                    break;
                 }
+                continue;
+            }
+
+            // the current line is moved to the beginning of the buffer
+            // and the buffer is grown if the line fills it
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                limit -= start;
+                start = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                view = CharBuffer.wrap(buffer);
+            }
+
+            int charsRead = source.read(buffer, limit, buffer.length - limit);
+            if (charsRead == -1) {
+                endOfInput = true;
             } else {
-                retValue.add(token.substring(0, befSpacePos));
-                token = token.substring(befSpacePos + 1);
+                limit += charsRead;
             }
         }
 
-        return retValue;
+        return lines;
+    }
+
+    /**
+     * Splits the character sequence <code>source</code> in lines of length less or equal than
+     * <code>width</code>, with the same rules used by
+     * <code>paragraph(CharSequence, int, TokenHandler)</code>, and writes them to the given
+     * writer separated by the given EOL char(s). Unlike <code>paragraph(String, int)</code>, a
+     * width that is not positive fails with an exception instead of returning <code>null</code>.
+     *
+     * @param source the source character sequence
+     * @param width the paragraph width
+     * @param target the writer where the lines are written
+     * @param eol the EOL char(s) used to separate the lines
+     *
+     * @return the number of lines
+     *
+     * @throws IOException an I/O exception writing to the target
+     * @throws IllegalArgumentException the width is not positive
+     */
+    public static int paragraph(CharSequence source, int width, Writer target, String eol)
+        throws IOException {
+
+        try {
+            return paragraph(source, width, new LineWriter(target, eol));
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Splits the contents of the given reader in lines of length less or equal than
+     * <code>width</code>, with the same rules used by
+     * <code>paragraph(CharSequence, int, TokenHandler)</code>, and writes them to the given
+     * writer separated by the given EOL char(s), with constant memory. Unlike
+     * <code>paragraph(String, int)</code>, a width that is not positive fails with an exception
+     * instead of returning <code>null</code>.
+     *
+     * @param source the source reader
+     * @param width the paragraph width
+     * @param target the writer where the lines are written
+     * @param eol the EOL char(s) used to separate the lines
+     *
+     * @return the number of lines
+     *
+     * @throws IOException an I/O exception reading the source or writing to the target
+     * @throws IllegalArgumentException the width is not positive
+     *
+     * @see StringToolkit#paragraph(Reader, int, TokenHandler)
+     */
+    public static int paragraph(Reader source, int width, Writer target, String eol)
+        throws IOException {
+
+        try {
+            return paragraph(source, width, new LineWriter(target, eol));
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Checks that the given paragraph width is positive.
+     *
+     * @param width the paragraph width
+     *
+     * @throws IllegalArgumentException the width is not positive
+     */
+    private static void checkParagraphWidth(int width) {
+
+        if (width <= 0) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("STRTK_ERR_INVALID_WIDTH")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Helper method used by the <code>paragraph</code> methods. It returns the end index of the
+     * line starting in the given position, which is the last space character that fits in the
+     * width or, if there is none, the first space character after the width.
+     *
+     * @param source the source character sequence
+     * @param start the line start index
+     * @param limit the number of characters available in the source
+     * @param width the paragraph width
+     * @param endOfInput whether there are no more characters after the limit
+     *
+     * @return the line end index, exclusive, or <code>-1</code> if more characters are needed
+     *         to find it
+     */
+    private static int paragraphLineEnd(CharSequence source, int start, int limit, int width,
+                                        boolean endOfInput) {
+
+        if (limit - start <= width) {
+            return endOfInput ? limit : -1;
+        }
+
+        for (int i = start + width; i >= start; i--) {
+            if (source.charAt(i) == ' ') {
+                return i;
+            }
+        }
+
+        for (int i = start + width + 1; i < limit; i++) {
+            if (source.charAt(i) == ' ') {
+                return i;
+            }
+        }
+
+        return endOfInput ? limit : -1;
+    }
+
+    /**
+     * Token handler used by the <code>paragraph</code> methods to write the lines to a writer.
+     * I/O exceptions are wrapped in unchecked exceptions, as token handlers cannot throw checked
+     * exceptions.
+     */
+    private static final class LineWriter implements TokenHandler {
+
+        /**
+         * The writer where the lines are written.
+         */
+        private final Writer target;
+
+        /**
+         * The EOL char(s) used to separate the lines.
+         */
+        private final String eol;
+
+        /**
+         * Whether the next line is the first one.
+         */
+        private boolean firstLine = true;
+
+        /**
+         * Constructor that sets the writer and the EOL char(s).
+         *
+         * @param target the writer where the lines are written
+         * @param eol the EOL char(s) used to separate the lines
+         */
+        LineWriter(Writer target, String eol) {
+
+            super();
+
+            this.target = target;
+            this.eol = eol;
+        }
+
+        /**
+         * Writes a line, preceded by the EOL char(s) if it is not the first one.
+         *
+         * @param source the character sequence that contains the line
+         * @param start the line start index
+         * @param end the line end index
+         */
+        @Override
+        public void token(CharSequence source, int start, int end) {
+
+            try {
+                if (!firstLine && eol != null) {
+                    target.write(eol);
+                }
+                firstLine = false;
+                appendRun(source, start, end, target);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
     }
 
     /**
@@ -479,14 +775,15 @@ public final class StringToolkit {
             return source;
         }
 
-        int start = source.substring(begin).indexOf(token);
+        int start = source.indexOf(token, begin);
 
         if (start == -1) {
             return source;
         }
 
-        StringBuilder sb = new StringBuilder(source.substring(0, begin + start));
-        sb.append(source.substring(begin + start + token.length()));
+        StringBuilder sb = new StringBuilder(source.length() - token.length());
+        sb.append(source, 0, start);
+        sb.append(source, start + token.length(), source.length());
 
         return sb.toString();
     }
@@ -620,14 +917,15 @@ public final class StringToolkit {
             return source;
         }
 
-        int start = source.substring(0, end).lastIndexOf(token);
+        int start = source.lastIndexOf(token, end - token.length());
 
         if (start == -1) {
             return source;
         }
 
-        StringBuilder sb = new StringBuilder(source.substring(0, start));
-        sb.append(source.substring(start + token.length()));
+        StringBuilder sb = new StringBuilder(source.length() - token.length());
+        sb.append(source, 0, start);
+        sb.append(source, start + token.length(), source.length());
 
         return sb.toString();
     }
@@ -740,15 +1038,16 @@ public final class StringToolkit {
             return source;
         }
 
-        int start = source.substring(begin).indexOf(token);
+        int start = source.indexOf(token, begin);
 
         if (start == -1) {
             return source;
         }
 
-        StringBuilder sb = new StringBuilder(source.substring(0, begin + start));
+        StringBuilder sb = new StringBuilder(source.length() + DEFAULT_CAPACITY_INCREMENT);
+        sb.append(source, 0, start);
         sb.append(replacement);
-        sb.append(source.substring(begin + start + token.length()));
+        sb.append(source, start + token.length(), source.length());
 
         return sb.toString();
     }
@@ -826,12 +1125,13 @@ public final class StringToolkit {
             return source;
         }
 
-        StringBuilder sb = new StringBuilder(source.substring(0, begin));
+        StringBuilder sb = new StringBuilder(source.length() + DEFAULT_CAPACITY_INCREMENT);
+        sb.append(source, 0, begin);
 
         int start = -1;
         int end = begin;
         while ((start = source.indexOf(token, end)) != -1) {
-            sb.append(source.substring(end, start));
+            sb.append(source, end, start);
             if (replacement != null) {
                 sb.append(replacement);
             }
@@ -839,7 +1139,7 @@ public final class StringToolkit {
         }
 
         if (end < source.length()) {
-            sb.append(source.substring(end));
+            sb.append(source, end, source.length());
         }
 
         return sb.toString();
@@ -922,15 +1222,16 @@ public final class StringToolkit {
             return source;
         }
 
-        int start = source.substring(0, end).lastIndexOf(token);
+        int start = source.lastIndexOf(token, end - token.length());
 
         if (start == -1) {
             return source;
         }
 
-        StringBuilder sb = new StringBuilder(source.substring(0, start));
+        StringBuilder sb = new StringBuilder(source.length() + DEFAULT_CAPACITY_INCREMENT);
+        sb.append(source, 0, start);
         sb.append(replacement);
-        sb.append(source.substring(start + token.length()));
+        sb.append(source, start + token.length(), source.length());
 
         return sb.toString();
     }
@@ -946,34 +1247,63 @@ public final class StringToolkit {
      */
     public static String replaceMultiple(String source, String[] replacements) {
 
+        if (source == null || replacements == null || replacements.length == 0) {
+            return null;
+        }
+
+        return defaultTokenMatcher(replacements.length).replace(source, replacements);
+    }
+
+    /**
+     * Returns the matcher for the default tokens <code>{0}</code> to
+     * <code>{<i>count - 1</i>}</code>. The matchers for the most common counts are built once
+     * and reused.
+     *
+     * @param count the number of tokens
+     *
+     * @return the matcher for the default tokens
+     */
+    private static MultiStringMatcher defaultTokenMatcher(int count) {
+
+        if (count <= DEFAULT_TOKEN_MATCHERS.length) {
+            MultiStringMatcher matcher = DEFAULT_TOKEN_MATCHERS[count - 1];
+            if (matcher == null) {
+                // matchers are immutable, so a concurrent duplicate build is harmless
+                matcher = new MultiStringMatcher(defaultTokens(count));
+                DEFAULT_TOKEN_MATCHERS[count - 1] = matcher;
+            }
+            return matcher;
+        }
+
+        return new MultiStringMatcher(defaultTokens(count));
+    }
+
+    /**
+     * Returns the default tokens <code>{0}</code> to <code>{<i>count - 1</i>}</code>.
+     *
+     * @param count the number of tokens
+     *
+     * @return the default tokens
+     */
+    private static String[] defaultTokens(int count) {
+
         final int index0 = 0;
         final int index1 = 1;
         final int index2 = 2;
         final int index3 = 3;
-        final int index4 = 4;
-
-        if (source == null || replacements == null || replacements.length == 0) {
-            return null;
-        }
 
-        String[] tokens = new String[replacements.length];
-
-        if (replacements.length == index1) {
-            tokens[index0] = DEFAULT_TOKEN;
-        } else if (replacements.length == index2) {
-            tokens[index0] = DEFAULT_TOKEN;
-            tokens[index1] = DEFAULT_SECOND_TOKEN;
-        } else if (replacements.length == index3) {
-            tokens[index0] = DEFAULT_TOKEN;
-            tokens[index1] = DEFAULT_SECOND_TOKEN;
-            tokens[index2] = DEFAULT_THIRD_TOKEN;
-        } else if (replacements.length == index4) {
-            tokens[index0] = DEFAULT_TOKEN;
-            tokens[index1] = DEFAULT_SECOND_TOKEN;
-            tokens[index2] = DEFAULT_THIRD_TOKEN;
-            tokens[index3] = DEFAULT_FOURTH_TOKEN;
-        } else {
-            for (int i = 0; i < tokens.length; i++) {
+        String[] tokens = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            if (i == index0) {
+                tokens[i] = DEFAULT_TOKEN;
+            } else if (i == index1) {
+                tokens[i] = DEFAULT_SECOND_TOKEN;
+            } else if (i == index2) {
+                tokens[i] = DEFAULT_THIRD_TOKEN;
+            } else if (i == index3) {
+                tokens[i] = DEFAULT_FOURTH_TOKEN;
+            } else {
                 StringBuilder sb = new StringBuilder();
                 sb.append(TOKEN_START);
                 sb.append(i);
@@ -982,7 +1312,7 @@ public final class StringToolkit {
             }
         }
 
-        return replaceMultiple(source, tokens, replacements, 0);
+        return tokens;
     }
 
     /**
@@ -1007,6 +1337,10 @@ public final class StringToolkit {
      * <code>replacements</code> with the strings to search for and the strings used as
      * replacements.<br>
      *
+     * <p>A few tokens are searched for with one scan each, and more tokens are searched for in
+     * one single pass with a matcher built for the call. To replace many tokens in many strings,
+     * build one <code>MultiStringMatcher</code> and reuse it.
+     *
      * @param source the source string
      * @param tokens array with the strings to be searched for
      * @param replacements array with the replacement strings
@@ -1014,6 +1348,10 @@ public final class StringToolkit {
      *
      * @return the string after the replace operation or <code>null</code> if any of the input
      *         parameters are <code>null</code> or empty or if the two arrays have different lengths
+     *
+     * @throws IllegalArgumentException any token is <code>null</code> or empty
+     *
+     * @see MultiStringMatcher
      */
     public static String replaceMultiple(String source, String[] tokens, String[] replacements,
                                          int begin) {
@@ -1026,22 +1364,7 @@ public final class StringToolkit {
             return source;
         }
 
-        StringBuilder sb = new StringBuilder();
-
-        int firstFoundIndex = -1;
-        int start = -1;
-        int end = begin;
-        while ((firstFoundIndex = firstFoundString(source, tokens, end)) != -1) {
-            start = source.indexOf(tokens[firstFoundIndex], end);
-            sb.append(source.substring(end, start)).append(replacements[firstFoundIndex]);
-            end = start + tokens[firstFoundIndex].length();
-        }
-
-        if (end < source.length()) {
-            sb.append(source.substring(end));
-        }
-
-        return sb.toString();
+        return replaceTokens(source, tokens, replacements, begin);
     }
 
     /**
@@ -1082,22 +1405,78 @@ public final class StringToolkit {
             return source;
         }
 
-        StringBuilder sb = new StringBuilder();
+        String[] tokens = new String[replacementMap.size()];
+        String[] replacements = new String[tokens.length];
+        int i = 0;
+        for (Map.Entry<String, String> entry : replacementMap.entrySet()) {
+            tokens[i] = entry.getKey();
+            replacements[i] = entry.getValue();
+            i++;
+        }
 
-        Set<String> tokens = replacementMap.keySet();
-        String firstFoundString = null;
-        int start = -1;
+        return replaceTokens(source, tokens, replacements, begin);
+    }
+
+    /**
+     * Replaces the tokens in the string <code>source</code> starting in the position
+     * <code>begin</code>. The characters before the starting position are not part of the
+     * result. The leftmost occurrence of any token is replaced first and, if several tokens are
+     * found in the same position, the token with the lowest index.
+     *
+     * @param source the source string
+     * @param tokens array with the strings to be searched for
+     * @param replacements array with the replacement strings, of the same length
+     * @param begin the starting position
+     *
+     * @return the string after the replace operation
+     *
+     * @throws IllegalArgumentException any token is <code>null</code> or empty
+     */
+    private static String replaceTokens(String source, String[] tokens, String[] replacements,
+                                        int begin) {
+
+        if (tokens.length > SMALL_TOKEN_SET) {
+            return new MultiStringMatcher(tokens).replaceFrom(source, replacements, begin);
+        }
+
+        // the next position of each token is kept until it is passed over
+        int[] next = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] == null || tokens[i].isEmpty()) {
+                throw new IllegalArgumentException(
+                    CommonsContext.getMessage("STRTK_ERR_EMPTY_TOKEN")); //$NON-NLS-1$
+            }
+            next[i] = source.indexOf(tokens[i], begin);
+        }
+
+        StringBuilder sb = null;
         int end = begin;
-        while ((firstFoundString = firstFoundString(source, tokens, end)) != null) {
-            start = source.indexOf(firstFoundString, end);
-            sb.append(source.substring(end, start)).append(replacementMap.get(firstFoundString));
-            end = start + firstFoundString.length();
+        while (true) {
+            int found = -1;
+            for (int i = 0; i < tokens.length; i++) {
+                if (next[i] != -1 && next[i] < end) {
+                    next[i] = source.indexOf(tokens[i], end);
+                }
+                if (next[i] != -1 && (found == -1 || next[i] < next[found])) {
+                    found = i;
+                }
+            }
+            if (found == -1) {
+                break;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(source.length() - begin);
+            }
+            sb.append(source, end, next[found]).append(replacements[found]);
+            end = next[found] + tokens[found].length();
         }
 
-        if (end < source.length()) {
-            sb.append(source.substring(end));
+        if (sb == null) {
+            return source.substring(begin);
         }
 
+        sb.append(source, end, source.length());
+
         return sb.toString();
     }
 
@@ -1120,62 +1499,6 @@ public final class StringToolkit {
             && tokens.length == replacements.length;
     }
 
-    /**
-     * Helper method used by the <code>replaceMultiple</code> methods. It returns the index of the
-     * first string found in a given string starting in a given position.
-     *
-     * @param source the source string
-     * @param tokens array with the strings to be searched for
-     * @param begin the starting position
-     *
-     * @return the index of the first string found
-     */
-    private static int firstFoundString(String source, String[] tokens, int begin) {
-
-        int firstFoundIndex = -1;
-        int firstFoundPosition = Integer.MAX_VALUE;
-
-        int j = -1;
-        for (int i = 0; i < tokens.length; i++) {
-            j = source.indexOf(tokens[i], begin);
-            if (j != -1 && j < firstFoundPosition) {
-                firstFoundPosition = j;
-                firstFoundIndex = i;
-            }
-        }
-
-        return firstFoundIndex;
-    }
-
-    /**
-     * Helper method used by the <code>replaceMultiple</code> methods. It returns the index of the
-     * first string found in a given string starting in a given position.
-     *
-     * @param source the source string
-     * @param tokens set with the strings to be searched for
-     * @param begin the starting position
-     *
-     * @return the first string found
-     */
-    private static String firstFoundString(String source, Set<String> tokens, int begin) {
-
-        String firstFoundString = null;
-        int firstFoundPosition = Integer.MAX_VALUE;
-
-        int j = -1;
-        Iterator<String> it = tokens.iterator();
-        while (it.hasNext()) {
-            String token = it.next();
-            j = source.indexOf(token, begin);
-            if (j != -1 && j < firstFoundPosition) {
-                firstFoundPosition = j;
-                firstFoundString = token;
-            }
-        }
-
-        return firstFoundString;
-    }
-
     /**
      * Tokenizes the string <code>source</code> considering two consecutive delimiters as having a
      * blank token between them.
@@ -1209,69 +1532,149 @@ public final class StringToolkit {
 
         List<String> tokens = new ArrayList<String>();
 
-        StringTokenizer st = new StringTokenizer(source, delimiters, true);
-
-        boolean thisIsTheFirstItem = true;
-        boolean lastItemWasADelimiter = false;
-
-        while (st.hasMoreElements()) {
-            String item = (String) st.nextElement();
-
-            if (delimiters.indexOf(item) == -1) {
-                if (surrounder == NO_SURROUNDER) {
-                    tokens.add(item);
-                } else {
-                    if (item.startsWith(String.valueOf(surrounder))) {
-                        if (item.endsWith(String.valueOf(surrounder))) {
-                            tokens.add(item.substring(1, item.length() - 1));
-                        } else {
-                            StringBuilder buffer = new StringBuilder();
-                            buffer.append(item.substring(1));
-                            while (st.hasMoreElements()) {
-                                String childItem = (String) st.nextElement();
-                                if (childItem.endsWith(String.valueOf(surrounder))) {
-                                    buffer.append(childItem.substring(0, childItem.length() - 1));
-                                    tokens.add(buffer.toString());
-                                    break;
-                                }
-                                buffer.append(childItem);
-                            }
-                        }
-                    } else {
-                        tokens.add(item);
-                    }
-                }
-                lastItemWasADelimiter = false;
-            } else {
-                if (lastItemWasADelimiter || thisIsTheFirstItem || !st.hasMoreElements()) {
-                    tokens.add(BLANK);
-                }
-                lastItemWasADelimiter = true;
-            }
-
-            if (thisIsTheFirstItem) {
-                thisIsTheFirstItem = false;
-            }
-        }
+        tokenize(source, delimiters, surrounder, (tokenSource, start, end) ->
+            tokens.add(start == end ? BLANK : source.substring(start, end)));
 
         return tokens;
     }
 
     /**
-     * Removes from the string <code>source</code> the leading and trailing space characters.
+     * Tokenizes the string <code>source</code> like <code>tokenize(String, String, char)</code>,
+     * deduplicating the tokens with the given interner, so repeated values share one single
+     * instance and no string is created for values already cached.
      *
-     * @param source the string where to trim
+     * @param source the string to be tokenized
+     * @param delimiters the delimiters used to separate the tokens
+     * @param surrounder the surrounder character used to include delimiters into a token
+     * @param interner the interner used to deduplicate the tokens
      *
-     * @return the trimmed string
+     * @return a list that contains the tokens
+     *
+     * @see StringToolkit#tokenize(String, String, char)
+     * @see StringToolkit#NO_SURROUNDER
      */
-    public static String trim(String source) {
+    public static List<String> tokenize(String source, String delimiters, char surrounder,
+                                        StringInterner interner) {
 
-        return trim(source, ' ', TRIM_BOTH);
+        List<String> tokens = new ArrayList<String>();
+
+        tokenize(source, delimiters, surrounder, (tokenSource, start, end) ->
+            tokens.add(interner.intern(source, start, end)));
+
+        return tokens;
     }
 
     /**
-     * Removes from the string <code>source</code> the leading and/or trailing <code>trim</code>
-     * characters.
+     * Tokenizes the character sequence <code>source</code> and passes each token to the given
+     * handler as a range in the source, without creating any intermediate string. The tokens
+     * are the same found by <code>tokenize(String, String, char)</code>: two consecutive
+     * delimiters have a blank token between them, and a token starting with the surrounder
+     * character ends with the first item ending with the surrounder, including any delimiters
+     * found before it. A surrounded token not closed is discarded. If <code>surrounder</code>
+     * is <code>'\u0000'</code> the surrounding feature is not used.
+     *
+     * @param source the character sequence to be tokenized
+     * @param delimiters the delimiters used to separate the tokens
+     * @param surrounder the surrounder character used to include delimiters into a token
+     * @param handler the handler that receives the tokens
+     *
+     * @return the number of tokens found
+     *
+     * @see StringToolkit#tokenize(String, String, char)
+     * @see StringToolkit#NO_SURROUNDER
+     */
+    public static int tokenize(CharSequence source, String delimiters, char surrounder,
+                               TokenHandler handler) {
+
+        int length = source.length();
+        int count = 0;
+        boolean firstItem = true;
+        boolean lastItemWasADelimiter = false;
+
+        int i = 0;
+        while (i < length) {
+            if (delimiters.indexOf(source.charAt(i)) != -1) {
+                if (lastItemWasADelimiter || firstItem || i + 1 == length) {
+                    handler.token(source, i, i);
+                    count++;
+                }
+                lastItemWasADelimiter = true;
+                firstItem = false;
+                i++;
+                continue;
+            }
+
+            int itemEnd = nextItemEnd(source, delimiters, i);
+
+            if (surrounder != NO_SURROUNDER && source.charAt(i) == surrounder) {
+                int tokenEnd = itemEnd;
+                // the token continues until an item ending with the surrounder is found
+                while (tokenEnd - i < 2 || source.charAt(tokenEnd - 1) != surrounder) {
+                    if (tokenEnd == length) {
+                        tokenEnd = -1;
+                        break;
+                    }
+                    tokenEnd = nextItemEnd(source, delimiters, tokenEnd);
+                }
+                if (tokenEnd == -1) {
+                    break;
+                }
+                handler.token(source, i + 1, tokenEnd - 1);
+                itemEnd = tokenEnd;
+            } else {
+                handler.token(source, i, itemEnd);
+            }
+            count++;
+
+            lastItemWasADelimiter = false;
+            firstItem = false;
+            i = itemEnd;
+        }
+
+        return count;
+    }
+
+    /**
+     * Helper method used by the <code>tokenize</code> methods. It returns the end index of the
+     * item starting in the given position, which is a single delimiter or a run of characters
+     * that are not delimiters.
+     *
+     * @param source the character sequence being tokenized
+     * @param delimiters the delimiters used to separate the tokens
+     * @param begin the item start index
+     *
+     * @return the item end index, exclusive
+     */
+    private static int nextItemEnd(CharSequence source, String delimiters, int begin) {
+
+        if (delimiters.indexOf(source.charAt(begin)) != -1) {
+            return begin + 1;
+        }
+
+        int length = source.length();
+        int i = begin + 1;
+        while (i < length && delimiters.indexOf(source.charAt(i)) == -1) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Removes from the string <code>source</code> the leading and trailing space characters.
+     *
+     * @param source the string where to trim
+     *
+     * @return the trimmed string
+     */
+    public static String trim(String source) {
+
+        return trim(source, ' ', TRIM_BOTH);
+    }
+
+    /**
+     * Removes from the string <code>source</code> the leading and/or trailing <code>trim</code>
+     * characters.
      *
      * @param source the string where to trim
      * @param trim the character to be trimmed
@@ -1358,57 +1761,444 @@ public final class StringToolkit {
     }
 
     /**
-     * Returns a string with the hexadecimal representation of every byte in the given array.
+     * Searches in the string builder <code>target</code> the first occurrence of the string
+     * <code>token</code> and replaces it with the string <code>replacement</code>, in place.
      *
-     * @param source the source bytes
+     * @param target the string builder where to search and replace
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the token
      *
-     * @return the string with the hexadecimal representation
+     * @return the position where the token was found or <code>-1</code> if it was not found
+     *
+     * @see StringToolkit#replace(String, String, String)
      */
-    public static String asHexadecimalString(byte[] source) {
+    public static int replaceInPlace(StringBuilder target, String token, String replacement) {
 
-        final int bytesPerCharacter = 2;
-        final int zeroLeftMask = 0xff;
-        final int zeroLeftLimit = 0x10;
-        final int hexadecimalBase = 16;
+        return replaceInPlace(target, token, replacement, 0);
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> the first occurrence, starting in the
+     * position <code>begin</code>, of the string <code>token</code> and replaces it with the
+     * string <code>replacement</code>, in place.
+     *
+     * @param target the string builder where to search and replace
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the token
+     * @param begin the starting position
+     *
+     * @return the position where the token was found or <code>-1</code> if it was not found
+     *
+     * @see StringToolkit#replace(String, String, String, int)
+     */
+    public static int replaceInPlace(StringBuilder target, String token, String replacement,
+                                     int begin) {
+
+        int start = target.indexOf(token, begin);
+
+        if (start != -1) {
+            target.replace(start, start + token.length(),
+                replacement == null ? BLANK : replacement);
+        }
+
+        return start;
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> all the occurrences of the string
+     * <code>token</code> and replaces them with the string <code>replacement</code>, in place.
+     *
+     * @param target the string builder where to search and replace
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the tokens
+     *
+     * @return the number of tokens replaced
+     *
+     * @see StringToolkit#replaceAll(String, String, String)
+     */
+    public static int replaceAllInPlace(StringBuilder target, String token, String replacement) {
+
+        return replaceAllInPlace(target, token, replacement, 0);
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> all the occurrences, starting in the
+     * position <code>begin</code>, of the string <code>token</code> and replaces them with the
+     * string <code>replacement</code>, in place. The characters are moved only once, so the
+     * cost does not depend on the number of tokens replaced.
+     *
+     * @param target the string builder where to search and replace
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the tokens
+     * @param begin the starting position
+     *
+     * @return the number of tokens replaced, which is zero if the token is empty
+     *
+     * @see StringToolkit#replaceAll(String, String, String, int)
+     */
+    public static int replaceAllInPlace(StringBuilder target, String token, String replacement,
+                                        int begin) {
+
+        String newText = replacement == null ? BLANK : replacement;
+        int tokenLength = token.length();
+        int newLength = newText.length();
 
-        StringBuilder buffer = new StringBuilder(source.length * bytesPerCharacter);
+        int found = tokenLength == 0 ? -1 : target.indexOf(token, begin);
+        if (found == -1) {
+            return 0;
+        }
 
-        for (int i = 0; i < source.length; i++) {
-            // source[i] is casted implicitly to int
-            if ((source[i] & zeroLeftMask) < zeroLeftLimit) {
-                buffer.append(ZERO);
+        if (newLength <= tokenLength) {
+            // the text only moves to the left, so it is compacted in one pass
+            int count = 0;
+            int read = found;
+            int write = found;
+            while (found != -1) {
+                write = moveChars(target, read, found, write);
+                for (int i = 0; i < newLength; i++) {
+                    target.setCharAt(write++, newText.charAt(i));
+                }
+                read = found + tokenLength;
+                count++;
+                found = target.indexOf(token, read);
             }
+            write = moveChars(target, read, target.length(), write);
+            target.setLength(write);
+            return count;
+        }
 
-            buffer.append(Long.toString(source[i] & zeroLeftMask, hexadecimalBase));
+        int[] positions = new int[1];
+        int count = 0;
+        while (found != -1) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = found;
+            found = target.indexOf(token, found + tokenLength);
+        }
+
+        // the text only moves to the right, so it is expanded from the end
+        int oldLength = target.length();
+        target.setLength(oldLength + count * (newLength - tokenLength));
+        int read = oldLength;
+        int write = target.length();
+        for (int p = count - 1; p >= 0; p--) {
+            int tokenEnd = positions[p] + tokenLength;
+            while (read > tokenEnd) {
+                target.setCharAt(--write, target.charAt(--read));
+            }
+            for (int i = newLength - 1; i >= 0; i--) {
+                target.setCharAt(--write, newText.charAt(i));
+            }
+            read = positions[p];
         }
 
-        return buffer.toString().toUpperCase(Locale.getDefault());
+        return count;
+    }
+
+    /**
+     * Helper method used by <code>replaceAllInPlace</code>. It moves a range of characters to
+     * the left in the string builder.
+     *
+     * @param target the string builder
+     * @param start the range start index
+     * @param end the range end index
+     * @param write the position where the range is moved
+     *
+     * @return the position after the moved range
+     */
+    private static int moveChars(StringBuilder target, int start, int end, int write) {
+
+        int w = write;
+
+        if (w == start) {
+            return end;
+        }
+
+        for (int i = start; i < end; i++) {
+            target.setCharAt(w++, target.charAt(i));
+        }
+
+        return w;
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> the last occurrence of the string
+     * <code>token</code> and replaces it with the string <code>replacement</code>, in place.
+     *
+     * @param target the string builder where to search and replace
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the token
+     *
+     * @return the position where the token was found or <code>-1</code> if it was not found
+     *
+     * @see StringToolkit#replaceLast(String, String, String)
+     */
+    public static int replaceLastInPlace(StringBuilder target, String token, String replacement) {
+
+        return replaceLastInPlace(target, token, replacement, target.length());
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> the last occurrence, ending before the
+     * position <code>end</code>, of the string <code>token</code> and replaces it with the
+     * string <code>replacement</code>, in place.
+     *
+     * @param target the string builder where to search and replace
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the token
+     * @param end the ending position
+     *
+     * @return the position where the token was found or <code>-1</code> if it was not found
+     *
+     * @see StringToolkit#replaceLast(String, String, String, int)
+     */
+    public static int replaceLastInPlace(StringBuilder target, String token, String replacement,
+                                         int end) {
+
+        if (end > target.length()) {
+            return -1;
+        }
+
+        int start = target.lastIndexOf(token, end - token.length());
+
+        if (start != -1) {
+            target.replace(start, start + token.length(),
+                replacement == null ? BLANK : replacement);
+        }
+
+        return start;
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> the first occurrence of the string
+     * <code>token</code> and removes it, in place.
+     *
+     * @param target the string builder where to search
+     * @param token the string to be searched for
+     *
+     * @return the position where the token was found or <code>-1</code> if it was not found
+     *
+     * @see StringToolkit#remove(String, String)
+     */
+    public static int removeInPlace(StringBuilder target, String token) {
+
+        return replaceInPlace(target, token, null, 0);
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> all the occurrences of the string
+     * <code>token</code> and removes them, in place.
+     *
+     * @param target the string builder where to search
+     * @param token the string to be searched for
+     *
+     * @return the number of tokens removed
+     *
+     * @see StringToolkit#removeAll(String, String)
+     */
+    public static int removeAllInPlace(StringBuilder target, String token) {
+
+        return replaceAllInPlace(target, token, null, 0);
+    }
+
+    /**
+     * Searches in the string builder <code>target</code> the last occurrence of the string
+     * <code>token</code> and removes it, in place.
+     *
+     * @param target the string builder where to search
+     * @param token the string to be searched for
+     *
+     * @return the position where the token was found or <code>-1</code> if it was not found
+     *
+     * @see StringToolkit#removeLast(String, String)
+     */
+    public static int removeLastInPlace(StringBuilder target, String token) {
+
+        return replaceLastInPlace(target, token, null, target.length());
+    }
+
+    /**
+     * Searches in the character sequence <code>source</code> all the occurrences of the string
+     * <code>token</code> and appends the sequence to the given target with the tokens replaced
+     * with the string <code>replacement</code>, without creating any intermediate string. The
+     * target may be a string builder reused for a chain of edits, a character buffer or a
+     * writer.
+     *
+     * @param source the source character sequence
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the tokens
+     * @param target the target where the result is appended
+     *
+     * @return the number of tokens replaced, which is zero if the token is empty
+     *
+     * @throws IOException an I/O exception appending to the target
+     *
+     * @see StringToolkit#replaceAll(String, String, String)
+     */
+    public static int replaceAll(CharSequence source, String token, String replacement,
+                                 Appendable target)
+        throws IOException {
+
+        int count = 0;
+        int end = 0;
+        int start = -1;
+
+        while (!token.isEmpty() && (start = indexOf(source, token, end)) != -1) {
+            appendRun(source, end, start, target);
+            if (replacement != null) {
+                target.append(replacement);
+            }
+            end = start + token.length();
+            count++;
+        }
+
+        appendRun(source, end, source.length(), target);
+
+        return count;
+    }
+
+    /**
+     * Helper method used by <code>replaceAll(CharSequence, String, String, Appendable)</code>.
+     * It returns the position of the first occurrence of a non-empty string in a character
+     * sequence, using the native search of strings and string builders when possible.
+     *
+     * @param source the character sequence where to search
+     * @param token the string to be searched for
+     * @param begin the starting position
+     *
+     * @return the position of the token or <code>-1</code> if it was not found
+     */
+    private static int indexOf(CharSequence source, String token, int begin) {
+
+        if (source instanceof String) {
+            return ((String) source).indexOf(token, begin);
+        }
+
+        if (source instanceof StringBuilder) {
+            return ((StringBuilder) source).indexOf(token, begin);
+        }
+
+        char first = token.charAt(0);
+        int tokenLength = token.length();
+
+        for (int i = begin, n = source.length() - tokenLength; i <= n; i++) {
+            if (source.charAt(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < tokenLength && source.charAt(i + j) == token.charAt(j)) {
+                j++;
+            }
+            if (j == tokenLength) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Removes from the string builder <code>target</code> the leading and/or trailing
+     * characters <code>trim</code>, in place.
+     *
+     * @param target the string builder where to trim
+     * @param trim the character to be trimmed
+     * @param mode the trim mode
+     *
+     * @see StringToolkit#trim(String, char, int)
+     */
+    public static void trimInPlace(StringBuilder target, char trim, int mode) {
+
+        trimInPlace(target, new char[] {trim}, mode);
+    }
+
+    /**
+     * Removes from the string builder <code>target</code> the leading and/or trailing
+     * characters in the array <code>trims</code>, in place.
+     *
+     * @param target the string builder where to trim
+     * @param trims the characters to be trimmed
+     * @param mode the trim mode
+     *
+     * @see StringToolkit#trim(String, char[], int)
+     */
+    public static void trimInPlace(StringBuilder target, char[] trims, int mode) {
+
+        int start = 0;
+        int end = target.length();
+
+        if (mode == TRIM_LEFT || mode == TRIM_BOTH) {
+            while (start < end && isTrimmed(target.charAt(start), trims)) {
+                start++;
+            }
+        }
+
+        if (mode == TRIM_RIGHT || mode == TRIM_BOTH) {
+            while (end > start && isTrimmed(target.charAt(end - 1), trims)) {
+                end--;
+            }
+        }
+
+        target.setLength(end);
+        target.delete(0, start);
+    }
+
+    /**
+     * Helper method used by <code>trimInPlace</code>. It checks whether a character is in the
+     * array of characters to be trimmed.
+     *
+     * @param c the character
+     * @param trims the characters to be trimmed
+     *
+     * @return whether the character is trimmed
+     */
+    private static boolean isTrimmed(char c, char[] trims) {
+
+        for (char trim : trims) {
+            if (c == trim) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a string with the hexadecimal representation of every byte in the given array.
+     *
+     * @param source the source bytes
+     *
+     * @return the string with the hexadecimal representation
+     */
+    public static String asHexadecimalString(byte[] source) {
+
+        return HexToolkit.encode(source);
     }
 
     /**
      * Returns a byte array with the contents of an hexadecimal string (2 characters per byte).
+     * A trailing character without its pair is ignored.
      *
      * @param source the source string
      *
      * @return the resulting byte array
+     *
+     * @throws NumberFormatException the string contains a character that is not an hexadecimal
+     *                               digit
+     *
+     * @see HexToolkit#decode(CharSequence, int, int)
      */
     public static byte[] asHexadecimalArray(String source) {
 
-        final int bytesPerCharacter = 2;
-        final int hexadecimalBase = 16;
-
         if (source == null || source.length() == 0) {
             return new byte[] {};
         }
 
-        byte[] hexArray = new byte[source.length() / bytesPerCharacter];
-
-        for (int i = 0, n = 0; i < hexArray.length; i++, n += bytesPerCharacter) {
-            hexArray[i] = (byte) Integer.parseInt(
-                source.substring(n, n + bytesPerCharacter), hexadecimalBase);
-        }
+        final int bytesPerCharacter = 2;
 
-        return hexArray;
+        return HexToolkit.decode(source, 0,
+            source.length() - source.length() % bytesPerCharacter);
     }
 
     /**
@@ -1420,44 +2210,165 @@ public final class StringToolkit {
      * also replaces the characters outside the ASCII 7-bit character set with the corresponding
      * unicode HTML entity.
      *
+     * <p>The source string is scanned first and, if there is nothing to format, it is returned
+     * as is. Otherwise the formatted string is built with the exact size.
+     *
      * @param source the source string
      *
      * @return the string with the HTML formatting applied
+     *
+     * @see StringToolkit#formatForHTMLViewing(CharSequence, Appendable)
      */
     public static String formatForHTMLViewing(String source) {
 
-        final int firstExtendedCharacter = 127;
+        int formattedLength = formattedLengthForHTMLViewing(source);
+        if (formattedLength == -1) {
+            return source;
+        }
 
-        StringBuilder sb = new StringBuilder();
-        char[] c = source.toCharArray();
-
-        for (int i = 0; i < c.length; i++) {
-            if (c[i] == ' ' || c[i] == '\u000B') {
-                sb.append(HTML_SPACE);
-            } else if (c[i] == '\t') {
-                sb.append(HTML_4_SPACES);
-            } else if (c[i] == '>') {
-                sb.append(HTML_GREATER_THAN);
-            } else if (c[i] == '<') {
-                sb.append(HTML_LESSER_THAN);
-            } else if (c[i] == '&') {
-                sb.append(HTML_AMPERSAND);
-            } else if (c[i] == '\r' || c[i] == '\n') {
-                if ((c[i] == '\r' && i > 0 && c[i - 1] != '\n')
-                    || (c[i] == '\n' && i > 0 && c[i - 1] != '\r')) {
-                    sb.append(HTML_LINE_BREAK);
-                }
-            } else if (c[i] >= firstExtendedCharacter) {
-                // c[i] is casted implicitly to int
-                sb.append(HTML_ENTITY_NUMBER);
-                sb.append(Integer.toString(c[i]));
-                sb.append(HTML_ENTITY_SEMICOLON);
+        StringBuilder sb = new StringBuilder(formattedLength);
+
+        try {
+            formatForHTMLViewing(source, sb);
+        } catch (IOException ioe) {
+            // not thrown when appending to a string builder
+            throw new UncheckedIOException(ioe);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Formats the given character sequence for HTML viewing and appends the result to the given
+     * target, in one single pass and without intermediate copies. The formatting rules are the
+     * same as in <code>formatForHTMLViewing(String)</code>.
+     *
+     * @param source the source character sequence
+     * @param target the target where the formatted characters are appended
+     *
+     * @throws IOException an I/O exception appending to the target
+     *
+     * @see StringToolkit#formatForHTMLViewing(String)
+     * @see FormattingWriter
+     */
+    public static void formatForHTMLViewing(CharSequence source, Appendable target)
+        throws IOException {
+
+        formatForHTMLViewing(source, 0, source.length(), -1, target);
+    }
+
+    /**
+     * Formats a range of the given character sequence for HTML viewing and appends the result
+     * to the given target. The character before the range is needed to apply the line break
+     * rules when a text is formatted in several pieces.
+     *
+     * @param source the source character sequence
+     * @param start the range start index
+     * @param end the range end index
+     * @param previous the character before the range or <code>-1</code> if the range is at the
+     *                 beginning of the text
+     * @param target the target where the formatted characters are appended
+     *
+     * @throws IOException an I/O exception appending to the target
+     */
+    static void formatForHTMLViewing(CharSequence source, int start, int end, int previous,
+                                     Appendable target)
+        throws IOException {
+
+        int runStart = start;
+
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            String entity;
+
+            if (c == ' ' || c == '\u000B') {
+                entity = HTML_SPACE;
+            } else if (c == '\t') {
+                entity = HTML_4_SPACES;
+            } else if (c == '>') {
+                entity = HTML_GREATER_THAN;
+            } else if (c == '<') {
+                entity = HTML_LESSER_THAN;
+            } else if (c == '&') {
+                entity = HTML_AMPERSAND;
+            } else if (c == '\r' || c == '\n') {
+                entity = isLineBreak(c, i > start ? source.charAt(i - 1) : previous)
+                    ? HTML_LINE_BREAK : null;
+            } else if (c >= FIRST_EXTENDED_CHARACTER) {
+                appendRun(source, runStart, i, target);
+                appendNumericEntity(c, target);
+                runStart = i + 1;
+                continue;
             } else {
-                sb.append(c[i]);
+                continue;
             }
+
+            appendRun(source, runStart, i, target);
+            if (entity != null) {
+                target.append(entity);
+            }
+            runStart = i + 1;
         }
 
-        return sb.toString();
+        appendRun(source, runStart, end, target);
+    }
+
+    /**
+     * Checks whether the given line terminator is formatted as a line break. A pair of
+     * different line terminators is a single line break and a line terminator at the beginning
+     * is removed.
+     *
+     * @param c the line terminator
+     * @param previous the previous character or <code>-1</code> if the line terminator is at the
+     *                 beginning of the text
+     *
+     * @return whether the line terminator is formatted as a line break
+     */
+    private static boolean isLineBreak(char c, int previous) {
+
+        char pair = c == '\r' ? '\n' : '\r';
+        return previous != -1 && previous != pair;
+    }
+
+    /**
+     * Returns the length of the given string once formatted for HTML viewing.
+     *
+     * @param source the source string
+     *
+     * @return the formatted length or <code>-1</code> if there is nothing to format
+     */
+    private static int formattedLengthForHTMLViewing(String source) {
+
+        int length = source.length();
+        int formattedLength = length;
+        boolean formatted = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+
+            if (c == ' ' || c == '\u000B') {
+                formattedLength += HTML_SPACE.length() - 1;
+            } else if (c == '\t') {
+                formattedLength += HTML_4_SPACES.length() - 1;
+            } else if (c == '>') {
+                formattedLength += HTML_GREATER_THAN.length() - 1;
+            } else if (c == '<') {
+                formattedLength += HTML_LESSER_THAN.length() - 1;
+            } else if (c == '&') {
+                formattedLength += HTML_AMPERSAND.length() - 1;
+            } else if (c == '\r' || c == '\n') {
+                formattedLength += isLineBreak(c, i > 0 ? source.charAt(i - 1) : -1)
+                    ? HTML_LINE_BREAK.length() - 1 : -1;
+            } else if (c >= FIRST_EXTENDED_CHARACTER) {
+                formattedLength += numericEntityLength(c) - 1;
+            } else {
+                continue;
+            }
+
+            formatted = true;
+        }
+
+        return formatted ? formattedLength : -1;
     }
 
     /**
@@ -1467,35 +2378,205 @@ public final class StringToolkit {
      * also replaces the characters outside the ASCII 7-bit character set with the corresponding
      * unicode XML entity.
      *
+     * <p>The source string is scanned first and, if there is nothing to format, it is returned
+     * as is. Otherwise the formatted string is built with the exact size.
+     *
      * @param source the source string
      *
      * @return the string with the XML formatting applied
+     *
+     * @see StringToolkit#formatForXML(CharSequence, Appendable)
      */
     public static String formatForXML(String source) {
 
-        final int firstExtendedCharacter = 127;
+        int formattedLength = formattedLengthForXML(source);
+        if (formattedLength == -1) {
+            return source;
+        }
+
+        StringBuilder sb = new StringBuilder(formattedLength);
 
-        StringBuilder sb = new StringBuilder();
-        char[] c = source.toCharArray();
-
-        for (int i = 0; i < c.length; i++) {
-            if (c[i] == '>') {
-                sb.append(HTML_GREATER_THAN);
-            } else if (c[i] == '<') {
-                sb.append(HTML_LESSER_THAN);
-            } else if (c[i] == '&') {
-                sb.append(HTML_AMPERSAND);
-            } else if (c[i] >= firstExtendedCharacter) {
-                // c[i] is casted implicitly to int
-                sb.append(HTML_ENTITY_NUMBER);
-                sb.append(Integer.toString(c[i]));
-                sb.append(HTML_ENTITY_SEMICOLON);
+        try {
+            formatForXML(source, sb);
+        } catch (IOException ioe) {
+            // not thrown when appending to a string builder
+            throw new UncheckedIOException(ioe);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Formats the given character sequence for use in XML documents and appends the result to
+     * the given target, in one single pass and without intermediate copies. The formatting rules
+     * are the same as in <code>formatForXML(String)</code>.
+     *
+     * @param source the source character sequence
+     * @param target the target where the formatted characters are appended
+     *
+     * @throws IOException an I/O exception appending to the target
+     *
+     * @see StringToolkit#formatForXML(String)
+     * @see FormattingWriter
+     */
+    public static void formatForXML(CharSequence source, Appendable target) throws IOException {
+
+        formatForXML(source, 0, source.length(), target);
+    }
+
+    /**
+     * Formats a range of the given character sequence for use in XML documents and appends the
+     * result to the given target.
+     *
+     * @param source the source character sequence
+     * @param start the range start index
+     * @param end the range end index
+     * @param target the target where the formatted characters are appended
+     *
+     * @throws IOException an I/O exception appending to the target
+     */
+    static void formatForXML(CharSequence source, int start, int end, Appendable target)
+        throws IOException {
+
+        int runStart = start;
+
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            String entity;
+
+            if (c == '>') {
+                entity = HTML_GREATER_THAN;
+            } else if (c == '<') {
+                entity = HTML_LESSER_THAN;
+            } else if (c == '&') {
+                entity = HTML_AMPERSAND;
+            } else if (c >= FIRST_EXTENDED_CHARACTER) {
+                appendRun(source, runStart, i, target);
+                appendNumericEntity(c, target);
+                runStart = i + 1;
+                continue;
             } else {
-                sb.append(c[i]);
+                continue;
             }
+
+            appendRun(source, runStart, i, target);
+            target.append(entity);
+            runStart = i + 1;
         }
 
-        return sb.toString();
+        appendRun(source, runStart, end, target);
+    }
+
+    /**
+     * Returns the length of the given string once formatted for use in XML documents.
+     *
+     * @param source the source string
+     *
+     * @return the formatted length or <code>-1</code> if there is nothing to format
+     */
+    private static int formattedLengthForXML(String source) {
+
+        int length = source.length();
+        int formattedLength = length;
+
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+
+            if (c == '>') {
+                formattedLength += HTML_GREATER_THAN.length() - 1;
+            } else if (c == '<') {
+                formattedLength += HTML_LESSER_THAN.length() - 1;
+            } else if (c == '&') {
+                formattedLength += HTML_AMPERSAND.length() - 1;
+            } else if (c >= FIRST_EXTENDED_CHARACTER) {
+                formattedLength += numericEntityLength(c) - 1;
+            }
+        }
+
+        // every replacement makes the string longer
+        return formattedLength == length ? -1 : formattedLength;
+    }
+
+    /**
+     * Appends a run of characters that need no formatting. Strings and character buffers backed
+     * by an array are written directly to writers, avoiding the intermediate string that
+     * <code>Writer.append(CharSequence, int, int)</code> creates.
+     *
+     * @param source the source character sequence
+     * @param start the run start index
+     * @param end the run end index
+     * @param target the target where the characters are appended
+     *
+     * @throws IOException an I/O exception appending to the target
+     */
+    private static void appendRun(CharSequence source, int start, int end, Appendable target)
+        throws IOException {
+
+        if (start == end) {
+            return;
+        }
+
+        if (target instanceof Writer && source instanceof String) {
+            ((Writer) target).write((String) source, start, end - start);
+        } else if (target instanceof Writer && source instanceof CharBuffer
+            && ((CharBuffer) source).hasArray()) {
+            CharBuffer buffer = (CharBuffer) source;
+            ((Writer) target).write(buffer.array(),
+                buffer.arrayOffset() + buffer.position() + start, end - start);
+        } else {
+            target.append(source, start, end);
+        }
+    }
+
+    /**
+     * Returns the length of the numeric entity for the given character.
+     *
+     * @param c the character
+     *
+     * @return the numeric entity length
+     */
+    private static int numericEntityLength(char c) {
+
+        final int decimalBase = 10;
+
+        int length = HTML_ENTITY_NUMBER.length() + 2;
+        for (int value = c / decimalBase; value > 0; value /= decimalBase) {
+            length++;
+        }
+
+        return length;
+    }
+
+    /**
+     * Appends the numeric entity for the given character, writing the decimal digits directly
+     * to the target.
+     *
+     * @param c the character
+     * @param target the target where the entity is appended
+     *
+     * @throws IOException an I/O exception appending to the target
+     */
+    private static void appendNumericEntity(char c, Appendable target) throws IOException {
+
+        final int decimalBase = 10;
+        final int maxDigits = 5;
+
+        target.append(HTML_ENTITY_NUMBER);
+
+        // a char value has at most five decimal digits
+        char[] digits = new char[maxDigits];
+        int pos = maxDigits;
+        int value = c;
+        do {
+            digits[--pos] = (char) (ZERO + value % decimalBase);
+            value /= decimalBase;
+        } while (value > 0);
+
+        for (int i = pos; i < maxDigits; i++) {
+            target.append(digits[i]);
+        }
+
+        target.append(HTML_ENTITY_SEMICOLON);
     }
 
     /**
@@ -1560,6 +2641,8 @@ public final class StringToolkit {
      * @param invalidCharacters the invalid characters string
      *
      * @return whether any of the invalid characters is found in the source string
+     *
+     * @see StringToolkit#indexOfAny(String, String)
      */
     public static boolean hasInvalidCharacters(String source, String invalidCharacters) {
 
@@ -1571,14 +2654,76 @@ public final class StringToolkit {
             return false;
         }
 
-        char[] invalids = invalidCharacters.toCharArray();
-        for (char c : invalids) {
-            if (source.indexOf(c) != -1) {
-                return true;
+        if (invalidCharacters.length() <= MAX_INDEX_OF_SEARCHES) {
+            for (int i = 0, n = invalidCharacters.length(); i < n; i++) {
+                if (source.indexOf(invalidCharacters.charAt(i)) != -1) {
+                    return true;
+                }
             }
+            return false;
         }
 
-        return false;
+        return indexOfAny(source, invalidCharacters) != -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence in the given source string of any of the
+     * characters in the given string.
+     *
+     * <p>For a few characters, each one is searched for with <code>String.indexOf(int,
+     * int)</code>, which the JVM replaces with a vectorized implementation for the running
+     * processor, and each search ends before the first occurrence already found. For more
+     * characters, the source string is scanned once, checking the Latin-1 characters with a
+     * lookup table.
+     *
+     * @param source the source string
+     * @param characters the characters to be searched for
+     *
+     * @return the index of the first occurrence of any of the characters or <code>-1</code> if
+     *         none is found or any of the strings is <code>null</code> or empty
+     */
+    public static int indexOfAny(String source, String characters) {
+
+        if (source == null
+            || source.length() == 0
+            || characters == null
+            || characters.length() == 0) {
+
+            return -1;
+        }
+
+        int length = source.length();
+
+        if (characters.length() <= MAX_INDEX_OF_SEARCHES) {
+            int first = -1;
+            for (int i = 0, n = characters.length(); i < n; i++) {
+                int found = source.indexOf(characters.charAt(i), 0, first == -1 ? length : first);
+                if (found != -1) {
+                    first = found;
+                }
+            }
+            return first;
+        }
+
+        boolean[] latin1 = new boolean[LATIN1_CHARACTERS];
+        boolean hasOthers = false;
+        for (int i = 0, n = characters.length(); i < n; i++) {
+            char c = characters.charAt(i);
+            if (c < LATIN1_CHARACTERS) {
+                latin1[c] = true;
+            } else {
+                hasOthers = true;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (c < LATIN1_CHARACTERS ? latin1[c] : hasOthers && characters.indexOf(c) != -1) {
+                return i;
+            }
+        }
+
+        return -1;
     }
 
     /**
@@ -0,0 +1,25 @@
+package deors.core.commons;
+
+/**
+ * Generic interface for processes that receive the tokens found while tokenizing a character
+ * sequence.
+ *
+ * <p>Tokens are passed as a range in the source character sequence, so no string is created
+ * for each token. Handlers that need to keep a token can copy it using
+ * <code>source.subSequence(start, end)</code>.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface TokenHandler {
+
+    /**
+     * Callback invoked each time a token is found.
+     *
+     * @param source the character sequence being tokenized
+     * @param start the token start index, inclusive
+     * @param end the token end index, exclusive
+     */
+    void token(CharSequence source, int start, int end);
+}
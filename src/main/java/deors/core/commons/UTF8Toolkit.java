@@ -0,0 +1,472 @@
+package deors.core.commons;
+
+import static deors.core.commons.StringToolkit.NO_SURROUNDER;
+import static deors.core.commons.StringToolkit.TRIM_BOTH;
+import static deors.core.commons.StringToolkit.TRIM_LEFT;
+import static deors.core.commons.StringToolkit.TRIM_RIGHT;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Toolkit methods for working with UTF-8 encoded text directly, without decoding it into
+ * strings.
+ *
+ * <p>The methods rely on two properties of UTF-8: the encoding of a character never appears
+ * inside the encoding of another character, so searching for the encoded bytes of a string
+ * only finds whole characters, and the bytes of ASCII characters never appear inside the
+ * encoding of non-ASCII characters, so ASCII delimiters and trim characters can be matched
+ * byte by byte. For that reason the delimiters, surrounders and trim characters must be ASCII
+ * characters, while the tokens searched for and their replacements may contain any character.
+ *
+ * <p>Buffers are read between their position and limit, and the indexes used by these methods
+ * are absolute buffer indexes, like in <code>ByteBuffer.get(int)</code>. The position of the
+ * source buffers is not modified unless stated otherwise.
+ *
+ * @see StringToolkit
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class UTF8Toolkit {
+
+    /**
+     * The first non-ASCII character.
+     */
+    private static final int FIRST_NON_ASCII_CHARACTER = 128;
+
+    /**
+     * Default constructor. This class is a toolkit and therefore it cannot be instantiated.
+     */
+    private UTF8Toolkit() {
+        super();
+    }
+
+    /**
+     * Decodes a range of UTF-8 encoded data.
+     *
+     * @param source the buffer with the encoded data
+     * @param start the range start index, inclusive
+     * @param end the range end index, exclusive
+     *
+     * @return the decoded string
+     */
+    public static String decode(ByteBuffer source, int start, int end) {
+
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + start, end - start,
+                StandardCharsets.UTF_8);
+        }
+
+        ByteBuffer range = source.duplicate();
+        range.limit(end).position(start);
+
+        return StandardCharsets.UTF_8.decode(range).toString();
+    }
+
+    /**
+     * Counts the number of times that the given string appears in the given UTF-8 encoded
+     * data. The occurrences are counted from left to right and do not overlap.
+     *
+     * @param source the UTF-8 encoded data
+     * @param token the string to be counted
+     *
+     * @return the number of times that the string appears, which is zero if it is empty
+     *
+     * @see StringToolkit#count(String, char)
+     */
+    public static int count(byte[] source, String token) {
+
+        return count(ByteBuffer.wrap(source), token);
+    }
+
+    /**
+     * Counts the number of times that the given string appears in the given UTF-8 encoded
+     * data. The occurrences are counted from left to right and do not overlap.
+     *
+     * @param source the buffer with the UTF-8 encoded data
+     * @param token the string to be counted
+     *
+     * @return the number of times that the string appears, which is zero if it is empty
+     *
+     * @see StringToolkit#count(String, char)
+     */
+    public static int count(ByteBuffer source, String token) {
+
+        byte[] encodedToken = token.getBytes(StandardCharsets.UTF_8);
+
+        if (encodedToken.length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        int i = indexOf(source, encodedToken, source.position());
+        while (i != -1) {
+            count++;
+            i = indexOf(source, encodedToken, i + encodedToken.length);
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the index of the first occurrence, starting in the given index, of the given
+     * string in the given UTF-8 encoded data.
+     *
+     * @param source the UTF-8 encoded data
+     * @param token the string to be searched for
+     * @param begin the starting index
+     *
+     * @return the byte index of the first occurrence or <code>-1</code> if it was not found
+     */
+    public static int indexOf(byte[] source, String token, int begin) {
+
+        return indexOf(ByteBuffer.wrap(source), token, begin);
+    }
+
+    /**
+     * Returns the index of the first occurrence, starting in the given index, of the given
+     * string in the given UTF-8 encoded data.
+     *
+     * @param source the buffer with the UTF-8 encoded data
+     * @param token the string to be searched for
+     * @param begin the starting index
+     *
+     * @return the byte index of the first occurrence or <code>-1</code> if it was not found
+     */
+    public static int indexOf(ByteBuffer source, String token, int begin) {
+
+        return indexOf(source, token.getBytes(StandardCharsets.UTF_8), begin);
+    }
+
+    /**
+     * Searches in the UTF-8 encoded data all the occurrences of the string <code>token</code>
+     * and replaces them with the string <code>replacement</code>.
+     *
+     * @param source the UTF-8 encoded data
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the tokens
+     *
+     * @return the UTF-8 encoded data after the replace operation, which is the source array
+     *         itself if the token is empty or it is not found
+     *
+     * @see StringToolkit#replaceAll(String, String, String)
+     */
+    public static byte[] replaceAll(byte[] source, String token, String replacement) {
+
+        byte[] encodedToken = token.getBytes(StandardCharsets.UTF_8);
+        byte[] encodedReplacement = encode(replacement);
+        ByteBuffer buffer = ByteBuffer.wrap(source);
+
+        int count = encodedToken.length == 0 ? 0 : count(buffer, token);
+        if (count == 0) {
+            return source;
+        }
+
+        byte[] target = new byte[source.length
+            + count * (encodedReplacement.length - encodedToken.length)];
+        replaceAll(buffer, encodedToken, encodedReplacement, ByteBuffer.wrap(target));
+
+        return target;
+    }
+
+    /**
+     * Searches in the UTF-8 encoded data all the occurrences of the string <code>token</code>
+     * and writes the data to the target buffer with the tokens replaced with the string
+     * <code>replacement</code>. The position of the source buffer is moved to its limit and the
+     * position of the target buffer is advanced.
+     *
+     * @param source the buffer with the UTF-8 encoded data
+     * @param token the string to be searched for
+     * @param replacement the replacement string, or <code>null</code> to remove the tokens
+     * @param target the buffer where the data is written
+     *
+     * @return the number of tokens replaced, which is zero if the token is empty
+     *
+     * @throws java.nio.BufferOverflowException the target buffer has not enough space remaining
+     *
+     * @see StringToolkit#replaceAll(String, String, String)
+     */
+    public static int replaceAll(ByteBuffer source, String token, String replacement,
+                                 ByteBuffer target) {
+
+        return replaceAll(source, token.getBytes(StandardCharsets.UTF_8), encode(replacement),
+            target);
+    }
+
+    /**
+     * Tokenizes the UTF-8 encoded data with the same rules used by
+     * <code>StringToolkit.tokenize(CharSequence, String, char, TokenHandler)</code>, and passes
+     * each token to the given handler as a range in the source.
+     *
+     * @param source the UTF-8 encoded data
+     * @param delimiters the ASCII delimiters used to separate the tokens
+     * @param surrounder the ASCII surrounder character used to include delimiters into a token
+     * @param handler the handler that receives the tokens
+     *
+     * @return the number of tokens found
+     *
+     * @throws IllegalArgumentException a delimiter or the surrounder is not an ASCII character
+     *
+     * @see StringToolkit#NO_SURROUNDER
+     */
+    public static int tokenize(byte[] source, String delimiters, char surrounder,
+                               ByteTokenHandler handler) {
+
+        return tokenize(ByteBuffer.wrap(source), delimiters, surrounder, handler);
+    }
+
+    /**
+     * Tokenizes the UTF-8 encoded data with the same rules used by
+     * <code>StringToolkit.tokenize(CharSequence, String, char, TokenHandler)</code>, and passes
+     * each token to the given handler as a range in the source, without decoding the data or
+     * creating any intermediate array.
+     *
+     * @param source the buffer with the UTF-8 encoded data
+     * @param delimiters the ASCII delimiters used to separate the tokens
+     * @param surrounder the ASCII surrounder character used to include delimiters into a token
+     * @param handler the handler that receives the tokens
+     *
+     * @return the number of tokens found
+     *
+     * @throws IllegalArgumentException a delimiter or the surrounder is not an ASCII character
+     *
+     * @see StringToolkit#tokenize(CharSequence, String, char, TokenHandler)
+     * @see StringToolkit#NO_SURROUNDER
+     */
+    public static int tokenize(ByteBuffer source, String delimiters, char surrounder,
+                               ByteTokenHandler handler) {
+
+        for (int i = 0; i < delimiters.length(); i++) {
+            checkASCII(delimiters.charAt(i));
+        }
+        checkASCII(surrounder);
+
+        int limit = source.limit();
+        int count = 0;
+        boolean firstItem = true;
+        boolean lastItemWasADelimiter = false;
+
+        int i = source.position();
+        while (i < limit) {
+            if (isDelimiter(source.get(i), delimiters)) {
+                if (lastItemWasADelimiter || firstItem || i + 1 == limit) {
+                    handler.token(source, i, i);
+                    count++;
+                }
+                lastItemWasADelimiter = true;
+                firstItem = false;
+                i++;
+                continue;
+            }
+
+            int itemEnd = nextItemEnd(source, delimiters, i);
+
+            if (surrounder != NO_SURROUNDER && source.get(i) == surrounder) {
+                int tokenEnd = itemEnd;
+                // the token continues until an item ending with the surrounder is found
+                while (tokenEnd - i < 2 || source.get(tokenEnd - 1) != surrounder) {
+                    if (tokenEnd == limit) {
+                        tokenEnd = -1;
+                        break;
+                    }
+                    tokenEnd = nextItemEnd(source, delimiters, tokenEnd);
+                }
+                if (tokenEnd == -1) {
+                    break;
+                }
+                handler.token(source, i + 1, tokenEnd - 1);
+                itemEnd = tokenEnd;
+            } else {
+                handler.token(source, i, itemEnd);
+            }
+            count++;
+
+            lastItemWasADelimiter = false;
+            firstItem = false;
+            i = itemEnd;
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes from the UTF-8 encoded data the leading and/or trailing characters
+     * <code>trim</code>. The data is not copied.
+     *
+     * @param source the buffer with the UTF-8 encoded data
+     * @param trim the ASCII character to be trimmed
+     * @param mode the trim mode
+     *
+     * @return a buffer that shares the source data, with the position and limit set to the
+     *         trimmed range
+     *
+     * @throws IllegalArgumentException the trim character is not an ASCII character
+     *
+     * @see StringToolkit#trim(String, char, int)
+     * @see StringToolkit#TRIM_LEFT
+     * @see StringToolkit#TRIM_RIGHT
+     * @see StringToolkit#TRIM_BOTH
+     */
+    public static ByteBuffer trim(ByteBuffer source, char trim, int mode) {
+
+        checkASCII(trim);
+
+        int start = source.position();
+        int end = source.limit();
+
+        if (mode == TRIM_LEFT || mode == TRIM_BOTH) {
+            while (start < end && source.get(start) == trim) {
+                start++;
+            }
+        }
+
+        if (mode == TRIM_RIGHT || mode == TRIM_BOTH) {
+            while (end > start && source.get(end - 1) == trim) {
+                end--;
+            }
+        }
+
+        ByteBuffer trimmed = source.duplicate();
+        trimmed.limit(end).position(start);
+
+        return trimmed;
+    }
+
+    /**
+     * Returns the index of the first occurrence, starting in the given index, of an encoded
+     * string in the given buffer.
+     *
+     * @param source the buffer where to search
+     * @param token the encoded string to be searched for
+     * @param begin the starting index
+     *
+     * @return the index of the first occurrence or <code>-1</code> if it was not found
+     */
+    private static int indexOf(ByteBuffer source, byte[] token, int begin) {
+
+        if (token.length == 0) {
+            return -1;
+        }
+
+        byte first = token[0];
+
+        for (int i = Math.max(begin, source.position()), n = source.limit() - token.length;
+             i <= n; i++) {
+            if (source.get(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < token.length && source.get(i + j) == token[j]) {
+                j++;
+            }
+            if (j == token.length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes the source buffer to the target buffer with all the occurrences of an encoded
+     * string replaced with another encoded string.
+     *
+     * @param source the buffer where to search
+     * @param token the encoded string to be searched for
+     * @param replacement the encoded replacement
+     * @param target the buffer where the data is written
+     *
+     * @return the number of tokens replaced
+     */
+    private static int replaceAll(ByteBuffer source, byte[] token, byte[] replacement,
+                                  ByteBuffer target) {
+
+        int count = 0;
+        int end = source.position();
+        int start = -1;
+
+        ByteBuffer run = source.duplicate();
+        while ((start = indexOf(source, token, end)) != -1) {
+            run.limit(start).position(end);
+            target.put(run);
+            target.put(replacement);
+            end = start + token.length;
+            count++;
+        }
+
+        run.limit(source.limit()).position(end);
+        target.put(run);
+        source.position(source.limit());
+
+        return count;
+    }
+
+    /**
+     * Helper method used by <code>tokenize</code>. It returns the end index of the item starting
+     * in the given position, which is a single delimiter or a run of bytes that are not
+     * delimiters.
+     *
+     * @param source the buffer being tokenized
+     * @param delimiters the delimiters used to separate the tokens
+     * @param begin the item start index
+     *
+     * @return the item end index, exclusive
+     */
+    private static int nextItemEnd(ByteBuffer source, String delimiters, int begin) {
+
+        if (isDelimiter(source.get(begin), delimiters)) {
+            return begin + 1;
+        }
+
+        int limit = source.limit();
+        int i = begin + 1;
+        while (i < limit && !isDelimiter(source.get(i), delimiters)) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Checks whether a byte is one of the ASCII delimiters. Bytes of non-ASCII characters are
+     * negative and never match.
+     *
+     * @param b the byte
+     * @param delimiters the delimiters
+     *
+     * @return whether the byte is a delimiter
+     */
+    private static boolean isDelimiter(byte b, String delimiters) {
+
+        return b >= 0 && delimiters.indexOf(b) != -1;
+    }
+
+    /**
+     * Encodes a string in UTF-8, considering <code>null</code> as an empty string.
+     *
+     * @param text the string
+     *
+     * @return the encoded string
+     */
+    private static byte[] encode(String text) {
+
+        return text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks that the given character is an ASCII character.
+     *
+     * @param c the character
+     *
+     * @throws IllegalArgumentException the character is not an ASCII character
+     */
+    private static void checkASCII(char c) {
+
+        if (c >= FIRST_NON_ASCII_CHARACTER) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("STRTK_ERR_NON_ASCII_CHARACTER", //$NON-NLS-1$
+                    Character.toString(c)));
+        }
+    }
+}
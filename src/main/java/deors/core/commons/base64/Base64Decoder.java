@@ -0,0 +1,338 @@
+package deors.core.commons.base64;
+
+import static deors.core.commons.CommonsContext.getMessage;
+
+import java.io.IOException;
+
+/**
+ * Block-based Base 64 decoder used by the Base 64 toolkit.
+ *
+ * <p>The encoded data is decoded from byte arrays into byte arrays, in blocks of any size. Runs
+ * of four Base 64 characters are decoded in one iteration with a lookup table, and the decoder
+ * only falls back to handle one character at a time for whitespace, padding and packets split
+ * between blocks. The partial packet and the padding found are kept between blocks, so the
+ * result does not depend on how the data is split.
+ *
+ * <p>The standard alphabet is used unless the decoder is created for the URL-safe mode, in
+ * which case the URL and filename safe alphabet is used instead. The validation rules are those
+ * of the Base 64 toolkit: whitespace and padding characters are ignored, a Base 64 character
+ * after a padding character or any other character is an error, and an incomplete packet at
+ * the end of the data is decoded into the bytes that it completes.
+ *
+ * <p>Decoder objects keep the state of one decoding process and are not thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class Base64Decoder {
+
+    /**
+     * Representation of an invalid Base 64 character.
+     */
+    static final byte BASE_64_INVALID = -1;
+
+    /**
+     * Representation of a Base 64 whitespace character.
+     */
+    static final byte BASE_64_WHITESPACE = -2;
+
+    /**
+     * Representation of a Base 64 padding character.
+     */
+    static final byte BASE_64_PADDING = -3;
+
+    /**
+     * The encoded packet size.
+     */
+    private static final int ENCODED_PACKET_SIZE = 4;
+
+    /**
+     * The number of bits in a byte.
+     */
+    private static final int BYTE_BITS = 8;
+
+    /**
+     * The number of bits in a Base 64 digit.
+     */
+    private static final int DIGIT_BITS = 6;
+
+    /**
+     * The number of bits left over when two Base 64 digits are decoded into one byte.
+     */
+    private static final int TWO_DIGITS_EXTRA_BITS = 4;
+
+    /**
+     * The number of bits left over when three Base 64 digits are decoded into two bytes.
+     */
+    private static final int THREE_DIGITS_EXTRA_BITS = 2;
+
+    /**
+     * The Base 64 characters, in the order of their values.
+     */
+    private static final String BASE_64_CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"; //$NON-NLS-1$
+
+    /**
+     * The URL and filename safe Base 64 characters, in the order of their values.
+     */
+    private static final String URL_SAFE_CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"; //$NON-NLS-1$
+
+    /**
+     * The reverse Base 64 character matrix length.
+     */
+    private static final int REVERSE_BASE_64_CHARS_LENGTH = 256;
+
+    /**
+     * The reverse Base 64 character matrix, indexed by the unsigned byte value.
+     */
+    private static final byte[] REVERSE_BASE_64_CHARS = reverse(BASE_64_CHARS);
+
+    /**
+     * The reverse URL and filename safe Base 64 character matrix, indexed by the unsigned byte
+     * value.
+     */
+    private static final byte[] REVERSE_URL_SAFE_CHARS = reverse(URL_SAFE_CHARS);
+
+    /**
+     * The reverse character matrix used by this decoder.
+     */
+    private final byte[] values;
+
+    /**
+     * The bits of the Base 64 characters of the current packet.
+     */
+    private int bits;
+
+    /**
+     * The number of Base 64 characters in the current packet.
+     */
+    private int count;
+
+    /**
+     * Whether a padding character was found.
+     */
+    private boolean padded;
+
+    /**
+     * Default constructor. The decoder uses the standard alphabet.
+     */
+    Base64Decoder() {
+
+        this(Base64Toolkit.MODE_MIME);
+    }
+
+    /**
+     * Constructor that sets the encoding mode, which selects the alphabet used.
+     *
+     * @param mode the encoding mode
+     */
+    Base64Decoder(int mode) {
+
+        super();
+
+        this.values = mode == Base64Toolkit.MODE_URL_SAFE
+            ? REVERSE_URL_SAFE_CHARS : REVERSE_BASE_64_CHARS;
+    }
+
+    /**
+     * Creates a reverse character matrix for the given alphabet.
+     *
+     * @param alphabet the Base 64 characters, in the order of their values
+     *
+     * @return the reverse character matrix
+     */
+    private static byte[] reverse(String alphabet) {
+
+        byte[] reverse = new byte[REVERSE_BASE_64_CHARS_LENGTH];
+
+        for (int i = 0; i < reverse.length; i++) {
+            reverse[i] = BASE_64_INVALID;
+        }
+
+        for (byte i = 0; i < alphabet.length(); i++) {
+            reverse[alphabet.charAt(i)] = i;
+        }
+
+        reverse[' '] = BASE_64_WHITESPACE;
+        reverse['\n'] = BASE_64_WHITESPACE;
+        reverse['\r'] = BASE_64_WHITESPACE;
+        reverse['\t'] = BASE_64_WHITESPACE;
+        reverse['\f'] = BASE_64_WHITESPACE;
+        reverse['='] = BASE_64_PADDING;
+
+        return reverse;
+    }
+
+    /**
+     * Returns the maximum number of bytes written when decoding the given number of characters
+     * and ending the decoding process.
+     *
+     * @param length the number of characters
+     *
+     * @return the maximum number of decoded bytes
+     */
+    static int maxDecodedLength(int length) {
+
+        // the characters pending from a previous block may complete one more packet
+        // and ending the process may complete up to two more bytes
+        return length / ENCODED_PACKET_SIZE * 3 + 3 + 2;
+    }
+
+    /**
+     * Returns the value of a character of the standard alphabet, or the representation of
+     * whitespace, padding or invalid characters.
+     *
+     * @param b the character
+     *
+     * @return the character value, <code>BASE_64_WHITESPACE</code>,
+     *         <code>BASE_64_PADDING</code> or <code>BASE_64_INVALID</code>
+     */
+    static int valueOf(byte b) {
+
+        return REVERSE_BASE_64_CHARS[b & 0xFF];
+    }
+
+    /**
+     * Decodes a range of a byte array with encoded data. The characters of an incomplete packet
+     * at the end of the range are kept for the next range.
+     *
+     * @param src the encoded data
+     * @param sp the range start index
+     * @param sl the range end index
+     * @param dst the array where the decoded data is written, which must have space for at
+     *            least <code>maxDecodedLength(sl - sp)</code> bytes
+     * @param dp the index where the decoded data is written
+     *
+     * @return the index after the decoded data
+     *
+     * @throws IOException the data contains an invalid Base 64 character or a Base 64
+     *                     character after a padding character
+     */
+    int decode(byte[] src, int sp, int sl, byte[] dst, int dp) throws IOException {
+
+        final int shift3 = 3 * DIGIT_BITS;
+        final int shift2 = 2 * DIGIT_BITS;
+
+        int s = sp;
+        int d = dp;
+
+        while (s < sl) {
+            // fast path for whole packets without whitespace or padding
+            if (count == 0 && !padded) {
+                while (s + ENCODED_PACKET_SIZE <= sl) {
+                    int c1 = values[src[s] & 0xFF];
+                    int c2 = values[src[s + 1] & 0xFF];
+                    int c3 = values[src[s + 2] & 0xFF];
+                    int c4 = values[src[s + 3] & 0xFF];
+                    if ((c1 | c2 | c3 | c4) < 0) {
+                        break;
+                    }
+                    int packet = c1 << shift3 | c2 << shift2 | c3 << DIGIT_BITS | c4;
+                    dst[d++] = (byte) (packet >> (2 * BYTE_BITS));
+                    dst[d++] = (byte) (packet >> BYTE_BITS);
+                    dst[d++] = (byte) packet;
+                    s += ENCODED_PACKET_SIZE;
+                }
+                if (s == sl) {
+                    break;
+                }
+            }
+
+            d = decode(values[src[s++] & 0xFF], dst, d);
+        }
+
+        return d;
+    }
+
+    /**
+     * Decodes a range of a character sequence with encoded data. The characters of an
+     * incomplete packet at the end of the range are kept for the next range.
+     *
+     * @param src the encoded data
+     * @param sp the range start index
+     * @param sl the range end index
+     * @param dst the array where the decoded data is written, which must have space for at
+     *            least <code>maxDecodedLength(sl - sp)</code> bytes
+     * @param dp the index where the decoded data is written
+     *
+     * @return the index after the decoded data
+     *
+     * @throws IOException the data contains an invalid Base 64 character or a Base 64
+     *                     character after a padding character
+     */
+    int decode(CharSequence src, int sp, int sl, byte[] dst, int dp) throws IOException {
+
+        int d = dp;
+
+        for (int s = sp; s < sl; s++) {
+            char c = src.charAt(s);
+            d = decode(c < REVERSE_BASE_64_CHARS_LENGTH ? values[c] : BASE_64_INVALID, dst, d);
+        }
+
+        return d;
+    }
+
+    /**
+     * Decodes one character.
+     *
+     * @param value the character value or representation
+     * @param dst the array where the decoded data is written
+     * @param dp the index where the decoded data is written
+     *
+     * @return the index after the decoded data
+     *
+     * @throws IOException the character is not valid
+     */
+    private int decode(int value, byte[] dst, int dp) throws IOException {
+
+        int d = dp;
+
+        if (value >= 0) {
+            if (padded) {
+                throw new IOException(getMessage("B64TK_ERR_READING_DATA")); //$NON-NLS-1$
+            }
+            bits = bits << DIGIT_BITS | value;
+            if (++count == ENCODED_PACKET_SIZE) {
+                dst[d++] = (byte) (bits >> (2 * BYTE_BITS));
+                dst[d++] = (byte) (bits >> BYTE_BITS);
+                dst[d++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        } else if (value == BASE_64_PADDING) {
+            padded = true;
+        } else if (value != BASE_64_WHITESPACE) {
+            throw new IOException(getMessage("B64TK_ERR_READING_DATA")); //$NON-NLS-1$
+        }
+
+        return d;
+    }
+
+    /**
+     * Ends the decoding process, decoding the incomplete packet at the end of the data, if any,
+     * into the bytes that it completes.
+     *
+     * @param dst the array where the decoded data is written, which must have space for at
+     *            least two bytes
+     * @param dp the index where the decoded data is written
+     *
+     * @return the index after the decoded data
+     */
+    int finish(byte[] dst, int dp) {
+
+        int d = dp;
+
+        if (count == 2) {
+            dst[d++] = (byte) (bits >> TWO_DIGITS_EXTRA_BITS);
+        } else if (count == 3) {
+            dst[d++] = (byte) (bits >> (BYTE_BITS + THREE_DIGITS_EXTRA_BITS));
+            dst[d++] = (byte) (bits >> THREE_DIGITS_EXTRA_BITS);
+        }
+
+        bits = 0;
+        count = 0;
+
+        return d;
+    }
+}
@@ -0,0 +1,235 @@
+package deors.core.commons.base64;
+
+import deors.core.commons.CommonsContext;
+
+/**
+ * Block-based Base 64 encoder used by the Base 64 toolkit.
+ *
+ * <p>The data is encoded one line at a time from byte arrays into byte arrays, three bytes into
+ * four characters per iteration, with the characters taken from a lookup table. In MIME mode,
+ * each line has the encoding of <code>LINE_BYTES</code> bytes, <code>LINE_LENGTH</code>
+ * characters, and ends with a new line character, including the last line if it is not empty.
+ * As lines always begin at multiples of <code>LINE_BYTES</code>, the data can be encoded in
+ * blocks of any number of whole lines and the results concatenated. In unwrapped mode the data
+ * is encoded as one single line without new line characters, and in URL-safe mode the URL and
+ * filename safe alphabet is used and the last packet is not padded either.
+ *
+ * <p>The encoder is stateless and can be shared by any number of threads.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class Base64Encoder {
+
+    /**
+     * The number of encoded characters per line.
+     */
+    static final int LINE_LENGTH = 76;
+
+    /**
+     * The number of bytes encoded per line.
+     */
+    static final int LINE_BYTES = LINE_LENGTH / 4 * 3;
+
+    /**
+     * The number of bytes encoded per block, a whole number of lines of about the default
+     * buffer size, so every block except the last one ends at a line boundary.
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    static final int BLOCK_SIZE =
+        LINE_BYTES * Math.max(1, CommonsContext.DEFAULT_BUFFER_SIZE / LINE_BYTES);
+
+    /**
+     * The decoded packet size.
+     */
+    private static final int DECODED_PACKET_SIZE = 3;
+
+    /**
+     * The encoded packet size.
+     */
+    private static final int ENCODED_PACKET_SIZE = 4;
+
+    /**
+     * The padding character.
+     */
+    private static final byte PADDING_CHARACTER = '=';
+
+    /**
+     * The new line character.
+     */
+    private static final byte NEW_LINE_CHARACTER = '\n';
+
+    /**
+     * Mask used to extract a byte.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Mask used to extract a Base 64 digit.
+     */
+    private static final int DIGIT_MASK = 0x3F;
+
+    /**
+     * The number of bits in a byte.
+     */
+    private static final int BYTE_BITS = 8;
+
+    /**
+     * The number of bits in a Base 64 digit.
+     */
+    private static final int DIGIT_BITS = 6;
+
+    /**
+     * The Base 64 character matrix.
+     */
+    private static final byte[] BASE_64_CHARS = {
+        'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H',
+        'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
+        'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X',
+        'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f',
+        'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n',
+        'o', 'p', 'q', 'r', 's', 't', 'u', 'v',
+        'w', 'x', 'y', 'z', '0', '1', '2', '3',
+        '4', '5', '6', '7', '8', '9', '+', '/'};
+
+    /**
+     * The URL and filename safe Base 64 character matrix.
+     */
+    private static final byte[] URL_SAFE_CHARS = {
+        'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H',
+        'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
+        'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X',
+        'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f',
+        'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n',
+        'o', 'p', 'q', 'r', 's', 't', 'u', 'v',
+        'w', 'x', 'y', 'z', '0', '1', '2', '3',
+        '4', '5', '6', '7', '8', '9', '-', '_'};
+
+    /**
+     * Default constructor. This class only has static methods and therefore it cannot be
+     * instantiated.
+     */
+    private Base64Encoder() {
+        super();
+    }
+
+    /**
+     * Returns the length of the encoding of the given number of bytes in MIME mode.
+     *
+     * @param length the number of bytes
+     *
+     * @return the number of encoded characters, including the new line characters
+     */
+    static long encodedLength(long length) {
+
+        return encodedLength(length, Base64Toolkit.MODE_MIME);
+    }
+
+    /**
+     * Returns the length of the encoding of the given number of bytes in the given mode.
+     *
+     * @param length the number of bytes
+     * @param mode the encoding mode
+     *
+     * @return the number of encoded characters, including the new line characters
+     */
+    static long encodedLength(long length, int mode) {
+
+        long packets = length / DECODED_PACKET_SIZE;
+        int remainder = (int) (length % DECODED_PACKET_SIZE);
+
+        if (mode == Base64Toolkit.MODE_URL_SAFE) {
+            // the last packet is not padded
+            return packets * ENCODED_PACKET_SIZE + (remainder == 0 ? 0 : remainder + 1);
+        }
+
+        long encoded = (packets + (remainder == 0 ? 0 : 1)) * ENCODED_PACKET_SIZE;
+
+        if (mode == Base64Toolkit.MODE_MIME) {
+            encoded += (length + LINE_BYTES - 1) / LINE_BYTES;
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Encodes a range of a byte array in MIME mode. The range is encoded as if it started at
+     * the beginning of a line, and the last packet is padded if it is not complete.
+     *
+     * @param src the data to be encoded
+     * @param sp the range start index
+     * @param sl the range end index
+     * @param dst the array where the encoded data is written
+     * @param dp the index where the encoded data is written
+     *
+     * @return the index after the encoded data
+     */
+    static int encode(byte[] src, int sp, int sl, byte[] dst, int dp) {
+
+        return encode(src, sp, sl, dst, dp, Base64Toolkit.MODE_MIME);
+    }
+
+    /**
+     * Encodes a range of a byte array in the given mode. In MIME mode the range is encoded as
+     * if it started at the beginning of a line.
+     *
+     * @param src the data to be encoded
+     * @param sp the range start index
+     * @param sl the range end index
+     * @param dst the array where the encoded data is written
+     * @param dp the index where the encoded data is written
+     * @param mode the encoding mode
+     *
+     * @return the index after the encoded data
+     */
+    static int encode(byte[] src, int sp, int sl, byte[] dst, int dp, int mode) {
+
+        final byte[] chars = mode == Base64Toolkit.MODE_URL_SAFE ? URL_SAFE_CHARS : BASE_64_CHARS;
+        final boolean wrap = mode == Base64Toolkit.MODE_MIME;
+        final boolean pad = mode != Base64Toolkit.MODE_URL_SAFE;
+
+        int s = sp;
+        int d = dp;
+
+        while (s < sl) {
+            int lineEnd = wrap ? Math.min(s + LINE_BYTES, sl) : sl;
+            int packetsEnd = s + (lineEnd - s) / DECODED_PACKET_SIZE * DECODED_PACKET_SIZE;
+
+            while (s < packetsEnd) {
+                int bits = (src[s++] & BYTE_MASK) << (2 * BYTE_BITS)
+                    | (src[s++] & BYTE_MASK) << BYTE_BITS
+                    | (src[s++] & BYTE_MASK);
+                dst[d++] = chars[(bits >>> (3 * DIGIT_BITS)) & DIGIT_MASK];
+                dst[d++] = chars[(bits >>> (2 * DIGIT_BITS)) & DIGIT_MASK];
+                dst[d++] = chars[(bits >>> DIGIT_BITS) & DIGIT_MASK];
+                dst[d++] = chars[bits & DIGIT_MASK];
+            }
+
+            // an incomplete packet can only be found at the end of the data
+            if (s < lineEnd) {
+                int bits = (src[s++] & BYTE_MASK) << (2 * BYTE_BITS);
+                boolean twoBytes = s < lineEnd;
+                if (twoBytes) {
+                    bits |= (src[s++] & BYTE_MASK) << BYTE_BITS;
+                }
+                dst[d++] = chars[(bits >>> (3 * DIGIT_BITS)) & DIGIT_MASK];
+                dst[d++] = chars[(bits >>> (2 * DIGIT_BITS)) & DIGIT_MASK];
+                if (twoBytes) {
+                    dst[d++] = chars[(bits >>> DIGIT_BITS) & DIGIT_MASK];
+                } else if (pad) {
+                    dst[d++] = PADDING_CHARACTER;
+                }
+                if (pad) {
+                    dst[d++] = PADDING_CHARACTER;
+                }
+            }
+
+            if (wrap) {
+                dst[d++] = NEW_LINE_CHARACTER;
+            }
+        }
+
+        return d;
+    }
+}
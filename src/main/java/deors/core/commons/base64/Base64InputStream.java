@@ -0,0 +1,213 @@
+package deors.core.commons.base64;
+
+import static deors.core.commons.CommonsContext.getMessage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import deors.core.commons.CommonsContext;
+
+/**
+ * Input stream filter that decodes the Base 64 data read from another input stream.
+ *
+ * <p>The encoded data is read and decoded in blocks of the default buffer size, so data of any
+ * size can be decoded with constant memory. The validation rules are those of
+ * <code>Base64Toolkit.decode(InputStream, OutputStream)</code>, and invalid data is reported
+ * with an <code>IOException</code> when the block containing it is read.
+ *
+ * <p>Stream objects are not thread-safe.
+ *
+ * @see Base64Toolkit#decode(InputStream, java.io.OutputStream)
+ * @see CommonsContext#DEFAULT_BUFFER_SIZE
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class Base64InputStream extends FilterInputStream {
+
+    /**
+     * The decoder.
+     */
+    private final Base64Decoder decoder = new Base64Decoder();
+
+    /**
+     * The buffer with the encoded data read.
+     */
+    private final byte[] buffer = new byte[CommonsContext.DEFAULT_BUFFER_SIZE];
+
+    /**
+     * The buffer with the decoded data.
+     */
+    private final byte[] decoded = new byte[Base64Decoder.maxDecodedLength(buffer.length)];
+
+    /**
+     * The position of the next byte to return in the decoded data buffer.
+     */
+    private int position;
+
+    /**
+     * The number of valid bytes in the decoded data buffer.
+     */
+    private int limit;
+
+    /**
+     * Whether the end of the input stream was reached.
+     */
+    private boolean endOfInput;
+
+    /**
+     * Constructor that sets the input stream where the encoded data is read.
+     *
+     * @param in the encoded data input stream
+     */
+    public Base64InputStream(InputStream in) {
+
+        super(in);
+    }
+
+    /**
+     * Reads one byte.
+     *
+     * @return the byte or <code>-1</code> if the end of the data was reached
+     *
+     * @throws IOException an I/O exception, or the data contains an invalid Base 64 character
+     */
+    @Override
+    public int read() throws IOException {
+
+        if (!fill()) {
+            return -1;
+        }
+
+        return decoded[position++] & 0xFF;
+    }
+
+    /**
+     * Reads bytes into a range of a byte array.
+     *
+     * @param b the byte array
+     * @param off the range start index
+     * @param len the range length
+     *
+     * @return the number of bytes read or <code>-1</code> if the end of the data was reached
+     *
+     * @throws IOException an I/O exception, or the data contains an invalid Base 64 character
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        Objects.checkFromIndexSize(off, len, b.length);
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        int n = Math.min(len, limit - position);
+        System.arraycopy(decoded, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    /**
+     * Skips decoded bytes.
+     *
+     * @param n the number of bytes to skip
+     *
+     * @return the number of bytes skipped
+     *
+     * @throws IOException an I/O exception, or the data contains an invalid Base 64 character
+     */
+    @Override
+    public long skip(long n) throws IOException {
+
+        long skipped = 0;
+
+        while (skipped < n && fill()) {
+            int step = (int) Math.min(n - skipped, limit - position);
+            position += step;
+            skipped += step;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * Returns the number of decoded bytes that can be read without reading the input stream.
+     *
+     * @return the number of decoded bytes available
+     */
+    @Override
+    public int available() {
+
+        return limit - position;
+    }
+
+    /**
+     * Returns whether mark and reset are supported, which they are not.
+     *
+     * @return <code>false</code>
+     */
+    @Override
+    public boolean markSupported() {
+
+        return false;
+    }
+
+    /**
+     * Does nothing, as mark and reset are not supported.
+     *
+     * @param readlimit the read limit, ignored
+     */
+    @Override
+    public void mark(int readlimit) {
+
+        // mark is not supported
+    }
+
+    /**
+     * Always fails, as mark and reset are not supported.
+     *
+     * @throws IOException mark and reset are not supported
+     */
+    @Override
+    public void reset() throws IOException {
+
+        throw new IOException(getMessage("B64TK_ERR_MARK_NOT_SUPPORTED")); //$NON-NLS-1$
+    }
+
+    /**
+     * Reads and decodes encoded data until there is decoded data available or the end of the
+     * input stream is reached.
+     *
+     * @return whether there is decoded data available
+     *
+     * @throws IOException an I/O exception, or the data contains an invalid Base 64 character
+     */
+    private boolean fill() throws IOException {
+
+        while (position == limit) {
+            if (endOfInput) {
+                return false;
+            }
+
+            position = 0;
+
+            int bytesRead = in.read(buffer);
+            if (bytesRead == -1) {
+                endOfInput = true;
+                limit = decoder.finish(decoded, 0);
+            } else {
+                limit = decoder.decode(buffer, 0, bytesRead, decoded, 0);
+            }
+        }
+
+        return true;
+    }
+}
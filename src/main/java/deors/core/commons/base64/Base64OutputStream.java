@@ -0,0 +1,167 @@
+package deors.core.commons.base64;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Output stream filter that encodes in Base 64 the data written to it.
+ *
+ * <p>The data is encoded in blocks of about the default buffer size, so data of any size can be
+ * encoded with constant memory. The encoded data has the same format as the data encoded by
+ * <code>Base64Toolkit.encode(InputStream, OutputStream)</code>: lines of 76 characters ending
+ * with a new line character. The last line, which may be shorter, is written when the stream is
+ * closed, and flushing the stream only writes the whole lines encoded so far.
+ *
+ * <p>Stream objects are not thread-safe.
+ *
+ * @see Base64Toolkit#encode(java.io.InputStream, OutputStream)
+ * @see deors.core.commons.CommonsContext#DEFAULT_BUFFER_SIZE
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class Base64OutputStream extends FilterOutputStream {
+
+    /**
+     * The buffer with the data pending to be encoded.
+     */
+    private final byte[] buffer = new byte[Base64Encoder.BLOCK_SIZE];
+
+    /**
+     * The buffer with the encoded data.
+     */
+    private final byte[] encoded = new byte[(int) Base64Encoder.encodedLength(buffer.length)];
+
+    /**
+     * The number of bytes pending to be encoded.
+     */
+    private int count;
+
+    /**
+     * Whether the stream is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor that sets the output stream where the encoded data is written.
+     *
+     * @param out the encoded data output stream
+     */
+    public Base64OutputStream(OutputStream out) {
+
+        super(out);
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param b the byte
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    @Override
+    public void write(int b) throws IOException {
+
+        buffer[count++] = (byte) b;
+
+        if (count == buffer.length) {
+            encodeBuffer(count);
+        }
+    }
+
+    /**
+     * Writes a range of a byte array. Whole blocks are encoded directly from the array.
+     *
+     * @param b the byte array
+     * @param off the range start index
+     * @param len the range length
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        Objects.checkFromIndexSize(off, len, b.length);
+
+        int s = off;
+        int sl = off + len;
+
+        while (s < sl) {
+            if (count == 0 && sl - s >= buffer.length) {
+                int end = Base64Encoder.encode(b, s, s + buffer.length, encoded, 0);
+                out.write(encoded, 0, end);
+                s += buffer.length;
+            } else {
+                int n = Math.min(sl - s, buffer.length - count);
+                System.arraycopy(b, s, buffer, count, n);
+                count += n;
+                s += n;
+                if (count == buffer.length) {
+                    encodeBuffer(count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the whole lines encoded so far and flushes the output stream. The bytes of an
+     * incomplete line are kept until the line is completed or the stream is closed.
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    @Override
+    public void flush() throws IOException {
+
+        int lines = count / Base64Encoder.LINE_BYTES * Base64Encoder.LINE_BYTES;
+
+        if (lines > 0) {
+            encodeBuffer(lines);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Writes the data pending to be encoded, including the last line, and closes the output
+     * stream.
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            if (count > 0) {
+                encodeBuffer(count);
+            }
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Encodes and writes the given number of bytes from the beginning of the buffer, and moves
+     * the remaining bytes to the beginning of the buffer.
+     *
+     * @param length the number of bytes to encode
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    private void encodeBuffer(int length) throws IOException {
+
+        int end = Base64Encoder.encode(buffer, 0, length, encoded, 0);
+        out.write(encoded, 0, end);
+
+        System.arraycopy(buffer, length, buffer, 0, count - length);
+        count -= length;
+    }
+}
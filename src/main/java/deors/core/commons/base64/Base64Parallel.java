@@ -0,0 +1,339 @@
+package deors.core.commons.base64;
+
+import static deors.core.commons.CommonsContext.getMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel Base 64 encoding and decoding of large buffers, used by the Base 64 toolkit.
+ *
+ * <p>The data is split into chunks that are encoded or decoded by the fork/join common pool,
+ * each one directly into its place in the presized target buffer. For encoding, the chunks are
+ * a whole number of lines, so the place of each chunk in the target is known beforehand. For
+ * decoding, the number of Base 64 characters in each chunk is counted first, also in parallel,
+ * as whitespace may be found anywhere, and the chunks are then moved to start at a packet
+ * boundary. The result is the same as the result of the serial methods.
+ *
+ * <p>Heap buffers are processed in their backing arrays, and other buffers, like memory-mapped
+ * files, are copied in blocks of about the default buffer size through temporary arrays.
+ *
+ * @see deors.core.commons.CommonsContext#DEFAULT_BUFFER_SIZE
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class Base64Parallel {
+
+    /**
+     * The minimum chunk size, below which the data is not split.
+     */
+    static final int MIN_CHUNK_SIZE = 64 * Base64Encoder.BLOCK_SIZE;
+
+    /**
+     * The number of chunks per thread in the pool, so threads finishing early can take more
+     * chunks.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * The encoded packet size.
+     */
+    private static final int ENCODED_PACKET_SIZE = 4;
+
+    /**
+     * The decoded packet size.
+     */
+    private static final int DECODED_PACKET_SIZE = 3;
+
+    /**
+     * Default constructor. This class only has static methods and therefore it cannot be
+     * instantiated.
+     */
+    private Base64Parallel() {
+        super();
+    }
+
+    /**
+     * Encodes the remaining data in the source buffer into the target buffer. The position of
+     * both buffers is advanced.
+     *
+     * @param source the data to be encoded
+     * @param target the buffer where the encoded data is written, which must have space for
+     *               the encoded data
+     */
+    static void encode(ByteBuffer source, ByteBuffer target) {
+
+        int sp = source.position();
+        int length = source.remaining();
+        int dp = target.position();
+
+        int chunks = chunkCount(length);
+        int lines = (length + Base64Encoder.LINE_BYTES - 1) / Base64Encoder.LINE_BYTES;
+        int chunkSize = (lines + chunks - 1) / chunks * Base64Encoder.LINE_BYTES;
+
+        IntStream.range(0, chunks).parallel().forEach(i -> {
+            int start = (int) Math.min((long) i * chunkSize, length);
+            int end = Math.min(start + chunkSize, length);
+            encodeRange(source, sp + start, sp + end,
+                target, dp + (int) Base64Encoder.encodedLength(start));
+        });
+
+        source.position(source.limit());
+        target.position(dp + (int) Base64Encoder.encodedLength(length));
+    }
+
+    /**
+     * Decodes the remaining encoded data in the source buffer into the target buffer, or into a
+     * new heap buffer of the exact decoded length if there is no target buffer. The position of
+     * both buffers is advanced.
+     *
+     * @param source the encoded data
+     * @param target the buffer where the decoded data is written or <code>null</code>
+     *
+     * @return the buffer with the decoded data
+     *
+     * @throws IOException the data contains an invalid Base 64 character or a Base 64 character
+     *                     after a padding character
+     * @throws BufferOverflowException the target buffer has not enough space remaining, in
+     *                                 which case no data is decoded
+     */
+    static ByteBuffer decode(ByteBuffer source, ByteBuffer target) throws IOException {
+
+        int sp = source.position();
+        int sl = source.limit();
+        int length = sl - sp;
+
+        int chunks = chunkCount(length);
+        int chunkSize = (length + chunks - 1) / chunks;
+
+        int[] starts = new int[chunks + 1];
+        for (int i = 0; i < chunks; i++) {
+            starts[i] = sp + (int) Math.min((long) i * chunkSize, length);
+        }
+        starts[chunks] = sl;
+
+        // count the Base 64 characters and find the padding of each chunk
+        int[] digits = new int[chunks];
+        boolean[] padded = new boolean[chunks];
+        try {
+            IntStream.range(0, chunks).parallel().forEach(i -> {
+                try {
+                    scanRange(source, starts[i], starts[i + 1], digits, padded, i);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+
+        // move the chunk starts forward to the next packet boundary
+        int[] digitsBefore = new int[chunks + 1];
+        int total = 0;
+        boolean paddingFound = false;
+        for (int i = 0; i < chunks; i++) {
+            if (paddingFound && digits[i] > 0) {
+                throw new IOException(getMessage("B64TK_ERR_READING_DATA")); //$NON-NLS-1$
+            }
+            paddingFound |= padded[i];
+
+            if (i > 0) {
+                int start = starts[i];
+                int d = total;
+                while (d % ENCODED_PACKET_SIZE != 0 && start < sl) {
+                    if (Base64Decoder.valueOf(source.get(start++)) >= 0) {
+                        d++;
+                    }
+                }
+                if (start < starts[i - 1]) {
+                    start = starts[i - 1];
+                    d = digitsBefore[i - 1];
+                }
+                starts[i] = start;
+                digitsBefore[i] = d;
+            }
+
+            total += digits[i];
+        }
+
+        int decodedLength = total / ENCODED_PACKET_SIZE * DECODED_PACKET_SIZE
+            + Math.max(0, total % ENCODED_PACKET_SIZE - 1);
+
+        ByteBuffer decoded = target == null ? ByteBuffer.allocate(decodedLength) : target;
+        if (decoded.remaining() < decodedLength) {
+            throw new BufferOverflowException();
+        }
+        int dp = decoded.position();
+
+        try {
+            IntStream.range(0, chunks).parallel().forEach(i -> {
+                try {
+                    decodeRange(source, starts[i], starts[i + 1], decoded,
+                        dp + digitsBefore[i] / ENCODED_PACKET_SIZE * DECODED_PACKET_SIZE,
+                        starts[i + 1] == sl);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+
+        source.position(sl);
+        decoded.position(dp + decodedLength);
+
+        return decoded;
+    }
+
+    /**
+     * Returns the number of chunks in which data of the given length is split.
+     *
+     * @param length the data length
+     *
+     * @return the number of chunks
+     */
+    private static int chunkCount(int length) {
+
+        int maxChunks = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+
+        return Math.max(1, Math.min(length / MIN_CHUNK_SIZE, maxChunks));
+    }
+
+    /**
+     * Encodes a range of the source buffer into the target buffer starting at the given index,
+     * without changing the position of the buffers.
+     *
+     * @param source the data to be encoded
+     * @param start the range start index
+     * @param end the range end index
+     * @param target the buffer where the encoded data is written
+     * @param index the index where the encoded data is written
+     */
+    private static void encodeRange(ByteBuffer source, int start, int end,
+                                    ByteBuffer target, int index) {
+
+        if (source.hasArray() && target.hasArray()) {
+            Base64Encoder.encode(source.array(), source.arrayOffset() + start,
+                source.arrayOffset() + end, target.array(), target.arrayOffset() + index);
+            return;
+        }
+
+        byte[] buffer = new byte[Math.min(end - start, Base64Encoder.BLOCK_SIZE)];
+        byte[] encoded = new byte[(int) Base64Encoder.encodedLength(buffer.length)];
+
+        int d = index;
+        for (int s = start; s < end; s += buffer.length) {
+            int n = Math.min(buffer.length, end - s);
+            source.get(s, buffer, 0, n);
+            int e = Base64Encoder.encode(buffer, 0, n, encoded, 0);
+            target.put(d, encoded, 0, e);
+            d += e;
+        }
+    }
+
+    /**
+     * Counts the Base 64 characters in a range of the source buffer and checks whether the
+     * range has padding characters.
+     *
+     * @param source the encoded data
+     * @param start the range start index
+     * @param end the range end index
+     * @param digits the array where the number of Base 64 characters is stored
+     * @param padded the array where whether there are padding characters is stored
+     * @param chunk the index of the range in the arrays
+     *
+     * @throws IOException the range contains an invalid Base 64 character or a Base 64
+     *                     character after a padding character
+     */
+    private static void scanRange(ByteBuffer source, int start, int end,
+                                  int[] digits, boolean[] padded, int chunk)
+        throws IOException {
+
+        boolean heap = source.hasArray();
+        byte[] buffer = heap
+            ? source.array() : new byte[Math.min(end - start, Base64Encoder.BLOCK_SIZE)];
+        int blockSize = heap ? end - start : buffer.length;
+
+        int count = 0;
+        boolean padding = false;
+
+        for (int s = start; s < end; s += blockSize) {
+            int n = Math.min(blockSize, end - s);
+            int from;
+            if (heap) {
+                from = source.arrayOffset() + s;
+            } else {
+                source.get(s, buffer, 0, n);
+                from = 0;
+            }
+
+            for (int i = from, to = from + n; i < to; i++) {
+                int value = Base64Decoder.valueOf(buffer[i]);
+                if (value >= 0) {
+                    if (padding) {
+                        throw new IOException(getMessage("B64TK_ERR_READING_DATA")); //$NON-NLS-1$
+                    }
+                    count++;
+                } else if (value == Base64Decoder.BASE_64_PADDING) {
+                    padding = true;
+                } else if (value != Base64Decoder.BASE_64_WHITESPACE) {
+                    throw new IOException(getMessage("B64TK_ERR_READING_DATA")); //$NON-NLS-1$
+                }
+            }
+        }
+
+        digits[chunk] = count;
+        padded[chunk] = padding;
+    }
+
+    /**
+     * Decodes a range of the source buffer into the target buffer starting at the given index,
+     * without changing the position of the buffers. The range must start at a packet boundary.
+     *
+     * @param source the encoded data
+     * @param start the range start index
+     * @param end the range end index
+     * @param target the buffer where the decoded data is written
+     * @param index the index where the decoded data is written
+     * @param last whether the range is at the end of the data
+     *
+     * @throws IOException the range contains an invalid Base 64 character
+     */
+    private static void decodeRange(ByteBuffer source, int start, int end,
+                                    ByteBuffer target, int index, boolean last)
+        throws IOException {
+
+        Base64Decoder decoder = new Base64Decoder();
+
+        if (source.hasArray() && target.hasArray()) {
+            byte[] dst = target.array();
+            int d = decoder.decode(source.array(), source.arrayOffset() + start,
+                source.arrayOffset() + end, dst, target.arrayOffset() + index);
+            if (last) {
+                decoder.finish(dst, d);
+            }
+            return;
+        }
+
+        byte[] buffer = new byte[Math.max(1, Math.min(end - start, Base64Encoder.BLOCK_SIZE))];
+        byte[] decoded = new byte[Base64Decoder.maxDecodedLength(buffer.length)];
+
+        int d = index;
+        for (int s = start; s < end; s += buffer.length) {
+            int n = Math.min(buffer.length, end - s);
+            source.get(s, buffer, 0, n);
+            int e = decoder.decode(buffer, 0, n, decoded, 0);
+            target.put(d, decoded, 0, e);
+            d += e;
+        }
+
+        if (last) {
+            target.put(d, decoded, 0, decoder.finish(decoded, 0));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package deors.core.commons.base64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+import deors.core.commons.CommonsContext;
+
+/**
+ * Readable channel that decodes the Base 64 data read from another channel.
+ *
+ * <p>The encoded data is read and decoded in blocks of the default buffer size, so data of any
+ * size can be decoded with constant memory. The validation rules are those of
+ * <code>Base64Toolkit.decode(ByteBuffer, ByteBuffer)</code>, and invalid data is reported
+ * with an <code>IOException</code> when the block containing it is read. If the source channel
+ * is in non-blocking mode and has no data available, reads return zero.
+ *
+ * <p>Channel objects are not thread-safe.
+ *
+ * @see Base64Toolkit#decode(ByteBuffer, ByteBuffer)
+ * @see CommonsContext#DEFAULT_BUFFER_SIZE
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class Base64ReadableByteChannel implements ReadableByteChannel {
+
+    /**
+     * The channel where the encoded data is read.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * The decoder.
+     */
+    private final Base64Decoder decoder = new Base64Decoder();
+
+    /**
+     * The buffer with the encoded data read.
+     */
+    private final byte[] buffer = new byte[CommonsContext.DEFAULT_BUFFER_SIZE];
+
+    /**
+     * The buffer with the decoded data.
+     */
+    private final byte[] decoded = new byte[Base64Decoder.maxDecodedLength(buffer.length)];
+
+    /**
+     * The position of the next byte to return in the decoded data buffer.
+     */
+    private int position;
+
+    /**
+     * The number of valid bytes in the decoded data buffer.
+     */
+    private int limit;
+
+    /**
+     * Whether the end of the source channel was reached.
+     */
+    private boolean endOfInput;
+
+    /**
+     * Whether the channel is open.
+     */
+    private boolean open = true;
+
+    /**
+     * Constructor that sets the channel where the encoded data is read.
+     *
+     * @param channel the encoded data channel
+     */
+    public Base64ReadableByteChannel(ReadableByteChannel channel) {
+
+        super();
+
+        this.channel = channel;
+    }
+
+    /**
+     * Reads decoded data into the given buffer.
+     *
+     * @param dst the buffer where the decoded data is written
+     *
+     * @return the number of bytes read or <code>-1</code> if the end of the data was reached
+     *
+     * @throws IOException an I/O exception, or the data contains an invalid Base 64 character
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+
+        while (position == limit) {
+            if (endOfInput) {
+                return -1;
+            }
+
+            position = 0;
+
+            int bytesRead = channel.read(ByteBuffer.wrap(buffer));
+            if (bytesRead == -1) {
+                endOfInput = true;
+                limit = decoder.finish(decoded, 0);
+            } else if (bytesRead == 0) {
+                limit = 0;
+                return 0;
+            } else {
+                limit = decoder.decode(buffer, 0, bytesRead, decoded, 0);
+            }
+        }
+
+        int n = Math.min(dst.remaining(), limit - position);
+        dst.put(decoded, position, n);
+        position += n;
+
+        return n;
+    }
+
+    /**
+     * Returns whether the channel is open.
+     *
+     * @return whether the channel is open
+     */
+    @Override
+    public boolean isOpen() {
+
+        return open;
+    }
+
+    /**
+     * Closes the channel and the source channel.
+     *
+     * @throws IOException an I/O exception closing the source channel
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (!open) {
+            return;
+        }
+
+        open = false;
+        channel.close();
+    }
+}
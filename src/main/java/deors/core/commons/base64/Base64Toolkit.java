@@ -2,11 +2,16 @@ package deors.core.commons.base64;
 
 import static deors.core.commons.CommonsContext.getMessage;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import deors.core.commons.CommonsContext;
 
 /**
  * Toolkit methods for encoding and decoding data in Base 64.
@@ -17,87 +22,32 @@ import java.io.OutputStream;
 public final class Base64Toolkit {
 
     /**
-     * Representation of the end of input data.
-     */
-    private static final int END_OF_INPUT = -1;
-
-    /**
-     * Representation of an invalid Base 64 character.
-     */
-    private static final int BASE_64_INVALID = -1;
-
-    /**
-     * Representation of a Base 64 whitespace character.
-     */
-    private static final int BASE_64_WHITESPACE = -2;
-
-    /**
-     * Representation of a Base 64 padding character.
-     */
-    private static final int BASE_64_PADDING = -3;
-
-    /**
-     * The padding character.
-     */
-    private static final char PADDING_CHARACTER = '=';
-
-    /**
-     * The decoded string packet size.
-     */
-    private static final int DECODED_STRING_PACKET_SIZE = 3;
-
-    /**
-     * The encoded string packet size.
+     * MIME encoding mode. The standard alphabet is used, the last packet is padded, and the
+     * encoded data is split into lines of 76 characters ending with a new line character. This
+     * is the mode used by the methods without an explicit mode.
      */
-    private static final int ENCODED_STRING_PACKET_SIZE = 4;
+    public static final int MODE_MIME = 0;
 
     /**
-     * The Unix/Linux new line character(s).
+     * Unwrapped encoding mode. The standard alphabet is used and the last packet is padded, but
+     * the encoded data is not split into lines.
      */
-    private static final char NEW_LINE_CHAR = '\n'; //$NON-NLS-1$
+    public static final int MODE_UNWRAPPED = 1;
 
     /**
-     * The Base 64 character matrix.
+     * URL-safe encoding mode. The URL and filename safe alphabet is used, with
+     * <code>'-'</code> and <code>'_'</code> instead of <code>'+'</code> and <code>'/'</code>,
+     * and the encoded data is neither padded nor split into lines, so it can be used as is in
+     * URLs, file names and tokens. Padding is accepted but not required when decoding.
      */
-    private static final byte[] BASE_64_CHARS = {
-        'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H',
-        'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
-        'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X',
-        'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f',
-        'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n',
-        'o', 'p', 'q', 'r', 's', 't', 'u', 'v',
-        'w', 'x', 'y', 'z', '0', '1', '2', '3',
-        '4', '5', '6', '7', '8', '9', '+', '/'};
+    public static final int MODE_URL_SAFE = 2;
 
     /**
-     * The reverse Base 64 character matrix length.
+     * The characters found in data encoded in MIME mode, used to check whether a charset
+     * converts them to and from single bytes with the same values.
      */
-    private static final int REVERSE_BASE_64_CHARS_LENGTH = 256;
-
-    /**
-     * The reverse Base 64 character matrix.
-     */
-    private static final byte[] REVERSE_BASE_64_CHARS = new byte[REVERSE_BASE_64_CHARS_LENGTH];
-
-    /**
-     * Initializes the reverse Base 64 character matrix.
-     */
-    static {
-        for (int i = 0; i < REVERSE_BASE_64_CHARS.length; i++) {
-            REVERSE_BASE_64_CHARS[i] = BASE_64_INVALID;
-        }
-
-        for (byte i = 0; i < BASE_64_CHARS.length; i++) {
-            REVERSE_BASE_64_CHARS[BASE_64_CHARS[i]] = i;
-        }
-
-        REVERSE_BASE_64_CHARS[' '] = BASE_64_WHITESPACE;
-        REVERSE_BASE_64_CHARS['\n'] = BASE_64_WHITESPACE;
-        REVERSE_BASE_64_CHARS['\r'] = BASE_64_WHITESPACE;
-        REVERSE_BASE_64_CHARS['\t'] = BASE_64_WHITESPACE;
-        REVERSE_BASE_64_CHARS['\f'] = BASE_64_WHITESPACE;
-        REVERSE_BASE_64_CHARS[PADDING_CHARACTER] = BASE_64_PADDING;
-    }
+    private static final String ENCODED_CHARACTERS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/=\n"; //$NON-NLS-1$
 
     /**
      * Default constructor. This class is a toolkit and therefore it cannot be instantiated.
@@ -108,7 +58,9 @@ public final class Base64Toolkit {
 
     /**
      * Encodes a string using the platform's default charset and returns the result into another
-     * string created using the platform's default charset.
+     * string created using the platform's default charset. If the charset converts the Base 64
+     * characters to and from single bytes with the same values, as ASCII-compatible charsets do,
+     * the encoded data is converted directly into the string, which gives the same result.
      *
      * @param string the data to be encoded
      *
@@ -116,12 +68,14 @@ public final class Base64Toolkit {
      */
     public static String encode(String string) {
 
-        return new String(encode(string.getBytes()));
+        return toEncodedString(encode(string.getBytes()), Charset.defaultCharset());
     }
 
     /**
      * Encodes a string using the given charset and returns the result into another string created
-     * using the same charset.
+     * using the same charset. If the charset converts the Base 64 characters to and from single
+     * bytes with the same values, as ASCII-compatible charsets do, the encoded data is converted
+     * directly into the string, which gives the same result.
      *
      * @param string the data to be encoded
      * @param encoding the character encoding that will be used to transform between bytes and
@@ -134,7 +88,7 @@ public final class Base64Toolkit {
     public static String encode(String string, String encoding)
         throws java.io.UnsupportedEncodingException {
 
-        return new String(encode(string.getBytes(encoding)), encoding);
+        return toEncodedString(encode(string.getBytes(encoding)), charsetOf(encoding));
     }
 
     /**
@@ -147,115 +101,374 @@ public final class Base64Toolkit {
      */
     public static byte[] encode(byte[] bytes) {
 
-        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        return encode(bytes, MODE_MIME);
+    }
+
+    /**
+     * Encodes a byte array in the given mode and returns the encoded data into another byte
+     * array. If the encoding process fails the method returns an empty array.
+     *
+     * @param bytes the data to be encoded
+     * @param mode the encoding mode
+     *
+     * @return the encoded data or an empty array if the encoding process fails
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
+     *
+     * @see Base64Toolkit#MODE_MIME
+     * @see Base64Toolkit#MODE_UNWRAPPED
+     * @see Base64Toolkit#MODE_URL_SAFE
+     */
+    public static byte[] encode(byte[] bytes, int mode) {
 
-        int length = bytes.length;
-        int mod = length % DECODED_STRING_PACKET_SIZE;
+        long length = encodedLength(bytes.length, mode);
 
-        if (mod != 0) {
-            length += DECODED_STRING_PACKET_SIZE - mod;
+        // the encoded data does not fit in an array
+        if (length > Integer.MAX_VALUE) {
+            return new byte[0];
         }
 
-        length *= ENCODED_STRING_PACKET_SIZE / DECODED_STRING_PACKET_SIZE;
+        byte[] encoded = new byte[(int) length];
+        Base64Encoder.encode(bytes, 0, bytes.length, encoded, 0, mode);
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(length);
+        return encoded;
+    }
 
-        try {
-            encode(bais, baos);
-        } catch (IOException ioe) {
-            return new byte[0];
+    /**
+     * Encodes a byte array in the given mode and returns the encoded data into a string. Only
+     * the encoded data array and the string are created.
+     *
+     * @param bytes the data to be encoded
+     * @param mode the encoding mode
+     *
+     * @return the encoded data or an empty string if the encoding process fails
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
+     */
+    public static String encodeToString(byte[] bytes, int mode) {
+
+        return new String(encode(bytes, mode), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encodes a character sequence, converted into bytes with the given charset, in the given
+     * mode and returns the encoded data into a string.
+     *
+     * @param chars the data to be encoded
+     * @param charset the charset used to convert the data into bytes
+     * @param mode the encoding mode
+     *
+     * @return the encoded data or an empty string if the encoding process fails
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
+     */
+    public static String encode(CharSequence chars, Charset charset, int mode) {
+
+        return encodeToString(chars.toString().getBytes(charset), mode);
+    }
+
+    /**
+     * Encodes a byte array in MIME mode and writes the encoded data into the given array.
+     *
+     * @param src the data to be encoded
+     * @param dst the array where the encoded data is written
+     * @param off the index where the encoded data is written
+     *
+     * @return the number of bytes written
+     *
+     * @throws IllegalArgumentException the array has not enough space from the given index
+     *
+     * @see Base64Toolkit#encodedLength(long, int)
+     */
+    public static int encodeTo(byte[] src, byte[] dst, int off) {
+
+        return encodeTo(src, dst, off, MODE_MIME);
+    }
+
+    /**
+     * Encodes a byte array in the given mode and writes the encoded data into the given array,
+     * so callers can reuse their buffers and encode without creating any array.
+     *
+     * @param src the data to be encoded
+     * @param dst the array where the encoded data is written
+     * @param off the index where the encoded data is written
+     * @param mode the encoding mode
+     *
+     * @return the number of bytes written
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid or the array has not
+     *                                  enough space from the given index
+     *
+     * @see Base64Toolkit#encodedLength(long, int)
+     */
+    public static int encodeTo(byte[] src, byte[] dst, int off, int mode) {
+
+        long length = encodedLength(src.length, mode);
+
+        if (off < 0 || off > dst.length || dst.length - off < length) {
+            throw new IllegalArgumentException(
+                getMessage("B64TK_ERR_DESTINATION_TOO_SMALL")); //$NON-NLS-1$
         }
 
-        return baos.toByteArray();
+        return Base64Encoder.encode(src, 0, src.length, dst, off, mode) - off;
+    }
+
+    /**
+     * Returns the length of the encoding of the given number of bytes in the given mode.
+     *
+     * @param length the number of bytes
+     * @param mode the encoding mode
+     *
+     * @return the number of encoded characters
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
+     */
+    public static long encodedLength(long length, int mode) {
+
+        checkMode(mode);
+
+        return Base64Encoder.encodedLength(length, mode);
     }
 
     /**
      * Encodes data from an input stream and writes the encoded data into the given output stream.
+     * The data is read and encoded in blocks of about the default buffer size.
      *
      * @param is the data input stream
      * @param os the encoded data output stream
      *
      * @throws java.io.IOException an I/O exception
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
      */
     public static void encode(InputStream is, OutputStream os)
         throws java.io.IOException {
 
-        final int packetByte1 = 0;
-        final int packetByte2 = 1;
-        final int packetByte3 = 2;
-        final int charZero = 0x30;
-        final int charLessThan = 0x3c;
-        final int charQuestion = 0x3f;
-        final int shift2 = 2;
-        final int shift4 = 4;
-        final int shift6 = 6;
-        final int maxLineWidth = 76;
+        byte[] buffer = new byte[Base64Encoder.BLOCK_SIZE];
+        byte[] encoded = new byte[(int) Base64Encoder.encodedLength(Base64Encoder.BLOCK_SIZE)];
 
-        int[] inBuffer = new int[DECODED_STRING_PACKET_SIZE];
-        int lineWidth = 0;
+        int length;
+        while ((length = readBlock(is, buffer)) > 0) {
+            int end = Base64Encoder.encode(buffer, 0, length, encoded, 0);
+            os.write(encoded, 0, end);
 
-        boolean done = false;
-
-        while (!done) {
-            inBuffer[packetByte1] = is.read();
-
-            if (inBuffer[packetByte1] == END_OF_INPUT) {
+            if (length < buffer.length) {
                 break;
             }
+        }
 
-            inBuffer[packetByte2] = is.read();
-            inBuffer[packetByte3] = is.read();
+        os.flush();
+    }
 
-            os.write(BASE_64_CHARS[inBuffer[packetByte1] >> shift2]);
+    /**
+     * Encodes the remaining data in the source buffer and writes the encoded data into the
+     * target buffer. The position of both buffers is advanced.
+     *
+     * @param source the data to be encoded
+     * @param target the buffer where the encoded data is written
+     *
+     * @throws java.nio.BufferOverflowException the target buffer has not enough space remaining,
+     *                                          in which case no data is encoded
+     */
+    public static void encode(ByteBuffer source, ByteBuffer target) {
 
-            if (inBuffer[packetByte2] == END_OF_INPUT) {
+        int length = source.remaining();
 
-                os.write(BASE_64_CHARS[(inBuffer[packetByte1] << shift4) & charLessThan]);
-                os.write(PADDING_CHARACTER);
-                os.write(PADDING_CHARACTER);
-                done = true;
+        if (target.remaining() < Base64Encoder.encodedLength(length)) {
+            throw new BufferOverflowException();
+        }
 
-            } else {
+        if (source.hasArray() && target.hasArray()) {
+            int start = target.arrayOffset() + target.position();
+            int end = Base64Encoder.encode(source.array(),
+                source.arrayOffset() + source.position(),
+                source.arrayOffset() + source.limit(),
+                target.array(), start);
+            source.position(source.limit());
+            target.position(target.position() + end - start);
+            return;
+        }
 
-                os.write(BASE_64_CHARS[
-                    ((inBuffer[packetByte1] << shift4) & charZero)
-                    | (inBuffer[packetByte2] >> shift4)]);
+        byte[] buffer = new byte[Math.min(length, Base64Encoder.BLOCK_SIZE)];
+        byte[] encoded = new byte[(int) Base64Encoder.encodedLength(buffer.length)];
 
-                if (inBuffer[packetByte3] == END_OF_INPUT) {
+        while (source.hasRemaining()) {
+            int blockLength = Math.min(source.remaining(), buffer.length);
+            source.get(buffer, 0, blockLength);
+            int end = Base64Encoder.encode(buffer, 0, blockLength, encoded, 0);
+            target.put(encoded, 0, end);
+        }
+    }
 
-                    os.write(BASE_64_CHARS[(inBuffer[packetByte2] << shift2) & charLessThan]);
-                    os.write(PADDING_CHARACTER);
-                    done = true;
+    /**
+     * Encodes a byte array in parallel and returns the encoded data into another byte array.
+     * The data is split into chunks of whole lines that are encoded by the fork/join common
+     * pool. The result is the same as the result of <code>encode(byte[])</code>, and data too
+     * small to be split is encoded in the calling thread.
+     *
+     * @param bytes the data to be encoded
+     *
+     * @return the encoded data or an empty array if the encoding process fails
+     *
+     * @see Base64Toolkit#encode(byte[])
+     */
+    public static byte[] encodeParallel(byte[] bytes) {
 
-                } else {
+        long length = Base64Encoder.encodedLength(bytes.length);
 
-                    os.write(BASE_64_CHARS[
-                        ((inBuffer[packetByte2] << shift2) & charLessThan)
-                        | (inBuffer[packetByte3] >> shift6)]);
-                    os.write(BASE_64_CHARS[inBuffer[packetByte3] & charQuestion]);
-                }
-            }
+        // the encoded data does not fit in an array
+        if (length > Integer.MAX_VALUE) {
+            return new byte[0];
+        }
 
-            lineWidth += ENCODED_STRING_PACKET_SIZE;
+        byte[] encoded = new byte[(int) length];
+        Base64Parallel.encode(ByteBuffer.wrap(bytes), ByteBuffer.wrap(encoded));
 
-            if (lineWidth >= maxLineWidth) {
+        return encoded;
+    }
 
-                os.write(NEW_LINE_CHAR);
-                lineWidth = 0;
-            }
+    /**
+     * Encodes in parallel the remaining data in the source buffer and writes the encoded data
+     * into the target buffer. The data is split into chunks of whole lines that are encoded by
+     * the fork/join common pool, each one directly into its place in the target buffer, so
+     * large buffers, like memory-mapped files, are encoded without intermediate copies of the
+     * whole data. The result is the same as the result of
+     * <code>encode(ByteBuffer, ByteBuffer)</code>. The position of both buffers is advanced.
+     *
+     * @param source the data to be encoded
+     * @param target the buffer where the encoded data is written
+     *
+     * @throws java.nio.BufferOverflowException the target buffer has not enough space remaining,
+     *                                          in which case no data is encoded
+     *
+     * @see Base64Toolkit#encode(ByteBuffer, ByteBuffer)
+     */
+    public static void encodeParallel(ByteBuffer source, ByteBuffer target) {
+
+        if (target.remaining() < Base64Encoder.encodedLength(source.remaining())) {
+            throw new BufferOverflowException();
         }
 
-        if (lineWidth >= 1) {
+        Base64Parallel.encode(source, target);
+    }
+
+    /**
+     * Converts encoded data in MIME mode into a string created using the given charset.
+     *
+     * @param encoded the encoded data
+     * @param charset the charset used to convert the encoded data into characters
+     *
+     * @return the encoded data string
+     */
+    private static String toEncodedString(byte[] encoded, Charset charset) {
+
+        return new String(encoded,
+            isSingleByteCompatible(charset) ? StandardCharsets.ISO_8859_1 : charset);
+    }
+
+    /**
+     * Decodes an encoded string in MIME mode, converting it into bytes with the given charset,
+     * and returns the decoded data converted into a string with the same charset.
+     *
+     * @param string the data to be decoded
+     * @param charset the charset used to transform between bytes and characters
+     *
+     * @return the decoded data or an empty string if the decoding process fails
+     */
+    private static String fromEncodedString(String string, Charset charset) {
+
+        byte[] decoded = isSingleByteCompatible(charset)
+            ? decode(string, MODE_MIME) : decode(string.getBytes(charset));
+
+        return new String(decoded, charset);
+    }
+
+    /**
+     * Checks whether a charset converts the characters found in encoded data to and from
+     * single bytes with the same values.
+     *
+     * @param charset the charset
+     *
+     * @return whether the encoded data can be converted directly
+     */
+    private static boolean isSingleByteCompatible(Charset charset) {
 
-            os.write(NEW_LINE_CHAR);
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.US_ASCII)) {
+            return true;
         }
 
-        os.flush();
+        byte[] bytes = ENCODED_CHARACTERS.getBytes(charset);
+
+        return Arrays.equals(bytes, ENCODED_CHARACTERS.getBytes(StandardCharsets.ISO_8859_1))
+            && new String(bytes, charset).equals(ENCODED_CHARACTERS);
+    }
+
+    /**
+     * Returns the charset with the given name.
+     *
+     * @param encoding the character encoding name
+     *
+     * @return the charset
+     *
+     * @throws java.io.UnsupportedEncodingException the character encoding is not supported
+     */
+    private static Charset charsetOf(String encoding)
+        throws java.io.UnsupportedEncodingException {
+
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException iae) {
+            throw new java.io.UnsupportedEncodingException(encoding);
+        }
+    }
+
+    /**
+     * Checks that the given encoding mode is valid.
+     *
+     * @param mode the encoding mode
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
+     */
+    private static void checkMode(int mode) {
+
+        if (mode != MODE_MIME && mode != MODE_UNWRAPPED && mode != MODE_URL_SAFE) {
+            throw new IllegalArgumentException(
+                getMessage("B64TK_ERR_INVALID_MODE")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads a block of data from an input stream, until the buffer is full or the end of the
+     * stream is reached.
+     *
+     * @param is the data input stream
+     * @param buffer the buffer where the data is read
+     *
+     * @return the number of bytes read, which is lower than the buffer length only if the end
+     *         of the stream was reached
+     *
+     * @throws java.io.IOException an I/O exception
+     */
+    private static int readBlock(InputStream is, byte[] buffer)
+        throws java.io.IOException {
+
+        int length = 0;
+        int bytesRead;
+
+        while (length < buffer.length
+            && (bytesRead = is.read(buffer, length, buffer.length - length)) != -1) {
+            length += bytesRead;
+        }
+
+        return length;
     }
 
     /**
      * Decodes an encoded string using the platform's default charset and returns the result into
-     * another string created using the platform's default charset.
+     * another string created using the platform's default charset. If the charset converts the
+     * Base 64 characters to and from single bytes with the same values, as ASCII-compatible
+     * charsets do, the encoded characters are decoded directly, which gives the same result.
      *
      * @param string the data to be decoded
      *
@@ -263,12 +476,14 @@ public final class Base64Toolkit {
      */
     public static String decode(String string) {
 
-        return new String(decode(string.getBytes()));
+        return fromEncodedString(string, Charset.defaultCharset());
     }
 
     /**
      * Decodes an encoded string using the given charset and returns the result into another string
-     * created using the same charset.
+     * created using the same charset. If the charset converts the Base 64 characters to and from
+     * single bytes with the same values, as ASCII-compatible charsets do, the encoded characters
+     * are decoded directly, which gives the same result.
      *
      * @param string the data to be decoded
      * @param encoding the character encoding that will be used to transform between bytes and
@@ -281,7 +496,7 @@ public final class Base64Toolkit {
     public static String decode(String string, String encoding)
         throws java.io.UnsupportedEncodingException {
 
-        return new String(decode(string.getBytes(encoding)), encoding);
+        return fromEncodedString(string, charsetOf(encoding));
     }
 
     /**
@@ -294,144 +509,228 @@ public final class Base64Toolkit {
      */
     public static byte[] decode(byte[] bytes) {
 
-        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-
-        int length = bytes.length;
-        int mod = length % ENCODED_STRING_PACKET_SIZE;
+        return decode(bytes, MODE_MIME);
+    }
 
-        if (mod != 0) {
-            length += ENCODED_STRING_PACKET_SIZE - mod;
-        }
+    /**
+     * Decodes an encoded byte array in the given mode and returns the decoded data into another
+     * byte array. If the decoding process fails the method returns an empty array.
+     *
+     * @param bytes the data to be decoded
+     * @param mode the encoding mode
+     *
+     * @return the decoded data or an empty array if the decoding process fails
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
+     */
+    public static byte[] decode(byte[] bytes, int mode) {
 
-        length = length * DECODED_STRING_PACKET_SIZE / ENCODED_STRING_PACKET_SIZE;
+        checkMode(mode);
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(length);
+        Base64Decoder decoder = new Base64Decoder(mode);
+        byte[] decoded = new byte[Base64Decoder.maxDecodedLength(bytes.length)];
 
+        int end;
         try {
-            decode(bais, baos);
+            end = decoder.decode(bytes, 0, bytes.length, decoded, 0);
         } catch (IOException ioe) {
             return new byte[0];
         }
+        end = decoder.finish(decoded, end);
 
-        return baos.toByteArray();
+        return end == decoded.length ? decoded : Arrays.copyOf(decoded, end);
     }
 
     /**
-     * Decodes encoded data from an input stream and writes the decoded data into the given output
-     * stream.
+     * Decodes an encoded character sequence in the given mode and returns the decoded data into
+     * a byte array. The characters are decoded directly, without converting them into bytes,
+     * and any character that is not ASCII is not valid. If the decoding process fails the
+     * method returns an empty array.
      *
-     * @param is the encoded data input stream
-     * @param os the decoded data output stream
+     * @param chars the data to be decoded
+     * @param mode the encoding mode
      *
-     * @throws java.io.IOException an I/O exception
+     * @return the decoded data or an empty array if the decoding process fails
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
      */
-    public static void decode(InputStream is, OutputStream os) throws java.io.IOException {
-
-        final int packetByte1 = 0;
-        final int packetByte2 = 1;
-        final int packetByte3 = 2;
-        final int packetByte4 = 3;
-        final int shift2 = 2;
-        final int shift4 = 4;
-        final int shift6 = 6;
-
-        int[] inBuffer = new int[ENCODED_STRING_PACKET_SIZE];
-
-        boolean done = false;
-
-        while (!done) {
-            inBuffer[packetByte1] = readBase64(is);
-
-            if (inBuffer[packetByte1] == END_OF_INPUT) {
-                break;
-            }
+    public static byte[] decode(CharSequence chars, int mode) {
 
-            inBuffer[packetByte2] = readBase64(is);
+        checkMode(mode);
 
-            if (inBuffer[packetByte2] == END_OF_INPUT) {
-                break;
-            }
-
-            inBuffer[packetByte3] = readBase64(is);
-            inBuffer[packetByte4] = readBase64(is);
-
-            os.write(inBuffer[packetByte1] << shift2 | inBuffer[packetByte2] >> shift4);
-
-            if (inBuffer[packetByte3] == END_OF_INPUT) {
+        Base64Decoder decoder = new Base64Decoder(mode);
+        byte[] decoded = new byte[Base64Decoder.maxDecodedLength(chars.length())];
 
-                done = true;
+        int end;
+        try {
+            end = decoder.decode(chars, 0, chars.length(), decoded, 0);
+        } catch (IOException ioe) {
+            return new byte[0];
+        }
+        end = decoder.finish(decoded, end);
 
-            } else {
+        return end == decoded.length ? decoded : Arrays.copyOf(decoded, end);
+    }
 
-                os.write(inBuffer[packetByte2] << shift4 | inBuffer[packetByte3] >> shift2);
+    /**
+     * Decodes an encoded character sequence in the given mode and returns the decoded data
+     * converted into a string with the given charset.
+     *
+     * @param chars the data to be decoded
+     * @param charset the charset used to convert the decoded data into characters
+     * @param mode the encoding mode
+     *
+     * @return the decoded data or an empty string if the decoding process fails
+     *
+     * @throws IllegalArgumentException the encoding mode is not valid
+     */
+    public static String decode(CharSequence chars, Charset charset, int mode) {
 
-                if (inBuffer[packetByte4] == END_OF_INPUT) {
+        return new String(decode(chars, mode), charset);
+    }
 
-                    done = true;
+    /**
+     * Decodes encoded data from an input stream and writes the decoded data into the given output
+     * stream. The data is read and decoded in blocks of the default buffer size.
+     *
+     * @param is the encoded data input stream
+     * @param os the decoded data output stream
+     *
+     * @throws java.io.IOException an I/O exception, or the stream contains an invalid Base 64
+     *                             character
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    public static void decode(InputStream is, OutputStream os) throws java.io.IOException {
 
-                } else {
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] buffer = new byte[CommonsContext.DEFAULT_BUFFER_SIZE];
+        byte[] decoded = new byte[Base64Decoder.maxDecodedLength(buffer.length)];
 
-                    os.write(inBuffer[packetByte3] << shift6 | inBuffer[packetByte4]);
-                }
-            }
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) != -1) {
+            int end = decoder.decode(buffer, 0, bytesRead, decoded, 0);
+            os.write(decoded, 0, end);
         }
 
+        os.write(decoded, 0, decoder.finish(decoded, 0));
         os.flush();
     }
 
     /**
-     * Reads next byte of data from a Base 64 encoded input stream.
-     *
-     * @param is the encoded data input stream
+     * Decodes the remaining encoded data in the source buffer and writes the decoded data into
+     * the target buffer. The position of both buffers is advanced.
      *
-     * @return the byte read from the stream
+     * @param source the encoded data
+     * @param target the buffer where the decoded data is written
      *
-     * @throws java.io.IOException the stream contains an invalid Base 64 character
+     * @throws java.io.IOException the data contains an invalid Base 64 character
+     * @throws java.nio.BufferOverflowException the target buffer has not enough space remaining
      */
-    private static int readBase64(InputStream is) throws java.io.IOException {
-
-        int read;
-        int numPadding = 0;
+    public static void decode(ByteBuffer source, ByteBuffer target) throws java.io.IOException {
+
+        Base64Decoder decoder = new Base64Decoder();
+        int length = source.remaining();
+
+        if (source.hasArray() && target.hasArray()
+            && target.remaining() >= Base64Decoder.maxDecodedLength(length)) {
+            int start = target.arrayOffset() + target.position();
+            int end = decoder.decode(source.array(), source.arrayOffset() + source.position(),
+                source.arrayOffset() + source.limit(), target.array(), start);
+            end = decoder.finish(target.array(), end);
+            source.position(source.limit());
+            target.position(target.position() + end - start);
+            return;
+        }
 
-        do {
-            read = is.read();
+        byte[] buffer = new byte[Math.min(length, CommonsContext.DEFAULT_BUFFER_SIZE)];
+        byte[] decoded = new byte[Base64Decoder.maxDecodedLength(buffer.length)];
 
-            if (read == END_OF_INPUT) {
-                return END_OF_INPUT;
-            }
-
-            byte index = (byte) read;
+        while (source.hasRemaining()) {
+            int blockLength = Math.min(source.remaining(), buffer.length);
+            source.get(buffer, 0, blockLength);
+            target.put(decoded, 0, decoder.decode(buffer, 0, blockLength, decoded, 0));
+        }
 
-            if (index < 0) {
-                throw new IOException(getMessage("B64TK_ERR_READING_DATA")); //$NON-NLS-1$
-            }
+        target.put(decoded, 0, decoder.finish(decoded, 0));
+    }
 
-            read = REVERSE_BASE_64_CHARS[index];
+    /**
+     * Decodes an encoded byte array in parallel and returns the decoded data into another byte
+     * array. The data is split into chunks that are validated and decoded by the fork/join
+     * common pool. The result is the same as the result of <code>decode(byte[])</code>, and
+     * data too small to be split is decoded in the calling thread.
+     *
+     * @param bytes the data to be decoded
+     *
+     * @return the decoded data or an empty array if the decoding process fails
+     *
+     * @see Base64Toolkit#decode(byte[])
+     */
+    public static byte[] decodeParallel(byte[] bytes) {
 
-            if (read == BASE_64_INVALID || (numPadding > 0 && read > BASE_64_INVALID)) {
-                throw new IOException(getMessage("B64TK_ERR_READING_DATA")); //$NON-NLS-1$
-            }
+        try {
+            return Base64Parallel.decode(ByteBuffer.wrap(bytes), null).array();
+        } catch (IOException ioe) {
+            return new byte[0];
+        }
+    }
 
-            if (read == BASE_64_PADDING) {
-                numPadding++;
-            }
-        } while (read <= BASE_64_INVALID);
+    /**
+     * Decodes in parallel the remaining encoded data in the source buffer and writes the
+     * decoded data into the target buffer. The data is split into chunks that are validated and
+     * decoded by the fork/join common pool, each one directly into its place in the target
+     * buffer. The result is the same as the result of
+     * <code>decode(ByteBuffer, ByteBuffer)</code>. The position of both buffers is advanced.
+     *
+     * @param source the encoded data
+     * @param target the buffer where the decoded data is written
+     *
+     * @throws java.io.IOException the data contains an invalid Base 64 character
+     * @throws java.nio.BufferOverflowException the target buffer has not enough space remaining,
+     *                                          in which case no data is decoded
+     *
+     * @see Base64Toolkit#decode(ByteBuffer, ByteBuffer)
+     */
+    public static void decodeParallel(ByteBuffer source, ByteBuffer target)
+        throws java.io.IOException {
 
-        return read;
+        Base64Parallel.decode(source, target);
     }
 
     /**
-     * Checks whether data is in Base 64 format using platform's default charset to convert between
-     * bytes and characters.
+     * Checks whether a string is in Base 64 format. As only ASCII characters are valid, the
+     * result is the same as converting the string with the platform's default charset, but the
+     * characters are validated directly without any conversion.
      *
      * @param string the encoded data
      *
      * @return <code>true</code> if the input data is in Base 64 format or <code>false</code>
      *         otherwise
+     *
+     * @see Base64Toolkit#isBase64(CharSequence)
      */
     public static boolean isBase64(String string) {
 
-        return isBase64(string.getBytes());
+        return isBase64((CharSequence) string);
+    }
+
+    /**
+     * Checks whether a character sequence is in Base 64 format. The characters are validated
+     * directly, in blocks, without converting them into bytes, and any character that is not
+     * ASCII is not valid.
+     *
+     * @param chars the encoded data
+     *
+     * @return <code>true</code> if the input data is in Base 64 format or <code>false</code>
+     *         otherwise
+     */
+    public static boolean isBase64(CharSequence chars) {
+
+        Base64Validator validator = new Base64Validator();
+        validator.validate(chars, 0, chars.length());
+
+        return validator.isValid();
     }
 
     /**
@@ -462,15 +761,47 @@ public final class Base64Toolkit {
      */
     public static boolean isBase64(byte[] bytes) {
 
-        try {
-            return isBase64(new ByteArrayInputStream(bytes));
-        } catch (IOException ioe) {
-            return false;
+        Base64Validator validator = new Base64Validator();
+        validator.validate(bytes, 0, bytes.length);
+
+        return validator.isValid();
+    }
+
+    /**
+     * Checks whether the remaining data in a buffer is in Base 64 format. The position of the
+     * buffer is not changed.
+     *
+     * @param buffer the encoded data
+     *
+     * @return <code>true</code> if the input data is in Base 64 format or <code>false</code>
+     *         otherwise
+     */
+    public static boolean isBase64(ByteBuffer buffer) {
+
+        Base64Validator validator = new Base64Validator();
+
+        if (buffer.hasArray()) {
+            validator.validate(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.arrayOffset() + buffer.limit());
+            return validator.isValid();
+        }
+
+        byte[] block = new byte[Math.min(buffer.remaining(), CommonsContext.DEFAULT_BUFFER_SIZE)];
+
+        for (int i = buffer.position(), end = buffer.limit(); i < end; i += block.length) {
+            int n = Math.min(block.length, end - i);
+            buffer.get(i, block, 0, n);
+            if (!validator.validate(block, 0, n)) {
+                break;
+            }
         }
+
+        return validator.isValid();
     }
 
     /**
-     * Checks whether data is in Base 64 format.
+     * Checks whether data is in Base 64 format. The data is read in blocks of the default buffer
+     * size, and the stream is not read any further once an invalid character is found.
      *
      * @param is the encoded data input stream
      *
@@ -478,41 +809,22 @@ public final class Base64Toolkit {
      *         otherwise
      *
      * @throws java.io.IOException an I/O exception
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
      */
     public static boolean isBase64(InputStream is)
         throws java.io.IOException {
 
-        boolean isBase64 = true;
-        long numBase64Chars = 0;
-        int numPadding = 0;
-        int read;
+        Base64Validator validator = new Base64Validator();
+        byte[] buffer = new byte[CommonsContext.DEFAULT_BUFFER_SIZE];
 
-        while ((read = is.read()) != -1) {
-            read = REVERSE_BASE_64_CHARS[read];
-
-            if (read == BASE_64_INVALID) {
-                isBase64 = false;
-                break;
-            } else if (read == BASE_64_WHITESPACE) {
-                continue;
-            } else if (read == BASE_64_PADDING) {
-                numPadding++;
-                numBase64Chars++;
-            } else if (numPadding > 0) {
-                isBase64 = false;
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) != -1) {
+            if (!validator.validate(buffer, 0, bytesRead)) {
                 break;
-            } else {
-                numBase64Chars++;
             }
         }
 
-        // the stream does not contain valid characters
-        // or the stream size is not a multiple of the packet size
-        if (isBase64
-            && (numBase64Chars == 0 || numBase64Chars % ENCODED_STRING_PACKET_SIZE != 0)) {
-            isBase64 = false;
-        }
-
-        return isBase64;
+        return validator.isValid();
     }
 }
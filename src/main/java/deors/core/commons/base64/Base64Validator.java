@@ -0,0 +1,226 @@
+package deors.core.commons.base64;
+
+/**
+ * Block-based Base 64 validator used by the Base 64 toolkit.
+ *
+ * <p>The data is validated in blocks of eight characters. Each character is mapped with a
+ * lookup table to a class bit, and the bits of the whole block are combined without branching.
+ * A block of Base 64 characters is counted in one step, a block with an invalid character ends
+ * the validation at once, and only the blocks with whitespace or padding characters are
+ * checked one character at a time. The state is kept between blocks, so the data can be
+ * validated in ranges of any size.
+ *
+ * <p>The validation rules are those of the Base 64 toolkit: whitespace characters are ignored,
+ * a Base 64 character after a padding character is not valid, and the number of Base 64 and
+ * padding characters must be a multiple of the packet size and greater than zero.
+ *
+ * <p>Validator objects keep the state of one validation process and are not thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class Base64Validator {
+
+    /**
+     * Class of the Base 64 characters.
+     */
+    private static final byte CLASS_BASE_64 = 0;
+
+    /**
+     * Class of the whitespace characters.
+     */
+    private static final byte CLASS_WHITESPACE = 1;
+
+    /**
+     * Class of the padding character.
+     */
+    private static final byte CLASS_PADDING = 2;
+
+    /**
+     * Class of the invalid characters.
+     */
+    private static final byte CLASS_INVALID = 4;
+
+    /**
+     * The number of characters validated per block.
+     */
+    private static final int BLOCK_SIZE = 8;
+
+    /**
+     * The encoded packet size.
+     */
+    private static final int ENCODED_PACKET_SIZE = 4;
+
+    /**
+     * The character classes length.
+     */
+    private static final int CLASSES_LENGTH = 256;
+
+    /**
+     * The character classes, indexed by the unsigned byte value.
+     */
+    private static final byte[] CLASSES = new byte[CLASSES_LENGTH];
+
+    /**
+     * Initializes the character classes.
+     */
+    static {
+        for (int i = 0; i < CLASSES.length; i++) {
+            int value = Base64Decoder.valueOf((byte) i);
+            if (value >= 0) {
+                CLASSES[i] = CLASS_BASE_64;
+            } else if (value == Base64Decoder.BASE_64_WHITESPACE) {
+                CLASSES[i] = CLASS_WHITESPACE;
+            } else if (value == Base64Decoder.BASE_64_PADDING) {
+                CLASSES[i] = CLASS_PADDING;
+            } else {
+                CLASSES[i] = CLASS_INVALID;
+            }
+        }
+    }
+
+    /**
+     * The number of Base 64 and padding characters found.
+     */
+    private long count;
+
+    /**
+     * Whether a padding character was found.
+     */
+    private boolean padded;
+
+    /**
+     * Whether an invalid character was found.
+     */
+    private boolean invalid;
+
+    /**
+     * Default constructor.
+     */
+    Base64Validator() {
+        super();
+    }
+
+    /**
+     * Validates a range of a byte array.
+     *
+     * @param src the encoded data
+     * @param sp the range start index
+     * @param sl the range end index
+     *
+     * @return <code>false</code> if the data validated so far is not valid, in which case the
+     *         rest of the data does not need to be validated
+     */
+    boolean validate(byte[] src, int sp, int sl) {
+
+        int s = sp;
+
+        while (!invalid && s < sl) {
+            if (s + BLOCK_SIZE <= sl) {
+                int block = CLASSES[src[s] & 0xFF] | CLASSES[src[s + 1] & 0xFF]
+                    | CLASSES[src[s + 2] & 0xFF] | CLASSES[src[s + 3] & 0xFF]
+                    | CLASSES[src[s + 4] & 0xFF] | CLASSES[src[s + 5] & 0xFF]
+                    | CLASSES[src[s + 6] & 0xFF] | CLASSES[src[s + 7] & 0xFF];
+                if (block == CLASS_BASE_64 && !padded) {
+                    count += BLOCK_SIZE;
+                    s += BLOCK_SIZE;
+                    continue;
+                }
+                if ((block & CLASS_INVALID) != 0) {
+                    invalid = true;
+                    break;
+                }
+                for (int to = s + BLOCK_SIZE; s < to; s++) {
+                    validate(CLASSES[src[s] & 0xFF]);
+                }
+            } else {
+                validate(CLASSES[src[s++] & 0xFF]);
+            }
+        }
+
+        return !invalid;
+    }
+
+    /**
+     * Validates a range of a character sequence. Characters outside the Base 64 alphabet,
+     * including any character that is not ASCII, are not valid.
+     *
+     * @param src the encoded data
+     * @param start the range start index
+     * @param end the range end index
+     *
+     * @return <code>false</code> if the data validated so far is not valid, in which case the
+     *         rest of the data does not need to be validated
+     */
+    boolean validate(CharSequence src, int start, int end) {
+
+        int s = start;
+
+        while (!invalid && s < end) {
+            if (s + BLOCK_SIZE <= end) {
+                int block = 0;
+                for (int i = s, to = s + BLOCK_SIZE; i < to; i++) {
+                    block |= classOf(src.charAt(i));
+                }
+                if (block == CLASS_BASE_64 && !padded) {
+                    count += BLOCK_SIZE;
+                    s += BLOCK_SIZE;
+                    continue;
+                }
+                if ((block & CLASS_INVALID) != 0) {
+                    invalid = true;
+                    break;
+                }
+                for (int to = s + BLOCK_SIZE; s < to; s++) {
+                    validate(classOf(src.charAt(s)));
+                }
+            } else {
+                validate(classOf(src.charAt(s++)));
+            }
+        }
+
+        return !invalid;
+    }
+
+    /**
+     * Returns whether all the data validated is in Base 64 format.
+     *
+     * @return whether the data is in Base 64 format
+     */
+    boolean isValid() {
+
+        return !invalid && count > 0 && count % ENCODED_PACKET_SIZE == 0;
+    }
+
+    /**
+     * Returns the class of a character.
+     *
+     * @param c the character
+     *
+     * @return the character class
+     */
+    private static int classOf(char c) {
+
+        return c < CLASSES_LENGTH ? CLASSES[c] : CLASS_INVALID;
+    }
+
+    /**
+     * Validates one character.
+     *
+     * @param characterClass the character class
+     */
+    private void validate(int characterClass) {
+
+        if (characterClass == CLASS_BASE_64) {
+            if (padded) {
+                invalid = true;
+            }
+            count++;
+        } else if (characterClass == CLASS_PADDING) {
+            padded = true;
+            count++;
+        } else if (characterClass == CLASS_INVALID) {
+            invalid = true;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package deors.core.commons.base64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writable channel that encodes in Base 64 the data written to it and writes the encoded data
+ * into another channel.
+ *
+ * <p>The data is encoded in blocks of about the default buffer size, so data of any size can be
+ * encoded with constant memory. The encoded data has the same format as the data encoded by
+ * <code>Base64Toolkit.encode(ByteBuffer, ByteBuffer)</code>: lines of 76 characters ending
+ * with a new line character. The last line, which may be shorter, is written when the channel
+ * is closed. The target channel is expected to be in blocking mode.
+ *
+ * <p>Channel objects are not thread-safe.
+ *
+ * @see Base64Toolkit#encode(ByteBuffer, ByteBuffer)
+ * @see deors.core.commons.CommonsContext#DEFAULT_BUFFER_SIZE
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class Base64WritableByteChannel implements WritableByteChannel {
+
+    /**
+     * The channel where the encoded data is written.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The buffer with the data pending to be encoded.
+     */
+    private final byte[] buffer = new byte[Base64Encoder.BLOCK_SIZE];
+
+    /**
+     * The buffer with the encoded data.
+     */
+    private final byte[] encoded = new byte[(int) Base64Encoder.encodedLength(buffer.length)];
+
+    /**
+     * The number of bytes pending to be encoded.
+     */
+    private int count;
+
+    /**
+     * Whether the channel is open.
+     */
+    private boolean open = true;
+
+    /**
+     * Constructor that sets the channel where the encoded data is written.
+     *
+     * @param channel the encoded data channel
+     */
+    public Base64WritableByteChannel(WritableByteChannel channel) {
+
+        super();
+
+        this.channel = channel;
+    }
+
+    /**
+     * Writes the remaining data in the given buffer.
+     *
+     * @param src the buffer with the data
+     *
+     * @return the number of bytes written, which is always the number of bytes that remained
+     *         in the buffer
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+
+        ensureOpen();
+
+        int written = src.remaining();
+
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), buffer.length - count);
+            src.get(buffer, count, n);
+            count += n;
+            if (count == buffer.length) {
+                encodeBuffer();
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Returns whether the channel is open.
+     *
+     * @return whether the channel is open
+     */
+    @Override
+    public boolean isOpen() {
+
+        return open;
+    }
+
+    /**
+     * Writes the data pending to be encoded, including the last line, and closes the target
+     * channel.
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (!open) {
+            return;
+        }
+
+        open = false;
+
+        try {
+            if (count > 0) {
+                encodeBuffer();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Checks that the channel is open.
+     *
+     * @throws ClosedChannelException the channel is closed
+     */
+    private void ensureOpen() throws ClosedChannelException {
+
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Encodes and writes the data pending to be encoded.
+     *
+     * @throws IOException an I/O exception writing the encoded data
+     */
+    private void encodeBuffer() throws IOException {
+
+        int end = Base64Encoder.encode(buffer, 0, count, encoded, 0);
+        count = 0;
+
+        ByteBuffer out = ByteBuffer.wrap(encoded, 0, end);
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+}
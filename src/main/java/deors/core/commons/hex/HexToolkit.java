@@ -0,0 +1,421 @@
+package deors.core.commons.hex;
+
+import static deors.core.commons.CommonsContext.getMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import deors.core.commons.CommonsContext;
+
+/**
+ * Toolkit methods for encoding and decoding data in hexadecimal.
+ *
+ * <p>Every byte is encoded as two upper case hexadecimal digits. Both upper and lower case
+ * digits are accepted when decoding. The digits are converted with lookup tables, without
+ * creating any intermediate string.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class HexToolkit {
+
+    /**
+     * The number of hexadecimal digits per byte.
+     */
+    private static final int DIGITS_PER_BYTE = 2;
+
+    /**
+     * The number of bits in a hexadecimal digit.
+     */
+    private static final int DIGIT_BITS = 4;
+
+    /**
+     * Mask used to extract the low hexadecimal digit of a byte.
+     */
+    private static final int DIGIT_MASK = 0x0F;
+
+    /**
+     * Representation of an invalid hexadecimal digit.
+     */
+    private static final byte INVALID_DIGIT = -1;
+
+    /**
+     * The hexadecimal digit characters.
+     */
+    private static final byte[] DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    /**
+     * The reverse hexadecimal digit matrix length.
+     */
+    private static final int DIGIT_VALUES_LENGTH = 128;
+
+    /**
+     * The value of each hexadecimal digit character, or <code>INVALID_DIGIT</code>.
+     */
+    private static final byte[] DIGIT_VALUES = new byte[DIGIT_VALUES_LENGTH];
+
+    /**
+     * Initializes the reverse hexadecimal digit matrix.
+     */
+    static {
+        for (int i = 0; i < DIGIT_VALUES.length; i++) {
+            DIGIT_VALUES[i] = INVALID_DIGIT;
+        }
+
+        for (byte i = 0; i < DIGITS.length; i++) {
+            DIGIT_VALUES[DIGITS[i]] = i;
+            DIGIT_VALUES[Character.toLowerCase(DIGITS[i])] = i;
+        }
+    }
+
+    /**
+     * Default constructor. This class is a toolkit and therefore it cannot be instantiated.
+     */
+    private HexToolkit() {
+        super();
+    }
+
+    /**
+     * Encodes a byte array and returns the encoded data as a string.
+     *
+     * @param bytes the data to be encoded
+     *
+     * @return the encoded data
+     */
+    public static String encode(byte[] bytes) {
+
+        return new String(encodeToChars(bytes));
+    }
+
+    /**
+     * Encodes a byte array and returns the encoded data as a character array.
+     *
+     * @param bytes the data to be encoded
+     *
+     * @return the encoded data
+     */
+    public static char[] encodeToChars(byte[] bytes) {
+
+        char[] chars = new char[bytes.length * DIGITS_PER_BYTE];
+
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            chars[j++] = (char) DIGITS[(bytes[i] >> DIGIT_BITS) & DIGIT_MASK];
+            chars[j++] = (char) DIGITS[bytes[i] & DIGIT_MASK];
+        }
+
+        return chars;
+    }
+
+    /**
+     * Encodes a byte array and returns the encoded data as a byte array with the ASCII codes of
+     * the hexadecimal digits.
+     *
+     * @param bytes the data to be encoded
+     *
+     * @return the encoded data
+     */
+    public static byte[] encodeToBytes(byte[] bytes) {
+
+        byte[] encoded = new byte[bytes.length * DIGITS_PER_BYTE];
+        encode(bytes, 0, bytes.length, encoded, 0);
+
+        return encoded;
+    }
+
+    /**
+     * Encodes the remaining data in the source buffer and writes the ASCII codes of the
+     * hexadecimal digits into the target buffer. The position of both buffers is advanced.
+     *
+     * @param source the data to be encoded
+     * @param target the buffer where the encoded data is written
+     *
+     * @throws java.nio.BufferOverflowException the target buffer has not enough space remaining
+     */
+    public static void encode(ByteBuffer source, ByteBuffer target) {
+
+        if (source.hasArray() && target.hasArray()
+            && target.remaining() >= source.remaining() * DIGITS_PER_BYTE) {
+            int length = source.remaining();
+            encode(source.array(), source.arrayOffset() + source.position(), length,
+                target.array(), target.arrayOffset() + target.position());
+            source.position(source.position() + length);
+            target.position(target.position() + length * DIGITS_PER_BYTE);
+            return;
+        }
+
+        while (source.hasRemaining()) {
+            byte b = source.get();
+            target.put(DIGITS[(b >> DIGIT_BITS) & DIGIT_MASK]);
+            target.put(DIGITS[b & DIGIT_MASK]);
+        }
+    }
+
+    /**
+     * Encodes data from an input stream and writes the encoded data into the given output stream.
+     * The data is processed in blocks of the default buffer size.
+     *
+     * @param is the data input stream
+     * @param os the encoded data output stream
+     *
+     * @throws IOException an I/O exception
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    public static void encode(InputStream is, OutputStream os) throws IOException {
+
+        byte[] buffer = new byte[CommonsContext.DEFAULT_BUFFER_SIZE];
+        byte[] encoded = new byte[buffer.length * DIGITS_PER_BYTE];
+
+        int bytesRead = -1;
+        while ((bytesRead = is.read(buffer)) != -1) {
+            encode(buffer, 0, bytesRead, encoded, 0);
+            os.write(encoded, 0, bytesRead * DIGITS_PER_BYTE);
+        }
+
+        os.flush();
+    }
+
+    /**
+     * Encodes a range of a byte array into another byte array.
+     *
+     * @param bytes the data to be encoded
+     * @param off the offset of the data to be encoded
+     * @param length the number of bytes to be encoded
+     * @param target the array where the encoded data is written
+     * @param targetOff the offset where the encoded data is written
+     */
+    private static void encode(byte[] bytes, int off, int length, byte[] target, int targetOff) {
+
+        for (int i = off, j = targetOff, n = off + length; i < n; i++) {
+            target[j++] = DIGITS[(bytes[i] >> DIGIT_BITS) & DIGIT_MASK];
+            target[j++] = DIGITS[bytes[i] & DIGIT_MASK];
+        }
+    }
+
+    /**
+     * Decodes a hexadecimal character sequence.
+     *
+     * @param hex the data to be decoded
+     *
+     * @return the decoded data
+     *
+     * @throws NumberFormatException the length is odd or a character is not a hexadecimal digit
+     */
+    public static byte[] decode(CharSequence hex) {
+
+        return decode(hex, 0, hex.length());
+    }
+
+    /**
+     * Decodes a range of a hexadecimal character sequence.
+     *
+     * @param hex the data to be decoded
+     * @param start the range start index, inclusive
+     * @param end the range end index, exclusive
+     *
+     * @return the decoded data
+     *
+     * @throws NumberFormatException the range length is odd or a character is not a hexadecimal
+     *                               digit
+     */
+    public static byte[] decode(CharSequence hex, int start, int end) {
+
+        checkLength(end - start);
+
+        byte[] bytes = new byte[(end - start) / DIGITS_PER_BYTE];
+
+        for (int i = 0, j = start; i < bytes.length; i++, j += DIGITS_PER_BYTE) {
+            bytes[i] = decode(hex.charAt(j), hex.charAt(j + 1), j);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Decodes a hexadecimal character array.
+     *
+     * @param hex the data to be decoded
+     *
+     * @return the decoded data
+     *
+     * @throws NumberFormatException the length is odd or a character is not a hexadecimal digit
+     */
+    public static byte[] decode(char[] hex) {
+
+        checkLength(hex.length);
+
+        byte[] bytes = new byte[hex.length / DIGITS_PER_BYTE];
+
+        for (int i = 0, j = 0; i < bytes.length; i++, j += DIGITS_PER_BYTE) {
+            bytes[i] = decode(hex[j], hex[j + 1], j);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Decodes a byte array with the ASCII codes of hexadecimal digits.
+     *
+     * @param hex the data to be decoded
+     *
+     * @return the decoded data
+     *
+     * @throws NumberFormatException the length is odd or a byte is not a hexadecimal digit
+     */
+    public static byte[] decode(byte[] hex) {
+
+        checkLength(hex.length);
+
+        byte[] bytes = new byte[hex.length / DIGITS_PER_BYTE];
+        decode(hex, 0, bytes.length, bytes, 0, 0);
+
+        return bytes;
+    }
+
+    /**
+     * Decodes the remaining ASCII codes of hexadecimal digits in the source buffer and writes
+     * the decoded data into the target buffer. The position of both buffers is advanced.
+     *
+     * @param source the data to be decoded
+     * @param target the buffer where the decoded data is written
+     *
+     * @throws NumberFormatException the remaining length is odd or a byte is not a hexadecimal
+     *                               digit
+     * @throws java.nio.BufferOverflowException the target buffer has not enough space remaining
+     */
+    public static void decode(ByteBuffer source, ByteBuffer target) {
+
+        checkLength(source.remaining());
+
+        int length = source.remaining() / DIGITS_PER_BYTE;
+
+        if (source.hasArray() && target.hasArray() && target.remaining() >= length) {
+            decode(source.array(), source.arrayOffset() + source.position(), length,
+                target.array(), target.arrayOffset() + target.position(), source.position());
+            source.position(source.position() + length * DIGITS_PER_BYTE);
+            target.position(target.position() + length);
+            return;
+        }
+
+        int position = source.position();
+        for (int i = 0; i < length; i++) {
+            target.put(decode((char) source.get(), (char) source.get(),
+                position + i * DIGITS_PER_BYTE));
+        }
+    }
+
+    /**
+     * Decodes encoded data from an input stream and writes the decoded data into the given output
+     * stream. The data is processed in blocks of the default buffer size. The position of an
+     * invalid character is reported from the start of the stream.
+     *
+     * @param is the encoded data input stream
+     * @param os the decoded data output stream
+     *
+     * @throws IOException an I/O exception, or the stream length is odd or contains a byte that
+     *                     is not a hexadecimal digit
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    public static void decode(InputStream is, OutputStream os) throws IOException {
+
+        byte[] buffer = new byte[CommonsContext.DEFAULT_BUFFER_SIZE * DIGITS_PER_BYTE];
+        byte[] decoded = new byte[CommonsContext.DEFAULT_BUFFER_SIZE];
+
+        // a digit left over from the previous block is kept at the start of the buffer
+        int pending = 0;
+        int bytesRead = -1;
+
+        // the position in the stream of the first byte in the buffer
+        long consumed = 0;
+
+        try {
+            while ((bytesRead = is.read(buffer, pending, buffer.length - pending)) != -1) {
+                int available = pending + bytesRead;
+                int length = available / DIGITS_PER_BYTE;
+                decode(buffer, 0, length, decoded, 0, consumed);
+                os.write(decoded, 0, length);
+                consumed += length * DIGITS_PER_BYTE;
+
+                pending = available % DIGITS_PER_BYTE;
+                if (pending > 0) {
+                    buffer[0] = buffer[available - 1];
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            throw new IOException(getMessage("HEXTK_ERR_READING_DATA"), nfe); //$NON-NLS-1$
+        }
+
+        if (pending > 0) {
+            throw new IOException(getMessage("HEXTK_ERR_READING_DATA")); //$NON-NLS-1$
+        }
+
+        os.flush();
+    }
+
+    /**
+     * Decodes a range of a byte array with the ASCII codes of hexadecimal digits into another
+     * byte array.
+     *
+     * @param hex the data to be decoded
+     * @param off the offset of the data to be decoded
+     * @param length the number of bytes to be decoded
+     * @param target the array where the decoded data is written
+     * @param targetOff the offset where the decoded data is written
+     * @param base the position in the input of the first byte to be decoded, used in the error
+     *             message
+     *
+     * @throws NumberFormatException a byte is not a hexadecimal digit
+     */
+    private static void decode(byte[] hex, int off, int length, byte[] target, int targetOff,
+                               long base) {
+
+        for (int i = targetOff, j = off, n = targetOff + length; i < n;
+             i++, j += DIGITS_PER_BYTE) {
+            target[i] = decode((char) (hex[j] & 0xFF), (char) (hex[j + 1] & 0xFF),
+                base + j - off);
+        }
+    }
+
+    /**
+     * Decodes a pair of hexadecimal digits.
+     *
+     * @param high the high digit
+     * @param low the low digit
+     * @param position the position of the high digit, used in the error message
+     *
+     * @return the decoded byte
+     *
+     * @throws NumberFormatException any of the characters is not a hexadecimal digit
+     */
+    private static byte decode(char high, char low, long position) {
+
+        int highValue = high < DIGIT_VALUES_LENGTH ? DIGIT_VALUES[high] : INVALID_DIGIT;
+        int lowValue = low < DIGIT_VALUES_LENGTH ? DIGIT_VALUES[low] : INVALID_DIGIT;
+
+        if (highValue == INVALID_DIGIT || lowValue == INVALID_DIGIT) {
+            throw new NumberFormatException(getMessage("HEXTK_ERR_INVALID_CHARACTER", //$NON-NLS-1$
+                Long.toString(highValue == INVALID_DIGIT ? position : position + 1)));
+        }
+
+        return (byte) (highValue << DIGIT_BITS | lowValue);
+    }
+
+    /**
+     * Checks that the length of the data to be decoded is even.
+     *
+     * @param length the length of the data to be decoded
+     *
+     * @throws NumberFormatException the length is odd
+     */
+    private static void checkLength(int length) {
+
+        if (length % DIGITS_PER_BYTE != 0) {
+            throw new NumberFormatException(getMessage("HEXTK_ERR_ODD_LENGTH")); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Components to handle hexadecimal encoding and decoding.
+ */
+package deors.core.commons.hex;
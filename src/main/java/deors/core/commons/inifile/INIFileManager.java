@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 
 import deors.core.commons.CommonsContext;
+import deors.core.commons.StringInterner;
 import deors.core.commons.io.IOToolkit;
 
 /**
@@ -78,6 +79,12 @@ public final class INIFileManager {
      */
     private boolean dataHasChanged;
 
+    /**
+     * The interner used to deduplicate the keys and values read from the file, or
+     * <code>null</code> if they are not deduplicated.
+     */
+    private final StringInterner interner;
+
     /**
      * The start of a line with comments. Configurable in the properties file using the key
      * <code>inimgr.commentsStartsWith</code>. Default value is <code>;</code>.
@@ -132,7 +139,28 @@ public final class INIFileManager {
     public INIFileManager(File iniFile)
         throws IOException {
 
+        this(iniFile, null);
+    }
+
+    /**
+     * Constructor that sets the configuration file and the interner used to deduplicate the keys
+     * and values read from it, so repeated values share one single instance. The interner may
+     * be shared by several managers.
+     *
+     * <p>An <code>IllegalArgumentException</code> exception is thrown if the given file is
+     * a directory or cannot be read.
+     *
+     * @param iniFile the file with the configuration information
+     * @param interner the interner used to deduplicate the keys and values, or
+     *                 <code>null</code> if they are not deduplicated
+     *
+     * @throws IOException an I/O exception
+     */
+    public INIFileManager(File iniFile, StringInterner interner)
+        throws IOException {
+
         this.iniFile = iniFile;
+        this.interner = interner;
 
         checkFile();
         readFile();
@@ -679,8 +707,8 @@ public final class INIFileManager {
 
                 int sepPos = line.indexOf(KEY_VALUE_SEPARATOR);
                 if (sepPos != -1) {
-                    String key = line.substring(0, sepPos).trim();
-                    String value = line.substring(sepPos + 1).trim();
+                    String key = trimmedPart(line, 0, sepPos);
+                    String value = trimmedPart(line, sepPos + 1, line.length());
 
                     if (key.isEmpty() || value.isEmpty()) {
                         continue;
@@ -700,6 +728,32 @@ public final class INIFileManager {
         }
     }
 
+    /**
+     * Returns a part of a line without leading and trailing whitespace, deduplicated with the
+     * interner if there is one.
+     *
+     * @param line the line
+     * @param start the part start index, inclusive
+     * @param end the part end index, exclusive
+     *
+     * @return the trimmed part of the line
+     */
+    private String trimmedPart(String line, int start, int end) {
+
+        int first = start;
+        int last = end;
+
+        // the same whitespace removed by String.trim()
+        while (first < last && line.charAt(first) <= ' ') {
+            first++;
+        }
+        while (last > first && line.charAt(last - 1) <= ' ') {
+            last--;
+        }
+
+        return interner == null ? line.substring(first, last) : interner.intern(line, first, last);
+    }
+
     /**
      * Removes an entry from the default section. If the entry does not exist the method returns
      * <code>false</code>.
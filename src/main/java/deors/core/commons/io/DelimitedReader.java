@@ -0,0 +1,468 @@
+package deors.core.commons.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import deors.core.commons.CommonsContext;
+import deors.core.commons.StringInterner;
+import deors.core.commons.StringToolkit;
+import deors.core.commons.TokenHandler;
+
+/**
+ * Streaming reader for delimited text, like CSV files, that reads one record at a time.
+ *
+ * <p>Each line in the source is a record, and the record fields are found with the same rules
+ * used by <code>StringToolkit.tokenize(String, String, char)</code>. Lines are terminated by a
+ * line feed, a carriage return or a carriage return followed by a line feed. A line terminator
+ * found inside a surrounded field is part of the field, so surrounded fields may span several
+ * lines.
+ *
+ * <p>The source is read in blocks into one buffer, which only grows if a single record does not
+ * fit in it, so sources of any size can be read with constant memory. The fields are passed to
+ * the <code>TokenHandler</code> as ranges in a view of the buffer, without creating any string.
+ *
+ * <p>Reader objects are not thread-safe.
+ *
+ * @see StringToolkit#tokenize(CharSequence, String, char, TokenHandler)
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DelimitedReader implements Closeable {
+
+    /**
+     * The source reader.
+     */
+    private final Reader reader;
+
+    /**
+     * The delimiters used to separate the fields.
+     */
+    private final String delimiters;
+
+    /**
+     * The surrounder character used to include delimiters and line terminators into a field.
+     */
+    private final char surrounder;
+
+    /**
+     * The buffer with the characters read from the source.
+     */
+    private char[] buffer;
+
+    /**
+     * The position in the buffer where the next record starts.
+     */
+    private int position;
+
+    /**
+     * The number of valid characters in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Whether the end of the source was reached.
+     */
+    private boolean endOfInput;
+
+    /**
+     * The position in the buffer where the record found by <code>findRecord()</code> ends.
+     */
+    private int recordEnd;
+
+    /**
+     * The position in the buffer after the line terminator of the record found by
+     * <code>findRecord()</code>.
+     */
+    private int nextPosition;
+
+    /**
+     * The number of records read.
+     */
+    private long recordCount;
+
+    /**
+     * The view of the current record passed to the token handler.
+     */
+    private final RecordView view = new RecordView();
+
+    /**
+     * Constructor that sets the source reader, the delimiters and the surrounder character, and
+     * uses the default buffer size.
+     *
+     * @param reader the source reader
+     * @param delimiters the delimiters used to separate the fields
+     * @param surrounder the surrounder character or <code>StringToolkit.NO_SURROUNDER</code>
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    public DelimitedReader(Reader reader, String delimiters, char surrounder) {
+
+        this(reader, delimiters, surrounder, CommonsContext.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor that sets the source reader, the delimiters, the surrounder character and the
+     * buffer size.
+     *
+     * @param reader the source reader
+     * @param delimiters the delimiters used to separate the fields
+     * @param surrounder the surrounder character or <code>StringToolkit.NO_SURROUNDER</code>
+     * @param bufferSize the initial buffer size
+     *
+     * @throws IllegalArgumentException the buffer size is not positive
+     */
+    public DelimitedReader(Reader reader, String delimiters, char surrounder, int bufferSize) {
+
+        super();
+
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("IOTK_ERR_INVALID_BUFFER_SIZE")); //$NON-NLS-1$
+        }
+
+        this.reader = reader;
+        this.delimiters = delimiters;
+        this.surrounder = surrounder;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Constructor that sets the source channel and the charset used to decode it, the
+     * delimiters and the surrounder character, and uses the default buffer size.
+     *
+     * @param channel the source channel
+     * @param charset the charset used to decode the channel contents
+     * @param delimiters the delimiters used to separate the fields
+     * @param surrounder the surrounder character or <code>StringToolkit.NO_SURROUNDER</code>
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    public DelimitedReader(ReadableByteChannel channel, Charset charset, String delimiters,
+                           char surrounder) {
+
+        this(Channels.newReader(channel, charset), delimiters, surrounder,
+            CommonsContext.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the number of records read.
+     *
+     * @return the number of records read
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Reads the next record and passes its fields to the given handler. The character sequence
+     * passed to the handler is a view of the record in the reader buffer and it is only valid
+     * until the handler returns.
+     *
+     * @param handler the handler that receives the record fields
+     *
+     * @return <code>true</code> if a record was read or <code>false</code> if the end of the
+     *         source was reached
+     *
+     * @throws IOException an I/O exception reading the source
+     */
+    public boolean readRecord(TokenHandler handler) throws IOException {
+
+        if (!findRecord()) {
+            return false;
+        }
+
+        view.set(buffer, position, recordEnd - position);
+        StringToolkit.tokenize(view, delimiters, surrounder, handler);
+
+        position = nextPosition;
+        recordCount++;
+
+        return true;
+    }
+
+    /**
+     * Reads the next record and returns its fields.
+     *
+     * @return a list that contains the record fields or <code>null</code> if the end of the
+     *         source was reached
+     *
+     * @throws IOException an I/O exception reading the source
+     */
+    public List<String> readRecord() throws IOException {
+
+        List<String> fields = new ArrayList<String>();
+
+        if (!readRecord((source, start, end) ->
+            fields.add(source.subSequence(start, end).toString()))) {
+            return null;
+        }
+
+        return fields;
+    }
+
+    /**
+     * Reads the next record and returns its fields, deduplicated with the given interner, so
+     * field values repeated across records share one single instance.
+     *
+     * @param interner the interner used to deduplicate the fields
+     *
+     * @return a list that contains the record fields or <code>null</code> if the end of the
+     *         source was reached
+     *
+     * @throws IOException an I/O exception reading the source
+     */
+    public List<String> readRecord(StringInterner interner) throws IOException {
+
+        List<String> fields = new ArrayList<String>();
+
+        if (!readRecord((source, start, end) -> fields.add(interner.intern(source, start, end)))) {
+            return null;
+        }
+
+        return fields;
+    }
+
+    /**
+     * Closes the source reader.
+     *
+     * @throws IOException an I/O exception closing the source
+     */
+    @Override
+    public void close() throws IOException {
+
+        reader.close();
+    }
+
+    /**
+     * Finds the end of the next record, reading more data from the source when needed. A line
+     * terminator ends the record unless it is found inside a surrounded field. The surrounded
+     * fields are tracked with the same rules used by the tokenizer: a field starting with the
+     * surrounder ends with the first item, a run of characters that are not delimiters or a
+     * single delimiter, ending with the surrounder.
+     *
+     * @return whether there is a record
+     *
+     * @throws IOException an I/O exception reading the source
+     */
+    private boolean findRecord() throws IOException {
+
+        if (position == limit && fill() == -1) {
+            return false;
+        }
+
+        boolean surrounding = surrounder != StringToolkit.NO_SURROUNDER;
+        boolean itemStart = true;
+        boolean surrounded = false;
+        int surroundedStart = -1;
+
+        int i = position;
+        while (true) {
+            if (i == limit) {
+                int oldPosition = position;
+                if (fill() == -1) {
+                    recordEnd = limit;
+                    nextPosition = limit;
+                    return true;
+                }
+                i -= oldPosition - position;
+                surroundedStart -= oldPosition - position;
+            }
+
+            char c = buffer[i];
+
+            if (delimiters.indexOf(c) != -1) {
+                if (surrounded && closesSurrounded(i, itemStart, surroundedStart)) {
+                    surrounded = false;
+                }
+                if (surrounded && c == surrounder) {
+                    surrounded = false;
+                }
+                itemStart = true;
+                i++;
+                continue;
+            }
+
+            if (c == '\n' || c == '\r') {
+                if (!surrounded || closesSurrounded(i, itemStart, surroundedStart)) {
+                    recordEnd = i;
+                    nextPosition = skipLineTerminator(i);
+                    return true;
+                }
+            } else if (surrounding && itemStart && !surrounded && c == surrounder) {
+                surrounded = true;
+                surroundedStart = i;
+            }
+
+            itemStart = false;
+            i++;
+        }
+    }
+
+    /**
+     * Checks whether the item ending in the given position closes the surrounded field.
+     *
+     * @param end the item end position
+     * @param itemStart whether there is no item in progress
+     * @param surroundedStart the position where the surrounded field starts
+     *
+     * @return whether the surrounded field is closed
+     */
+    private boolean closesSurrounded(int end, boolean itemStart, int surroundedStart) {
+
+        return !itemStart && buffer[end - 1] == surrounder && end - surroundedStart >= 2;
+    }
+
+    /**
+     * Skips the line terminator in the given position, reading more data from the source if
+     * needed to check for a carriage return followed by a line feed. The record end position
+     * is updated if the buffer is compacted.
+     *
+     * @param terminator the line terminator position
+     *
+     * @return the position after the line terminator
+     *
+     * @throws IOException an I/O exception reading the source
+     */
+    private int skipLineTerminator(int terminator) throws IOException {
+
+        int i = terminator;
+
+        if (buffer[i] == '\r') {
+            if (i + 1 == limit) {
+                int oldPosition = position;
+                fill();
+                i -= oldPosition - position;
+                recordEnd -= oldPosition - position;
+            }
+            if (i + 1 < limit && buffer[i + 1] == '\n') {
+                i++;
+            }
+        }
+
+        return i + 1;
+    }
+
+    /**
+     * Reads more data from the source. The current record is moved to the beginning of the
+     * buffer, and the buffer is grown if the record fills it.
+     *
+     * @return the number of characters read or <code>-1</code> if the end of the source was
+     *         reached
+     *
+     * @throws IOException an I/O exception reading the source
+     */
+    private int fill() throws IOException {
+
+        if (endOfInput) {
+            return -1;
+        }
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        if (limit == buffer.length) {
+            char[] newBuffer = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, limit);
+            buffer = newBuffer;
+        }
+
+        int charsRead = reader.read(buffer, limit, buffer.length - limit);
+        if (charsRead == -1) {
+            endOfInput = true;
+            return -1;
+        }
+
+        limit += charsRead;
+
+        return charsRead;
+    }
+
+    /**
+     * Character sequence view of a range of the reader buffer.
+     */
+    private static final class RecordView implements CharSequence {
+
+        /**
+         * The viewed buffer.
+         */
+        private char[] chars;
+
+        /**
+         * The view start position in the buffer.
+         */
+        private int offset;
+
+        /**
+         * The view length.
+         */
+        private int length;
+
+        /**
+         * Sets the viewed range.
+         *
+         * @param chars the buffer
+         * @param offset the range start position
+         * @param length the range length
+         */
+        void set(char[] chars, int offset, int length) {
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Returns the view length.
+         *
+         * @return the view length
+         */
+        @Override
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Returns the character in the given index.
+         *
+         * @param index the index
+         *
+         * @return the character
+         */
+        @Override
+        public char charAt(int index) {
+            return chars[offset + index];
+        }
+
+        /**
+         * Returns a string with the characters in the given range.
+         *
+         * @param start the range start index
+         * @param end the range end index
+         *
+         * @return a string with the characters in the range
+         */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, offset + start, end - start);
+        }
+
+        /**
+         * Returns a string with the characters in the view.
+         *
+         * @return a string with the characters in the view
+         */
+        @Override
+        public String toString() {
+            return new String(chars, offset, length);
+        }
+    }
+}
@@ -15,7 +15,15 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import deors.core.commons.CommonsContext;
@@ -38,6 +46,26 @@ public final class IOToolkit {
      */
     public static final boolean LEAVE_ON_EXIT = false;
 
+    /**
+     * The maximum number of bytes requested in each <code>transferFrom()</code> call.
+     */
+    private static final long MAX_TRANSFER_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * The maximum size of the byte arrays kept to be reused by each thread.
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The byte array used by each thread to copy streams.
+     */
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+
+    /**
+     * The direct buffer used by each thread to copy channels.
+     */
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = new ThreadLocal<ByteBuffer>();
+
     /**
      * Default constructor. This class is a toolkit and therefore it cannot be instantiated.
      */
@@ -46,7 +74,9 @@ public final class IOToolkit {
     }
 
     /**
-     * Compares length and data from both byte arrays.
+     * Compares length and data from both byte arrays. The arrays are compared with
+     * <code>java.util.Arrays.equals()</code>, which the JVM replaces with a vectorized
+     * implementation for the running processor.
      *
      * @param array1 the first array
      * @param array2 the second array
@@ -55,17 +85,7 @@ public final class IOToolkit {
      */
     public static boolean compareArrays(byte[] array1, byte[] array2) {
 
-        if (array1.length != array2.length) {
-            return false;
-        }
-
-        for (int i = 0; i < array1.length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
-        }
-
-        return true;
+        return array1.length == array2.length && Arrays.equals(array1, array2);
     }
 
     /**
@@ -77,16 +97,32 @@ public final class IOToolkit {
      * @param length the number of bytes to be compared
      *
      * @return whether both arrays contain the same data
+     *
+     * @see IOToolkit#compareArrays(byte[], byte[])
      */
     public static boolean compareArrays(byte[] array1, byte[] array2, int off, int length) {
 
-        for (int i = off; i < off + length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
+        if (length <= 0) {
+            return true;
         }
 
-        return true;
+        return Arrays.equals(array1, off, off + length, array2, off, off + length);
+    }
+
+    /**
+     * Returns the index of the first byte that is different in both byte arrays. The arrays are
+     * compared with <code>java.util.Arrays.mismatch()</code>, which the JVM replaces with a
+     * vectorized implementation for the running processor.
+     *
+     * @param array1 the first array
+     * @param array2 the second array
+     *
+     * @return the index of the first different byte, the length of the shorter array if it is a
+     *         prefix of the other, or <code>-1</code> if both arrays are equal
+     */
+    public static int mismatch(byte[] array1, byte[] array2) {
+
+        return Arrays.mismatch(array1, array2);
     }
 
     /**
@@ -168,37 +204,61 @@ public final class IOToolkit {
     }
 
     /**
-     * Writes data from the source stream to the target stream using the given buffer size.
+     * Writes data from the source stream to the target stream using the given buffer size. Both
+     * streams are closed when the copy ends.
+     *
+     * <p>If the source is a <code>FileInputStream</code> and the target is a
+     * <code>FileOutputStream</code>, the data is copied between their file channels with
+     * <code>copyChannel()</code>, which lets the operating system copy the data without moving
+     * it through the JVM. Otherwise the data is copied through a buffer reused by the calling
+     * thread.
      *
      * @param is the source stream
      * @param os the target stream
      * @param bufferSize the buffer size
      *
      * @throws IOException an I/O exception
+     *
+     * @see IOToolkit#copyChannel(ReadableByteChannel, WritableByteChannel)
      */
     public static void copyStream(InputStream is, OutputStream os, int bufferSize)
         throws IOException {
 
+        if (is != null && is.getClass() == FileInputStream.class
+            && os != null && os.getClass() == FileOutputStream.class) {
+            try (FileInputStream fis = (FileInputStream) is;
+                 FileOutputStream fos = (FileOutputStream) os) {
+                copyChannel(fis.getChannel(), fos.getChannel());
+            }
+            return;
+        }
+
         try (BufferedInputStream bis = new BufferedInputStream(is, bufferSize);
              BufferedOutputStream bos = new BufferedOutputStream(os, bufferSize)) {
 
             int bytesRead = -1;
-            byte[] buffer = new byte[bufferSize];
+            byte[] buffer = acquireBuffer(bufferSize);
 
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                bos.write(buffer, 0, bytesRead);
+            try {
+                while ((bytesRead = bis.read(buffer, 0, bufferSize)) != -1) {
+                    bos.write(buffer, 0, bytesRead);
+                }
+            } finally {
+                releaseBuffer(buffer);
             }
         }
     }
 
     /**
      * Writes data from the source stream to the target stream using the default buffer size.
+     * Both streams are closed when the copy ends.
      *
      * @param is the source stream
      * @param os the target stream
      *
      * @throws IOException an I/O exception
      *
+     * @see IOToolkit#copyStream(InputStream, OutputStream, int)
      * @see CommonsContext#DEFAULT_BUFFER_SIZE
      */
     public static void copyStream(InputStream is, OutputStream os) throws IOException {
@@ -206,6 +266,186 @@ public final class IOToolkit {
         copyStream(is, os, CommonsContext.DEFAULT_BUFFER_SIZE);
     }
 
+    /**
+     * Writes data from the source channel to the target channel, from the current position of
+     * the source until its end. The channels are not closed.
+     *
+     * <p>If the source is a <code>FileChannel</code> the data is copied with
+     * <code>transferTo()</code>, and if only the target is a <code>FileChannel</code> with
+     * <code>transferFrom()</code>, so the operating system can copy the data directly between
+     * the files, or between the file and the socket, without moving it through the JVM. Any
+     * data not copied that way, like the data appended to the source while it is copied or the
+     * contents of special files that report a size of zero, and the data copied between any
+     * other channels, is copied through a direct buffer of the default buffer size reused by
+     * the calling thread. The channels are expected to be in blocking mode.
+     *
+     * @param source the source channel
+     * @param target the target channel
+     *
+     * @return the number of bytes copied
+     *
+     * @throws IOException an I/O exception
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    public static long copyChannel(ReadableByteChannel source, WritableByteChannel target)
+        throws IOException {
+
+        long count = 0;
+
+        if (source instanceof FileChannel) {
+            FileChannel fileSource = (FileChannel) source;
+            long position = fileSource.position();
+            long size = fileSource.size();
+            long transferred;
+            while (position + count < size
+                && (transferred = fileSource.transferTo(position + count,
+                    size - position - count, target)) > 0) {
+                count += transferred;
+            }
+            fileSource.position(position + count);
+        } else if (target instanceof FileChannel) {
+            FileChannel fileTarget = (FileChannel) target;
+            long position = fileTarget.position();
+            long transferred;
+            while ((transferred = fileTarget.transferFrom(source, position + count,
+                MAX_TRANSFER_SIZE)) > 0) {
+                count += transferred;
+            }
+            fileTarget.position(position + count);
+        }
+
+        ByteBuffer buffer = acquireDirectBuffer();
+
+        try {
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    count += target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            releaseDirectBuffer(buffer);
+        }
+
+        return count;
+    }
+
+    /**
+     * Copies a file. The target file is created, or truncated if it exists, and the data is
+     * copied with <code>copyChannel()</code>. If the target is the source file itself, the file
+     * is not modified.
+     *
+     * @param source the source file
+     * @param target the target file
+     *
+     * @return the number of bytes copied, or the file size if the target is the source file
+     *
+     * @throws IOException an I/O exception
+     *
+     * @see IOToolkit#copyChannel(ReadableByteChannel, WritableByteChannel)
+     */
+    public static long copyFile(Path source, Path target) throws IOException {
+
+        // opening the target would truncate the source before it is read
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            return Files.size(source);
+        }
+
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return copyChannel(sourceChannel, targetChannel);
+        }
+    }
+
+    /**
+     * Copies a file. The target file is created, or truncated if it exists. If the target is
+     * the source file itself, the file is not modified.
+     *
+     * @param source the source file
+     * @param target the target file
+     *
+     * @return the number of bytes copied, or the file size if the target is the source file
+     *
+     * @throws IOException an I/O exception
+     *
+     * @see IOToolkit#copyFile(Path, Path)
+     */
+    public static long copyFile(File source, File target) throws IOException {
+
+        return copyFile(source.toPath(), target.toPath());
+    }
+
+    /**
+     * Returns a byte array of at least the given size, reusing the array released by the
+     * calling thread if it is large enough. The array is taken from the thread until it is
+     * released, so nested copies in the same thread do not share it.
+     *
+     * @param size the minimum array size
+     *
+     * @return the byte array
+     */
+    private static byte[] acquireBuffer(int size) {
+
+        byte[] buffer = BUFFER.get();
+
+        if (buffer == null || buffer.length < size) {
+            return new byte[size];
+        }
+
+        BUFFER.remove();
+
+        return buffer;
+    }
+
+    /**
+     * Releases a byte array to be reused by the calling thread, unless it is too large to be
+     * kept.
+     *
+     * @param buffer the byte array
+     */
+    private static void releaseBuffer(byte[] buffer) {
+
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            BUFFER.set(buffer);
+        }
+    }
+
+    /**
+     * Returns a direct buffer of the default buffer size, reusing the buffer released by the
+     * calling thread if there is one. The buffer is taken from the thread until it is
+     * released, so nested copies in the same thread do not share it.
+     *
+     * @return the empty direct buffer
+     *
+     * @see CommonsContext#DEFAULT_BUFFER_SIZE
+     */
+    private static ByteBuffer acquireDirectBuffer() {
+
+        ByteBuffer buffer = DIRECT_BUFFER.get();
+
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(CommonsContext.DEFAULT_BUFFER_SIZE);
+        }
+
+        DIRECT_BUFFER.remove();
+        buffer.clear();
+
+        return buffer;
+    }
+
+    /**
+     * Releases a direct buffer to be reused by the calling thread.
+     *
+     * @param buffer the direct buffer
+     */
+    private static void releaseDirectBuffer(ByteBuffer buffer) {
+
+        DIRECT_BUFFER.set(buffer);
+    }
+
     /**
      * Creates a temporary file.
      *
@@ -23,8 +23,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import deors.core.commons.CommonsContext;
-import deors.core.commons.template.Template;
+import deors.core.commons.template.CompiledTemplate;
+import deors.core.commons.template.TemplateCache;
 import deors.core.commons.template.TemplateException;
+import deors.core.commons.template.TemplateValueProvider;
 
 /**
  * Servlet used to initialize and manager a task scheduler using HTTP request.
@@ -155,6 +157,11 @@ public final class SchedulerServlet
      */
     private static final String PARAM_TASK_STOP_TIME = "taskStopTime"; //$NON-NLS-1$
 
+    /**
+     * Token used in templates to check whether the task is executing or starting.
+     */
+    private static final String TEMPLATE_TASK_ACTIVE = "TASK_ACTIVE"; //$NON-NLS-1$
+
     /**
      * Token used in templates to print the task class name.
      */
@@ -180,6 +187,11 @@ public final class SchedulerServlet
      */
     private static final String TEMPLATE_TASK_STATE = "TASK_STATE"; //$NON-NLS-1$
 
+    /**
+     * Token used in templates to repeat a block for each task.
+     */
+    private static final String TEMPLATE_TASKS_LIST = "TASKS"; //$NON-NLS-1$
+
     /**
      * Token used in templates to print an action.
      */
@@ -205,6 +217,11 @@ public final class SchedulerServlet
      */
     private static final String TEMPLATE_MESSAGE = "MESSAGE"; //$NON-NLS-1$
 
+    /**
+     * The compiled templates, shared by all servlet instances and request threads.
+     */
+    private static final TemplateCache TEMPLATE_CACHE = new TemplateCache();
+
     /**
      * The logger.
      */
@@ -364,54 +381,14 @@ public final class SchedulerServlet
         getConfigurationProperty("sched.templateCommand3", "/deors/core/commons/schedulertemplates/scheduler-command-3.tmpl"); //$NON-NLS-1$ //$NON-NLS-2$
 
     /**
-     * The scheduler task header template path. Configurable in the properties file using the key
-     * <code>sched.templateTaskHeader</code>. Default value is
-     * <code>/deors/core/commons/schedulertemplates/scheduler-task-header.tmpl</code>.
-     *
-     * @see CommonsContext#getConfigurationProperty(String, String)
-     */
-    private static final String TEMPLATE_TASK_HEADER =
-        getConfigurationProperty("sched.templateTaskHeader", "/deors/core/commons/schedulertemplates/scheduler-task-header.tmpl"); //$NON-NLS-1$ //$NON-NLS-2$
-
-    /**
-     * The scheduler task footer template path. Configurable in the properties file using the key
-     * <code>sched.templateTaskFooter</code>. Default value is
-     * <code>/deors/core/commons/schedulertemplates/scheduler-task-footer.tmpl</code>.
-     *
-     * @see CommonsContext#getConfigurationProperty(String, String)
-     */
-    private static final String TEMPLATE_TASK_FOOTER =
-        getConfigurationProperty("sched.templateTaskFooter", "/deors/core/commons/schedulertemplates/scheduler-task-footer.tmpl"); //$NON-NLS-1$ //$NON-NLS-2$
-
-    /**
-     * The scheduler task item 1 template path. Configurable in the properties file using the key
-     * <code>sched.templateTaskItem1</code>. Default value is
-     * <code>/deors/core/commons/schedulertemplates/scheduler-task-item-1.tmpl</code>.
-     *
-     * @see CommonsContext#getConfigurationProperty(String, String)
-     */
-    private static final String TEMPLATE_TASK_ITEM_1 =
-        getConfigurationProperty("sched.templateTaskItem1", "/deors/core/commons/schedulertemplates/scheduler-task-item-1.tmpl"); //$NON-NLS-1$ //$NON-NLS-2$
-
-    /**
-     * The scheduler task item 2 template path. Configurable in the properties file using the key
-     * <code>sched.templateTaskItem2</code>. Default value is
-     * <code>/deors/core/commons/schedulertemplates/scheduler-task-item-2.tmpl</code>.
-     *
-     * @see CommonsContext#getConfigurationProperty(String, String)
-     */
-    private static final String TEMPLATE_TASK_ITEM_2 =
-        getConfigurationProperty("sched.templateTaskItem2", "/deors/core/commons/schedulertemplates/scheduler-task-item-2.tmpl"); //$NON-NLS-1$ //$NON-NLS-2$
-
-    /**
-     * The scheduler task item 3 template path. Configurable in the properties file using the key
-     * <code>sched.templateTaskItem3</code>. Default value is
-     * <code>/deors/core/commons/schedulertemplates/scheduler-task-item-3.tmpl</code>.
+     * The scheduler tasks template path. Configurable in the properties file using the key
+     * <code>sched.templateTasks</code>. Default value is
+     * <code>/deors/core/commons/schedulertemplates/scheduler-tasks.tmpl</code>.
      *
      * @see CommonsContext#getConfigurationProperty(String, String)
      */
-    private static final String TEMPLATE_TASK_ITEM_3 =
-        getConfigurationProperty("sched.templateTaskItem3", "/deors/core/commons/schedulertemplates/scheduler-task-item-3.tmpl"); //$NON-NLS-1$ //$NON-NLS-2$
+    private static final String TEMPLATE_TASKS =
+        getConfigurationProperty("sched.templateTasks", "/deors/core/commons/schedulertemplates/scheduler-tasks.tmpl"); //$NON-NLS-1$ //$NON-NLS-2$
 
     /**
      * Default constructor.
@@ -935,9 +912,9 @@ public final class SchedulerServlet
             replacements.put(TEMPLATE_DATE_TIME, dateFormatter.format(Calendar.getInstance().getTime()));
 
             // page header
-            Template templateHeader =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_HEADER));
-            templateHeader.processTemplate(null, out);
+            CompiledTemplate templateHeader =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_HEADER);
+            templateHeader.process(null, out);
 
             // messages
             createSectionMessages(messages, replacements, out);
@@ -948,38 +925,38 @@ public final class SchedulerServlet
             // command center header
             if (initialized) {
                 // process the scheduler-command-1 template
-                Template templateCommand1 =
-                    new Template(this.getClass().getResourceAsStream(TEMPLATE_COMMAND_1));
-                templateCommand1.processTemplate(replacements, out);
+                CompiledTemplate templateCommand1 =
+                    TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_COMMAND_1);
+                templateCommand1.process(replacements, out);
             } else {
                 // process the scheduler-command-2 template
-                Template templateCommand2 =
-                    new Template(this.getClass().getResourceAsStream(TEMPLATE_COMMAND_2));
-                templateCommand2.processTemplate(replacements, out);
+                CompiledTemplate templateCommand2 =
+                    TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_COMMAND_2);
+                templateCommand2.process(replacements, out);
             }
 
             // help
             if (help) {
                 // process the scheduler-help template
-                Template templateHelp =
-                    new Template(this.getClass().getResourceAsStream(TEMPLATE_HELP));
-                templateHelp.processTemplate(null, out);
+                CompiledTemplate templateHelp =
+                    TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_HELP);
+                templateHelp.process(null, out);
             }
 
             if (initialized && sch != null) {
                 // command center add
-                Template templateCommand3 =
-                    new Template(this.getClass().getResourceAsStream(TEMPLATE_COMMAND_3));
-                templateCommand3.processTemplate(replacements, out);
+                CompiledTemplate templateCommand3 =
+                    TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_COMMAND_3);
+                templateCommand3.process(replacements, out);
 
                 // tasks
                 createSectionTasks(replacements, out);
             }
 
             // page footer
-            Template templateFooter =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_FOOTER));
-            templateFooter.processTemplate(null, out);
+            CompiledTemplate templateFooter =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_FOOTER);
+            templateFooter.process(null, out);
 
         } catch (TemplateException te) {
             throw new IOException(te.getMessage(), te);
@@ -996,10 +973,11 @@ public final class SchedulerServlet
      * @param replacements the replacements map
      * @param out the output writer
      *
-     * @throws TemplateException an error processing a template
+     * @throws TemplateException an error loading a template
+     * @throws IOException an I/O exception writing a template
      */
     private void createSectionMessages(List<String> messages, Map<String, String> replacements, PrintWriter out)
-        throws TemplateException {
+        throws TemplateException, IOException {
 
         if (!initialized) {
             messages.add(getMessage("SCHED_SERVLET_LOG_NOT_RUNNING")); //$NON-NLS-1$
@@ -1007,23 +985,23 @@ public final class SchedulerServlet
 
         if (!messages.isEmpty()) {
             // process the scheduler-message-header template
-            Template templateMessageHeader =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_MESSAGE_HEADER));
-            templateMessageHeader.processTemplate(null, out);
+            CompiledTemplate templateMessageHeader =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_MESSAGE_HEADER);
+            templateMessageHeader.process(null, out);
 
             // each message uses the scheduler-message-item template
-            Template templateMessageItem =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_MESSAGE_ITEM));
+            CompiledTemplate templateMessageItem =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_MESSAGE_ITEM);
 
             for (String message : messages) {
                 replacements.put(TEMPLATE_MESSAGE, message);
-                templateMessageItem.processTemplate(replacements, out);
+                templateMessageItem.process(replacements, out);
             }
 
             // process the scheduler-message-footer template
-            Template templateMessageFooter =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_MESSAGE_FOOTER));
-            templateMessageFooter.processTemplate(null, out);
+            CompiledTemplate templateMessageFooter =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_MESSAGE_FOOTER);
+            templateMessageFooter.process(null, out);
         }
     }
 
@@ -1034,178 +1012,160 @@ public final class SchedulerServlet
      * @param replacements the replacements map
      * @param out the output writer
      *
-     * @throws TemplateException an error processing a template
+     * @throws TemplateException an error loading a template
+     * @throws IOException an I/O exception writing a template
      */
     private void createSectionErrors(List<String> errors, Map<String, String> replacements, PrintWriter out)
-        throws TemplateException {
+        throws TemplateException, IOException {
 
         if (!errors.isEmpty()) {
             // process the scheduler-error-header template
-            Template templateErrorHeader =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_ERROR_HEADER));
-            templateErrorHeader.processTemplate(null, out);
+            CompiledTemplate templateErrorHeader =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_ERROR_HEADER);
+            templateErrorHeader.process(null, out);
 
             // each error uses the scheduler-error-item template
-            Template templateErrorItem =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_ERROR_ITEM));
+            CompiledTemplate templateErrorItem =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_ERROR_ITEM);
 
             for (String error : errors) {
                 replacements.put(TEMPLATE_ERROR, error);
-                templateErrorItem.processTemplate(replacements, out);
+                templateErrorItem.process(replacements, out);
             }
 
             // process the scheduler-error-footer template
-            Template templateErrorFooter =
-                new Template(this.getClass().getResourceAsStream(TEMPLATE_ERROR_FOOTER));
-            templateErrorFooter.processTemplate(null, out);
+            CompiledTemplate templateErrorFooter =
+                TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_ERROR_FOOTER);
+            templateErrorFooter.process(null, out);
         }
     }
 
     /**
-     * Creates the tasks section.
+     * Creates the tasks section. The whole section, with one item per task, is processed in one
+     * pass using the scheduler-tasks template.
      *
      * @param replacements the replacements map
      * @param out the output writer
      *
-     * @throws TemplateException an error processing a template
+     * @throws TemplateException an error loading a template
+     * @throws IOException an I/O exception writing a template
      */
     private void createSectionTasks(Map<String, String> replacements, PrintWriter out)
-        throws TemplateException {
+        throws TemplateException, IOException {
 
-        // process the scheduler-task-header template
-        Template templateTaskHeader =
-            new Template(this.getClass().getResourceAsStream(TEMPLATE_TASK_HEADER));
-        templateTaskHeader.processTemplate(replacements, out);
+        List<TemplateValueProvider> taskValues = new ArrayList<TemplateValueProvider>();
 
-        // each task uses the scheduler-task-item template
         if (initialized && sch != null) {
-            List<SchedulerTask> tasks = sch.getTasks();
-            if (!tasks.isEmpty()) {
-                Template templateTaskItem1 =
-                    new Template(this.getClass().getResourceAsStream(TEMPLATE_TASK_ITEM_1));
-                Template templateTaskItem2 =
-                    new Template(this.getClass().getResourceAsStream(TEMPLATE_TASK_ITEM_2));
-                Template templateTaskItem3 =
-                    new Template(this.getClass().getResourceAsStream(TEMPLATE_TASK_ITEM_3));
-
-                int i = 0;
-                for (SchedulerTask task : tasks) {
-                    i++;
-                    createSectionTask(task, i,
-                        templateTaskItem1, templateTaskItem2, templateTaskItem3,
-                        replacements, out);
-                }
+            int i = 0;
+            for (SchedulerTask task : sch.getTasks()) {
+                i++;
+                taskValues.add(createTaskValues(task, i));
             }
         }
 
-        // process the scheduler-task-footer template
-        Template templateTaskFooter =
-            new Template(this.getClass().getResourceAsStream(TEMPLATE_TASK_FOOTER));
-        templateTaskFooter.processTemplate(null, out);
+        // process the scheduler-tasks template
+        CompiledTemplate templateTasks =
+            TEMPLATE_CACHE.getTemplate(SchedulerServlet.class, TEMPLATE_TASKS);
+        templateTasks.processValues(new TemplateValueProvider() {
+
+            @Override
+            public String getValue(String name) {
+                return replacements.get(name);
+            }
+
+            @Override
+            public Iterable<?> getItems(String name) {
+                return TEMPLATE_TASKS_LIST.equals(name) ? taskValues : null;
+            }
+        }, out);
     }
 
     /**
-     * Creates a task section.
+     * Creates the value provider for a task item in the tasks section. The values are computed
+     * only when used by the template.
      *
      * @param task the task information
      * @param i the task index
-     * @param templateTaskItem1 template used to create the section
-     * @param templateTaskItem2 template used to create the section
-     * @param templateTaskItem3 template used to create the section
-     * @param replacements the replacements map
-     * @param out the output writer
      *
-     * @throws TemplateException an error processing a template
-     */
-    private void createSectionTask(SchedulerTask task, int i, Template templateTaskItem1,
-                                   Template templateTaskItem2, Template templateTaskItem3,
-                                   Map<String, String> replacements, PrintWriter out)
-        throws TemplateException {
-
-        replacements.put(TEMPLATE_INDEX, Integer.toString(i));
-        replacements.put(TEMPLATE_TASK_NAME, task.getTaskName());
-        replacements.put(TEMPLATE_TASK_DESCRIPTION, task.getTaskDescription());
-        replacements.put(TEMPLATE_TASK_CLASS_NAME, task.getClass().getName());
-
-        // task state
-        prepareTaskState(task, replacements);
-
-        // task info
-        prepareTaskInformation(task, replacements);
-
-        // task header
-        templateTaskItem1.processTemplate(replacements, out);
-
-        if (task.isExecuting() || task.isStarting()) {
-            // adds stop and kill buttons
-            templateTaskItem3.processTemplate(replacements, out);
-        } else {
-            // adds start and schedule buttons
-            templateTaskItem2.processTemplate(replacements, out);
-        }
+     * @return the task value provider
+     */
+    private TemplateValueProvider createTaskValues(SchedulerTask task, int i) {
+
+        return name -> {
+            switch (name) {
+                case TEMPLATE_INDEX:
+                    return Integer.toString(i);
+                case TEMPLATE_TASK_NAME:
+                    return task.getTaskName();
+                case TEMPLATE_TASK_DESCRIPTION:
+                    return task.getTaskDescription();
+                case TEMPLATE_TASK_CLASS_NAME:
+                    return task.getClass().getName();
+                case TEMPLATE_TASK_STATE:
+                    return getTaskState(task);
+                case TEMPLATE_TASK_INFO:
+                    return getTaskInformation(task);
+                case TEMPLATE_TASK_ACTIVE:
+                    return Boolean.toString(task.isExecuting() || task.isStarting());
+                default:
+                    return null;
+            }
+        };
     }
 
     /**
-     * Prepares the task state.
+     * Returns the task state.
      *
      * @param task the task information
-     * @param replacements the replacements map
+     *
+     * @return the task state message
      */
-    private void prepareTaskState(SchedulerTask task, Map<String, String> replacements) {
+    private String getTaskState(SchedulerTask task) {
 
         if (task.isStarting()) {
-            replacements.put(TEMPLATE_TASK_STATE,
-                getMessage("SCHED_SERVLET_STATE_STARTING")); //$NON-NLS-1$
+            return getMessage("SCHED_SERVLET_STATE_STARTING"); //$NON-NLS-1$
         } else if (task.isStopping()) {
-            replacements.put(TEMPLATE_TASK_STATE,
-                getMessage("SCHED_SERVLET_STATE_STOPPING")); //$NON-NLS-1$
+            return getMessage("SCHED_SERVLET_STATE_STOPPING"); //$NON-NLS-1$
         } else if (task.isExecuting()) {
             if (task.taskThread == null) {
-                replacements.put(TEMPLATE_TASK_STATE,
-                    getMessage("SCHED_SERVLET_STATE_THREAD_NULL")); //$NON-NLS-1$
+                return getMessage("SCHED_SERVLET_STATE_THREAD_NULL"); //$NON-NLS-1$
             } else {
-                replacements.put(TEMPLATE_TASK_STATE,
-                    getMessage("SCHED_SERVLET_STATE_RUNNING", task.taskThread.toString())); //$NON-NLS-1$
+                return getMessage("SCHED_SERVLET_STATE_RUNNING", task.taskThread.toString()); //$NON-NLS-1$
             }
         } else {
-            replacements.put(TEMPLATE_TASK_STATE,
-                getMessage("SCHED_SERVLET_STATE_IDLE")); //$NON-NLS-1$
+            return getMessage("SCHED_SERVLET_STATE_IDLE"); //$NON-NLS-1$
         }
     }
 
     /**
-     * Prepares the task information.
+     * Returns the task information.
      *
      * @param task the task information
-     * @param replacements the replacements map
+     *
+     * @return the task information message
      */
-    private void prepareTaskInformation(SchedulerTask task, Map<String, String> replacements) {
+    private String getTaskInformation(SchedulerTask task) {
 
         if (task.isDaemonTask()) {
             if (task.isDaemonExecuted()) {
-                replacements.put(TEMPLATE_TASK_INFO,
-                    getMessage("SCHED_SERVLET_INFO_DAEMON_EXECUTED")); //$NON-NLS-1$
+                return getMessage("SCHED_SERVLET_INFO_DAEMON_EXECUTED"); //$NON-NLS-1$
             } else {
-                replacements.put(TEMPLATE_TASK_INFO,
-                    getMessage("SCHED_SERVLET_INFO_DAEMON_IDLE")); //$NON-NLS-1$
+                return getMessage("SCHED_SERVLET_INFO_DAEMON_IDLE"); //$NON-NLS-1$
             }
         } else if (task.getTaskNextStartTime() != null
                    && task.getTaskNextStopTime() != null) {
-            replacements.put(TEMPLATE_TASK_INFO,
-                getMessage(
-                    "SCHED_SERVLET_INFO_SCHEDULED", //$NON-NLS-1$
-                    dateFormatter.format(task.getTaskNextStartTime().getTime()),
-                    dateFormatter.format(task.getTaskNextStopTime().getTime())));
+            return getMessage(
+                "SCHED_SERVLET_INFO_SCHEDULED", //$NON-NLS-1$
+                dateFormatter.format(task.getTaskNextStartTime().getTime()),
+                dateFormatter.format(task.getTaskNextStopTime().getTime()));
         } else if (task.getTaskStartTime() != null
                    && task.getTaskStopTime() != null) {
-            replacements.put(TEMPLATE_TASK_INFO,
-                getMessage(
-                    "SCHED_SERVLET_INFO_SCHEDULED", //$NON-NLS-1$
-                    dateFormatter.format(task.getTaskStartTime().getTime()),
-                    dateFormatter.format(task.getTaskStopTime().getTime())));
+            return getMessage(
+                "SCHED_SERVLET_INFO_SCHEDULED", //$NON-NLS-1$
+                dateFormatter.format(task.getTaskStartTime().getTime()),
+                dateFormatter.format(task.getTaskStopTime().getTime()));
         } else {
-            replacements.put(TEMPLATE_TASK_INFO,
-                getMessage("SCHED_SERVLET_INFO_NOT_AVAILABLE")); //$NON-NLS-1$
+            return getMessage("SCHED_SERVLET_INFO_NOT_AVAILABLE"); //$NON-NLS-1$
         }
     }
 
@@ -0,0 +1,1106 @@
+package deors.core.commons.template;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import deors.core.commons.CommonsContext;
+import deors.core.commons.StringToolkit;
+
+/**
+ * Compiled representation of a template.
+ *
+ * <p>The template contents are scanned only once, when compiled, and split into a sequence of
+ * segments: literal text, replacement slots, line ends and block directives. Processing the
+ * template is then a single linear pass over the segments, appending literals as they are and
+ * looking up the replacement for each slot.
+ *
+ * <p>The template text is kept in one single string and the segments are stored as offsets in
+ * that string. Each distinct token name is stored once, and slots refer to it by index, so
+ * replacement values are requested at most once per token each time the template is processed.
+ *
+ * <p>Two kinds of blocks are supported:
+ *
+ * <ol>
+ * <li><code>[#list <i>name</i>]...[/list]</code> repeats the block contents once for each item
+ * returned by the value provider method <code>getItems()</code>. Inside the block, tokens are
+ * first looked up in the current item, and then in the enclosing scopes. The token
+ * <code>[.]</code> is replaced with the current item itself.</li>
+ *
+ * <li><code>[#if <i>name</i>]...[#else]...[/if]</code> processes the first part of the block if
+ * the condition is true, and the optional second part otherwise. The condition is true if the
+ * value provider returns a non-empty collection of items for the name or, if no items are
+ * returned, a value that is not empty and not <code>false</code>.</li>
+ * </ol>
+ *
+ * <p>A line with only a block directive and white space does not produce any output. Block
+ * directives that do not match an open block are processed as ordinary tokens, and blocks not
+ * closed are closed at the end of the template.
+ *
+ * <p>The block jump positions are resolved when the template is compiled, so skipping a block
+ * or repeating it does not search again for the block end.
+ *
+ * <p>Replacement values may be escaped for HTML or XML while the template is processed. The
+ * escaped characters are written directly to the output, so values do not need to be formatted
+ * before they are passed to the template. Literal text and tokens without replacement are never
+ * escaped.
+ *
+ * <p>Compiled templates are immutable and can be safely shared and processed concurrently by
+ * any number of threads.
+ *
+ * @see TemplateCache
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class CompiledTemplate {
+
+    /**
+     * The template tag start character.
+     */
+    static final char TEMPLATE_TAG_START = '[';
+
+    /**
+     * The template tag end character.
+     */
+    static final char TEMPLATE_TAG_END = ']';
+
+    /**
+     * The line separator written at the end of each line when the template is processed into
+     * an output target.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * The maximum capacity of a batch buffer kept for reuse by its thread. Larger buffers are
+     * discarded after use.
+     */
+    private static final int BATCH_BUFFER_MAX_CAPACITY = 1 << 20;
+
+    /**
+     * The batch buffers, one per thread, reused for each record processed by the thread.
+     */
+    private static final ThreadLocal<StringBuilder> BATCH_BUFFER = new ThreadLocal<StringBuilder>();
+
+    /**
+     * The list block start directive.
+     */
+    private static final String DIRECTIVE_LIST = "#list "; //$NON-NLS-1$
+
+    /**
+     * The list block end directive.
+     */
+    private static final String DIRECTIVE_LIST_END = "/list"; //$NON-NLS-1$
+
+    /**
+     * The conditional block start directive.
+     */
+    private static final String DIRECTIVE_IF = "#if "; //$NON-NLS-1$
+
+    /**
+     * The conditional block alternative directive.
+     */
+    private static final String DIRECTIVE_ELSE = "#else"; //$NON-NLS-1$
+
+    /**
+     * The conditional block end directive.
+     */
+    private static final String DIRECTIVE_IF_END = "/if"; //$NON-NLS-1$
+
+    /**
+     * The token name used to refer to the current item in a list block.
+     */
+    private static final String CURRENT_ITEM = "."; //$NON-NLS-1$
+
+    /**
+     * The value that makes a condition false.
+     */
+    private static final String FALSE = "false"; //$NON-NLS-1$
+
+    /**
+     * Segment type for literal text.
+     */
+    private static final int SEGMENT_LITERAL = 0;
+
+    /**
+     * Segment type for a replacement slot.
+     */
+    private static final int SEGMENT_SLOT = 1;
+
+    /**
+     * Segment type for a line end.
+     */
+    private static final int SEGMENT_LINE_END = 2;
+
+    /**
+     * Segment type for a list block start.
+     */
+    private static final int SEGMENT_LIST = 3;
+
+    /**
+     * Segment type for a list block end.
+     */
+    private static final int SEGMENT_LIST_END = 4;
+
+    /**
+     * Segment type for a conditional block start.
+     */
+    private static final int SEGMENT_IF = 5;
+
+    /**
+     * Segment type for a conditional block alternative.
+     */
+    private static final int SEGMENT_ELSE = 6;
+
+    /**
+     * Segment type for a conditional block end.
+     */
+    private static final int SEGMENT_IF_END = 7;
+
+    /**
+     * The template text.
+     */
+    private final String text;
+
+    /**
+     * The segment types.
+     */
+    private final int[] types;
+
+    /**
+     * The segment start offsets in the template text. For slots, the offset of the tag start
+     * character.
+     */
+    private final int[] starts;
+
+    /**
+     * The segment end offsets in the template text. For slots, the offset after the tag end
+     * character.
+     */
+    private final int[] ends;
+
+    /**
+     * The token name indexes for slots and block starts and <code>-1</code> for other segments.
+     */
+    private final int[] slots;
+
+    /**
+     * The jump positions for blocks: for list starts, the matching list end; for conditional
+     * starts, the matching alternative or end; for alternatives, the matching end; and for list
+     * ends, the matching list start.
+     */
+    private final int[] jumps;
+
+    /**
+     * The distinct token names in the template.
+     */
+    private final String[] names;
+
+    /**
+     * The number of lines in the template.
+     */
+    private final int lineCount;
+
+    /**
+     * The length of the literal text in the template, used to size the output buffers.
+     */
+    private final int literalLength;
+
+    /**
+     * The escape mode applied to the replacement values.
+     */
+    private final int escapeMode;
+
+    /**
+     * Constructor used by the compiler.
+     *
+     * @param text the template text
+     * @param types the segment types
+     * @param starts the segment start offsets
+     * @param ends the segment end offsets
+     * @param slots the token name indexes
+     * @param jumps the block jump positions
+     * @param names the distinct token names
+     * @param lineCount the number of lines
+     * @param literalLength the length of the literal text
+     * @param escapeMode the escape mode applied to the replacement values
+     */
+    private CompiledTemplate(String text, int[] types, int[] starts, int[] ends, int[] slots,
+                             int[] jumps, String[] names, int lineCount, int literalLength,
+                             int escapeMode) {
+
+        super();
+
+        this.text = text;
+        this.types = types;
+        this.starts = starts;
+        this.ends = ends;
+        this.slots = slots;
+        this.jumps = jumps;
+        this.names = names;
+        this.lineCount = lineCount;
+        this.literalLength = literalLength;
+        this.escapeMode = escapeMode;
+    }
+
+    /**
+     * Compiles the given template contents. Lines are terminated by a line feed, a carriage
+     * return or a carriage return followed by a line feed, as in
+     * <code>java.io.BufferedReader.readLine()</code>.
+     *
+     * @param contents the template contents
+     *
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(CharSequence contents) {
+
+        return compile(contents, Template.ESCAPE_NONE);
+    }
+
+    /**
+     * Compiles the given template contents, with the given escape mode applied to the
+     * replacement values.
+     *
+     * @param contents the template contents
+     * @param escapeMode the escape mode, one of the <code>Template.ESCAPE_*</code> constants
+     *
+     * @return the compiled template
+     *
+     * @throws IllegalArgumentException the escape mode is not valid
+     *
+     * @see CompiledTemplate#compile(CharSequence)
+     */
+    public static CompiledTemplate compile(CharSequence contents, int escapeMode) {
+
+        checkEscapeMode(escapeMode);
+
+        String text = contents.toString();
+        Compiler compiler = new Compiler(text);
+
+        int length = text.length();
+        int lineStart = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                compiler.compileLine(lineStart, i);
+                if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+
+        if (lineStart < length) {
+            compiler.compileLine(lineStart, length);
+        }
+
+        return compiler.build(escapeMode);
+    }
+
+    /**
+     * Returns a copy of this template with the given escape mode applied to the replacement
+     * values. The copy shares the compiled segments with this template, so the contents are not
+     * compiled again.
+     *
+     * @param newEscapeMode the escape mode, one of the <code>Template.ESCAPE_*</code> constants
+     *
+     * @return the template with the given escape mode, which is this template if the escape
+     *         mode is not changed
+     *
+     * @throws IllegalArgumentException the escape mode is not valid
+     */
+    public CompiledTemplate withEscapeMode(int newEscapeMode) {
+
+        checkEscapeMode(newEscapeMode);
+
+        if (newEscapeMode == escapeMode) {
+            return this;
+        }
+
+        return new CompiledTemplate(text, types, starts, ends, slots, jumps, names,
+            lineCount, literalLength, newEscapeMode);
+    }
+
+    /**
+     * Checks that the given escape mode is valid.
+     *
+     * @param escapeMode the escape mode
+     *
+     * @throws IllegalArgumentException the escape mode is not valid
+     */
+    static void checkEscapeMode(int escapeMode) {
+
+        if (escapeMode != Template.ESCAPE_NONE
+            && escapeMode != Template.ESCAPE_HTML
+            && escapeMode != Template.ESCAPE_XML) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("TMPL_ERR_INVALID_ESCAPE_MODE", //$NON-NLS-1$
+                    Integer.toString(escapeMode)));
+        }
+    }
+
+    /**
+     * Returns the escape mode applied to the replacement values.
+     *
+     * @return the escape mode, one of the <code>Template.ESCAPE_*</code> constants
+     */
+    public int getEscapeMode() {
+        return escapeMode;
+    }
+
+    /**
+     * Returns the number of lines in the template.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the distinct token names in the template, in order of first appearance.
+     *
+     * @return the token names
+     */
+    public List<String> getTokenNames() {
+        return List.of(names);
+    }
+
+    /**
+     * Processes the template and returns the result as a list with one string per line.
+     *
+     * @param replacements hash table with the replacements indexed by the token content
+     *
+     * @return the processed contents, each line as an string in the list
+     */
+    public List<String> process(Map<String, String> replacements) {
+
+        return processValues(TemplateValueProvider.forMap(replacements));
+    }
+
+    /**
+     * Processes the template and appends the result to the given output target. Each line is
+     * terminated with the platform line separator. No intermediate copy of the output is made.
+     *
+     * @param replacements hash table with the replacements indexed by the token content
+     * @param target the output target
+     *
+     * @throws IOException an I/O exception writing to the output target
+     */
+    public void process(Map<String, String> replacements, Appendable target) throws IOException {
+
+        processValues(TemplateValueProvider.forMap(replacements), target);
+    }
+
+    /**
+     * Processes the template requesting the replacements from the given value provider and
+     * returns the result as a list with one string per line.
+     *
+     * @param values the value provider
+     *
+     * @return the processed contents, each line as an string in the list
+     */
+    public List<String> processValues(TemplateValueProvider values) {
+
+        List<String> processedContents = new ArrayList<>(lineCount);
+        StringBuilder line = new StringBuilder(lineCount == 0 ? 0 : literalLength / lineCount + 1);
+
+        try {
+            render(0, types.length, new Resolver(values, null, null), line, processedContents);
+        } catch (IOException ioe) {
+            // not thrown when appending to a string builder
+            throw new UncheckedIOException(ioe);
+        }
+
+        return processedContents;
+    }
+
+    /**
+     * Processes the template requesting the replacements from the given value provider and
+     * appends the result to the given output target. Each line is terminated with the platform
+     * line separator. No intermediate copy of the output is made.
+     *
+     * @param values the value provider
+     * @param target the output target
+     *
+     * @throws IOException an I/O exception writing to the output target
+     */
+    public void processValues(TemplateValueProvider values, Appendable target) throws IOException {
+
+        render(0, types.length, new Resolver(values, null, null), target, null);
+    }
+
+    /**
+     * Processes the template once for each record in the given stream, in parallel, and passes
+     * each output to the given handler. The records are processed by the fork/join common pool,
+     * and each thread reuses one output buffer for all the records it processes. The buffer is
+     * not reused while the handler runs, so the handler may process other batches. The handler
+     * is called concurrently and in no particular order.
+     *
+     * @param <T> the record type
+     * @param records the records
+     * @param values function that returns the value provider for a record
+     * @param handler the output handler
+     *
+     * @throws IOException an I/O exception in the output handler
+     */
+    public <T> void processBatch(Stream<T> records,
+                                 Function<? super T, ? extends TemplateValueProvider> values,
+                                 TemplateOutputHandler<? super T> handler)
+        throws IOException {
+
+        try {
+            records.parallel().forEach(record -> {
+                StringBuilder buffer = acquireBatchBuffer();
+                try {
+                    render(0, types.length, new Resolver(values.apply(record), null, null),
+                        buffer, null);
+                    handler.output(record, buffer);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                } finally {
+                    releaseBatchBuffer(buffer);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Writes a line end to the target. Print writers are written with <code>println()</code>,
+     * so writers created with automatic flushing are flushed at each line end.
+     *
+     * @param target the output target
+     *
+     * @throws IOException an I/O exception writing to the output target
+     */
+    private static void newLine(Appendable target) throws IOException {
+
+        if (target instanceof PrintWriter) {
+            ((PrintWriter) target).println();
+        } else {
+            target.append(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Returns an empty batch buffer, reusing the buffer released by the calling thread if there
+     * is one. The buffer is taken from the thread until it is released, so a handler that
+     * processes another batch in the same thread does not overwrite the output it received.
+     *
+     * @return the empty batch buffer
+     */
+    private static StringBuilder acquireBatchBuffer() {
+
+        StringBuilder buffer = BATCH_BUFFER.get();
+
+        if (buffer == null) {
+            return new StringBuilder();
+        }
+
+        BATCH_BUFFER.remove();
+        buffer.setLength(0);
+
+        return buffer;
+    }
+
+    /**
+     * Releases a batch buffer to be reused by the calling thread, unless it is too large to be
+     * kept.
+     *
+     * @param buffer the batch buffer
+     */
+    private static void releaseBatchBuffer(StringBuilder buffer) {
+
+        if (buffer.capacity() <= BATCH_BUFFER_MAX_CAPACITY) {
+            BATCH_BUFFER.set(buffer);
+        }
+    }
+
+    /**
+     * Processes a range of segments. If a list of lines is given, the target is a string
+     * builder with the current line, which is added to the list at each line end. Otherwise,
+     * each line end is written to the target as the platform line separator.
+     *
+     * @param from the first segment
+     * @param to the segment after the last one
+     * @param resolver the replacement values resolver for the current scope
+     * @param target the output target
+     * @param lines the processed lines or <code>null</code> if writing to an output target
+     *
+     * @throws IOException an I/O exception writing to the output target
+     */
+    private void render(int from, int to, Resolver resolver, Appendable target, List<String> lines)
+        throws IOException {
+
+        for (int i = from; i < to; i++) {
+            switch (types[i]) {
+                case SEGMENT_LITERAL:
+                    appendText(starts[i], ends[i], target);
+                    break;
+                case SEGMENT_SLOT:
+                    String replacement = resolver.resolve(slots[i]);
+                    if (replacement == null) {
+                        appendText(starts[i], ends[i], target);
+                    } else {
+                        appendValue(replacement, target);
+                    }
+                    break;
+                case SEGMENT_LINE_END:
+                    if (lines == null) {
+                        newLine(target);
+                    } else {
+                        StringBuilder line = (StringBuilder) target;
+                        lines.add(line.toString());
+                        line.setLength(0);
+                    }
+                    break;
+                case SEGMENT_LIST:
+                    Iterable<?> items = resolver.items(slots[i]);
+                    if (items != null) {
+                        for (Object item : items) {
+                            render(i + 1, jumps[i], new Resolver(
+                                TemplateValueProvider.forObject(item), item, resolver),
+                                target, lines);
+                        }
+                    }
+                    i = jumps[i];
+                    break;
+                case SEGMENT_IF:
+                    if (!resolver.test(slots[i])) {
+                        i = jumps[i];
+                    }
+                    break;
+                case SEGMENT_ELSE:
+                    // the first part of the block was processed
+                    i = jumps[i];
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Appends a replacement value to the given output target, escaped with the template escape
+     * mode.
+     *
+     * @param value the replacement value
+     * @param target the output target
+     *
+     * @throws IOException an I/O exception writing to the output target
+     */
+    private void appendValue(String value, Appendable target) throws IOException {
+
+        switch (escapeMode) {
+            case Template.ESCAPE_HTML:
+                StringToolkit.formatForHTMLViewing(value, target);
+                break;
+            case Template.ESCAPE_XML:
+                StringToolkit.formatForXML(value, target);
+                break;
+            default:
+                target.append(value);
+                break;
+        }
+    }
+
+    /**
+     * Appends a range of the template text to the given output target. Writers are written
+     * directly from the template text, avoiding the intermediate string that
+     * <code>Writer.append(CharSequence, int, int)</code> creates.
+     *
+     * @param start the range start offset
+     * @param end the range end offset
+     * @param target the output target
+     *
+     * @throws IOException an I/O exception writing to the output target
+     */
+    private void appendText(int start, int end, Appendable target) throws IOException {
+
+        if (target instanceof Writer) {
+            ((Writer) target).write(text, start, end - start);
+        } else {
+            target.append(text, start, end);
+        }
+    }
+
+    /**
+     * Helper class that requests the replacement values from the value provider, the first time
+     * each token is found, and keeps them while the template, or the current list item, is
+     * processed. Values not found in the current scope are requested to the enclosing scope.
+     */
+    private final class Resolver {
+
+        /**
+         * The value provider.
+         */
+        private final TemplateValueProvider values;
+
+        /**
+         * The current list item or <code>null</code> outside list blocks.
+         */
+        private final Object item;
+
+        /**
+         * The enclosing scope resolver or <code>null</code> for the top scope.
+         */
+        private final Resolver parent;
+
+        /**
+         * The values already requested, indexed by token name index.
+         */
+        private final String[] resolved;
+
+        /**
+         * Whether each value was already requested.
+         */
+        private final boolean[] requested;
+
+        /**
+         * Constructor that sets the value provider and the scope.
+         *
+         * @param values the value provider, or <code>null</code> for no replacements
+         * @param item the current list item
+         * @param parent the enclosing scope resolver
+         */
+        Resolver(TemplateValueProvider values, Object item, Resolver parent) {
+
+            super();
+
+            this.values = values;
+            this.item = item;
+            this.parent = parent;
+
+            boolean empty = values == null && parent == null;
+            this.resolved = empty ? null : new String[names.length];
+            this.requested = empty ? null : new boolean[names.length];
+        }
+
+        /**
+         * Returns the replacement value for the given token.
+         *
+         * @param slot the token name index
+         *
+         * @return the replacement value or <code>null</code> if there is no replacement
+         */
+        String resolve(int slot) {
+
+            if (resolved == null) {
+                return null;
+            }
+
+            if (!requested[slot]) {
+                String value = null;
+                if (item != null && CURRENT_ITEM.equals(names[slot])) {
+                    value = item.toString();
+                } else if (values != null) {
+                    value = values.getValue(names[slot]);
+                }
+                if (value == null && parent != null) {
+                    value = parent.resolve(slot);
+                }
+                resolved[slot] = value;
+                requested[slot] = true;
+            }
+
+            return resolved[slot];
+        }
+
+        /**
+         * Returns the items for the given list block.
+         *
+         * @param slot the token name index
+         *
+         * @return the items or <code>null</code> if there are no items
+         */
+        Iterable<?> items(int slot) {
+
+            Iterable<?> items = values == null ? null : values.getItems(names[slot]);
+            if (items == null && parent != null) {
+                items = parent.items(slot);
+            }
+            return items;
+        }
+
+        /**
+         * Evaluates the condition for the given conditional block.
+         *
+         * @param slot the token name index
+         *
+         * @return the condition value
+         */
+        boolean test(int slot) {
+
+            Iterable<?> items = items(slot);
+            if (items != null) {
+                return items.iterator().hasNext();
+            }
+
+            String value = resolve(slot);
+            return value != null && !value.isEmpty() && !FALSE.equals(value);
+        }
+    }
+
+    /**
+     * Helper class that accumulates the segments while the template is being compiled.
+     */
+    private static final class Compiler {
+
+        /**
+         * The initial capacity of the segment arrays.
+         */
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * The template text.
+         */
+        private final String text;
+
+        /**
+         * The segment types.
+         */
+        private int[] types = new int[INITIAL_CAPACITY];
+
+        /**
+         * The segment start offsets.
+         */
+        private int[] starts = new int[INITIAL_CAPACITY];
+
+        /**
+         * The segment end offsets.
+         */
+        private int[] ends = new int[INITIAL_CAPACITY];
+
+        /**
+         * The token name indexes.
+         */
+        private int[] slots = new int[INITIAL_CAPACITY];
+
+        /**
+         * The block jump positions.
+         */
+        private int[] jumps = new int[INITIAL_CAPACITY];
+
+        /**
+         * The distinct token names, mapped to their indexes.
+         */
+        private final Map<String, Integer> names = new HashMap<>();
+
+        /**
+         * The open blocks: the segment index of the block start or alternative.
+         */
+        private int[] blocks = new int[INITIAL_CAPACITY];
+
+        /**
+         * The number of open blocks.
+         */
+        private int depth;
+
+        /**
+         * The number of segments compiled.
+         */
+        private int count;
+
+        /**
+         * The number of lines compiled.
+         */
+        private int lineCount;
+
+        /**
+         * The length of the literal text compiled.
+         */
+        private int literalLength;
+
+        /**
+         * Constructor that sets the template text.
+         *
+         * @param text the template text
+         */
+        Compiler(String text) {
+
+            super();
+
+            this.text = text;
+        }
+
+        /**
+         * Compiles one line. The rules are: two tag start characters together are not a token
+         * definition and are kept as they are; a tag start character without a matching tag end
+         * character in the same line is not a token definition and the rest of the line is kept
+         * as it is; otherwise the text between the delimiters is the token name or a block
+         * directive. A line with only a block directive and white space is compiled without
+         * its white space and line end.
+         *
+         * @param start the line start position
+         * @param end the line end position, excluding the line terminator
+         */
+        void compileLine(int start, int end) {
+
+            if (compileDirectiveLine(start, end)) {
+                return;
+            }
+
+            int literalStart = start;
+            int pos = start;
+
+            while (pos < end) {
+                int startPos = indexOf(TEMPLATE_TAG_START, pos, end);
+                if (startPos == -1 || startPos + 1 == end) {
+                    break;
+                }
+
+                // two tag start characters together mean
+                // that this is not a token definition
+                if (text.charAt(startPos + 1) == TEMPLATE_TAG_START) {
+                    pos = startPos + 2;
+                    continue;
+                }
+
+                // when the tag end character is not found mean
+                // that this is not a token definition
+                int endPos = indexOf(TEMPLATE_TAG_END, startPos + 1, end);
+                if (endPos == -1) {
+                    break;
+                }
+
+                addLiteral(literalStart, startPos);
+                String name = text.substring(startPos + 1, endPos);
+                if (!addDirective(name, startPos, endPos + 1)) {
+                    add(SEGMENT_SLOT, startPos, endPos + 1, name);
+                }
+
+                literalStart = endPos + 1;
+                pos = literalStart;
+            }
+
+            addLiteral(literalStart, end);
+
+            add(SEGMENT_LINE_END, end, end, null);
+            lineCount++;
+        }
+
+        /**
+         * Compiles a line with only a block directive and white space.
+         *
+         * @param start the line start position
+         * @param end the line end position, excluding the line terminator
+         *
+         * @return whether the line was compiled
+         */
+        private boolean compileDirectiveLine(int start, int end) {
+
+            int first = start;
+            while (first < end && isBlank(text.charAt(first))) {
+                first++;
+            }
+
+            int last = end;
+            while (last > first && isBlank(text.charAt(last - 1))) {
+                last--;
+            }
+
+            if (last - first < 2
+                || text.charAt(first) != TEMPLATE_TAG_START
+                || text.charAt(last - 1) != TEMPLATE_TAG_END
+                || indexOf(TEMPLATE_TAG_START, first + 1, last) != -1
+                || indexOf(TEMPLATE_TAG_END, first + 1, last - 1) != -1) {
+                return false;
+            }
+
+            return addDirective(text.substring(first + 1, last - 1), first, last);
+        }
+
+        /**
+         * Adds a block directive segment, if the token is a directive valid in the current
+         * block.
+         *
+         * @param token the token content
+         * @param start the token start offset
+         * @param end the token end offset
+         *
+         * @return whether the token was added as a block directive
+         */
+        private boolean addDirective(String token, int start, int end) {
+
+            if (token.startsWith(DIRECTIVE_LIST)) {
+                return openBlock(SEGMENT_LIST, token.substring(DIRECTIVE_LIST.length()), start, end);
+            }
+
+            if (token.startsWith(DIRECTIVE_IF)) {
+                return openBlock(SEGMENT_IF, token.substring(DIRECTIVE_IF.length()), start, end);
+            }
+
+            int open = depth == 0 ? -1 : blocks[depth - 1];
+            int openType = open == -1 ? -1 : types[open];
+
+            if (token.equals(DIRECTIVE_ELSE) && openType == SEGMENT_IF) {
+                jumps[open] = count;
+                blocks[depth - 1] = count;
+                add(SEGMENT_ELSE, start, end, null);
+                return true;
+            }
+
+            if (token.equals(DIRECTIVE_LIST_END) && openType == SEGMENT_LIST
+                || token.equals(DIRECTIVE_IF_END)
+                   && (openType == SEGMENT_IF || openType == SEGMENT_ELSE)) {
+                closeBlock(start, end);
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Adds a block start segment, if the block name is not empty.
+         *
+         * @param type the segment type
+         * @param name the block name
+         * @param start the directive start offset
+         * @param end the directive end offset
+         *
+         * @return whether the block was opened
+         */
+        private boolean openBlock(int type, String name, int start, int end) {
+
+            String blockName = name.trim();
+            if (blockName.isEmpty()) {
+                return false;
+            }
+
+            if (depth == blocks.length) {
+                blocks = Arrays.copyOf(blocks, depth * 2);
+            }
+            blocks[depth++] = count;
+
+            add(type, start, end, blockName);
+            return true;
+        }
+
+        /**
+         * Adds the end segment for the innermost open block and sets the jump positions.
+         *
+         * @param start the directive start offset
+         * @param end the directive end offset
+         */
+        private void closeBlock(int start, int end) {
+
+            int open = blocks[--depth];
+            jumps[open] = count;
+
+            if (types[open] == SEGMENT_LIST) {
+                add(SEGMENT_LIST_END, start, end, null);
+                jumps[count - 1] = open;
+            } else {
+                add(SEGMENT_IF_END, start, end, null);
+            }
+        }
+
+        /**
+         * Adds a literal segment, if not empty.
+         *
+         * @param start the literal start offset
+         * @param end the literal end offset
+         */
+        private void addLiteral(int start, int end) {
+
+            if (start < end) {
+                add(SEGMENT_LITERAL, start, end, null);
+                literalLength += end - start;
+            }
+        }
+
+        /**
+         * Adds a segment.
+         *
+         * @param type the segment type
+         * @param start the segment start offset
+         * @param end the segment end offset
+         * @param name the token name or <code>null</code> for segments without a name
+         */
+        private void add(int type, int start, int end, String name) {
+
+            if (count == types.length) {
+                int capacity = count * 2;
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                slots = Arrays.copyOf(slots, capacity);
+                jumps = Arrays.copyOf(jumps, capacity);
+            }
+
+            types[count] = type;
+            starts[count] = start;
+            ends[count] = end;
+            slots[count] = name == null ? -1 : names.computeIfAbsent(name, k -> names.size());
+            jumps[count] = -1;
+            count++;
+        }
+
+        /**
+         * Searches a character in the template text between the given positions.
+         *
+         * @param c the character to search for
+         * @param from the starting position
+         * @param to the ending position (exclusive)
+         *
+         * @return the character position or -1 if not found
+         */
+        private int indexOf(char c, int from, int to) {
+
+            for (int i = from; i < to; i++) {
+                if (text.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Checks whether a character is white space inside a line.
+         *
+         * @param c the character
+         *
+         * @return whether the character is a space or a tab
+         */
+        private static boolean isBlank(char c) {
+            return c == ' ' || c == '\t';
+        }
+
+        /**
+         * Creates the compiled template, closing the blocks still open.
+         *
+         * @param escapeMode the escape mode applied to the replacement values
+         *
+         * @return the compiled template
+         */
+        CompiledTemplate build(int escapeMode) {
+
+            int length = text.length();
+            while (depth > 0) {
+                closeBlock(length, length);
+            }
+
+            String[] distinctNames = new String[names.size()];
+            for (Map.Entry<String, Integer> entry : names.entrySet()) {
+                distinctNames[entry.getValue()] = entry.getKey();
+            }
+
+            return new CompiledTemplate(text,
+                Arrays.copyOf(types, count), Arrays.copyOf(starts, count),
+                Arrays.copyOf(ends, count), Arrays.copyOf(slots, count),
+                Arrays.copyOf(jumps, count), distinctNames, lineCount, literalLength,
+                escapeMode);
+        }
+    }
+}
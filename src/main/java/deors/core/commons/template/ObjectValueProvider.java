@@ -0,0 +1,246 @@
+package deors.core.commons.template;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import deors.core.commons.CommonsContext;
+
+/**
+ * Value provider that reads the values from the record components or the JavaBeans properties
+ * of an object.
+ *
+ * <p>The accessor methods are looked up once per class and cached, so creating a provider for
+ * each object rendered is cheap.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class ObjectValueProvider implements TemplateValueProvider {
+
+    /**
+     * Prefix of getter methods.
+     */
+    private static final String GETTER_PREFIX = "get"; //$NON-NLS-1$
+
+    /**
+     * Prefix of boolean getter methods.
+     */
+    private static final String BOOLEAN_GETTER_PREFIX = "is"; //$NON-NLS-1$
+
+    /**
+     * The accessor methods of each class, indexed by the property name.
+     */
+    private static final ClassValue<Map<String, Method>> ACCESSORS =
+        new ClassValue<Map<String, Method>>() {
+
+            @Override
+            protected Map<String, Method> computeValue(Class<?> type) {
+                return findAccessors(type);
+            }
+        };
+
+    /**
+     * The object with the values.
+     */
+    private final Object model;
+
+    /**
+     * The accessor methods of the object class.
+     */
+    private final Map<String, Method> accessors;
+
+    /**
+     * Constructor that sets the object with the values.
+     *
+     * @param model the object with the values
+     */
+    ObjectValueProvider(Object model) {
+
+        super();
+
+        this.model = model;
+        this.accessors = ACCESSORS.get(model.getClass());
+    }
+
+    /**
+     * Returns the value of the record component or property with the given name, converted
+     * using its <code>toString()</code> method.
+     *
+     * @param name the token name
+     *
+     * @return the value or <code>null</code> if the object has no component or property with
+     *         the given name or its value is <code>null</code>
+     *
+     * @throws IllegalArgumentException the value could not be read
+     */
+    @Override
+    public String getValue(String name) {
+
+        Object value = read(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Returns the value of the record component or property with the given name as list block
+     * items, if it is a collection or an array.
+     *
+     * @param name the list block name
+     *
+     * @return the items or <code>null</code> if the object has no component or property with
+     *         the given name or its value is not a collection or an array
+     *
+     * @throws IllegalArgumentException the value could not be read
+     */
+    @Override
+    public Iterable<?> getItems(String name) {
+
+        return toItems(read(name));
+    }
+
+    /**
+     * Reads the value of the record component or property with the given name.
+     *
+     * @param name the component or property name
+     *
+     * @return the value or <code>null</code> if the object has no component or property with
+     *         the given name
+     *
+     * @throws IllegalArgumentException the value could not be read
+     */
+    private Object read(String name) {
+
+        Method accessor = accessors.get(name);
+        if (accessor == null) {
+            return null;
+        }
+
+        try {
+            return accessor.invoke(model);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("TMPL_ERR_VALUE_NOT_READ", name), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Converts a value into list block items.
+     *
+     * @param value the value
+     *
+     * @return the value itself if it is iterable, a list view if it is an object array, or
+     *         <code>null</code> otherwise
+     */
+    static Iterable<?> toItems(Object value) {
+
+        if (value instanceof Iterable) {
+            return (Iterable<?>) value;
+        }
+
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds the accessor methods of the given class. For records, these are the record
+     * component accessors. For other classes, these are the public getter methods.
+     *
+     * @param type the class
+     *
+     * @return the accessor methods indexed by the property name
+     */
+    private static Map<String, Method> findAccessors(Class<?> type) {
+
+        Map<String, Method> accessors = new HashMap<String, Method>();
+
+        if (type.isRecord()) {
+            for (RecordComponent component : type.getRecordComponents()) {
+                addAccessor(accessors, component.getName(), component.getAccessor());
+            }
+        } else {
+            for (Method method : type.getMethods()) {
+                String propertyName = getPropertyName(method);
+                if (propertyName != null) {
+                    addAccessor(accessors, propertyName, method);
+                }
+            }
+        }
+
+        return Collections.unmodifiableMap(accessors);
+    }
+
+    /**
+     * Adds an accessor method, if it can be made accessible.
+     *
+     * @param accessors the accessor methods indexed by the property name
+     * @param propertyName the property name
+     * @param method the accessor method
+     */
+    private static void addAccessor(Map<String, Method> accessors, String propertyName,
+                                    Method method) {
+
+        if (method.trySetAccessible()) {
+            accessors.put(propertyName, method);
+        }
+    }
+
+    /**
+     * Returns the property name for a getter method.
+     *
+     * @param method the method
+     *
+     * @return the property name or <code>null</code> if the method is not a getter
+     */
+    private static String getPropertyName(Method method) {
+
+        if (Modifier.isStatic(method.getModifiers())
+            || method.getParameterCount() != 0
+            || method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+
+        String methodName = method.getName();
+        Class<?> returnType = method.getReturnType();
+
+        if (methodName.startsWith(GETTER_PREFIX)
+            && methodName.length() > GETTER_PREFIX.length()
+            && returnType != void.class) {
+            return decapitalize(methodName.substring(GETTER_PREFIX.length()));
+        }
+
+        if (methodName.startsWith(BOOLEAN_GETTER_PREFIX)
+            && methodName.length() > BOOLEAN_GETTER_PREFIX.length()
+            && returnType == boolean.class) {
+            return decapitalize(methodName.substring(BOOLEAN_GETTER_PREFIX.length()));
+        }
+
+        return null;
+    }
+
+    /**
+     * Converts the first character of a name to lower case, except if the first two characters
+     * are both upper case, following the JavaBeans conventions.
+     *
+     * @param name the name
+     *
+     * @return the decapitalized name
+     */
+    private static String decapitalize(String name) {
+
+        if (name.length() > 1
+            && Character.isUpperCase(name.charAt(0))
+            && Character.isUpperCase(name.charAt(1))) {
+            return name;
+        }
+
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -1,15 +1,25 @@
 package deors.core.commons.template;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import deors.core.commons.CommonsContext;
 
@@ -19,20 +29,72 @@ import deors.core.commons.CommonsContext;
  * <p>A template is a collection of strings with special tokens that can be substituted by replacements
  * using the token content as the key for substitutions.
  *
+ * <p>The template is compiled when loaded, so processing it any number of times does not need to
+ * search again for the tokens in the template contents.
+ *
+ * <p>Templates may contain list and conditional blocks, processed with the values returned by a
+ * <code>TemplateValueProvider</code>. See <code>CompiledTemplate</code> for the block syntax.
+ *
+ * <p>Replacement values can be escaped for HTML or XML while the template is processed, setting
+ * the <code>escapeMode</code> property to <code>ESCAPE_HTML</code> or <code>ESCAPE_XML</code>.
+ *
+ * <p>Templates created from a file path are memory-mapped when loaded and decoded and compiled
+ * lazily, the first time they are processed, directly from the mapped buffer.
+ *
+ * <p>Template objects are mutable and not meant to be shared between threads. To share one
+ * compiled copy of a template between threads use a <code>TemplateCache</code>.
+ *
+ * @see TemplateCache
  * @author deors
  * @version 1.0
  */
 public final class Template {
 
+    /**
+     * Escape mode that writes the replacement values without changes.
+     */
+    public static final int ESCAPE_NONE = 0;
+
+    /**
+     * Escape mode that formats the replacement values for HTML viewing.
+     *
+     * @see deors.core.commons.StringToolkit#formatForHTMLViewing(CharSequence, Appendable)
+     */
+    public static final int ESCAPE_HTML = 1;
+
+    /**
+     * Escape mode that formats the replacement values for use in XML documents.
+     *
+     * @see deors.core.commons.StringToolkit#formatForXML(CharSequence, Appendable)
+     */
+    public static final int ESCAPE_XML = 2;
+
     /**
      * The template source stream.
      */
     private InputStream templateSource;
 
     /**
-     * The template contents.
+     * The template source file path.
+     */
+    private Path templatePath;
+
+    /**
+     * The template source file contents, memory-mapped and pending to be decoded. It is released
+     * once the contents are compiled.
+     */
+    private ByteBuffer templateMappedSource;
+
+    /**
+     * Whether the template contents were loaded from the template source file, which is mapped
+     * again if the contents must be decoded again after the mapping was released.
+     */
+    private boolean templateFileLoaded;
+
+    /**
+     * The compiled template contents.
      */
-    private List<String> templateContents;
+    private CompiledTemplate templateContents;
 
     /**
      * The charset used to process the template.
@@ -40,14 +102,15 @@ public final class Template {
     private Charset templateCharset;
 
     /**
-     * The template tag start character.
+     * The escape mode applied to the replacement values. Default value is
+     * <code>ESCAPE_NONE</code>.
      */
-    private static final char TEMPLATE_TAG_START = '[';
+    private int escapeMode = ESCAPE_NONE;
 
     /**
-     * The template tag end character.
+     * The size of the buffer used to read the template source.
      */
-    private static final char TEMPLATE_TAG_END = ']';
+    private static final int READ_BUFFER_SIZE = 8192;
 
     /**
      * Default constructor. The template needs to be initialized before being processed.
@@ -96,6 +159,24 @@ public final class Template {
         loadTemplate();
     }
 
+    /**
+     * Constructor that initializes the template source file and encoding charset and maps the
+     * file contents. The contents are decoded and compiled the first time the template is
+     * processed, and the file must not be truncated until then.
+     *
+     * @param templatePath the template source file path
+     * @param templateCharset the encoding charset for the content in the template
+     *
+     * @throws TemplateException an exception loading the template
+     */
+    public Template(Path templatePath, Charset templateCharset) throws TemplateException {
+        this();
+
+        this.templatePath = templatePath;
+        this.templateCharset = templateCharset;
+        loadTemplate();
+    }
+
     /**
      * Returns the <code>templateSource</code> property value.
      *
@@ -108,6 +189,18 @@ public final class Template {
         return templateSource;
     }
 
+    /**
+     * Returns the <code>templatePath</code> property value.
+     *
+     * @return the property value
+     *
+     * @see Template#templatePath
+     * @see Template#setTemplatePath(java.nio.file.Path)
+     */
+    public Path getTemplatePath() {
+        return templatePath;
+    }
+
     /**
      * Returns the <code>templateCharset</code> property value.
      *
@@ -121,36 +214,126 @@ public final class Template {
     }
 
     /**
-     * Loads the template. The method reads the template source file and stores its contents as an
-     * array.
+     * Returns the <code>escapeMode</code> property value.
+     *
+     * @return the property value
+     *
+     * @see Template#escapeMode
+     * @see Template#setEscapeMode(int)
+     */
+    public int getEscapeMode() {
+        return escapeMode;
+    }
+
+    /**
+     * Loads the template. If the template source is a file path, the method maps the file
+     * contents in memory, and they are decoded and compiled the first time the template is
+     * processed, after which the mapping is released. The file must not be truncated between
+     * loading the template and processing it for the first time, as reading a truncated mapping
+     * fails with an <code>InternalError</code>. Otherwise, the method reads the template source
+     * stream and compiles its contents into literal segments and token slots.
      *
      * @throws TemplateException an exception loading the template
      */
     public void loadTemplate() throws TemplateException {
 
-        try (BufferedReader templateReader = new BufferedReader(
-                new InputStreamReader(templateSource, templateCharset))) {
+        templateContents = null;
+        templateMappedSource = null;
+        templateFileLoaded = false;
+
+        if (templatePath != null) {
+            mapTemplate();
+            return;
+        }
+
+        try (Reader templateReader = new InputStreamReader(templateSource, templateCharset)) {
 
-            templateContents = new ArrayList<>();
-            String templateLine = null;
-            while ((templateLine = templateReader.readLine()) != null) {
-                templateContents.add(templateLine);
+            StringBuilder contents = new StringBuilder(READ_BUFFER_SIZE);
+            char[] buffer = new char[READ_BUFFER_SIZE];
+            int charsRead = -1;
+            while ((charsRead = templateReader.read(buffer)) != -1) {
+                contents.append(buffer, 0, charsRead);
             }
+
+            templateContents = CompiledTemplate.compile(contents, escapeMode);
         } catch (IOException ioe) {
-            templateContents = null;
+            throw new TemplateException(
+                CommonsContext.getMessage("TMPL_ERR_NOT_LOADED"), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Maps the template source file contents in memory. The mapping remains valid after the file
+     * channel is closed.
+     *
+     * @throws TemplateException an exception mapping the template file
+     */
+    private void mapTemplate() throws TemplateException {
+
+        try (FileChannel channel = FileChannel.open(templatePath, StandardOpenOption.READ)) {
 
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new TemplateException(
+                    CommonsContext.getMessage("TMPL_ERR_TOO_LARGE")); //$NON-NLS-1$
+            }
+
+            templateMappedSource = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            templateFileLoaded = true;
+        } catch (IOException ioe) {
             throw new TemplateException(
                 CommonsContext.getMessage("TMPL_ERR_NOT_LOADED"), ioe); //$NON-NLS-1$
         }
     }
 
+    /**
+     * Returns the compiled template contents, decoding and compiling the mapped template file
+     * contents if they were not processed yet. If the mapping was already released, the template
+     * file is mapped again.
+     *
+     * @return the compiled template contents
+     *
+     * @throws TemplateException the template contents are not loaded or could not be decoded
+     */
+    CompiledTemplate getTemplateContents() throws TemplateException {
+
+        if (templateContents == null && templateFileLoaded && templateMappedSource == null) {
+            mapTemplate();
+        }
+
+        ByteBuffer mappedSource = templateMappedSource;
+
+        if (templateContents == null && mappedSource != null) {
+            try {
+                CharBuffer contents = templateCharset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(mappedSource.duplicate());
+
+                templateContents = CompiledTemplate.compile(contents, escapeMode);
+
+                // release the mapping so the file can be unmapped, replaced or deleted
+                templateMappedSource = null;
+            } catch (CharacterCodingException cce) {
+                throw new TemplateException(
+                    CommonsContext.getMessage("TMPL_ERR_NOT_LOADED"), cce); //$NON-NLS-1$
+            }
+        }
+
+        if (templateContents == null) {
+            throw new TemplateException(CommonsContext.getMessage("TMPL_ERR_NEED_LOAD")); //$NON-NLS-1$
+        }
+
+        return templateContents;
+    }
+
     /**
      * Process the template. The method searches in the template contents for tokens, delimited by
-     * the constants <code>TEMPLATE_TAG_START</code> and <code>TEMPLATE_TAG_END</code>, their
-     * default values being <code>'['</code> and <code>']'</code>, and then substitutes the
-     * token including the delimiters with the matching indexed value from the given hash table. If
-     * a replacement is not given for a token, then the token is not modified. The result is
-     * returned as an <code>ArrayList</code> object.
+     * the <code>CompiledTemplate</code> constants <code>TEMPLATE_TAG_START</code> and
+     * <code>TEMPLATE_TAG_END</code>, their values being <code>'['</code> and <code>']'</code>,
+     * and then substitutes the token including the delimiters with the matching indexed value
+     * from the given hash table. If a replacement is not given for a token, then the token is not
+     * modified. The result is returned as an <code>ArrayList</code> object.
      *
      * @param replacements hash table with the replacements indexed by the token content
      *
@@ -159,71 +342,38 @@ public final class Template {
      *
      * @throws TemplateException the template contents are not loaded
      *
-     * @see Template#TEMPLATE_TAG_START
-     * @see Template#TEMPLATE_TAG_END
+     * @see CompiledTemplate
      */
     public List<String> processTemplate(Map<String, String> replacements) throws TemplateException {
 
-        if (templateContents == null) {
-            throw new TemplateException(CommonsContext.getMessage("TMPL_ERR_NEED_LOAD")); //$NON-NLS-1$
-        }
+        return processTemplateValues(TemplateValueProvider.forMap(replacements));
+    }
 
-        List<String> processedContents = new ArrayList<>();
-
-        Iterator<String> it = templateContents.iterator();
-        while (it.hasNext()) {
-            String line = it.next();
-
-            if (replacements == null) {
-                processedContents.add(line);
-            } else {
-                int startPos = line.indexOf(TEMPLATE_TAG_START);
-
-                if (startPos == -1) {
-                    processedContents.add(line);
-                } else {
-                    StringBuilder newLine = new StringBuilder();
-
-                    while ((startPos = line.indexOf(TEMPLATE_TAG_START)) != -1) {
-                        // two tag start characters together mean
-                        // that this is not a token definition
-                        if (line.charAt(startPos + 1) == TEMPLATE_TAG_START) {
-                            newLine.append(line.substring(0, startPos + 2));
-                            line = line.substring(startPos + 2);
-                        } else {
-                            // when the tag end character is not found mean
-                            // that this is not a token definition
-                            int endPos = line.indexOf(TEMPLATE_TAG_END, startPos);
-                            if (endPos == -1) {
-                                break;
-                            }
-
-                            // searches the replacement
-                            String tokenName = line.substring(startPos + 1, endPos);
-                            String replacement = replacements.get(tokenName);
-
-                            if (replacement == null) {
-                                newLine.append(line.substring(0, endPos + 1));
-                            } else {
-                                newLine.append(line.substring(0, startPos));
-                                newLine.append(replacement);
-                            }
-                            line = line.substring(endPos + 1);
-                        }
-                    }
-
-                    newLine.append(line);
-
-                    processedContents.add(newLine.toString());
-                }
-            }
-        }
+    /**
+     * Process the template requesting the replacements from the given value provider. Values
+     * are requested only for the tokens that appear in the template, at most once per token.
+     * If the provider has no value for a token, then the token is not modified.
+     *
+     * @param values the value provider, or <code>null</code> for no replacements
+     *
+     * @return the processed contents, each line as an string in the list
+     *
+     * @throws TemplateException the template contents are not loaded
+     *
+     * @see Template#processTemplate(Map)
+     * @see TemplateValueProvider#forObject(Object)
+     */
+    public List<String> processTemplateValues(TemplateValueProvider values)
+        throws TemplateException {
 
-        return processedContents;
+        return getTemplateContents().processValues(values);
     }
 
     /**
-     * Process the template and writes the output to the given print writer.
+     * Process the template and writes the output to the given print writer. The output is
+     * written as it is processed, line by line, without creating an intermediate list. Each line
+     * is terminated with <code>println()</code>, so a writer created with automatic flushing is
+     * flushed at each line end.
      *
      * @param replacements hash table with the replacements indexed by the token content
      * @param target the output print writer
@@ -231,16 +381,158 @@ public final class Template {
      * @throws TemplateException the template contents are not loaded
      *
      * @see Template#processTemplate(Map)
-     * @see Template#TEMPLATE_TAG_START
-     * @see Template#TEMPLATE_TAG_END
+     * @see CompiledTemplate
      */
     public void processTemplate(Map<String, String> replacements, PrintWriter target)
         throws TemplateException {
 
-        List<String> outputContents = processTemplate(replacements);
+        processTemplate(replacements, (Appendable) target);
+    }
+
+    /**
+     * Process the template and appends the output to the given target, e.g. a
+     * <code>java.io.Writer</code> or a <code>java.lang.StringBuilder</code>. The output is
+     * written as it is processed, without creating an intermediate list, and each line is
+     * terminated with the platform line separator.
+     *
+     * @param replacements hash table with the replacements indexed by the token content
+     * @param target the output target
+     *
+     * @throws TemplateException the template contents are not loaded or the output could not be
+     *                           written
+     *
+     * @see Template#processTemplate(Map)
+     */
+    public void processTemplate(Map<String, String> replacements, Appendable target)
+        throws TemplateException {
+
+        processTemplateValues(TemplateValueProvider.forMap(replacements), target);
+    }
+
+    /**
+     * Process the template requesting the replacements from the given value provider and
+     * appends the output to the given target. The output is written as it is processed, without
+     * creating an intermediate list, and each line is terminated with the platform line
+     * separator.
+     *
+     * @param values the value provider, or <code>null</code> for no replacements
+     * @param target the output target
+     *
+     * @throws TemplateException the template contents are not loaded or the output could not be
+     *                           written
+     *
+     * @see Template#processTemplateValues(TemplateValueProvider)
+     */
+    public void processTemplateValues(TemplateValueProvider values, Appendable target)
+        throws TemplateException {
+
+        CompiledTemplate contents = getTemplateContents();
+
+        try {
+            contents.processValues(values, target);
+        } catch (IOException ioe) {
+            throw new TemplateException(
+                CommonsContext.getMessage("TMPL_ERR_NOT_WRITTEN"), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Process the template and writes the output to the given output stream, encoded using the
+     * template charset. The output is written as it is processed, without creating an
+     * intermediate list. The stream is flushed but not closed.
+     *
+     * @param replacements hash table with the replacements indexed by the token content
+     * @param target the output stream
+     *
+     * @throws TemplateException the template contents are not loaded or the output could not be
+     *                           written
+     *
+     * @see Template#processTemplate(Map, Appendable)
+     */
+    public void processTemplate(Map<String, String> replacements, OutputStream target)
+        throws TemplateException {
+
+        processTemplateValues(TemplateValueProvider.forMap(replacements), target);
+    }
+
+    /**
+     * Process the template requesting the replacements from the given value provider and
+     * writes the output to the given output stream, encoded using the template charset. The
+     * stream is flushed but not closed.
+     *
+     * @param values the value provider, or <code>null</code> for no replacements
+     * @param target the output stream
+     *
+     * @throws TemplateException the template contents are not loaded or the output could not be
+     *                           written
+     *
+     * @see Template#processTemplateValues(TemplateValueProvider, Appendable)
+     */
+    public void processTemplateValues(TemplateValueProvider values, OutputStream target)
+        throws TemplateException {
+
+        Writer writer = new OutputStreamWriter(target, templateCharset);
+
+        processTemplateValues(values, writer);
+
+        try {
+            writer.flush();
+        } catch (IOException ioe) {
+            throw new TemplateException(
+                CommonsContext.getMessage("TMPL_ERR_NOT_WRITTEN"), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Process the template once for each replacements map in the given stream, in parallel
+     * across the available processors, and passes each output to the given handler. Each
+     * thread reuses one output buffer for all the records it processes, and the handler is
+     * called concurrently and in no particular order.
+     *
+     * @param records the replacements maps
+     * @param handler the output handler
+     *
+     * @throws TemplateException the template contents are not loaded or an output could not be
+     *                           written
+     *
+     * @see Template#processTemplateBatch(Stream, Function, TemplateOutputHandler)
+     */
+    public void processTemplateBatch(Stream<Map<String, String>> records,
+                                     TemplateOutputHandler<? super Map<String, String>> handler)
+        throws TemplateException {
+
+        processTemplateBatch(records, TemplateValueProvider::forMap, handler);
+    }
+
+    /**
+     * Process the template once for each record in the given stream, in parallel across the
+     * available processors, requesting the replacements from the value provider returned for
+     * each record, and passes each output to the given handler. Each thread reuses one output
+     * buffer for all the records it processes, and the handler is called concurrently and in no
+     * particular order.
+     *
+     * @param <T> the record type
+     * @param records the records
+     * @param values function that returns the value provider for a record
+     * @param handler the output handler
+     *
+     * @throws TemplateException the template contents are not loaded or an output could not be
+     *                           written
+     *
+     * @see CompiledTemplate#processBatch(Stream, Function, TemplateOutputHandler)
+     */
+    public <T> void processTemplateBatch(Stream<T> records,
+                                         Function<? super T, ? extends TemplateValueProvider> values,
+                                         TemplateOutputHandler<? super T> handler)
+        throws TemplateException {
+
+        CompiledTemplate contents = getTemplateContents();
 
-        for (String content : outputContents) {
-            target.println(content);
+        try {
+            contents.processBatch(records, values, handler);
+        } catch (IOException ioe) {
+            throw new TemplateException(
+                CommonsContext.getMessage("TMPL_ERR_NOT_WRITTEN"), ioe); //$NON-NLS-1$
         }
     }
 
@@ -254,11 +546,32 @@ public final class Template {
      */
     public void setTemplateSource(InputStream templateSource) {
         this.templateSource = templateSource;
+        this.templatePath = null;
+        this.templateMappedSource = null;
+        this.templateFileLoaded = false;
+        this.templateContents = null;
+    }
+
+    /**
+     * Sets the <code>templatePath</code> property value and resets the template contents.
+     *
+     * @param templatePath the property new value
+     *
+     * @see Template#templatePath
+     * @see Template#getTemplatePath()
+     */
+    public void setTemplatePath(Path templatePath) {
+        this.templatePath = templatePath;
+        this.templateSource = null;
+        this.templateMappedSource = null;
+        this.templateFileLoaded = false;
         this.templateContents = null;
     }
 
     /**
      * Sets the <code>templateCharset</code> property value and resets the template contents.
+     * Contents already loaded from a template file are decoded again using the new charset the
+     * next time the template is processed, mapping the file again if the mapping was released.
      *
      * @param templateCharset the property new value
      *
@@ -269,4 +582,23 @@ public final class Template {
         this.templateCharset = templateCharset;
         this.templateContents = null;
     }
+
+    /**
+     * Sets the <code>escapeMode</code> property value. Contents already loaded are not compiled
+     * again.
+     *
+     * @param escapeMode the property new value, one of the <code>ESCAPE_*</code> constants
+     *
+     * @throws IllegalArgumentException the escape mode is not valid
+     *
+     * @see Template#escapeMode
+     * @see Template#getEscapeMode()
+     */
+    public void setEscapeMode(int escapeMode) {
+        CompiledTemplate.checkEscapeMode(escapeMode);
+        this.escapeMode = escapeMode;
+        if (templateContents != null) {
+            templateContents = templateContents.withEscapeMode(escapeMode);
+        }
+    }
 }
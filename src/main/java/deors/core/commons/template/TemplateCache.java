@@ -0,0 +1,469 @@
+package deors.core.commons.template;
+
+import static deors.core.commons.CommonsContext.getConfigurationProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import deors.core.commons.CommonsContext;
+
+/**
+ * Cache of compiled templates, shared between threads.
+ *
+ * <p>Templates are loaded and compiled the first time they are requested and the compiled copy
+ * is returned to any later request for the same template and charset. Templates can be loaded
+ * from class path resources or from file paths.
+ *
+ * <p>The cache is bounded: when the maximum number of entries is reached, the least recently
+ * used template is evicted. Optionally, the cache can check the last modified time of file path
+ * templates on each request, reloading them when the file was changed. Class path resources are
+ * not checked, as they are usually packaged and do not change while the application runs.
+ *
+ * <p>All methods are thread-safe. The lock is not held while a template is loaded, so two
+ * threads requesting the same template for the first time may both load it, and the last one
+ * wins; both copies are equivalent.
+ *
+ * <p>The class loaders of class path resources are weakly referenced, so a cache kept in a
+ * static field does not prevent the class loader of an undeployed application from being
+ * collected. Its entries are then never found again and are evicted as any other unused entry.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class TemplateCache {
+
+    /**
+     * The default maximum number of templates kept in the cache. Configurable in the properties
+     * file using the key <code>tmpl.cacheSize</code>. Default value is <code>64</code>.
+     *
+     * @see CommonsContext#getConfigurationProperty(String, int)
+     */
+    public static final int DEFAULT_MAX_SIZE =
+        getConfigurationProperty("tmpl.cacheSize", 64); //$NON-NLS-1$
+
+    /**
+     * Whether file path templates are checked for changes by default. Configurable in the
+     * properties file using the key <code>tmpl.cacheCheckModified</code>. Default value is
+     * <code>false</code>.
+     *
+     * @see CommonsContext#getConfigurationProperty(String, boolean)
+     */
+    public static final boolean DEFAULT_CHECK_MODIFIED =
+        getConfigurationProperty("tmpl.cacheCheckModified", false); //$NON-NLS-1$
+
+    /**
+     * Value used as last modified time for templates that are not checked for changes.
+     */
+    private static final long NOT_CHECKED = -1L;
+
+    /**
+     * The maximum number of templates kept in the cache.
+     */
+    private final int maxSize;
+
+    /**
+     * Whether file path templates are checked for changes on each request.
+     */
+    private final boolean checkModified;
+
+    /**
+     * The cache entries, in access order.
+     */
+    private final Map<Key, Entry> entries;
+
+    /**
+     * Default constructor. The cache size and the change detection are read from the
+     * configuration properties.
+     *
+     * @see TemplateCache#DEFAULT_MAX_SIZE
+     * @see TemplateCache#DEFAULT_CHECK_MODIFIED
+     */
+    public TemplateCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_CHECK_MODIFIED);
+    }
+
+    /**
+     * Constructor that sets the cache size and whether file path templates are checked for
+     * changes on each request.
+     *
+     * @param maxSize the maximum number of templates kept in the cache
+     * @param checkModified whether file path templates are checked for changes
+     *
+     * @throws IllegalArgumentException the maximum size is not positive
+     */
+    public TemplateCache(int maxSize, boolean checkModified) {
+
+        super();
+
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException(
+                CommonsContext.getMessage("TMPL_ERR_INVALID_CACHE_SIZE", //$NON-NLS-1$
+                    Integer.toString(maxSize)));
+        }
+
+        this.maxSize = maxSize;
+        this.checkModified = checkModified;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -4139870285214717522L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > TemplateCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the <code>maxSize</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TemplateCache#maxSize
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the <code>checkModified</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TemplateCache#checkModified
+     */
+    public boolean isCheckModified() {
+        return checkModified;
+    }
+
+    /**
+     * Returns the number of templates in the cache.
+     *
+     * @return the number of templates in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all the templates from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the compiled template for the given class path resource using the platform's
+     * default charset, loading it if not in the cache.
+     *
+     * @param anchor the class used to locate the resource
+     * @param resourceName the resource name, as in <code>Class.getResourceAsStream()</code>
+     *
+     * @return the compiled template
+     *
+     * @throws TemplateException the resource was not found or could not be loaded
+     */
+    public CompiledTemplate getTemplate(Class<?> anchor, String resourceName)
+        throws TemplateException {
+
+        return getTemplate(anchor, resourceName, Charset.defaultCharset());
+    }
+
+    /**
+     * Returns the compiled template for the given class path resource, loading it if not in the
+     * cache.
+     *
+     * @param anchor the class used to locate the resource
+     * @param resourceName the resource name, as in <code>Class.getResourceAsStream()</code>
+     * @param templateCharset the encoding charset for the content in the template
+     *
+     * @return the compiled template
+     *
+     * @throws TemplateException the resource was not found or could not be loaded
+     */
+    public CompiledTemplate getTemplate(Class<?> anchor, String resourceName,
+                                        Charset templateCharset)
+        throws TemplateException {
+
+        String absoluteName = resolveResourceName(anchor, resourceName);
+        Key key = new Key(anchor.getClassLoader(), absoluteName, templateCharset);
+
+        Entry entry = lookup(key);
+        if (entry != null) {
+            return entry.template;
+        }
+
+        InputStream templateSource = anchor.getResourceAsStream(absoluteName);
+        if (templateSource == null) {
+            throw new TemplateException(
+                CommonsContext.getMessage("TMPL_ERR_NOT_FOUND", resourceName)); //$NON-NLS-1$
+        }
+
+        CompiledTemplate template =
+            new Template(templateSource, templateCharset).getTemplateContents();
+
+        store(key, new Entry(template, NOT_CHECKED));
+
+        return template;
+    }
+
+    /**
+     * Returns the compiled template for the given file using the platform's default charset,
+     * loading it if not in the cache or, if change detection is enabled, if the file was modified
+     * after it was loaded.
+     *
+     * @param templatePath the template file path
+     *
+     * @return the compiled template
+     *
+     * @throws TemplateException the file was not found or could not be loaded
+     */
+    public CompiledTemplate getTemplate(Path templatePath) throws TemplateException {
+
+        return getTemplate(templatePath, Charset.defaultCharset());
+    }
+
+    /**
+     * Returns the compiled template for the given file, loading it if not in the cache or, if
+     * change detection is enabled, if the file was modified after it was loaded.
+     *
+     * @param templatePath the template file path
+     * @param templateCharset the encoding charset for the content in the template
+     *
+     * @return the compiled template
+     *
+     * @throws TemplateException the file was not found or could not be loaded
+     */
+    public CompiledTemplate getTemplate(Path templatePath, Charset templateCharset)
+        throws TemplateException {
+
+        Path absolutePath = templatePath.toAbsolutePath().normalize();
+        Key key = new Key(null, absolutePath, templateCharset);
+
+        long lastModified = NOT_CHECKED;
+        if (checkModified) {
+            lastModified = getLastModified(absolutePath, templatePath);
+        }
+
+        Entry entry = lookup(key);
+        if (entry != null && entry.lastModified == lastModified) {
+            return entry.template;
+        }
+
+        CompiledTemplate template =
+            new Template(absolutePath, templateCharset).getTemplateContents();
+
+        store(key, new Entry(template, lastModified));
+
+        return template;
+    }
+
+    /**
+     * Removes from the cache the compiled template for the given class path resource.
+     *
+     * @param anchor the class used to locate the resource
+     * @param resourceName the resource name, as in <code>Class.getResourceAsStream()</code>
+     * @param templateCharset the encoding charset for the content in the template
+     */
+    public void invalidate(Class<?> anchor, String resourceName, Charset templateCharset) {
+
+        remove(new Key(anchor.getClassLoader(),
+            resolveResourceName(anchor, resourceName), templateCharset));
+    }
+
+    /**
+     * Removes from the cache the compiled template for the given file.
+     *
+     * @param templatePath the template file path
+     * @param templateCharset the encoding charset for the content in the template
+     */
+    public void invalidate(Path templatePath, Charset templateCharset) {
+
+        remove(new Key(null, templatePath.toAbsolutePath().normalize(), templateCharset));
+    }
+
+    /**
+     * Resolves a resource name relative to the given class into an absolute resource name, so
+     * the same resource requested through different classes is cached only once.
+     *
+     * @param anchor the class used to locate the resource
+     * @param resourceName the resource name, as in <code>Class.getResourceAsStream()</code>
+     *
+     * @return the absolute resource name
+     */
+    private static String resolveResourceName(Class<?> anchor, String resourceName) {
+
+        if (resourceName.startsWith("/")) { //$NON-NLS-1$
+            return resourceName;
+        }
+
+        String packageName = anchor.getPackageName();
+        if (packageName.isEmpty()) {
+            return '/' + resourceName;
+        }
+
+        return '/' + packageName.replace('.', '/') + '/' + resourceName;
+    }
+
+    /**
+     * Returns the last modified time of the given file.
+     *
+     * @param absolutePath the template file absolute path
+     * @param templatePath the template file path, as given by the caller
+     *
+     * @return the last modified time in milliseconds
+     *
+     * @throws TemplateException the file was not found
+     */
+    private static long getLastModified(Path absolutePath, Path templatePath)
+        throws TemplateException {
+
+        try {
+            return Files.getLastModifiedTime(absolutePath).toMillis();
+        } catch (IOException ioe) {
+            throw new TemplateException(
+                CommonsContext.getMessage("TMPL_ERR_NOT_FOUND", templatePath.toString()), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Looks up an entry in the cache.
+     *
+     * @param key the entry key
+     *
+     * @return the entry or <code>null</code> if not in the cache
+     */
+    private synchronized Entry lookup(Key key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Stores an entry in the cache, evicting the least recently used entry if needed.
+     *
+     * @param key the entry key
+     * @param entry the entry
+     */
+    private synchronized void store(Key key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    /**
+     * Removes an entry from the cache.
+     *
+     * @param key the entry key
+     */
+    private synchronized void remove(Key key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Cache key: the template location and the charset used to decode it. The class loader is
+     * weakly referenced.
+     */
+    private static final class Key {
+
+        /**
+         * The class loader used to locate class path resources or <code>null</code> for files.
+         */
+        private final WeakReference<ClassLoader> loader;
+
+        /**
+         * The template location: the absolute resource name or the absolute file path.
+         */
+        private final Object location;
+
+        /**
+         * The template charset.
+         */
+        private final Charset charset;
+
+        /**
+         * The hash code, computed once as the class loader may be collected.
+         */
+        private final int hash;
+
+        /**
+         * Constructor that sets the key components.
+         *
+         * @param loader the class loader
+         * @param location the template location
+         * @param charset the template charset
+         */
+        Key(ClassLoader loader, Object location, Charset charset) {
+
+            super();
+
+            this.loader = loader == null ? null : new WeakReference<ClassLoader>(loader);
+            this.location = location;
+            this.charset = charset;
+            this.hash = (System.identityHashCode(loader) * 31 + location.hashCode()) * 31
+                + charset.hashCode();
+        }
+
+        /**
+         * Returns the class loader or <code>null</code> for files or if it was collected.
+         *
+         * @return the class loader
+         */
+        private ClassLoader loader() {
+            return loader == null ? null : loader.get();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return loader() == other.loader()
+                && location.equals(other.location)
+                && charset.equals(other.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Cache entry: the compiled template and the file last modified time when it was loaded.
+     */
+    private static final class Entry {
+
+        /**
+         * The compiled template.
+         */
+        private final CompiledTemplate template;
+
+        /**
+         * The file last modified time or <code>NOT_CHECKED</code>.
+         */
+        private final long lastModified;
+
+        /**
+         * Constructor that sets the entry components.
+         *
+         * @param template the compiled template
+         * @param lastModified the file last modified time
+         */
+        Entry(CompiledTemplate template, long lastModified) {
+
+            super();
+
+            this.template = template;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package deors.core.commons.template;
+
+import java.io.IOException;
+
+/**
+ * Receives the output of a template processed for one record in a batch.
+ *
+ * <p>The output is kept in a buffer that is reused for the next record processed in the same
+ * thread, so it is only valid until the handler returns. Handlers are called concurrently from
+ * several threads and must be thread-safe.
+ *
+ * @param <T> the record type
+ *
+ * @author deors
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface TemplateOutputHandler<T> {
+
+    /**
+     * Callback invoked each time the template is processed for a record.
+     *
+     * @param record the record
+     * @param output the processed template
+     *
+     * @throws IOException an I/O exception writing the output
+     */
+    void output(T record, CharSequence output) throws IOException;
+}
@@ -0,0 +1,100 @@
+package deors.core.commons.template;
+
+import java.util.Map;
+
+/**
+ * Source of the values used to replace the tokens in a template.
+ *
+ * <p>Values are requested lazily while the template is processed, only for the tokens that
+ * actually appear in the template and at most once per token and processing, so providers can
+ * compute or format values on demand.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface TemplateValueProvider {
+
+    /**
+     * Returns the value used to replace the token with the given name. If the provider has no
+     * value for the token, the token is not modified.
+     *
+     * @param name the token name
+     *
+     * @return the replacement value or <code>null</code> if the provider has no value
+     */
+    String getValue(String name);
+
+    /**
+     * Returns the items used to repeat the list block with the given name. The default
+     * implementation returns no items.
+     *
+     * @param name the list block name
+     *
+     * @return the items or <code>null</code> if the provider has no items
+     */
+    default Iterable<?> getItems(String name) {
+        return null;
+    }
+
+    /**
+     * Returns a value provider backed by the given map. Values that are not strings are
+     * converted using their <code>toString()</code> method. Values that are collections or
+     * arrays are also used as list block items.
+     *
+     * @param values map with the values indexed by the token name
+     *
+     * @return the value provider or <code>null</code> if the map is <code>null</code>
+     */
+    static TemplateValueProvider forMap(Map<String, ?> values) {
+
+        if (values == null) {
+            return null;
+        }
+
+        return new TemplateValueProvider() {
+
+            @Override
+            public String getValue(String name) {
+                Object value = values.get(name);
+                return value == null ? null : value.toString();
+            }
+
+            @Override
+            public Iterable<?> getItems(String name) {
+                return ObjectValueProvider.toItems(values.get(name));
+            }
+        };
+    }
+
+    /**
+     * Returns a value provider that reads the values from the given object. Maps are used as in
+     * <code>forMap()</code>. For records, each token name is matched with a record component.
+     * For other objects, each token name is matched with a JavaBeans property with a public
+     * getter method. Record components and properties that are collections or arrays are also
+     * used as list block items. The accessors are looked up once per class and cached.
+     *
+     * @param model the object with the values
+     *
+     * @return the value provider or <code>null</code> if the object is <code>null</code>
+     *
+     * @see TemplateValueProvider#forMap(Map)
+     */
+    @SuppressWarnings("unchecked")
+    static TemplateValueProvider forObject(Object model) {
+
+        if (model == null) {
+            return null;
+        }
+
+        if (model instanceof TemplateValueProvider) {
+            return (TemplateValueProvider) model;
+        }
+
+        if (model instanceof Map) {
+            return forMap((Map<String, ?>) model);
+        }
+
+        return new ObjectValueProvider(model);
+    }
+}
@@ -0,0 +1,66 @@
+package deors.core.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class CompiledMessageTestCase {
+
+    public CompiledMessageTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testFormat() {
+
+        String s = "change test of {0} {1} {2} {3} {4} {5} {6} [default tokens]";
+        CompiledMessage m = CompiledMessage.compile(s);
+
+        assertNull(m.format(null));
+        assertNull(m.format(new String[] {}));
+        assertEquals("change test of 1st {1} {2} {3} {4} {5} {6} [default tokens]",
+            m.format(new String[] {"1st"}));
+        assertEquals("change test of 1st 2nd 3rd 4th 5th 6th {6} [default tokens]",
+            m.format(new String[] {"1st", "2nd", "3rd", "4th", "5th", "6th"}));
+    }
+
+    @Test
+    public void testFormatSameAsReplaceMultiple() {
+
+        String[] sources = new String[] {
+            "{1}{0}{1}", "{{0}}", "{0{1}", "{01} {10} {1}", "{} {a} { 0} {0", "no tokens", "",
+            "{11}{1}{10}{12}"};
+        String[] args = new String[] {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l"};
+
+        for (String source : sources) {
+            for (int n = 1; n <= args.length; n++) {
+                String[] replacements = new String[n];
+                System.arraycopy(args, 0, replacements, 0, n);
+                assertEquals(StringToolkit.replaceMultiple(source, replacements),
+                    CompiledMessage.compile(source).format(replacements));
+            }
+        }
+    }
+
+    @Test
+    public void testFormatNoReplacement() {
+
+        String s = "{5} is not replaced";
+
+        assertSame(s, CompiledMessage.compile(s).format(new String[] {"a"}));
+    }
+
+    @Test
+    public void testFormatFirst() {
+
+        CompiledMessage m = CompiledMessage.compile("{1} {0} and {0}");
+
+        assertEquals("{1} a and {0}", m.formatFirst("a"));
+        assertEquals("{1} null and {0}", m.formatFirst(null));
+        assertEquals(StringToolkit.replace("{1} {0} and {0}", "a"), m.formatFirst("a"));
+        assertEquals("none", CompiledMessage.compile("none").formatFirst("a"));
+    }
+}
@@ -0,0 +1,113 @@
+package deors.core.commons;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class FormattingWriterTestCase {
+
+    private static final String TEXT = "\r\nstring formatted\r"
+        + "<tag-name>\n\r  \u000Bmultiple spaces\n\n"
+        + "&\ttab space\r\náéíóúñ\n";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public FormattingWriterTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testWriteHTMLViewing()
+        throws IOException {
+
+        assertEquals(StringToolkit.formatForHTMLViewing(TEXT),
+            writeInPieces(FormattingWriter.FORMAT_HTML_VIEWING, 1));
+        assertEquals(StringToolkit.formatForHTMLViewing(TEXT),
+            writeInPieces(FormattingWriter.FORMAT_HTML_VIEWING, 3));
+        assertEquals(StringToolkit.formatForHTMLViewing(TEXT),
+            writeInPieces(FormattingWriter.FORMAT_HTML_VIEWING, TEXT.length()));
+    }
+
+    @Test
+    public void testWriteXML()
+        throws IOException {
+
+        assertEquals(StringToolkit.formatForXML(TEXT),
+            writeInPieces(FormattingWriter.FORMAT_XML, 1));
+        assertEquals(StringToolkit.formatForXML(TEXT),
+            writeInPieces(FormattingWriter.FORMAT_XML, 5));
+    }
+
+    @Test
+    public void testWriteForms()
+        throws IOException {
+
+        StringWriter sw = new StringWriter();
+        FormattingWriter fw = new FormattingWriter(sw, FormattingWriter.FORMAT_XML);
+
+        fw.write('<');
+        fw.write("a&b".toCharArray(), 1, 2);
+        fw.write("x>y", 1, 1);
+        fw.append(new StringBuilder("á "));
+        fw.append("<<>>", 1, 3);
+        fw.append(null);
+        fw.close();
+
+        assertEquals("&lt;&amp;b&gt;&#225; &lt;&gt;null", sw.toString());
+        assertEquals(FormattingWriter.FORMAT_XML, fw.getFormat());
+    }
+
+    @Test
+    public void testWriteReusedArray()
+        throws IOException {
+
+        StringWriter sw = new StringWriter();
+        FormattingWriter fw = new FormattingWriter(sw, FormattingWriter.FORMAT_HTML_VIEWING);
+
+        char[] buffer = "a<b".toCharArray();
+        fw.write(buffer, 0, 3);
+        buffer[1] = '\n';
+        fw.write(buffer, 1, 2);
+        fw.write("\r&".toCharArray(), 0, 2);
+        fw.write(buffer, 0, 1);
+        fw.close();
+
+        assertEquals(StringToolkit.formatForHTMLViewing("a<b\nb\r&a"), sw.toString());
+    }
+
+    @Test
+    public void testInvalidFormat() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_INVALID_FORMAT", "0"));
+
+        new FormattingWriter(new StringWriter(), 0);
+    }
+
+    private static String writeInPieces(int format, int pieceLength)
+        throws IOException {
+
+        StringWriter sw = new StringWriter();
+        FormattingWriter fw = new FormattingWriter(sw, format);
+
+        char[] chars = TEXT.toCharArray();
+        for (int i = 0; i < chars.length; i += pieceLength) {
+            int len = Math.min(pieceLength, chars.length - i);
+            if (i % 2 == 0) {
+                fw.write(chars, i, len);
+            } else {
+                fw.write(TEXT, i, len);
+            }
+        }
+        fw.flush();
+
+        return sw.toString();
+    }
+}
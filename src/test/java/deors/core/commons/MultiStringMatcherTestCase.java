@@ -0,0 +1,114 @@
+package deors.core.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MultiStringMatcherTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public MultiStringMatcherTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testNoTokens() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_NO_TOKENS"));
+
+        new MultiStringMatcher();
+    }
+
+    @Test
+    public void testEmptyToken() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_EMPTY_TOKEN"));
+
+        new MultiStringMatcher("a", "");
+    }
+
+    @Test
+    public void testReplacementsLength() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_REPLACEMENTS_LENGTH"));
+
+        new MultiStringMatcher("a", "b").replace("ab", new String[] {"x"});
+    }
+
+    @Test
+    public void testIndexOf() {
+
+        MultiStringMatcher m = new MultiStringMatcher("he", "she", "his", "hers");
+
+        assertEquals(4, m.getTokenCount());
+        assertEquals("his", m.getToken(2));
+        assertEquals(1, m.indexOf("ushers", 0));
+        assertEquals(1, m.indexOf("ushers", 1));
+        assertEquals(2, m.indexOf("ushers", 2));
+        assertEquals(-1, m.indexOf("ushers", 3));
+        assertEquals(-1, m.indexOf("", 0));
+        assertEquals(-1, m.indexOf("he", 5));
+    }
+
+    @Test
+    public void testReplaceLeftmostFirst() {
+
+        // the leftmost token wins, even if a longer token ends later
+        MultiStringMatcher m = new MultiStringMatcher("bcd", "abcde", "c");
+        assertEquals("[1]", m.replace("abcde", new String[] {"[0]", "[1]", "[2]"}));
+        assertEquals("[1]x", m.replace("abcdex", new String[] {"[0]", "[1]", "[2]"}));
+        assertEquals("a[0]", m.replace("abcd", new String[] {"[0]", "[1]", "[2]"}));
+        assertEquals("ab[2]x", m.replace("abcx", new String[] {"[0]", "[1]", "[2]"}));
+    }
+
+    @Test
+    public void testReplaceSamePosition() {
+
+        // in the same position, the token with the lowest index wins
+        String[] replacements = new String[] {"<a>", "<ab>", "<a2>"};
+        assertEquals("<a>b <a>", new MultiStringMatcher("a", "ab", "a").replace("ab a", replacements));
+        assertEquals("<ab> <a>", new MultiStringMatcher("ab", "a", "a").replace("ab a",
+            new String[] {"<ab>", "<a>", "<a2>"}));
+    }
+
+    @Test
+    public void testReplaceBegin() {
+
+        MultiStringMatcher m = new MultiStringMatcher("''", "'");
+        String[] replacements = new String[] {"'", "''"};
+
+        assertEquals("''a'' 'b'", m.replace("'a' ''b''", replacements));
+        assertEquals("'a'' 'b'", m.replace("'a' ''b''", replacements, 1));
+
+        String s = "no tokens";
+        assertSame(s, m.replace(s, replacements));
+        assertSame(s, m.replace(s, replacements, 20));
+    }
+
+    @Test
+    public void testReplaceManyTokens() {
+
+        String[] tokens = new String[500];
+        String[] replacements = new String[tokens.length];
+        StringBuilder source = new StringBuilder();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = "<" + i + ">";
+            replacements[i] = Integer.toString(i);
+            source.append("<").append(i).append("> ");
+            result.append(i).append(' ');
+        }
+
+        assertEquals(result.toString(),
+            new MultiStringMatcher(tokens).replace(source.toString(), replacements));
+    }
+}
@@ -0,0 +1,105 @@
+package deors.core.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class StringInternerTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public StringInternerTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testCapacity() {
+
+        assertEquals(StringInterner.DEFAULT_CAPACITY, new StringInterner().getCapacity());
+        assertEquals(StringInterner.DEFAULT_MAX_LENGTH, new StringInterner().getMaxLength());
+        assertEquals(1, new StringInterner(1, 0).getCapacity());
+        assertEquals(64, new StringInterner(64, 8).getCapacity());
+        assertEquals(128, new StringInterner(65, 8).getCapacity());
+    }
+
+    @Test
+    public void testInternString() {
+
+        StringInterner interner = new StringInterner(16, 8);
+
+        String first = new String("ES");
+        String second = new String("ES");
+        assertSame(first, interner.intern(first));
+        assertSame(first, interner.intern(second));
+        assertNull(interner.intern(null));
+
+        String longValue = new String("longer than eight");
+        assertSame(longValue, interner.intern(longValue));
+        assertNotSame(longValue, interner.intern(new String("longer than eight")));
+    }
+
+    @Test
+    public void testInternRange() {
+
+        StringInterner interner = new StringInterner(16, 8);
+
+        String first = interner.intern("country=ES;", 8, 10);
+        assertEquals("ES", first);
+        assertSame(first, interner.intern(new StringBuilder("ES"), 0, 2));
+        assertSame(first, interner.intern(new String("ES")));
+        assertEquals("", interner.intern("abc", 1, 1));
+        assertEquals("a long value", interner.intern("a long value", 0, 12));
+    }
+
+    @Test
+    public void testCollision() {
+
+        StringInterner interner = new StringInterner(1, 8);
+
+        String a = interner.intern(new String("a"));
+        String b = interner.intern(new String("b"));
+        assertEquals("b", b);
+        assertNotSame(a, interner.intern(new String("a")));
+    }
+
+    @Test
+    public void testTokenize() {
+
+        StringInterner interner = new StringInterner();
+
+        List<String> first = StringToolkit.tokenize("ES,active,,'a,b'", ",", '\'', interner);
+        List<String> second = StringToolkit.tokenize("ES,active,,'a,b'", ",", '\'', interner);
+
+        assertEquals(StringToolkit.tokenize("ES,active,,'a,b'", ",", '\''), first);
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testInvalidCapacity() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_INVALID_INTERNER_SIZE"));
+
+        new StringInterner(0, 8);
+    }
+
+    @Test
+    public void testInvalidMaxLength() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_INVALID_INTERNER_SIZE"));
+
+        new StringInterner(8, -1);
+    }
+}
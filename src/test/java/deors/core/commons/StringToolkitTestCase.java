@@ -2,22 +2,34 @@ package deors.core.commons;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertArrayEquals;
 import static deors.core.commons.CommonsContext.BLANK;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.StringTokenizer;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 public class StringToolkitTestCase {
 
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
     public StringToolkitTestCase() {
 
         super();
@@ -136,6 +148,8 @@ public class StringToolkitTestCase {
 
         String s = "counting i characters in this string";
         assertEquals(5, StringToolkit.count(s, 'i'));
+        assertEquals(0, StringToolkit.count(s, 'x'));
+        assertEquals(2, StringToolkit.count("\u20ACx\u20AC", '\u20AC'));
     }
 
     @Test
@@ -244,6 +258,69 @@ public class StringToolkitTestCase {
         assertEquals(l, StringToolkit.paragraph(s, 20));
     }
 
+    @Test
+    public void testParagraphHandler()
+        throws IOException {
+
+        String[] sources = {
+            "", "xx", "abc ", " leading space and  double  spaces here",
+            "example of a string that is very loooooooooooooooooooooooong. incredible!",
+            "example of a string that is very long and it is separated by the space "
+            + "character thus each line will not exceed the maximum requested width."};
+
+        for (String s : sources) {
+            for (int width = 1; width <= 25; width++) {
+                List<String> expected = StringToolkit.paragraph(s, width);
+
+                List<String> lines = new ArrayList<String>();
+                int count = StringToolkit.paragraph(new StringBuilder(s), width,
+                    (source, start, end) -> lines.add(source.subSequence(start, end).toString()));
+                assertEquals(expected, lines);
+                assertEquals(expected.size(), count);
+
+                // a reader returning small blocks forces the buffer to be refilled
+                List<String> readLines = new ArrayList<String>();
+                StringToolkit.paragraph(new StringReader(s) {
+                    @Override
+                    public int read(char[] cbuf, int off, int len) throws IOException {
+                        return super.read(cbuf, off, Math.min(len, 3));
+                    }
+                }, width, (source, start, end) ->
+                    readLines.add(source.subSequence(start, end).toString()));
+                assertEquals(expected, readLines);
+            }
+        }
+    }
+
+    @Test
+    public void testParagraphLongInput()
+        throws IOException {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append("word").append(i % 10).append(' ');
+        }
+        sb.append(StringToolkit.repeatCharacter('x', 20000));
+
+        String s = sb.toString();
+        List<String> expected = StringToolkit.paragraph(s, 40);
+
+        StringWriter sw = new StringWriter();
+        int count = StringToolkit.paragraph(new StringReader(s), 40, sw, "\n");
+        assertEquals(expected.size(), count);
+        assertEquals(StringToolkit.combine(expected, "\n"), sw.toString());
+
+        sw = new StringWriter();
+        StringToolkit.paragraph(s, 40, sw, "\r\n");
+        assertEquals(StringToolkit.combine(expected, "\r\n"), sw.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParagraphInvalidWidth() {
+
+        StringToolkit.paragraph("xx", 0, (source, start, end) -> { });
+    }
+
     @Test
     public void testRemove() {
 
@@ -509,6 +586,29 @@ public class StringToolkitTestCase {
             new String[] {"r", "s"}, new String[] {"X", "Y"}));
     }
 
+    @Test
+    public void testReplaceMultipleBegin() {
+
+        String s = "a-b-c-d-e-f";
+
+        // the characters before the starting position are not part of the result
+        assertEquals("c-d-e-f", StringToolkit.replaceMultiple(s,
+            new String[] {"x"}, new String[] {"y"}, 4));
+        assertEquals("C+d+e-f", StringToolkit.replaceMultiple(s,
+            new String[] {"c", "-d-"}, new String[] {"C", "+d+"}, 4));
+        assertEquals("CDEF", StringToolkit.replaceMultiple(s,
+            new String[] {"a", "b", "c", "d", "e", "f", "-"},
+            new String[] {"A", "B", "C", "D", "E", "F", ""}, 4));
+    }
+
+    @Test
+    public void testReplaceMultipleEmptyToken() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_EMPTY_TOKEN"));
+        StringToolkit.replaceMultiple("string", new String[] {"s", ""}, new String[] {"x", "y"});
+    }
+
     @Test
     public void testReplaceMultipleMap() {
 
@@ -610,6 +710,69 @@ public class StringToolkitTestCase {
         assertEquals(expected, StringToolkit.tokenize(s, ";", '\"'));
     }
 
+    @Test
+    public void testTokenizeHandler() {
+
+        String s = "a;;\"b;c\";d;";
+        List<String> tokens = new ArrayList<String>();
+        List<Integer> offsets = new ArrayList<Integer>();
+
+        int count = StringToolkit.tokenize(new StringBuilder(s), ";", '\"', (source, start, end) -> {
+            tokens.add(source.subSequence(start, end).toString());
+            offsets.add(start);
+        });
+
+        assertEquals(5, count);
+        assertEquals(StringToolkit.tokenize(s, ";", '\"'), tokens);
+        assertEquals(Arrays.asList(0, 2, 4, 9, 10), offsets);
+
+        assertEquals(0, StringToolkit.tokenize("", ";", '\"', (source, start, end) -> { }));
+        assertEquals(0, StringToolkit.tokenize("\"unclosed;token", ";", '\"', (source, start, end) -> { }));
+    }
+
+    @Test
+    public void testTokenizeCompatibility() {
+
+        String[] sources = new String[] {
+            ";", ";;", "a;;", ";;a", "a;;;b", "\"\"", "\"a;\"", "x\"a;b\"", "\"a\"b;c\";d",
+            "\"a;b", "a,b;c", ";\"\";", "\"a\";\"\";\"b"};
+
+        for (String source : sources) {
+            List<String> tokens = new ArrayList<String>();
+            StringTokenizer st = new StringTokenizer(source, ";,", true);
+            boolean first = true;
+            boolean lastWasDelimiter = false;
+            while (st.hasMoreTokens()) {
+                String item = st.nextToken();
+                if (";,".indexOf(item) == -1) {
+                    if (item.startsWith("\"") && item.length() > 1 && item.endsWith("\"")) {
+                        tokens.add(item.substring(1, item.length() - 1));
+                    } else if (item.startsWith("\"")) {
+                        StringBuilder sb = new StringBuilder(item.substring(1));
+                        while (st.hasMoreTokens()) {
+                            String child = st.nextToken();
+                            if (child.endsWith("\"")) {
+                                tokens.add(sb.append(child, 0, child.length() - 1).toString());
+                                break;
+                            }
+                            sb.append(child);
+                        }
+                    } else {
+                        tokens.add(item);
+                    }
+                    lastWasDelimiter = false;
+                } else {
+                    if (lastWasDelimiter || first || !st.hasMoreTokens()) {
+                        tokens.add("");
+                    }
+                    lastWasDelimiter = true;
+                }
+                first = false;
+            }
+            assertEquals(source, tokens, StringToolkit.tokenize(source, ";,", '\"'));
+        }
+    }
+
     @Test
     public void testTrim() {
 
@@ -642,6 +805,103 @@ public class StringToolkitTestCase {
             StringToolkit.TRIM_BOTH));
     }
 
+    @Test
+    public void testReplaceInPlace() {
+
+        StringBuilder sb = new StringBuilder("a {0} b {0} c");
+        assertEquals(2, StringToolkit.replaceInPlace(sb, "{0}", "x"));
+        assertEquals("a x b {0} c", sb.toString());
+        assertEquals(-1, StringToolkit.replaceInPlace(sb, "{0}", "y", 9));
+        assertEquals(6, StringToolkit.replaceInPlace(sb, "{0}", null, 3));
+        assertEquals("a x b  c", sb.toString());
+
+        sb = new StringBuilder("a {0} b {0} c");
+        assertEquals(8, StringToolkit.replaceLastInPlace(sb, "{0}", "long"));
+        assertEquals("a {0} b long c", sb.toString());
+        assertEquals(2, StringToolkit.replaceLastInPlace(sb, "{0}", "z", 5));
+        assertEquals(-1, StringToolkit.replaceLastInPlace(sb, "b", "z", 4));
+        assertEquals(-1, StringToolkit.replaceLastInPlace(sb, "b", "z", 50));
+        assertEquals("a z b long c", sb.toString());
+
+        sb = new StringBuilder("remove 'quotes' here'");
+        assertEquals(7, StringToolkit.removeInPlace(sb, "'"));
+        assertEquals(19, StringToolkit.removeLastInPlace(sb, "'"));
+        assertEquals("remove quotes' here", sb.toString());
+        assertEquals(1, StringToolkit.removeAllInPlace(sb, "'"));
+        assertEquals("remove quotes here", sb.toString());
+    }
+
+    @Test
+    public void testReplaceAllInPlace() {
+
+        String[] sources = {"", "aaa", "xaaay", "abcabcab", "no tokens", "aaaaaaaa"};
+        String[] tokens = {"a", "aa", "ab", "abc"};
+        String[] replacements = {null, "", "-", "--", "1234567"};
+
+        for (String source : sources) {
+            for (String token : tokens) {
+                for (String replacement : replacements) {
+                    for (int begin = 0; begin <= 2; begin++) {
+                        if (begin > source.length()) {
+                            continue;
+                        }
+                        String expected = StringToolkit.replaceAll(source, token, replacement,
+                            begin);
+                        StringBuilder sb = new StringBuilder(source);
+                        int count = StringToolkit.replaceAllInPlace(sb, token, replacement,
+                            begin);
+                        assertEquals(expected, sb.toString());
+                        assertEquals(count > 0, !source.equals(expected)
+                            || token.equals(replacement));
+                    }
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder("x");
+        assertEquals(0, StringToolkit.replaceAllInPlace(sb, "", "y"));
+        assertEquals("x", sb.toString());
+    }
+
+    @Test
+    public void testReplaceAllAppendable()
+        throws IOException {
+
+        StringBuilder sb = new StringBuilder("> ");
+        assertEquals(3, StringToolkit.replaceAll(new StringBuilder("a, b, c, d"), ", ", null, sb));
+        assertEquals("> abcd", sb.toString());
+
+        StringWriter sw = new StringWriter();
+        assertEquals(2, StringToolkit.replaceAll("x{0}y{0}", "{0}", "--", sw));
+        assertEquals("x--y--", sw.toString());
+
+        CharBuffer cb = CharBuffer.allocate(20);
+        assertEquals(2, StringToolkit.replaceAll(CharBuffer.wrap("abcabc"), "bc", "X",
+            cb));
+        cb.flip();
+        assertEquals("aXaX", cb.toString());
+
+        sb.setLength(0);
+        assertEquals(0, StringToolkit.replaceAll("abc", "", "X", sb));
+        assertEquals("abc", sb.toString());
+    }
+
+    @Test
+    public void testTrimInPlace() {
+
+        StringBuilder sb = new StringBuilder("0.001testing trim1.00");
+        StringToolkit.trimInPlace(sb, new char[] {'0', '.'}, StringToolkit.TRIM_LEFT);
+        assertEquals("1testing trim1.00", sb.toString());
+        StringToolkit.trimInPlace(sb, new char[] {'0', '.'}, StringToolkit.TRIM_RIGHT);
+        assertEquals("1testing trim1", sb.toString());
+        StringToolkit.trimInPlace(sb, '1', StringToolkit.TRIM_BOTH);
+        assertEquals("testing trim", sb.toString());
+
+        sb = new StringBuilder("/***/");
+        StringToolkit.trimInPlace(sb, new char[] {'/', '*'}, StringToolkit.TRIM_BOTH);
+        assertEquals("", sb.toString());
+    }
+
     @Test
     public void testAsHexadecimalString()
         throws UnsupportedEncodingException {
@@ -719,6 +979,38 @@ public class StringToolkitTestCase {
         assertEquals(r, StringToolkit.formatForXML(s));
     }
 
+    @Test
+    public void testFormatAppendable()
+        throws IOException {
+
+        StringWriter sw = new StringWriter();
+        StringToolkit.formatForHTMLViewing("a <b>\r\n\u00FF\uFFFF", sw);
+        assertEquals("a&nbsp;&lt;b&gt;<br>&#255;&#65535;", sw.toString());
+
+        StringBuilder sb = new StringBuilder("x");
+        StringToolkit.formatForXML(new StringBuilder("a <b> & \u00E1"), sb);
+        assertEquals("xa &lt;b&gt; &amp; &#225;", sb.toString());
+
+        sb.setLength(0);
+        StringToolkit.formatForXML("", sb);
+        assertEquals("", sb.toString());
+    }
+
+    @Test
+    public void testFormatUnchanged() {
+
+        String s = "nothing_to-format.here";
+        assertSame(s, StringToolkit.formatForHTMLViewing(s));
+        assertSame(s, StringToolkit.formatForXML(s));
+
+        String x = "nothing to format here\r\n\t";
+        assertSame(x, StringToolkit.formatForXML(x));
+
+        assertEquals("", StringToolkit.formatForHTMLViewing("\r\n"));
+        assertEquals("a<br>", StringToolkit.formatForHTMLViewing("a\n"));
+        assertEquals("&#127;&#1000;&#10000;", StringToolkit.formatForXML("\u007F\u03E8\u2710"));
+    }
+
     @Test
     public void testFormatListAsString() {
 
@@ -779,6 +1071,25 @@ public class StringToolkitTestCase {
 
         assertTrue(StringToolkit.hasInvalidCharacters("prueba", "p"));
         assertFalse(StringToolkit.hasInvalidCharacters("prueba", "x"));
+        assertTrue(StringToolkit.hasInvalidCharacters("prueba", "<>&\"'a"));
+        assertFalse(StringToolkit.hasInvalidCharacters("prueba", "<>&\"'\u20AC"));
+    }
+
+    @Test
+    public void testIndexOfAny() {
+
+        assertEquals(-1, StringToolkit.indexOfAny(null, "x"));
+        assertEquals(-1, StringToolkit.indexOfAny("", "x"));
+        assertEquals(-1, StringToolkit.indexOfAny("x", null));
+        assertEquals(-1, StringToolkit.indexOfAny("x", ""));
+
+        String s = "search for any character \u20AC";
+        assertEquals(3, StringToolkit.indexOfAny(s, "rc"));
+        assertEquals(2, StringToolkit.indexOfAny(s, "rca"));
+        assertEquals(-1, StringToolkit.indexOfAny(s, "xz"));
+        assertEquals(2, StringToolkit.indexOfAny(s, "xyzwvua"));
+        assertEquals(s.length() - 1, StringToolkit.indexOfAny(s, "xzkwvq\u20AC"));
+        assertEquals(-1, StringToolkit.indexOfAny(s, "xzkwvq\u20AD"));
     }
 
     @Test
@@ -0,0 +1,145 @@
+package deors.core.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class UTF8ToolkitTestCase {
+
+    private static final String TEXT = "áé, ñandú, €10,, 'a, b', 😀 end,";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public UTF8ToolkitTestCase() {
+
+        super();
+    }
+
+    private static byte[] utf8(String s) {
+
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testCount() {
+
+        assertEquals(StringToolkit.count(TEXT, ','), UTF8Toolkit.count(utf8(TEXT), ","));
+        assertEquals(1, UTF8Toolkit.count(utf8(TEXT), "ñ"));
+        assertEquals(1, UTF8Toolkit.count(utf8(TEXT), "€"));
+        assertEquals(2, UTF8Toolkit.count(utf8("aaaaa"), "aa"));
+        assertEquals(0, UTF8Toolkit.count(utf8(TEXT), ""));
+        assertEquals(0, UTF8Toolkit.count(utf8(TEXT), "ü"));
+
+        ByteBuffer buffer = ByteBuffer.wrap(utf8(TEXT));
+        buffer.position(utf8("áé,").length);
+        assertEquals(StringToolkit.count(TEXT, ',') - 1, UTF8Toolkit.count(buffer, ","));
+    }
+
+    @Test
+    public void testIndexOf() {
+
+        byte[] b = utf8(TEXT);
+        assertEquals(utf8(TEXT.substring(0, TEXT.indexOf("ñandú"))).length,
+            UTF8Toolkit.indexOf(b, "ñandú", 0));
+        assertEquals(utf8(TEXT.substring(0, TEXT.indexOf("😀"))).length,
+            UTF8Toolkit.indexOf(b, "😀", 3));
+        assertEquals(-1, UTF8Toolkit.indexOf(b, "áé", 1));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+        direct.put(b).flip();
+        assertEquals(UTF8Toolkit.indexOf(b, "end", 0), UTF8Toolkit.indexOf(direct, "end", 0));
+    }
+
+    @Test
+    public void testReplaceAll() {
+
+        String[][] cases = {{",", ";"}, {"ñ", "n"}, {"a", "€€"}, {", ", null},
+            {"😀", ":)"}};
+
+        for (String[] c : cases) {
+            byte[] expected = utf8(StringToolkit.replaceAll(TEXT, c[0], c[1]));
+            assertArrayEquals(expected, UTF8Toolkit.replaceAll(utf8(TEXT), c[0], c[1]));
+
+            ByteBuffer source = ByteBuffer.allocateDirect(utf8(TEXT).length);
+            source.put(utf8(TEXT)).flip();
+            ByteBuffer target = ByteBuffer.allocate(expected.length);
+            UTF8Toolkit.replaceAll(source, c[0], c[1], target);
+            assertEquals(0, source.remaining());
+            assertEquals(0, target.remaining());
+            assertArrayEquals(expected, target.array());
+        }
+
+        byte[] b = utf8(TEXT);
+        assertSame(b, UTF8Toolkit.replaceAll(b, "ü", "u"));
+        assertSame(b, UTF8Toolkit.replaceAll(b, "", "u"));
+    }
+
+    @Test
+    public void testTokenize() {
+
+        String[] sources = {TEXT, "", ",", "a,,b,", "'x, y'z, 'open", ",á'"};
+
+        for (String s : sources) {
+            List<String> expected = new ArrayList<String>();
+            StringToolkit.tokenize(s, ", ", '\'', (source, start, end) ->
+                expected.add(source.subSequence(start, end).toString()));
+
+            List<String> tokens = new ArrayList<String>();
+            int count = UTF8Toolkit.tokenize(utf8(s), ", ", '\'', (source, start, end) ->
+                tokens.add(UTF8Toolkit.decode(source, start, end)));
+
+            assertEquals(expected, tokens);
+            assertEquals(expected.size(), count);
+        }
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(32);
+        direct.put(utf8("skip|ñ|ü")).flip();
+        direct.position(5);
+        List<String> tokens = new ArrayList<String>();
+        UTF8Toolkit.tokenize(direct, "|", StringToolkit.NO_SURROUNDER, (source, start, end) ->
+            tokens.add(UTF8Toolkit.decode(source, start, end)));
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("ñ");
+        expected.add("ü");
+        assertEquals(expected, tokens);
+    }
+
+    @Test
+    public void testTrim() {
+
+        ByteBuffer buffer = ByteBuffer.wrap(utf8("  ñandú  "));
+        ByteBuffer trimmed = UTF8Toolkit.trim(buffer, ' ', StringToolkit.TRIM_BOTH);
+        assertEquals("ñandú", UTF8Toolkit.decode(trimmed, trimmed.position(), trimmed.limit()));
+        assertEquals(0, buffer.position());
+
+        trimmed = UTF8Toolkit.trim(buffer, ' ', StringToolkit.TRIM_LEFT);
+        assertEquals("ñandú  ", UTF8Toolkit.decode(trimmed, trimmed.position(), trimmed.limit()));
+
+        trimmed = UTF8Toolkit.trim(buffer, ' ', StringToolkit.TRIM_RIGHT);
+        assertEquals("  ñandú", UTF8Toolkit.decode(trimmed, trimmed.position(), trimmed.limit()));
+
+        trimmed = UTF8Toolkit.trim(ByteBuffer.wrap(utf8("   ")), ' ', StringToolkit.TRIM_BOTH);
+        assertEquals(0, trimmed.remaining());
+    }
+
+    @Test
+    public void testNonASCIIDelimiter() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("STRTK_ERR_NON_ASCII_CHARACTER", "ñ"));
+
+        UTF8Toolkit.tokenize(utf8(TEXT), ",ñ", StringToolkit.NO_SURROUNDER,
+            (source, start, end) -> { });
+    }
+}
@@ -0,0 +1,98 @@
+package deors.core.commons.base64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import deors.core.commons.CommonsContext;
+
+public class Base64InputStreamTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public Base64InputStreamTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testReadBytes()
+        throws IOException {
+
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream is = new Base64InputStream(
+            new ByteArrayInputStream(Base64Toolkit.encode(data)))) {
+            byte[] buffer = new byte[1000];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer, 0, 333)) != -1) {
+                baos.write(buffer, 0, bytesRead);
+            }
+        }
+
+        assertArrayEquals(data, baos.toByteArray());
+    }
+
+    @Test
+    public void testReadSingleBytes()
+        throws IOException {
+
+        InputStream is = new Base64InputStream(
+            new ByteArrayInputStream("b3JpZ2luYWwg\nc3RyaW5n".getBytes()));
+
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = is.read()) != -1) {
+            sb.append((char) b);
+        }
+
+        assertEquals("original string", sb.toString());
+        assertEquals(-1, is.read());
+        is.close();
+    }
+
+    @Test
+    public void testSkip()
+        throws IOException {
+
+        InputStream is = new Base64InputStream(
+            new ByteArrayInputStream("b3JpZ2luYWwgc3RyaW5n".getBytes()));
+
+        assertEquals(9, is.skip(9));
+        assertEquals('s', is.read());
+        assertEquals(5, is.skip(100));
+        assertEquals(-1, is.read());
+        assertFalse(is.markSupported());
+    }
+
+    @Test
+    public void testReadInvalid()
+        throws IOException {
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(CommonsContext.getMessage("B64TK_ERR_READING_DATA"));
+        new Base64InputStream(new ByteArrayInputStream("4ent8/rx()".getBytes())).read();
+    }
+
+    @Test
+    public void testReset()
+        throws IOException {
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(CommonsContext.getMessage("B64TK_ERR_MARK_NOT_SUPPORTED"));
+        new Base64InputStream(new ByteArrayInputStream(new byte[0])).reset();
+    }
+}
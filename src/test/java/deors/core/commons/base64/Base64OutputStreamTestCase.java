@@ -0,0 +1,82 @@
+package deors.core.commons.base64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Base64OutputStreamTestCase {
+
+    public Base64OutputStreamTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testWriteBytes()
+        throws IOException {
+
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Base64OutputStream b64os = new Base64OutputStream(baos)) {
+            int i = 0;
+            for (int length = 1; i < data.length; length = length * 3 + 1) {
+                int n = Math.min(length, data.length - i);
+                b64os.write(data, i, n);
+                i += n;
+            }
+        }
+
+        assertArrayEquals(Base64Toolkit.encode(data), baos.toByteArray());
+    }
+
+    @Test
+    public void testWriteSingleBytes()
+        throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Base64OutputStream b64os = new Base64OutputStream(baos);
+        for (byte b : "original string".getBytes()) {
+            b64os.write(b);
+        }
+        b64os.close();
+        b64os.close();
+
+        assertEquals("b3JpZ2luYWwgc3RyaW5n\n", baos.toString());
+    }
+
+    @Test
+    public void testFlush()
+        throws IOException {
+
+        byte[] data = new byte[60];
+        new Random(2).nextBytes(data);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Base64OutputStream b64os = new Base64OutputStream(baos);
+        b64os.write(data);
+        b64os.flush();
+
+        assertEquals(77, baos.size());
+
+        b64os.close();
+
+        assertArrayEquals(Base64Toolkit.encode(data), baos.toByteArray());
+    }
+
+    @Test
+    public void testWriteEmpty()
+        throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new Base64OutputStream(baos).close();
+
+        assertEquals(0, baos.size());
+    }
+}
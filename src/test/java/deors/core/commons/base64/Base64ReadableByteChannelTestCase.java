@@ -0,0 +1,60 @@
+package deors.core.commons.base64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import deors.core.commons.CommonsContext;
+
+public class Base64ReadableByteChannelTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public Base64ReadableByteChannelTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testRead()
+        throws IOException {
+
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Base64ReadableByteChannel channel = new Base64ReadableByteChannel(
+            Channels.newChannel(new ByteArrayInputStream(Base64Toolkit.encode(data))))) {
+            ByteBuffer buffer = ByteBuffer.allocate(777);
+            assertEquals(0, channel.read(ByteBuffer.allocate(0)));
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                baos.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        }
+
+        assertArrayEquals(data, baos.toByteArray());
+    }
+
+    @Test
+    public void testReadInvalid()
+        throws IOException {
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(CommonsContext.getMessage("B64TK_ERR_READING_DATA"));
+        new Base64ReadableByteChannel(Channels.newChannel(
+            new ByteArrayInputStream("4ent=8/rx".getBytes()))).read(ByteBuffer.allocate(10));
+    }
+}
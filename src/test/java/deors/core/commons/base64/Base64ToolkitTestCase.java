@@ -9,6 +9,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -96,6 +101,15 @@ public class Base64ToolkitTestCase {
         assertEquals("w6HDqcOtw7PDusOx" + NEW_LINE, Base64Toolkit.encode("áéíóúñ", "UTF-8"));
     }
 
+    @Test
+    public void testEncodeStringEncodingNotAsciiCompatible()
+        throws UnsupportedEncodingException {
+
+        byte[] encoded = Base64Toolkit.encode("original string".getBytes("UTF-16"));
+
+        assertEquals(new String(encoded, "UTF-16"), Base64Toolkit.encode("original string", "UTF-16"));
+    }
+
     @Test
     public void testDecodeBytes() {
 
@@ -183,6 +197,14 @@ public class Base64ToolkitTestCase {
         assertEquals("áéíóúñ", Base64Toolkit.decode("w6HDqcOtw7PDusOx", "UTF-8"));
     }
 
+    @Test
+    public void testDecodeStringEncodingNotAsciiCompatible()
+        throws UnsupportedEncodingException {
+
+        // the encoded string is converted into bytes with the charset, which are not valid
+        assertEquals("", Base64Toolkit.decode("b3JpZ2luYWwgc3RyaW5n", "UTF-16"));
+    }
+
     @Test
     public void testDecodeStreamsInvalid()
         throws IOException {
@@ -193,6 +215,277 @@ public class Base64ToolkitTestCase {
         ByteArrayOutputStream baos = new ByteArrayOutputStream(100);
         Base64Toolkit.decode(bais, baos);
     }
+
+    @Test
+    public void testEncodeDecodeBytesLarge() {
+
+        for (int length : new int[] {56, 57, 58, 114, 1000, 100000}) {
+            byte[] data = randomData(length);
+            String expected = mimeEncode(data);
+
+            byte[] encoded = Base64Toolkit.encode(data);
+            assertEquals(expected, new String(encoded, StandardCharsets.ISO_8859_1));
+            assertArrayEquals(data, Base64Toolkit.decode(encoded));
+        }
+    }
+
+    @Test
+    public void testEncodeDecodeStreamsLarge()
+        throws IOException {
+
+        byte[] data = randomData(100000);
+        String expected = mimeEncode(data);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        Base64Toolkit.encode(new TrickleInputStream(data), encoded);
+        assertEquals(expected, encoded.toString("ISO-8859-1"));
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        Base64Toolkit.decode(new TrickleInputStream(encoded.toByteArray()), decoded);
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+
+    @Test
+    public void testEncodeDecodeByteBuffers()
+        throws IOException {
+
+        byte[] data = randomData(10000);
+        byte[] expected = mimeEncode(data).getBytes(StandardCharsets.ISO_8859_1);
+
+        for (boolean direct : new boolean[] {false, true}) {
+            ByteBuffer source = direct ? ByteBuffer.allocateDirect(data.length + 1)
+                : ByteBuffer.allocate(data.length + 1);
+            source.put((byte) 0).put(data).flip();
+            source.get();
+            ByteBuffer target = direct ? ByteBuffer.allocateDirect(expected.length)
+                : ByteBuffer.allocate(expected.length);
+
+            Base64Toolkit.encode(source, target);
+            assertFalse(source.hasRemaining());
+            assertFalse(target.hasRemaining());
+            target.flip();
+            byte[] encoded = new byte[target.remaining()];
+            target.get(encoded);
+            assertArrayEquals(expected, encoded);
+
+            target.rewind();
+            ByteBuffer decoded = direct ? ByteBuffer.allocateDirect(data.length)
+                : ByteBuffer.allocate(data.length);
+            Base64Toolkit.decode(target, decoded);
+            assertFalse(decoded.hasRemaining());
+            decoded.flip();
+            byte[] result = new byte[decoded.remaining()];
+            decoded.get(result);
+            assertArrayEquals(data, result);
+        }
+    }
+
+    @Test
+    public void testEncodeByteBufferOverflow() {
+
+        thrown.expect(BufferOverflowException.class);
+        Base64Toolkit.encode(ByteBuffer.wrap(new byte[3]), ByteBuffer.allocate(4));
+    }
+
+    @Test
+    public void testDecodeByteBufferInvalid()
+        throws IOException {
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(CommonsContext.getMessage("B64TK_ERR_READING_DATA"));
+        Base64Toolkit.decode(ByteBuffer.wrap("4ent=8/rx".getBytes()), ByteBuffer.allocate(100));
+    }
+
+    @Test
+    public void testEncodeDecodeParallel() {
+
+        for (int length : new int[] {0, 1, 1000, 2000000, 2000001, 2000002}) {
+            byte[] data = randomData(length);
+            byte[] encoded = Base64Toolkit.encode(data);
+
+            assertArrayEquals(encoded, Base64Toolkit.encodeParallel(data));
+            assertArrayEquals(data, Base64Toolkit.decodeParallel(encoded));
+        }
+    }
+
+    @Test
+    public void testDecodeParallelIrregular() {
+
+        byte[] data = randomData(2000000);
+        String encoded = java.util.Base64.getEncoder().encodeToString(data);
+
+        // whitespace runs of varying length, so chunks do not start at packet boundaries
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < encoded.length();) {
+            int end = Math.min(i + 1 + random.nextInt(150), encoded.length());
+            sb.append(encoded, i, end).append(" \r\n\t".substring(random.nextInt(4)));
+            i = end;
+        }
+        byte[] irregular = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        assertArrayEquals(data, Base64Toolkit.decode(irregular));
+        assertArrayEquals(data, Base64Toolkit.decodeParallel(irregular));
+    }
+
+    @Test
+    public void testDecodeParallelInvalid() {
+
+        byte[] encoded = Base64Toolkit.encode(randomData(2000000));
+
+        encoded[encoded.length - 3] = '(';
+        assertEquals(0, Base64Toolkit.decodeParallel(encoded).length);
+
+        encoded[encoded.length - 3] = 'A';
+        encoded[100] = '=';
+        assertEquals(0, Base64Toolkit.decodeParallel(encoded).length);
+    }
+
+    @Test
+    public void testEncodeDecodeParallelByteBuffers()
+        throws IOException {
+
+        byte[] data = randomData(2000000);
+        byte[] expected = Base64Toolkit.encode(data);
+
+        ByteBuffer source = ByteBuffer.allocateDirect(data.length);
+        source.put(data).flip();
+        ByteBuffer target = ByteBuffer.allocateDirect(expected.length);
+
+        Base64Toolkit.encodeParallel(source, target);
+        assertFalse(source.hasRemaining());
+        assertFalse(target.hasRemaining());
+        target.flip();
+        byte[] encoded = new byte[target.remaining()];
+        target.get(encoded);
+        assertArrayEquals(expected, encoded);
+
+        target.rewind();
+        ByteBuffer decoded = ByteBuffer.allocate(data.length + 10);
+        Base64Toolkit.decodeParallel(target, decoded);
+        assertEquals(data.length, decoded.position());
+        assertArrayEquals(data, Arrays.copyOf(decoded.array(), data.length));
+    }
+
+    @Test
+    public void testDecodeParallelByteBufferOverflow()
+        throws IOException {
+
+        thrown.expect(BufferOverflowException.class);
+        Base64Toolkit.decodeParallel(ByteBuffer.wrap("4ent8/rx".getBytes()),
+            ByteBuffer.allocate(5));
+    }
+
+    @Test
+    public void testEncodeDecodeModes() {
+
+        for (int length = 0; length < 200; length++) {
+            byte[] data = randomData(length);
+
+            String unwrapped = java.util.Base64.getEncoder().encodeToString(data);
+            String urlSafe = java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+
+            assertEquals(mimeEncode(data),
+                Base64Toolkit.encodeToString(data, Base64Toolkit.MODE_MIME));
+            assertEquals(unwrapped,
+                Base64Toolkit.encodeToString(data, Base64Toolkit.MODE_UNWRAPPED));
+            assertEquals(urlSafe,
+                Base64Toolkit.encodeToString(data, Base64Toolkit.MODE_URL_SAFE));
+            assertEquals(urlSafe.length(),
+                Base64Toolkit.encodedLength(length, Base64Toolkit.MODE_URL_SAFE));
+
+            assertArrayEquals(data, Base64Toolkit.decode(unwrapped, Base64Toolkit.MODE_UNWRAPPED));
+            assertArrayEquals(data, Base64Toolkit.decode(urlSafe, Base64Toolkit.MODE_URL_SAFE));
+            assertArrayEquals(data, Base64Toolkit.decode(
+                urlSafe.getBytes(StandardCharsets.ISO_8859_1), Base64Toolkit.MODE_URL_SAFE));
+        }
+    }
+
+    @Test
+    public void testDecodeUrlSafe() {
+
+        assertArrayEquals(new byte[] {(byte) 0xFB, (byte) 0xFF},
+            Base64Toolkit.decode("-_8", Base64Toolkit.MODE_URL_SAFE));
+        assertArrayEquals(new byte[] {(byte) 0xFB, (byte) 0xFF},
+            Base64Toolkit.decode("-_8=", Base64Toolkit.MODE_URL_SAFE));
+        assertEquals(0, Base64Toolkit.decode("+/8=", Base64Toolkit.MODE_URL_SAFE).length);
+        assertEquals(0, Base64Toolkit.decode("-_8=", Base64Toolkit.MODE_MIME).length);
+        assertEquals(0, Base64Toolkit.decode("4ent\u00f1", Base64Toolkit.MODE_MIME).length);
+    }
+
+    @Test
+    public void testEncodeDecodeCharset() {
+
+        String text = "\u00e1\u00e9\u00ed\u00f3\u00fa\u00f1 \u20ac";
+
+        String encoded = Base64Toolkit.encode(text, StandardCharsets.UTF_8,
+            Base64Toolkit.MODE_UNWRAPPED);
+
+        assertEquals(java.util.Base64.getEncoder().encodeToString(
+            text.getBytes(StandardCharsets.UTF_8)), encoded);
+        assertEquals(text, Base64Toolkit.decode(new StringBuilder(encoded),
+            StandardCharsets.UTF_8, Base64Toolkit.MODE_UNWRAPPED));
+    }
+
+    @Test
+    public void testEncodeTo() {
+
+        byte[] data = "original string".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] dst = new byte[30];
+
+        int written = Base64Toolkit.encodeTo(data, dst, 5, Base64Toolkit.MODE_URL_SAFE);
+
+        assertEquals(20, written);
+        assertEquals("b3JpZ2luYWwgc3RyaW5n", new String(dst, 5, written,
+            StandardCharsets.ISO_8859_1));
+        assertEquals(0, dst[4]);
+        assertEquals(0, dst[25]);
+
+        assertEquals(21, Base64Toolkit.encodeTo(data, dst, 0));
+        assertEquals('\n', dst[20]);
+    }
+
+    @Test
+    public void testEncodeToTooSmall() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("B64TK_ERR_DESTINATION_TOO_SMALL"));
+        Base64Toolkit.encodeTo(new byte[15], new byte[30], 11, Base64Toolkit.MODE_UNWRAPPED);
+    }
+
+    @Test
+    public void testEncodeInvalidMode() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("B64TK_ERR_INVALID_MODE"));
+        Base64Toolkit.encode(new byte[1], 3);
+    }
+
+    private static byte[] randomData(int length) {
+
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static String mimeEncode(byte[] data) {
+
+        String encoded = java.util.Base64.getMimeEncoder().encodeToString(data);
+        encoded = encoded.replace("\r\n", "\n");
+        return encoded.isEmpty() ? encoded : encoded + "\n";
+    }
+
+    private static final class TrickleInputStream extends ByteArrayInputStream {
+
+        TrickleInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
     @Test
     public void testIsBase64StringNoEncoding()
         throws UnsupportedEncodingException {
@@ -226,4 +519,48 @@ public class Base64ToolkitTestCase {
         assertTrue(Base64Toolkit.isBase64("w6HDqcOtw7PDusOx", "UTF-8"));
         assertFalse(Base64Toolkit.isBase64("()&%$", "UTF-8"));
     }
+
+    @Test
+    public void testIsBase64Blocks()
+        throws IOException {
+
+        String[] valid = {
+            "b3JpZ2luYWwgc3RyaW5nIGxvbmdlciB0aGFuIG9uZSBibG9jaw==",
+            "b3JpZ2lu YWwgc3Ry\naW5n\r\n",
+            "QUJDREVGRw=\n=\t",
+            "QUJDREVGR0hJSktMTU5PUA=="};
+        String[] invalid = {
+            "b3JpZ2luYWwgc3RyaW5nIGxvbmdlciB0aGFuIG9uZSBibG9jaw=",
+            "b3JpZ2luYWwgc3RyaW5n()",
+            "QUJDREVGR0g=QUJDREVG",
+            "QUJDREVGR0hJSktMTU5PUA==QQ==",
+            "QUJDREVGR0hJSk\u00f1MTU5PUA==",
+            "QUJDREVGR0hJSk\u0141MTU5PUA==",
+            "        "};
+
+        for (String string : valid) {
+            assertTrue(string, isBase64AllVariants(string));
+        }
+        for (String string : invalid) {
+            assertFalse(string, isBase64AllVariants(string));
+        }
+    }
+
+    private static boolean isBase64AllVariants(String string)
+        throws IOException {
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        boolean result = Base64Toolkit.isBase64(string);
+        assertEquals(result, Base64Toolkit.isBase64(new StringBuilder(string)));
+        assertEquals(result, Base64Toolkit.isBase64(bytes));
+        assertEquals(result, Base64Toolkit.isBase64(ByteBuffer.wrap(bytes)));
+        assertEquals(result, Base64Toolkit.isBase64(direct));
+        assertEquals(0, direct.position());
+        assertEquals(result, Base64Toolkit.isBase64(new TrickleInputStream(bytes)));
+
+        return result;
+    }
 }
@@ -0,0 +1,64 @@
+package deors.core.commons.base64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class Base64WritableByteChannelTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public Base64WritableByteChannelTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testWrite()
+        throws IOException {
+
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Base64WritableByteChannel channel =
+            new Base64WritableByteChannel(Channels.newChannel(baos));
+
+        ByteBuffer source = ByteBuffer.allocateDirect(data.length);
+        source.put(data).flip();
+        while (source.hasRemaining()) {
+            ByteBuffer chunk = source.slice();
+            chunk.limit(Math.min(chunk.remaining(), 1001));
+            assertEquals(chunk.remaining(), channel.write(chunk));
+            source.position(source.position() + chunk.position());
+        }
+        channel.close();
+
+        assertFalse(channel.isOpen());
+        assertArrayEquals(Base64Toolkit.encode(data), baos.toByteArray());
+    }
+
+    @Test
+    public void testWriteClosed()
+        throws IOException {
+
+        Base64WritableByteChannel channel =
+            new Base64WritableByteChannel(Channels.newChannel(new ByteArrayOutputStream()));
+        channel.close();
+
+        thrown.expect(ClosedChannelException.class);
+        channel.write(ByteBuffer.allocate(1));
+    }
+}
@@ -0,0 +1,253 @@
+package deors.core.commons.hex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import deors.core.commons.CommonsContext;
+
+public class HexToolkitTestCase {
+
+    private static final String TEXT = "test of hexadecimal string conversion\u000C";
+
+    private static final String HEX = "74657374206F662068657861646563696D616C207374"
+        + "72696E6720636F6E76657273696F6E0C";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public HexToolkitTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testEncode()
+        throws UnsupportedEncodingException {
+
+        assertEquals("", HexToolkit.encode(new byte[0]));
+        assertEquals("00017F80FF", HexToolkit.encode(new byte[] {0, 1, 127, -128, -1}));
+        assertEquals(HEX, HexToolkit.encode(TEXT.getBytes("ISO-8859-1")));
+        assertArrayEquals(HEX.toCharArray(),
+            HexToolkit.encodeToChars(TEXT.getBytes("ISO-8859-1")));
+        assertArrayEquals(HEX.getBytes("ISO-8859-1"),
+            HexToolkit.encodeToBytes(TEXT.getBytes("ISO-8859-1")));
+    }
+
+    @Test
+    public void testEncodeAllBytes() {
+
+        byte[] b = new byte[256];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) i;
+        }
+
+        String s = HexToolkit.encode(b);
+        for (int i = 0; i < b.length; i++) {
+            String expected = Integer.toHexString(0x100 | i).substring(1).toUpperCase();
+            assertEquals(expected, s.substring(i * 2, i * 2 + 2));
+        }
+        assertArrayEquals(b, HexToolkit.decode(s));
+        assertArrayEquals(b, HexToolkit.decode(s.toLowerCase()));
+    }
+
+    @Test
+    public void testEncodeBuffers()
+        throws UnsupportedEncodingException {
+
+        ByteBuffer source = ByteBuffer.wrap(TEXT.getBytes("ISO-8859-1"));
+        ByteBuffer target = ByteBuffer.allocate(HEX.length());
+        HexToolkit.encode(source, target);
+
+        assertEquals(0, source.remaining());
+        assertEquals(0, target.remaining());
+        assertArrayEquals(HEX.getBytes("ISO-8859-1"), target.array());
+
+        source = ByteBuffer.allocateDirect(2);
+        source.put((byte) 0xAB).put((byte) 0x01).flip();
+        target = ByteBuffer.allocateDirect(4);
+        HexToolkit.encode(source, target);
+        target.flip();
+        byte[] b = new byte[4];
+        target.get(b);
+
+        assertEquals("AB01", new String(b, "ISO-8859-1"));
+    }
+
+    @Test
+    public void testEncodeStreams()
+        throws IOException {
+
+        byte[] b = new byte[CommonsContext.DEFAULT_BUFFER_SIZE * 3 + 7];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) (i * 31);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HexToolkit.encode(new ByteArrayInputStream(b), baos);
+
+        assertEquals(HexToolkit.encode(b), baos.toString("ISO-8859-1"));
+    }
+
+    @Test
+    public void testDecode()
+        throws UnsupportedEncodingException {
+
+        assertArrayEquals(new byte[0], HexToolkit.decode(""));
+        assertEquals(TEXT, new String(HexToolkit.decode(HEX), "ISO-8859-1"));
+        assertEquals(TEXT, new String(HexToolkit.decode(HEX.toCharArray()), "ISO-8859-1"));
+        assertEquals(TEXT, new String(HexToolkit.decode(HEX.getBytes("ISO-8859-1")),
+            "ISO-8859-1"));
+        assertArrayEquals(new byte[] {(byte) 0xab, (byte) 0xcd},
+            HexToolkit.decode("xxabCdxx", 2, 6));
+    }
+
+    @Test
+    public void testDecodeBuffers()
+        throws UnsupportedEncodingException {
+
+        ByteBuffer source = ByteBuffer.wrap(HEX.getBytes("ISO-8859-1"));
+        ByteBuffer target = ByteBuffer.allocate(HEX.length() / 2);
+        HexToolkit.decode(source, target);
+
+        assertEquals(0, source.remaining());
+        assertEquals(TEXT, new String(target.array(), "ISO-8859-1"));
+
+        source = ByteBuffer.allocateDirect(4);
+        source.put("fF10".getBytes("ISO-8859-1")).flip();
+        target = ByteBuffer.allocate(2);
+        HexToolkit.decode(source, target);
+
+        assertArrayEquals(new byte[] {-1, 16}, target.array());
+    }
+
+    @Test
+    public void testDecodeStreams()
+        throws IOException {
+
+        byte[] b = new byte[CommonsContext.DEFAULT_BUFFER_SIZE * 3 + 7];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) (i * 17);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        // an input stream returning odd-sized blocks
+        HexToolkit.decode(new ByteArrayInputStream(HexToolkit.encodeToBytes(b)) {
+            @Override
+            public synchronized int read(byte[] buffer, int off, int len) {
+                return super.read(buffer, off, Math.min(len, 3));
+            }
+        }, baos);
+
+        assertArrayEquals(b, baos.toByteArray());
+    }
+
+    @Test
+    public void testDecodeOddLength() {
+
+        thrown.expect(NumberFormatException.class);
+        thrown.expectMessage(CommonsContext.getMessage("HEXTK_ERR_ODD_LENGTH"));
+
+        HexToolkit.decode("ABC");
+    }
+
+    @Test
+    public void testDecodeInvalidCharacter() {
+
+        thrown.expect(NumberFormatException.class);
+        thrown.expectMessage(CommonsContext.getMessage("HEXTK_ERR_INVALID_CHARACTER", "3"));
+
+        HexToolkit.decode("00Aá");
+    }
+
+    @Test
+    public void testDecodeSign() {
+
+        thrown.expect(NumberFormatException.class);
+        thrown.expectMessage(CommonsContext.getMessage("HEXTK_ERR_INVALID_CHARACTER", "0"));
+
+        HexToolkit.decode("-1".toCharArray());
+    }
+
+    @Test
+    public void testDecodeStreamsOddLength()
+        throws IOException {
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(CommonsContext.getMessage("HEXTK_ERR_READING_DATA"));
+
+        HexToolkit.decode(new ByteArrayInputStream("ABC".getBytes("ISO-8859-1")),
+            new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testDecodeStreamsInvalidCharacter()
+        throws IOException {
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage(CommonsContext.getMessage("HEXTK_ERR_READING_DATA"));
+
+        HexToolkit.decode(new ByteArrayInputStream("ABG0".getBytes("ISO-8859-1")),
+            new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testDecodeStreamsInvalidCharacterPosition()
+        throws IOException {
+
+        // the invalid character is past the first block, after an odd-sized read
+        byte[] data = new byte[CommonsContext.DEFAULT_BUFFER_SIZE * 5];
+        Arrays.fill(data, (byte) '0');
+        data[data.length - 3] = 'G';
+
+        try {
+            HexToolkit.decode(new ByteArrayInputStream(data) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, 1001));
+                }
+            }, new ByteArrayOutputStream());
+            fail();
+        } catch (IOException ioe) {
+            assertEquals(CommonsContext.getMessage("HEXTK_ERR_INVALID_CHARACTER",
+                Integer.toString(data.length - 3)), ioe.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeBuffersInvalidCharacterHeap()
+        throws UnsupportedEncodingException {
+
+        thrown.expect(NumberFormatException.class);
+        thrown.expectMessage(CommonsContext.getMessage("HEXTK_ERR_INVALID_CHARACTER", "2"));
+
+        // the slice has an array offset, which is not part of the position
+        ByteBuffer source = ByteBuffer.wrap("xx00G0".getBytes("ISO-8859-1"), 2, 4).slice();
+
+        HexToolkit.decode(source, ByteBuffer.allocate(2));
+    }
+
+    @Test
+    public void testDecodeBuffersInvalidCharacterDirect()
+        throws UnsupportedEncodingException {
+
+        thrown.expect(NumberFormatException.class);
+        thrown.expectMessage(CommonsContext.getMessage("HEXTK_ERR_INVALID_CHARACTER", "2"));
+
+        ByteBuffer source = ByteBuffer.allocateDirect(4);
+        source.put("00G0".getBytes("ISO-8859-1")).flip();
+
+        HexToolkit.decode(source, ByteBuffer.allocateDirect(2));
+    }
+}
@@ -16,6 +16,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import deors.core.commons.StringInterner;
 import deors.core.commons.io.IOToolkit;
 
 public class INIFileManagerTestCase {
@@ -72,6 +73,22 @@ public class INIFileManagerTestCase {
         assertSame(3, ifm.getSections().size());
     }
 
+    @Test
+    public void testConstructorFileInterner()
+        throws IOException {
+
+        StringInterner interner = new StringInterner(64, 64);
+        File f = new File("target/test-classes/scheduler.ini");
+
+        INIFileManager first = new INIFileManager(f, interner);
+        INIFileManager second = new INIFileManager(f, interner);
+
+        assertEquals("22:00:00", first.getValue("task", "start"));
+        assertSame(first.getValue("task", "class"), first.getValue("daemon", "class"));
+        assertSame(first.getValue("task", "stop"), second.getValue("task", "stop"));
+        assertEquals("default section is skipped", first.getValue("default"));
+    }
+
     @Test
     public void testConstructorFileByName()
         throws IOException {
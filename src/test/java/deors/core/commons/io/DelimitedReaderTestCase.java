@@ -0,0 +1,150 @@
+package deors.core.commons.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import deors.core.commons.CommonsContext;
+import deors.core.commons.StringInterner;
+import deors.core.commons.StringToolkit;
+
+public class DelimitedReaderTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public DelimitedReaderTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testInvalidBufferSize() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("IOTK_ERR_INVALID_BUFFER_SIZE"));
+
+        new DelimitedReader(new StringReader(""), ";", '"', 0);
+    }
+
+    @Test
+    public void testEmpty()
+        throws IOException {
+
+        try (DelimitedReader reader = new DelimitedReader(new StringReader(""), ";", '"')) {
+            assertNull(reader.readRecord());
+            assertEquals(0, reader.getRecordCount());
+        }
+    }
+
+    @Test
+    public void testSameAsTokenize()
+        throws IOException {
+
+        String[] lines = new String[] {
+            "test;;\"of\";csv,file;\"with separators;. ,\"\"everything in the same field\";"
+                + "another\"field;the last two fields are blanks;\"\";",
+            "",
+            ";",
+            "a;;",
+            "\"a\"b;c\";d",
+            "plain line without delimiters",
+            "\"\";\"x\";;y"};
+
+        for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+            for (String terminator : new String[] {"\n", "\r", "\r\n"}) {
+                String source = String.join(terminator, lines);
+                try (DelimitedReader reader = new DelimitedReader(
+                        new StringReader(source), ";", '"', bufferSize)) {
+                    for (String line : lines) {
+                        assertEquals(StringToolkit.tokenize(line, ";", '"'), reader.readRecord());
+                    }
+                    assertNull(reader.readRecord());
+                    assertEquals(lines.length, reader.getRecordCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadRecordInterner()
+        throws IOException {
+
+        StringInterner interner = new StringInterner();
+
+        try (DelimitedReader reader = new DelimitedReader(
+            new StringReader("1,ES,active\n2,ES,inactive\n3,PT,active"), ",", '"')) {
+            List<String> first = reader.readRecord(interner);
+            List<String> second = reader.readRecord(interner);
+            List<String> third = reader.readRecord(interner);
+
+            assertEquals(Arrays.asList("3", "PT", "active"), third);
+            assertSame(first.get(1), second.get(1));
+            assertSame(first.get(2), third.get(2));
+            assertNull(reader.readRecord(interner));
+        }
+    }
+
+    @Test
+    public void testSurroundedLineTerminators()
+        throws IOException {
+
+        String source = "1;\"first\nsecond\r\nthird\";x\r\n2;\"a\"\r\n3;\"\n\";\"unclosed\nfield";
+
+        for (int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+            try (DelimitedReader reader = new DelimitedReader(
+                    new StringReader(source), ";", '"', bufferSize)) {
+                assertEquals(Arrays.asList("1", "first\nsecond\r\nthird", "x"), reader.readRecord());
+                assertEquals(Arrays.asList("2", "a"), reader.readRecord());
+                assertEquals(Arrays.asList("3", "\n"), reader.readRecord());
+                assertNull(reader.readRecord());
+            }
+        }
+    }
+
+    @Test
+    public void testNoSurrounder()
+        throws IOException {
+
+        try (DelimitedReader reader = new DelimitedReader(
+                new StringReader("\"a;b\"\nc"), ";", StringToolkit.NO_SURROUNDER, 2)) {
+            assertEquals(Arrays.asList("\"a", "b\""), reader.readRecord());
+            assertEquals(Arrays.asList("c"), reader.readRecord());
+            assertNull(reader.readRecord());
+        }
+    }
+
+    @Test
+    public void testHandler()
+        throws IOException {
+
+        byte[] data = "a,b\n\"c,d\",e\n".getBytes(StandardCharsets.UTF_8);
+        List<String> fields = new ArrayList<String>();
+
+        try (DelimitedReader reader = new DelimitedReader(
+                Channels.newChannel(new ByteArrayInputStream(data)), StandardCharsets.UTF_8, ",", '"')) {
+            assertTrue(reader.readRecord((source, start, end) ->
+                fields.add(source.subSequence(start, end).toString())));
+            assertTrue(reader.readRecord((source, start, end) ->
+                fields.add(source.subSequence(start, end).toString())));
+            assertFalse(reader.readRecord((source, start, end) -> fields.add("")));
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c,d", "e"), fields);
+    }
+}
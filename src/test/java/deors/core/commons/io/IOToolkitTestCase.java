@@ -10,12 +10,19 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -67,6 +74,30 @@ public class IOToolkitTestCase {
         assertFalse(IOToolkit.compareArrays(ba3, ba6));
     }
 
+    @Test
+    public void testCompareArraysPartial() {
+
+        byte[] ba1 = new byte[] {1, 5, -3, 18, 54, 69};
+        byte[] ba5 = new byte[] {1, 5, -3, 25, 54, 69, 62};
+
+        assertTrue(IOToolkit.compareArrays(ba1, ba5, 0, 3));
+        assertTrue(IOToolkit.compareArrays(ba1, ba5, 4, 2));
+        assertFalse(IOToolkit.compareArrays(ba1, ba5, 2, 2));
+        assertTrue(IOToolkit.compareArrays(ba1, ba5, 3, 0));
+    }
+
+    @Test
+    public void testMismatch() {
+
+        byte[] ba1 = new byte[] {1, 5, -3, 18, 54, 69};
+        byte[] ba4 = new byte[] {1, 5, -3, 18};
+        byte[] ba5 = new byte[] {1, 5, -3, 25, 54, 69, 62};
+
+        assertEquals(-1, IOToolkit.mismatch(ba1, ba1.clone()));
+        assertEquals(4, IOToolkit.mismatch(ba1, ba4));
+        assertEquals(3, IOToolkit.mismatch(ba1, ba5));
+    }
+
     @Test
     public void testCompareStreamsNull()
         throws IOException {
@@ -198,6 +229,100 @@ public class IOToolkitTestCase {
         assertArrayEquals(ba, baos.toByteArray());
     }
 
+    @Test
+    public void testCopyStreamFiles()
+        throws IOException {
+
+        byte[] data = new byte[1000000];
+        new Random(1).nextBytes(data);
+
+        File source = IOToolkit.writeFile(data);
+        File target = IOToolkit.createTempFile(false);
+
+        IOToolkit.copyStream(new FileInputStream(source), new FileOutputStream(target));
+
+        assertArrayEquals(data, IOToolkit.readFile(target));
+        assertTrue(source.delete());
+        assertTrue(target.delete());
+    }
+
+    @Test
+    public void testCopyFile()
+        throws IOException {
+
+        byte[] data = new byte[1000000];
+        new Random(2).nextBytes(data);
+
+        File source = IOToolkit.writeFile(data);
+        File target = IOToolkit.writeFile(new byte[2000000]);
+
+        assertEquals(data.length, IOToolkit.copyFile(source, target));
+        assertArrayEquals(data, IOToolkit.readFile(target));
+
+        assertEquals(data.length, IOToolkit.copyFile(source.toPath(), target.toPath()));
+        assertArrayEquals(data, IOToolkit.readFile(target));
+
+        assertTrue(source.delete());
+        assertTrue(target.delete());
+    }
+
+    @Test
+    public void testCopyFileSameFile()
+        throws IOException {
+
+        byte[] data = new byte[1000];
+        new Random(4).nextBytes(data);
+
+        File file = IOToolkit.writeFile(data);
+
+        assertEquals(data.length, IOToolkit.copyFile(file, file));
+        assertArrayEquals(data, IOToolkit.readFile(file));
+
+        // a different path to the same file
+        File other = new File(file.getParentFile(), "." + File.separator + file.getName());
+        assertEquals(data.length, IOToolkit.copyFile(file.toPath(), other.toPath()));
+        assertArrayEquals(data, IOToolkit.readFile(file));
+
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testCopyChannel()
+        throws IOException {
+
+        byte[] data = new byte[100000];
+        new Random(3).nextBytes(data);
+
+        // generic channels
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertEquals(data.length, IOToolkit.copyChannel(
+            Channels.newChannel(new ByteArrayInputStream(data)), Channels.newChannel(baos)));
+        assertArrayEquals(data, baos.toByteArray());
+
+        // generic channel to file channel, after existing data
+        File file = IOToolkit.writeFile(new byte[10]);
+        try (FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            target.position(5);
+            assertEquals(data.length, IOToolkit.copyChannel(
+                Channels.newChannel(new ByteArrayInputStream(data)), target));
+            assertEquals(5 + data.length, target.position());
+        }
+        byte[] copied = IOToolkit.readFile(file);
+        assertEquals(5 + data.length, copied.length);
+        assertArrayEquals(data, Arrays.copyOfRange(copied, 5, copied.length));
+
+        // file channel from its current position to generic channel
+        baos.reset();
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            source.position(5);
+            assertEquals(data.length, IOToolkit.copyChannel(source, Channels.newChannel(baos)));
+            assertEquals(source.size(), source.position());
+        }
+        assertArrayEquals(data, baos.toByteArray());
+
+        assertTrue(file.delete());
+    }
+
     @Test
     public void testCreateTempFile()
         throws IOException {
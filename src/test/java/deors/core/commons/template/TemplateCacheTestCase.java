@@ -0,0 +1,198 @@
+package deors.core.commons.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import deors.core.commons.CommonsContext;
+
+public class TemplateCacheTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String TEMPLATE_1_FILE_NAME = "/test1.tmpl";
+    private static final String TEMPLATE_2_FILE_NAME = "/test2.tmpl";
+
+    private static final Charset ISO_8859_1 = StandardCharsets.ISO_8859_1;
+
+    public TemplateCacheTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testConstructorInvalidSize() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("TMPL_ERR_INVALID_CACHE_SIZE", "0"));
+
+        new TemplateCache(0, false);
+    }
+
+    @Test
+    public void testDefaultConstructor() {
+
+        TemplateCache cache = new TemplateCache();
+
+        assertEquals(TemplateCache.DEFAULT_MAX_SIZE, cache.getMaxSize());
+        assertEquals(TemplateCache.DEFAULT_CHECK_MODIFIED, cache.isCheckModified());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testGetTemplateResourceShared()
+        throws TemplateException {
+
+        TemplateCache cache = new TemplateCache(4, false);
+
+        CompiledTemplate t1 = cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1);
+        CompiledTemplate t2 = cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1);
+
+        assertSame(t1, t2);
+        assertEquals(1, cache.size());
+
+        Template t = new Template(this.getClass().getResourceAsStream(TEMPLATE_1_FILE_NAME), ISO_8859_1);
+        assertEquals(t.processTemplate(null), t1.process(null));
+    }
+
+    @Test
+    public void testGetTemplateResourceOtherAnchor()
+        throws TemplateException {
+
+        TemplateCache cache = new TemplateCache(4, false);
+
+        CompiledTemplate t1 = cache.getTemplate(Template.class, TEMPLATE_1_FILE_NAME);
+        CompiledTemplate t2 = cache.getTemplate(TemplateCacheTestCase.class, TEMPLATE_1_FILE_NAME);
+
+        assertSame(t1, t2);
+    }
+
+    @Test
+    public void testGetTemplateResourceCharsets()
+        throws TemplateException {
+
+        TemplateCache cache = new TemplateCache(4, false);
+
+        CompiledTemplate t1 = cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1);
+        CompiledTemplate t2 = cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, StandardCharsets.UTF_8);
+
+        assertNotSame(t1, t2);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testGetTemplateResourceNotFound()
+        throws TemplateException {
+
+        thrown.expect(TemplateException.class);
+        thrown.expectMessage(CommonsContext.getMessage("TMPL_ERR_NOT_FOUND", "/none.tmpl"));
+
+        new TemplateCache(4, false).getTemplate(this.getClass(), "/none.tmpl");
+    }
+
+    @Test
+    public void testEviction()
+        throws TemplateException {
+
+        TemplateCache cache = new TemplateCache(2, false);
+
+        CompiledTemplate t1 = cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1);
+        CompiledTemplate t2 = cache.getTemplate(this.getClass(), TEMPLATE_2_FILE_NAME, ISO_8859_1);
+
+        // t1 becomes the most recently used, so t2 is evicted
+        assertSame(t1, cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1));
+        cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, StandardCharsets.UTF_8);
+
+        assertEquals(2, cache.size());
+        assertSame(t1, cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1));
+        assertNotSame(t2, cache.getTemplate(this.getClass(), TEMPLATE_2_FILE_NAME, ISO_8859_1));
+    }
+
+    @Test
+    public void testInvalidate()
+        throws TemplateException {
+
+        TemplateCache cache = new TemplateCache(4, false);
+
+        CompiledTemplate t1 = cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1);
+        cache.invalidate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1);
+
+        assertEquals(0, cache.size());
+        assertNotSame(t1, cache.getTemplate(this.getClass(), TEMPLATE_1_FILE_NAME, ISO_8859_1));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testGetTemplatePathNotChecked()
+        throws TemplateException, IOException {
+
+        Path file = folder.newFile("cache.tmpl").toPath();
+        Files.write(file, "one [A]".getBytes(ISO_8859_1));
+
+        TemplateCache cache = new TemplateCache(4, false);
+        CompiledTemplate t1 = cache.getTemplate(file, ISO_8859_1);
+
+        Files.write(file, "two [A]".getBytes(ISO_8859_1));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+
+        assertSame(t1, cache.getTemplate(file, ISO_8859_1));
+    }
+
+    @Test
+    public void testGetTemplatePathModified()
+        throws TemplateException, IOException {
+
+        Path file = folder.newFile("cache.tmpl").toPath();
+        Files.write(file, "one [A]".getBytes(ISO_8859_1));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000000));
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("A", "a");
+
+        TemplateCache cache = new TemplateCache(4, true);
+        CompiledTemplate t1 = cache.getTemplate(file, ISO_8859_1);
+        assertSame(t1, cache.getTemplate(file, ISO_8859_1));
+
+        Files.write(file, "two [A]".getBytes(ISO_8859_1));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(2000000));
+
+        CompiledTemplate t2 = cache.getTemplate(file, ISO_8859_1);
+        assertNotSame(t1, t2);
+        assertEquals(1, cache.size());
+
+        List<String> result = t2.process(replacements);
+        assertEquals(1, result.size());
+        assertEquals("two a", result.get(0));
+        assertEquals("one a", t1.process(replacements).get(0));
+    }
+
+    @Test
+    public void testGetTemplatePathModifiedNotFound()
+        throws TemplateException {
+
+        thrown.expect(TemplateException.class);
+
+        new TemplateCache(4, true).getTemplate(folder.getRoot().toPath().resolve("none.tmpl"));
+    }
+}
@@ -2,16 +2,27 @@ package deors.core.commons.template;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -201,6 +212,440 @@ public class TemplateTestCase {
         file.delete();
     }
 
+    @Test
+    public void testProcessTemplatePrintWriterAutoFlush()
+        throws TemplateException {
+
+        Template t = new Template(new ByteArrayInputStream("first [a]\nsecond".getBytes()));
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("a", "line");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(baos), true);
+
+        t.processTemplate(replacements, pw);
+
+        String separator = System.lineSeparator();
+        assertEquals("first line" + separator + "second" + separator, baos.toString());
+    }
+
+    @Test
+    public void testProcessTemplatePath()
+        throws TemplateException, URISyntaxException {
+
+        Path path = Paths.get(this.getClass().getResource(TEMPLATE_1_FILE_NAME).toURI());
+        Template t = new Template(path, Charset.forName("ISO-8859-1"));
+
+        assertEquals(path, t.getTemplatePath());
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("línea", "valor-de-línea");
+        replacements.put("tiene", "valor-de-tiene");
+
+        List<String> processed = t.processTemplate(replacements);
+
+        assertEquals(10, processed.size());
+        assertEquals("esta valor-de-línea tiene uno ] de cierre", processed.get(3));
+        assertEquals("esta línea valor-de-tiene un token", processed.get(5));
+
+        // the mapped contents are decoded again with the new charset
+        t.setTemplateCharset(Charset.forName("UTF-8"));
+        processed = t.processTemplate(replacements);
+
+        assertEquals("esta [l\ufffdnea] tiene uno ] de cierre", processed.get(3));
+    }
+
+    @Test
+    public void testProcessTemplatePathSetter()
+        throws TemplateException, URISyntaxException {
+
+        Template t = new Template();
+        t.setTemplatePath(Paths.get(this.getClass().getResource(TEMPLATE_2_FILE_NAME).toURI()));
+        t.setTemplateCharset(Charset.defaultCharset());
+        t.loadTemplate();
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("template", "plantilla");
+
+        StringBuilder sb = new StringBuilder();
+        t.processTemplate(replacements, sb);
+
+        String eol = System.lineSeparator();
+        assertEquals("prueba de plantilla" + eol + "muy sencilla" + eol, sb.toString());
+    }
+
+    @Test
+    public void testProcessTemplatePathNotFound()
+        throws TemplateException {
+
+        thrown.expect(TemplateException.class);
+        thrown.expectMessage(CommonsContext.getMessage("TMPL_ERR_NOT_LOADED"));
+
+        new Template(Paths.get("this-template-does-not-exist.tmpl"), Charset.defaultCharset());
+    }
+
+    @Test
+    public void testProcessTemplateAppendable()
+        throws TemplateException {
+
+        Template t = new Template(this.getClass().getResourceAsStream(TEMPLATE_2_FILE_NAME));
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("template", "plantilla");
+
+        StringBuilder sb = new StringBuilder();
+        t.processTemplate(replacements, sb);
+
+        String eol = System.lineSeparator();
+        assertEquals("prueba de plantilla" + eol + "muy sencilla" + eol, sb.toString());
+    }
+
+    @Test
+    public void testProcessTemplateOutputStream()
+        throws TemplateException, IOException {
+
+        Template t = new Template(this.getClass().getResourceAsStream(TEMPLATE_1_FILE_NAME), "ISO-8859-1");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.processTemplate(null, baos);
+
+        StringBuilder expected = new StringBuilder();
+        for (String line : t.processTemplate(null)) {
+            expected.append(line).append(System.lineSeparator());
+        }
+
+        assertEquals(expected.toString(), new String(baos.toByteArray(), "ISO-8859-1"));
+    }
+
+    @Test
+    public void testProcessTemplateAppendableError()
+        throws TemplateException {
+
+        thrown.expect(TemplateException.class);
+        thrown.expectMessage(CommonsContext.getMessage("TMPL_ERR_NOT_WRITTEN"));
+
+        Template t = new Template(this.getClass().getResourceAsStream(TEMPLATE_2_FILE_NAME));
+
+        t.processTemplate(null, new Appendable() {
+            public Appendable append(CharSequence csq) throws IOException {
+                throw new IOException("error");
+            }
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                throw new IOException("error");
+            }
+            public Appendable append(char c) throws IOException {
+                throw new IOException("error");
+            }
+        });
+    }
+
+    @Test
+    public void testProcessTemplateLineTerminators()
+        throws TemplateException {
+
+        String source = "first [a] line\r\nsecond [b][a] line\rthird [[a] line\n[a]\n\nlast [";
+        Template t = new Template(new ByteArrayInputStream(source.getBytes()));
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("a", "1");
+        replacements.put("b", "2");
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("first 1 line");
+        expected.add("second 21 line");
+        expected.add("third [[a] line");
+        expected.add("1");
+        expected.add("");
+        expected.add("last [");
+
+        assertEquals(expected, t.processTemplate(replacements));
+        assertEquals(expected, t.processTemplate(replacements));
+    }
+
+    @Test
+    public void testProcessTemplateEscapeMode()
+        throws TemplateException, IOException {
+
+        String source = "<p>[a]</p> [b]\n<i>[c]</i>";
+        Template t = new Template(new ByteArrayInputStream(source.getBytes()));
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("a", "x < y & z");
+        replacements.put("b", "caf\u00E9");
+
+        assertEquals(Template.ESCAPE_NONE, t.getEscapeMode());
+        assertEquals("<p>x < y & z</p> caf\u00E9", t.processTemplate(replacements).get(0));
+
+        t.setEscapeMode(Template.ESCAPE_XML);
+        List<String> expected = new ArrayList<String>();
+        expected.add("<p>x &lt; y &amp; z</p> caf&#233;");
+        expected.add("<i>[c]</i>");
+        assertEquals(expected, t.processTemplate(replacements));
+
+        t.setEscapeMode(Template.ESCAPE_HTML);
+        StringBuilder sb = new StringBuilder();
+        t.processTemplate(replacements, sb);
+        assertEquals("<p>x&nbsp;&lt;&nbsp;y&nbsp;&amp;&nbsp;z</p> caf&#233;" + System.lineSeparator()
+            + "<i>[c]</i>" + System.lineSeparator(), sb.toString());
+
+        t.setTemplateSource(new ByteArrayInputStream(source.getBytes()));
+        t.loadTemplate();
+        assertEquals("<p>x&nbsp;&lt;&nbsp;y&nbsp;&amp;&nbsp;z</p> caf&#233;",
+            t.processTemplate(replacements).get(0));
+    }
+
+    @Test
+    public void testProcessTemplateEscapeModeInvalid()
+        throws TemplateException {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("TMPL_ERR_INVALID_ESCAPE_MODE", "3"));
+
+        new Template().setEscapeMode(3);
+    }
+
+    @Test
+    public void testCompiledTemplateEscapeMode() {
+
+        CompiledTemplate t = CompiledTemplate.compile("[a]");
+        CompiledTemplate x = t.withEscapeMode(Template.ESCAPE_XML);
+
+        assertSame(t, t.withEscapeMode(Template.ESCAPE_NONE));
+        assertEquals(Template.ESCAPE_XML, x.getEscapeMode());
+        assertEquals("<&>", t.process(Map.of("a", "<&>")).get(0));
+        assertEquals("&lt;&amp;&gt;", x.process(Map.of("a", "<&>")).get(0));
+        assertEquals("&lt;&amp;&gt;",
+            CompiledTemplate.compile("[a]", Template.ESCAPE_HTML).process(Map.of("a", "<&>")).get(0));
+    }
+
+    @Test
+    public void testProcessTemplateManyTokens()
+        throws TemplateException {
+
+        StringBuilder source = new StringBuilder();
+        StringBuilder result = new StringBuilder();
+        Map<String, String> replacements = new HashMap<String, String>();
+        for (int i = 0; i < 1000; i++) {
+            source.append("[t").append(i).append("] ");
+            result.append(i).append(' ');
+            replacements.put("t" + i, Integer.toString(i));
+        }
+
+        Template t = new Template(new ByteArrayInputStream(source.toString().getBytes()));
+
+        List<String> processed = t.processTemplate(replacements);
+
+        assertEquals(1, processed.size());
+        assertEquals(result.toString(), processed.get(0));
+    }
+
+    @Test
+    public void testProcessTemplateValuesLazy()
+        throws TemplateException {
+
+        String source = "[a] [b] [a]\n[missing] [[a] [c";
+        Template t = new Template(new ByteArrayInputStream(source.getBytes()));
+
+        List<String> requested = new ArrayList<String>();
+        TemplateValueProvider values = name -> {
+            requested.add(name);
+            return "a".equals(name) ? "x" : null;
+        };
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("x [b] x");
+        expected.add("[missing] [[a] [c");
+
+        assertEquals(expected, t.processTemplateValues(values));
+        assertEquals(Arrays.asList("a", "b", "missing"), requested);
+
+        StringBuilder sb = new StringBuilder();
+        t.processTemplateValues(null, sb);
+        assertEquals(source.replace("\n", System.lineSeparator()) + System.lineSeparator(), sb.toString());
+    }
+
+    @Test
+    public void testProcessTemplateList()
+        throws TemplateException {
+
+        String source = "<ul>\n  [#list items]\n  <li>[.] of [title]</li>\n  [/list]\n</ul>";
+        Template t = new Template(new ByteArrayInputStream(source.getBytes()));
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("title", "list");
+        values.put("items", Arrays.asList("one", "two"));
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("<ul>");
+        expected.add("  <li>one of list</li>");
+        expected.add("  <li>two of list</li>");
+        expected.add("</ul>");
+
+        assertEquals(expected, t.processTemplateValues(TemplateValueProvider.forMap(values)));
+
+        values.put("items", new String[0]);
+        expected.remove(1);
+        expected.remove(1);
+
+        assertEquals(expected, t.processTemplateValues(TemplateValueProvider.forMap(values)));
+    }
+
+    @Test
+    public void testProcessTemplateListNested()
+        throws TemplateException {
+
+        String source = "[#list rows][#list cells][row][cell] [/list]|[/list]";
+        Template t = new Template(new ByteArrayInputStream(source.getBytes()));
+
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 1; i <= 2; i++) {
+            List<Map<String, Object>> cells = new ArrayList<Map<String, Object>>();
+            for (int j = 1; j <= 3; j++) {
+                Map<String, Object> cell = new HashMap<String, Object>();
+                cell.put("cell", j);
+                cells.add(cell);
+            }
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("row", i);
+            row.put("cells", cells);
+            rows.add(row);
+        }
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("rows", rows);
+
+        List<String> processed = t.processTemplateValues(TemplateValueProvider.forMap(values));
+
+        assertEquals(1, processed.size());
+        assertEquals("11 12 13 |21 22 23 |", processed.get(0));
+    }
+
+    @Test
+    public void testProcessTemplateIfElse()
+        throws TemplateException {
+
+        String source = "[#if a]A[#if b]B[#else]!B[/if][#else]!A[/if]\n[#if items]some[#else]none[/if]";
+        Template t = new Template(new ByteArrayInputStream(source.getBytes()));
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("a", "yes");
+        values.put("b", "false");
+        values.put("items", new ArrayList<String>());
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("A!B");
+        expected.add("none");
+
+        assertEquals(expected, t.processTemplateValues(TemplateValueProvider.forMap(values)));
+
+        values.put("a", "");
+        values.put("items", Arrays.asList("x"));
+        expected.clear();
+        expected.add("!A");
+        expected.add("some");
+
+        assertEquals(expected, t.processTemplateValues(TemplateValueProvider.forMap(values)));
+
+        StringBuilder sb = new StringBuilder();
+        t.processTemplateValues(null, sb);
+        assertEquals("!A" + System.lineSeparator() + "none" + System.lineSeparator(), sb.toString());
+    }
+
+    @Test
+    public void testProcessTemplateDirectivesUnmatched()
+        throws TemplateException {
+
+        String source = "[/if] [#else] [/list] [#if ] [#list a\n[#if a]\nopen";
+        Template t = new Template(new ByteArrayInputStream(source.getBytes()));
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("[/if] [#else] [/list] [#if ] [#list a");
+
+        assertEquals(expected, t.processTemplate(null));
+
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("a", "true");
+        expected.add("open");
+
+        assertEquals(expected, t.processTemplate(replacements));
+    }
+
+    @Test
+    public void testProcessTemplateBatch()
+        throws TemplateException {
+
+        Template t = new Template(new ByteArrayInputStream("record [id]\n[#if even]even[/if]".getBytes()));
+
+        List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        for (int i = 0; i < 2000; i++) {
+            Map<String, String> record = new HashMap<String, String>();
+            record.put("id", Integer.toString(i));
+            record.put("even", Boolean.toString(i % 2 == 0));
+            records.add(record);
+        }
+
+        Map<String, String> outputs = new ConcurrentHashMap<String, String>();
+        t.processTemplateBatch(records.stream(),
+            (record, output) -> outputs.put(record.get("id"), output.toString()));
+
+        assertEquals(records.size(), outputs.size());
+        for (Map<String, String> record : records) {
+            StringBuilder expected = new StringBuilder();
+            t.processTemplate(record, expected);
+            assertEquals(expected.toString(), outputs.get(record.get("id")));
+        }
+    }
+
+    @Test
+    public void testProcessTemplateBatchNested()
+        throws TemplateException {
+
+        Template outer = new Template(new ByteArrayInputStream("order [id]".getBytes()));
+        Template inner = new Template(new ByteArrayInputStream("line [id]".getBytes()));
+
+        Map<String, String> outputs = new ConcurrentHashMap<String, String>();
+        outer.processTemplateBatch(IntStream.range(0, 50).mapToObj(TemplateTestCase::record),
+            (record, output) -> {
+                String before = output.toString();
+                try {
+                    inner.processTemplateBatch(Stream.of(record("a"), record("b")),
+                        (line, lineOutput) -> { });
+                } catch (TemplateException te) {
+                    throw new IOException(te);
+                }
+                assertEquals(before, output.toString());
+                outputs.put(record.get("id"), output.toString());
+            });
+
+        assertEquals(50, outputs.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("order " + i, outputs.get(Integer.toString(i)).trim());
+        }
+    }
+
+    private static Map<String, String> record(Object id) {
+
+        Map<String, String> record = new HashMap<String, String>();
+        record.put("id", id.toString());
+        return record;
+    }
+
+    @Test
+    public void testProcessTemplateBatchError()
+        throws TemplateException {
+
+        thrown.expect(TemplateException.class);
+        thrown.expectMessage(CommonsContext.getMessage("TMPL_ERR_NOT_WRITTEN"));
+
+        Template t = new Template(new ByteArrayInputStream("[.]".getBytes()));
+
+        t.processTemplateBatch(Stream.of("a", "b", "c"), TemplateValueProvider::forObject,
+            (record, output) -> {
+                throw new IOException("error");
+            });
+    }
+
     @Test(expected = TemplateException.class)
     public void testLoadTemplateError(@Mocked InputStream mockedInputStream)
         throws TemplateException, IOException {
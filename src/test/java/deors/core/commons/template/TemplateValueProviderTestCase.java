@@ -0,0 +1,134 @@
+package deors.core.commons.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import deors.core.commons.CommonsContext;
+
+public class TemplateValueProviderTestCase {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    public TemplateValueProviderTestCase() {
+
+        super();
+    }
+
+    public record Task(String name, int index, Object description) {
+    }
+
+    public static class TaskBean {
+
+        public String getName() {
+            return "bean";
+        }
+
+        public boolean isRunning() {
+            return true;
+        }
+
+        public String getURL() {
+            return "http://localhost";
+        }
+
+        public String getFailure() {
+            throw new IllegalStateException("failure");
+        }
+
+        public static String getStatic() {
+            return "static";
+        }
+
+        public String getWithArgument(String argument) {
+            return argument;
+        }
+    }
+
+    @Test
+    public void testForMapNull() {
+
+        assertNull(TemplateValueProvider.forMap(null));
+        assertNull(TemplateValueProvider.forObject(null));
+    }
+
+    @Test
+    public void testForMap() {
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("text", "value");
+        map.put("number", 42);
+
+        TemplateValueProvider values = TemplateValueProvider.forMap(map);
+
+        assertEquals("value", values.getValue("text"));
+        assertEquals("42", values.getValue("number"));
+        assertNull(values.getValue("missing"));
+
+        assertEquals("value", TemplateValueProvider.forObject(map).getValue("text"));
+    }
+
+    @Test
+    public void testForObjectProvider() {
+
+        TemplateValueProvider values = name -> name;
+
+        assertSame(values, TemplateValueProvider.forObject(values));
+    }
+
+    @Test
+    public void testForObjectRecord() {
+
+        TemplateValueProvider values = TemplateValueProvider.forObject(new Task("task", 3, null));
+
+        assertEquals("task", values.getValue("name"));
+        assertEquals("3", values.getValue("index"));
+        assertNull(values.getValue("description"));
+        assertNull(values.getValue("missing"));
+    }
+
+    @Test
+    public void testForObjectBean() {
+
+        TemplateValueProvider values = TemplateValueProvider.forObject(new TaskBean());
+
+        assertEquals("bean", values.getValue("name"));
+        assertEquals("true", values.getValue("running"));
+        assertEquals("http://localhost", values.getValue("URL"));
+        assertNull(values.getValue("class"));
+        assertNull(values.getValue("static"));
+        assertNull(values.getValue("withArgument"));
+    }
+
+    @Test
+    public void testForObjectBeanError() {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(CommonsContext.getMessage("TMPL_ERR_VALUE_NOT_READ", "failure"));
+
+        TemplateValueProvider.forObject(new TaskBean()).getValue("failure");
+    }
+
+    @Test
+    public void testProcessTemplateRecord()
+        throws TemplateException {
+
+        Template t = new Template(new ByteArrayInputStream("[index]. [name] ([description])".getBytes()));
+
+        List<String> processed = t.processTemplateValues(
+            TemplateValueProvider.forObject(new Task("task", 1, "first")));
+
+        assertEquals(1, processed.size());
+        assertEquals("1. task (first)", processed.get(0));
+    }
+}